@@ -0,0 +1,180 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.deploy.bindings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.eclipse.jetty.deploy.App;
+import org.eclipse.jetty.deploy.AppLifeCycle;
+import org.eclipse.jetty.deploy.graph.Node;
+import org.eclipse.jetty.deploy.providers.ScanningAppProvider;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.server.handler.gzip.PrecompressedContentGenerator;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.resource.Resource;
+
+/**
+ * Generates the precompressed siblings of the static content of deployed contexts.
+ *
+ * The content is compressed once the context has started, so that the resources
+ * of a war have been extracted, by a thread of the server rather than by the thread
+ * deploying the context. Unless a {@link PrecompressedContentGenerator} is set, the
+ * files are selected with the settings of the {@link GzipHandler} of the context or
+ * of the server, if any.
+ *
+ * No siblings are written in the directories watched by a {@link ScanningAppProvider},
+ * so that they do not trigger a redeployment of the context: the files directly in
+ * the root of an exploded webapp of a monitored directory are not precompressed, and
+ * nothing is precompressed if the monitored directories are scanned recursively.
+ *
+ * Example usage in jetty-deploy.xml:
+ * <pre>
+ * &lt;Call name="addLifeCycleBinding"&gt;
+ *   &lt;Arg&gt;&lt;New class="org.eclipse.jetty.deploy.bindings.PrecompressBinding"/&gt;&lt;/Arg&gt;
+ * &lt;/Call&gt;
+ * </pre>
+ */
+public class PrecompressBinding implements AppLifeCycle.Binding
+{
+    private static final Logger LOG = Log.getLogger(PrecompressBinding.class);
+
+    private PrecompressedContentGenerator _generator;
+
+    public PrecompressedContentGenerator getGenerator()
+    {
+        return _generator;
+    }
+
+    public void setGenerator(PrecompressedContentGenerator generator)
+    {
+        _generator = generator;
+    }
+
+    @Override
+    public String[] getBindingTargets()
+    {
+        return new String[] { "started" };
+    }
+
+    @Override
+    public void processBinding(Node node, App app) throws Exception
+    {
+        ContextHandler handler = app.getContextHandler();
+        if (handler == null)
+        {
+            throw new NullPointerException("No Handler created for App: " + app);
+        }
+
+        if (handler.getBaseResource() == null)
+            return;
+        File base = handler.getBaseResource().getFile();
+        if (base == null || !base.isDirectory())
+            return;
+
+        PrecompressedContentGenerator generator = _generator;
+        if (generator == null)
+        {
+            generator = new PrecompressedContentGenerator();
+            GzipHandler gzipHandler = handler.getChildHandlerByClass(GzipHandler.class);
+            if (gzipHandler == null && handler.getServer() != null)
+                gzipHandler = handler.getServer().getChildHandlerByClass(GzipHandler.class);
+            if (gzipHandler != null)
+                generator.setGzipHandler(gzipHandler);
+            generator.setMimeTypes(handler.getMimeTypes());
+        }
+
+        if (!excludeWatchedDirectories(app,base,generator))
+        {
+            LOG.info("Not precompressing {}: its content is scanned for redeployment",app);
+            return;
+        }
+
+        PrecompressedContentGenerator precompressor = generator;
+        Runnable generation = () ->
+        {
+            try
+            {
+                int written = precompressor.generate(base.toPath());
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Binding: precompressed {} files of {}",written,app);
+            }
+            catch (IOException x)
+            {
+                LOG.warn("Could not precompress " + app,x);
+            }
+        };
+
+        Server server = handler.getServer();
+        if (server == null)
+            generation.run();
+        else
+            server.getThreadPool().execute(generation);
+    }
+
+    /**
+     * @param app the app to precompress
+     * @param base the base directory of the app
+     * @param generator the generator to exclude the watched directories from
+     * @return false if the whole base directory is watched
+     * @throws IOException if the watched directories cannot be resolved
+     */
+    private boolean excludeWatchedDirectories(App app, File base, PrecompressedContentGenerator generator) throws IOException
+    {
+        if (!(app.getAppProvider() instanceof ScanningAppProvider))
+            return true;
+        ScanningAppProvider provider = (ScanningAppProvider)app.getAppProvider();
+        if (provider.getScanInterval() <= 0 || provider.getMonitoredResources() == null)
+            return true;
+
+        Path dir = base.toPath().toRealPath();
+        for (Resource resource : provider.getMonitoredResources())
+        {
+            File monitored = resource.getFile();
+            if (monitored == null || !monitored.isDirectory())
+                continue;
+            Path monitoredDir = monitored.toPath().toRealPath();
+
+            // The scanner records the last modified time of the monitored directories'
+            // entries, so of the directories within them, or of every file if recursive.
+            if (provider.isRecursive())
+            {
+                if (dir.startsWith(monitoredDir) || monitoredDir.startsWith(dir))
+                    return false;
+                continue;
+            }
+
+            generator.addExcludedDirectory(monitoredDir);
+            File[] entries = monitored.listFiles();
+            if (entries != null)
+            {
+                for (File entry : entries)
+                {
+                    if (entry.isDirectory())
+                        generator.addExcludedDirectory(entry.toPath());
+                }
+            }
+        }
+        return true;
+    }
+}
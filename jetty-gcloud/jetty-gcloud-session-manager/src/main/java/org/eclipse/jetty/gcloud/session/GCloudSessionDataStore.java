@@ -20,9 +20,8 @@
 package org.eclipse.jetty.gcloud.session;
 
 import java.io.ByteArrayOutputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -31,7 +30,6 @@ import org.eclipse.jetty.server.session.SessionContext;
 import org.eclipse.jetty.server.session.SessionData;
 import org.eclipse.jetty.server.session.UnreadableSessionDataException;
 import org.eclipse.jetty.server.session.UnwriteableSessionDataException;
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
@@ -880,9 +878,7 @@ public class GCloudSessionDataStore extends AbstractSessionDataStore
         
         //serialize the attribute map
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(session.getAllAttributes());
-        oos.flush();
+        _serializer.serializeAttributes(session.getAllAttributes(), baos);
         
         //turn a session into an entity         
         entity = Entity.newBuilder(key)
@@ -954,10 +950,9 @@ public class GCloudSessionDataStore extends AbstractSessionDataStore
                     session.setLastNode(lastNode);
                     session.setLastSaved(lastSaved);
                     session.setExpiry(expiry);
-                    try (ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(blob.asInputStream()))
+                    try (InputStream is = blob.asInputStream())
                     {
-                        Object o = ois.readObject();
-                        session.putAllAttributes((Map<String,Object>)o);
+                        session.putAllAttributes(_serializer.deserializeAttributes(is));
                     }
                     catch (Exception e)
                     {
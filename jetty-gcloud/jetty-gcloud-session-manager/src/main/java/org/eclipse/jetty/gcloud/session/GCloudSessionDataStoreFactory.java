@@ -95,6 +95,8 @@ public class GCloudSessionDataStoreFactory extends AbstractSessionDataStoreFacto
         ds.setGracePeriodSec(getGracePeriodSec());
         ds.setNamespace(_namespace);
         ds.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            ds.setSerializer(getSerializer());
         return ds;
     }
 
@@ -0,0 +1,106 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.AdaptiveFlowControlStrategy;
+import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.HTTP2Session;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveFlowControlStrategyTest extends FlowControlStrategyTest
+{
+    @Override
+    protected FlowControlStrategy newFlowControlStrategy()
+    {
+        return new AdaptiveFlowControlStrategy();
+    }
+
+    @Test
+    public void testRecvWindowGrowsWhenItLimitsThroughput() throws Exception
+    {
+        int length = 8 * 1024 * 1024;
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame requestFrame)
+            {
+                MetaData.Response metaData = new MetaData.Response(HttpVersion.HTTP_2, 200, new HttpFields());
+                HeadersFrame responseFrame = new HeadersFrame(stream.getId(), metaData, null, false);
+                Callback.Completable completable = new Callback.Completable();
+                stream.headers(responseFrame, completable);
+                completable.thenRun(() ->
+                {
+                    DataFrame dataFrame = new DataFrame(stream.getId(), ByteBuffer.allocate(length), true);
+                    stream.data(dataFrame, Callback.NOOP);
+                });
+                return null;
+            }
+        });
+
+        AtomicInteger pings = new AtomicInteger();
+        Session session = newClient(new Session.Listener.Adapter()
+        {
+            @Override
+            public void onPing(Session session, PingFrame frame)
+            {
+                pings.incrementAndGet();
+            }
+        });
+        MetaData.Request metaData = newRequest("GET", new HttpFields());
+        HeadersFrame requestFrame = new HeadersFrame(metaData, null, true);
+        CountDownLatch latch = new CountDownLatch(1);
+        session.newStream(requestFrame, new Promise.Adapter<>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                callback.succeeded();
+                if (frame.isEndStream())
+                    latch.countDown();
+            }
+        });
+
+        Assert.assertTrue(latch.await(15, TimeUnit.SECONDS));
+
+        AdaptiveFlowControlStrategy flowControl = (AdaptiveFlowControlStrategy)((HTTP2Session)session).getFlowControlStrategy();
+        Assert.assertTrue(flowControl.toString(), flowControl.getSessionRecvWindowTarget() > FlowControlStrategy.DEFAULT_WINDOW_SIZE);
+        Assert.assertTrue(flowControl.getSessionRecvWindowTarget() <= flowControl.getMaxSessionRecvWindow());
+        Assert.assertTrue(flowControl.getStreamRecvWindowTarget() > FlowControlStrategy.DEFAULT_WINDOW_SIZE);
+        Assert.assertTrue(flowControl.getRoundTripTime() > 0);
+        // The PING replies to the strategy's PINGs are not notified to the application.
+        Assert.assertEquals(0, pings.get());
+    }
+}
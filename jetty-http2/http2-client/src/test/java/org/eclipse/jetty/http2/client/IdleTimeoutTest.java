@@ -45,6 +45,7 @@ import org.eclipse.jetty.http2.frames.DataFrame;
 import org.eclipse.jetty.http2.frames.GoAwayFrame;
 import org.eclipse.jetty.http2.frames.HeadersFrame;
 import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
 import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.Server;
@@ -55,6 +56,7 @@ import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.FuturePromise;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.thread.HashedWheelScheduler;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
@@ -429,6 +431,51 @@ public class IdleTimeoutTest extends AbstractTest
         Assert.assertFalse(((HTTP2Session)session).isDisconnected());
     }
 
+    @Test
+    public void testServerEnforcingStreamIdleTimeoutWithStreamScheduler() throws Exception
+    {
+        final CountDownLatch timeoutLatch = new CountDownLatch(1);
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                stream.setIdleTimeout(idleTimeout);
+                return new Stream.Listener.Adapter()
+                {
+                    @Override
+                    public boolean onIdleTimeout(Stream stream, Throwable x)
+                    {
+                        timeoutLatch.countDown();
+                        return true;
+                    }
+                };
+            }
+        });
+        // The factory is already started, so the scheduler must be started explicitly.
+        HashedWheelScheduler scheduler = new HashedWheelScheduler();
+        scheduler.start();
+        connector.getConnectionFactory(AbstractHTTP2ServerConnectionFactory.class).setStreamScheduler(scheduler);
+
+        final CountDownLatch resetLatch = new CountDownLatch(1);
+        Session session = newClient(new Session.Listener.Adapter());
+        MetaData.Request metaData = newRequest("GET", new HttpFields());
+        HeadersFrame requestFrame = new HeadersFrame(metaData, null, false);
+        session.newStream(requestFrame, new Promise.Adapter<>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onReset(Stream stream, ResetFrame frame)
+            {
+                resetLatch.countDown();
+            }
+        });
+
+        Assert.assertTrue(timeoutLatch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(resetLatch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(session.getStreams().isEmpty());
+        Assert.assertEquals(0, scheduler.getTasks());
+    }
+
     @Test
     public void testServerStreamIdleTimeoutIsNotEnforcedWhenReceiving() throws Exception
     {
@@ -18,6 +18,14 @@
 
 package org.eclipse.jetty.http2.client;
 
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -27,8 +35,17 @@ import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.api.Stream;
 import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
 import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PrefaceFrame;
 import org.eclipse.jetty.http2.frames.PriorityFrame;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.http2.generator.Generator;
+import org.eclipse.jetty.http2.parser.Parser;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.FuturePromise;
 import org.eclipse.jetty.util.Promise;
@@ -181,4 +198,92 @@ public class PriorityTest extends AbstractTest
 
         Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
     }
+
+    @Test
+    public void testHighPriorityStreamOvertakesLowPriorityStream() throws Exception
+    {
+        int lowLength = 16 * 1024 * 1024;
+        int highLength = 256 * 1024;
+        CountDownLatch highLatch = new CountDownLatch(1);
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                int length = stream.getId() == 1 ? lowLength : highLength;
+                MetaData.Response metaData = new MetaData.Response(HttpVersion.HTTP_2, 200, new HttpFields());
+                stream.headers(new HeadersFrame(stream.getId(), metaData, null, false), new Callback()
+                {
+                    @Override
+                    public void succeeded()
+                    {
+                        stream.data(new DataFrame(stream.getId(), ByteBuffer.allocate(length), true), Callback.NOOP);
+                    }
+                });
+                if (stream.getId() != 1)
+                    highLatch.countDown();
+                return null;
+            }
+        });
+
+        ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+        try (SocketChannel socket = SocketChannel.open())
+        {
+            // A small receive buffer so that the server cannot write the low priority stream at once.
+            socket.setOption(StandardSocketOptions.SO_RCVBUF, 64 * 1024);
+            socket.connect(new InetSocketAddress("localhost", connector.getLocalPort()));
+
+            Generator generator = new Generator(byteBufferPool);
+            ByteBufferPool.Lease lease = new ByteBufferPool.Lease(byteBufferPool);
+            generator.control(lease, new PrefaceFrame());
+            Map<Integer, Integer> clientSettings = new HashMap<>();
+            clientSettings.put(SettingsFrame.INITIAL_WINDOW_SIZE, 2 * lowLength);
+            generator.control(lease, new SettingsFrame(clientSettings, false));
+            generator.control(lease, new WindowUpdateFrame(0, 2 * lowLength));
+            MetaData.Request request = newRequest("GET", new HttpFields());
+            generator.control(lease, new HeadersFrame(1, request, new PriorityFrame(1, 0, 1, false), true));
+            write(socket, lease);
+
+            // Wait for the server to be blocked writing the low priority stream.
+            Thread.sleep(500);
+
+            generator.control(lease, new HeadersFrame(3, request, new PriorityFrame(3, 0, 256, false), true));
+            write(socket, lease);
+            Assert.assertTrue(highLatch.await(5, TimeUnit.SECONDS));
+
+            List<Integer> completed = new ArrayList<>();
+            Parser parser = new Parser(byteBufferPool, new Parser.Listener.Adapter()
+            {
+                @Override
+                public void onData(DataFrame frame)
+                {
+                    if (frame.isEndStream())
+                        completed.add(frame.getStreamId());
+                }
+            }, 4096, 8192);
+
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (completed.size() < 2 && System.nanoTime() < end)
+            {
+                BufferUtil.clearToFill(buffer);
+                int read = socket.read(buffer);
+                BufferUtil.flipToFlush(buffer, 0);
+                if (read < 0)
+                    break;
+                parser.parse(buffer);
+            }
+
+            // The high priority stream completes first, although it was requested later.
+            Assert.assertEquals(2, completed.size());
+            Assert.assertEquals(3, (int)completed.get(0));
+        }
+    }
+
+    private void write(SocketChannel socket, ByteBufferPool.Lease lease) throws Exception
+    {
+        List<ByteBuffer> buffers = lease.getByteBuffers();
+        socket.write(buffers.toArray(new ByteBuffer[buffers.size()]));
+        lease.recycle();
+    }
 }
@@ -0,0 +1,388 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.Frame;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/**
+ * <p>A flow control strategy that sizes the receive windows from an estimate
+ * of the bandwidth-delay product (BDP) of the connection.</p>
+ * <p>While data is being received, this strategy sends a PING frame and counts
+ * the bytes received until the PING reply arrives: that count is a sample of
+ * the BDP, that is, of the bytes that the peer could send in one round trip.
+ * When a sample is close to the session receive window, the window is what
+ * limits the throughput, and the window is doubled, up to
+ * {@link #getMaxSessionRecvWindow()}. When several consecutive samples are
+ * much smaller than the window, the window is shrunk, down to the initial
+ * session receive window, to reduce the memory that the peer may force this
+ * side to buffer.</p>
+ * <p>The stream receive windows follow the session receive window, within
+ * the initial stream receive window and {@link #getMaxStreamRecvWindow()}.</p>
+ * <p>Windows are grown by sending a larger WINDOW_UPDATE delta than the bytes
+ * consumed, and shrunk by withholding WINDOW_UPDATE deltas for consumed bytes,
+ * since window updates cannot be negative.
+ * Like {@link BufferingFlowControlStrategy}, window updates are accumulated
+ * and only sent when they exceed a fraction of the window.</p>
+ */
+@ManagedObject
+public class AdaptiveFlowControlStrategy extends AbstractFlowControlStrategy
+{
+    private static final int SHRINK_SAMPLES = 3;
+
+    private final long pingPayload = ThreadLocalRandom.current().nextLong();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final AtomicLong sampleBytes = new AtomicLong();
+    private final AtomicInteger sessionCredit = new AtomicInteger();
+    private final Map<IStream, StreamCredit> streamCredits = new ConcurrentHashMap<>();
+    private final int maxSessionRecvWindow;
+    private final int maxStreamRecvWindow;
+    private final float bufferRatio;
+    private volatile long pingTime;
+    private volatile int minSessionRecvWindow = DEFAULT_WINDOW_SIZE;
+    private volatile int sessionRecvWindowTarget = DEFAULT_WINDOW_SIZE;
+    private volatile int streamRecvWindowTarget;
+    private volatile long roundTripTime;
+    private volatile long bandwidth;
+    private int smallSamples;
+
+    public AdaptiveFlowControlStrategy()
+    {
+        this(16 * 1024 * 1024, 8 * 1024 * 1024);
+    }
+
+    public AdaptiveFlowControlStrategy(int maxSessionRecvWindow, int maxStreamRecvWindow)
+    {
+        this(DEFAULT_WINDOW_SIZE, maxSessionRecvWindow, maxStreamRecvWindow, 0.5F);
+    }
+
+    /**
+     * @param initialStreamSendWindow the initial stream send window
+     * @param maxSessionRecvWindow the max size the session receive window can grow to
+     * @param maxStreamRecvWindow the max size the stream receive windows can grow to
+     * @param bufferRatio the fraction of the window that must be consumed before sending a window update
+     */
+    public AdaptiveFlowControlStrategy(int initialStreamSendWindow, int maxSessionRecvWindow, int maxStreamRecvWindow, float bufferRatio)
+    {
+        super(initialStreamSendWindow);
+        this.maxSessionRecvWindow = maxSessionRecvWindow;
+        this.maxStreamRecvWindow = maxStreamRecvWindow;
+        this.bufferRatio = bufferRatio;
+    }
+
+    @ManagedAttribute(value = "The max size of the session receive window", readonly = true)
+    public int getMaxSessionRecvWindow()
+    {
+        return maxSessionRecvWindow;
+    }
+
+    @ManagedAttribute(value = "The max size of the stream receive windows", readonly = true)
+    public int getMaxStreamRecvWindow()
+    {
+        return maxStreamRecvWindow;
+    }
+
+    @ManagedAttribute(value = "The ratio between the receive buffer and the consume buffer", readonly = true)
+    public float getBufferRatio()
+    {
+        return bufferRatio;
+    }
+
+    @ManagedAttribute(value = "The current size of the session receive window", readonly = true)
+    public int getSessionRecvWindowTarget()
+    {
+        return sessionRecvWindowTarget;
+    }
+
+    @ManagedAttribute(value = "The current size of the stream receive windows", readonly = true)
+    public int getStreamRecvWindowTarget()
+    {
+        return Math.max(getInitialStreamRecvWindow(), streamRecvWindowTarget);
+    }
+
+    @ManagedAttribute(value = "The estimated round trip time, in microseconds", readonly = true)
+    public long getRoundTripTime()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(roundTripTime);
+    }
+
+    @ManagedAttribute(value = "The estimated bandwidth, in bytes per second", readonly = true)
+    public long getBandwidth()
+    {
+        return bandwidth;
+    }
+
+    @Override
+    public void onStreamCreated(IStream stream)
+    {
+        super.onStreamCreated(stream);
+        streamCredits.put(stream, new StreamCredit(getInitialStreamRecvWindow()));
+    }
+
+    @Override
+    public void onStreamDestroyed(IStream stream)
+    {
+        streamCredits.remove(stream);
+        super.onStreamDestroyed(stream);
+    }
+
+    @Override
+    public void updateInitialStreamWindow(ISession session, int initialStreamWindow, boolean local)
+    {
+        int previousInitialStreamWindow = getInitialStreamRecvWindow();
+        super.updateInitialStreamWindow(session, initialStreamWindow, local);
+        if (local)
+        {
+            // The stream recv windows have been updated by the delta, so must be the targets.
+            int delta = initialStreamWindow - previousInitialStreamWindow;
+            for (Stream stream : session.getStreams())
+            {
+                StreamCredit credit = streamCredits.get(stream);
+                if (credit != null)
+                {
+                    synchronized (credit)
+                    {
+                        credit.target += delta;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onDataReceived(ISession session, IStream stream, int length)
+    {
+        super.onDataReceived(session, stream, length);
+
+        // The peer exceeded a window and the session will be closed.
+        if (session.updateRecvWindow(0) < 0 || (stream != null && stream.updateRecvWindow(0) < 0))
+            return;
+
+        if (probing.compareAndSet(false, true))
+        {
+            sampleBytes.set(length);
+            pingTime = System.nanoTime();
+            session.ping(new PingFrame(pingPayload, false), new Callback()
+            {
+                @Override
+                public void failed(Throwable x)
+                {
+                    probing.set(false);
+                }
+            });
+        }
+        else
+        {
+            sampleBytes.addAndGet(length);
+        }
+    }
+
+    @Override
+    public boolean onPingReply(ISession session, PingFrame frame)
+    {
+        if (frame.getPayloadAsLong() != pingPayload || !probing.get())
+            return false;
+        long rtt = System.nanoTime() - pingTime;
+        long bytes = sampleBytes.getAndSet(0);
+        probing.set(false);
+        onSample(session, bytes, rtt);
+        return true;
+    }
+
+    /**
+     * <p>Updates the window targets with a new sample of the bandwidth-delay product.</p>
+     *
+     * @param session the session
+     * @param bytes the bytes received in the round trip
+     * @param rtt the round trip time, in nanoseconds
+     */
+    protected synchronized void onSample(ISession session, long bytes, long rtt)
+    {
+        rtt = Math.max(1, rtt);
+        long previousRoundTripTime = roundTripTime;
+        roundTripTime = previousRoundTripTime == 0 ? rtt : (7 * previousRoundTripTime + rtt) / 8;
+        bandwidth = bytes * TimeUnit.SECONDS.toNanos(1) / rtt;
+
+        int target = sessionRecvWindowTarget;
+        int newTarget = target;
+        if (bytes >= target * 2L / 3)
+        {
+            // The window limits the throughput.
+            newTarget = (int)Math.min(Math.max(maxSessionRecvWindow, minSessionRecvWindow), Math.max(target, 2 * bytes));
+            smallSamples = 0;
+        }
+        else if (bytes < target / 4)
+        {
+            if (++smallSamples >= SHRINK_SAMPLES)
+            {
+                newTarget = (int)Math.max(minSessionRecvWindow, 2 * bytes);
+                smallSamples = 0;
+            }
+        }
+        else
+        {
+            smallSamples = 0;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("BDP sample {} bytes in {}us, session recv window target {} -> {} for {}",
+                    bytes, TimeUnit.NANOSECONDS.toMicros(rtt), target, newTarget, session);
+
+        if (newTarget != target)
+        {
+            sessionRecvWindowTarget = newTarget;
+            streamRecvWindowTarget = Math.min(maxStreamRecvWindow, newTarget);
+            // The difference is given back, or withheld, with the next window update.
+            sessionCredit.addAndGet(newTarget - target);
+        }
+    }
+
+    @Override
+    public void onDataConsumed(ISession session, IStream stream, int length)
+    {
+        if (length <= 0)
+            return;
+
+        WindowUpdateFrame windowFrame = null;
+        int credit = sessionCredit.addAndGet(length);
+        int maxCredit = (int)(sessionRecvWindowTarget * bufferRatio);
+        if (credit > maxCredit)
+        {
+            if (sessionCredit.compareAndSet(credit, 0))
+            {
+                session.updateRecvWindow(credit);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Data consumed, {} bytes, updated session recv window by {}/{} for {}", length, credit, maxCredit, session);
+                windowFrame = new WindowUpdateFrame(0, credit);
+            }
+        }
+        else
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Data consumed, {} bytes, session recv window credit {}/{} for {}", length, credit, maxCredit, session);
+        }
+
+        Frame[] windowFrames = Frame.EMPTY_ARRAY;
+        if (stream != null)
+        {
+            if (stream.isRemotelyClosed())
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Data consumed, {} bytes, ignoring update stream recv window for remotely closed {}", length, stream);
+            }
+            else
+            {
+                StreamCredit streamCredit = streamCredits.get(stream);
+                if (streamCredit != null)
+                {
+                    int target = getStreamRecvWindowTarget();
+                    synchronized (streamCredit)
+                    {
+                        streamCredit.credit += length + target - streamCredit.target;
+                        streamCredit.target = target;
+                        credit = streamCredit.credit;
+                        maxCredit = (int)(target * bufferRatio);
+                        if (credit > maxCredit)
+                            streamCredit.credit = 0;
+                    }
+                    if (credit > maxCredit)
+                    {
+                        stream.updateRecvWindow(credit);
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Data consumed, {} bytes, updated stream recv window by {}/{} for {}", length, credit, maxCredit, stream);
+                        WindowUpdateFrame frame = new WindowUpdateFrame(stream.getId(), credit);
+                        if (windowFrame == null)
+                            windowFrame = frame;
+                        else
+                            windowFrames = new Frame[]{frame};
+                    }
+                    else
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Data consumed, {} bytes, stream recv window credit {}/{} for {}", length, credit, maxCredit, stream);
+                    }
+                }
+            }
+        }
+
+        if (windowFrame != null)
+            session.frames(stream, Callback.NOOP, windowFrame, windowFrames);
+    }
+
+    @Override
+    public void windowUpdate(ISession session, IStream stream, WindowUpdateFrame frame)
+    {
+        super.windowUpdate(session, stream, frame);
+
+        // Window updates sent by this strategy never enlarge the session
+        // recv window beyond the target, so a larger window means that
+        // the session recv window has been enlarged independently, as
+        // it happens when the initial session recv window is configured.
+        if (frame.getStreamId() == 0)
+        {
+            int sessionWindow = session.updateRecvWindow(0);
+            synchronized (this)
+            {
+                if (sessionWindow > sessionRecvWindowTarget)
+                {
+                    minSessionRecvWindow = Math.max(minSessionRecvWindow, sessionWindow);
+                    sessionRecvWindowTarget = sessionWindow;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[sessionWindow=%d,streamWindow=%d,rtt=%dus,bandwidth=%d,sessionStallTime=%dms,streamsStallTime=%dms]",
+                getClass().getSimpleName(),
+                hashCode(),
+                getSessionRecvWindowTarget(),
+                getStreamRecvWindowTarget(),
+                getRoundTripTime(),
+                getBandwidth(),
+                getSessionStallTime(),
+                getStreamsStallTime());
+    }
+
+    private static class StreamCredit
+    {
+        private int target;
+        private int credit;
+
+        private StreamCredit(int target)
+        {
+            this.target = target;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.eclipse.jetty.http2;
 
+import org.eclipse.jetty.http2.frames.PingFrame;
 import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
 
 public interface FlowControlStrategy
@@ -42,6 +43,21 @@ public interface FlowControlStrategy
 
     public void onDataSent(IStream stream, int length);
 
+    /**
+     * <p>Callback method invoked when a PING reply is received.</p>
+     * <p>Strategies that send their own PING frames, for example to
+     * measure the round trip time, can claim the reply so that it
+     * is not notified to the application.</p>
+     *
+     * @param session the session
+     * @param frame the PING reply frame
+     * @return true if the PING reply was sent in response to a PING sent by this strategy
+     */
+    public default boolean onPingReply(ISession session, PingFrame frame)
+    {
+        return false;
+    }
+
     public interface Factory
     {
         public FlowControlStrategy newFlowControlStrategy();
@@ -22,10 +22,13 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 
 import org.eclipse.jetty.http2.frames.Frame;
+import org.eclipse.jetty.http2.frames.FrameType;
 import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EofException;
@@ -37,6 +40,9 @@ import org.eclipse.jetty.util.log.Logger;
 public class HTTP2Flusher extends IteratingCallback
 {
     private static final Logger LOG = Log.getLogger(HTTP2Flusher.class);
+    private static final int QUANTUM = 16 * 1024;
+    private static final int MIN_QUOTA = 1024;
+    private static final int MAX_QUOTA = 4 * QUANTUM;
 
     private final Queue<WindowEntry> windows = new ArrayDeque<>();
     private final Deque<Entry> frames = new ArrayDeque<>();
@@ -45,6 +51,7 @@ public class HTTP2Flusher extends IteratingCallback
     private final HTTP2Session session;
     private final ByteBufferPool.Lease lease;
     private Entry stalled;
+    private boolean deferred;
     private Throwable terminated;
 
     public HTTP2Flusher(HTTP2Session session)
@@ -149,6 +156,8 @@ public class HTTP2Flusher extends IteratingCallback
             return Action.IDLE;
         }
 
+        prioritize();
+
         while (!entries.isEmpty())
         {
             Entry entry = entries.poll();
@@ -163,12 +172,27 @@ public class HTTP2Flusher extends IteratingCallback
                 continue;
             }
 
+            int quota = entry.quota;
+            if (quota == 0)
+            {
+                // The stream waits for the streams it depends on.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Deferring {}", entry);
+                deferred = true;
+                continue;
+            }
+
             try
             {
-                if (entry.generate(lease))
+                if (entry.generate(lease, quota))
                 {
                     if (entry.dataRemaining() > 0)
-                        entries.offer(entry);
+                    {
+                        if (quota == Integer.MAX_VALUE)
+                            entries.offer(entry);
+                        else
+                            deferred = true;
+                    }
                 }
                 else
                 {
@@ -199,6 +223,57 @@ public class HTTP2Flusher extends IteratingCallback
         return Action.SCHEDULED;
     }
 
+    /**
+     * <p>Allocates the DATA frames to write in this iteration according to the
+     * {@link PriorityTree} of the session, when more than one stream has data
+     * ready to be sent.</p>
+     * <p>Each ready stream is allowed to write a quota in proportion to its share
+     * of the connection, while streams that depend on other ready streams wait.
+     * The rest of their data is written in the following iterations, so that DATA
+     * frames of different streams are interleaved according to their priority.</p>
+     */
+    private void prioritize()
+    {
+        Map<Integer, Entry> ready = null;
+        for (Entry entry : entries)
+        {
+            entry.quota = Integer.MAX_VALUE;
+            IStream stream = entry.stream;
+            if (entry.frame.getType() == FrameType.DATA && entry.dataRemaining() > 0 &&
+                    stream != null && !stream.isReset() && stream.updateSendWindow(0) > 0)
+            {
+                if (ready == null)
+                    ready = new HashMap<>();
+                ready.put(stream.getId(), entry);
+            }
+        }
+
+        if (ready == null)
+            return;
+
+        PriorityTree priorities = session.getPriorityTree();
+        if (ready.size() == 1)
+        {
+            // When the peer uses priorities, bound the data written by a single
+            // stream, so that a stream with a higher priority arriving meanwhile
+            // does not have to wait for a large write to complete.
+            if (priorities.size() > 0)
+                ready.values().iterator().next().quota = MAX_QUOTA;
+            return;
+        }
+
+        int budget = QUANTUM * ready.size();
+        Map<Integer, Double> shares = priorities.shares(ready.keySet());
+        for (Map.Entry<Integer, Double> share : shares.entrySet())
+        {
+            Entry entry = ready.get(share.getKey());
+            double value = share.getValue();
+            entry.quota = value == 0 ? 0 : Math.max(MIN_QUOTA, (int)(budget * value));
+            if (LOG.isDebugEnabled())
+                LOG.debug("Prioritized {} share={} quota={}", entry, value, entry.quota);
+        }
+    }
+
     @Override
     public void succeeded()
     {
@@ -216,13 +291,13 @@ public class HTTP2Flusher extends IteratingCallback
 
         actives.forEach(Entry::complete);
 
-        if (stalled != null)
+        if (stalled != null || deferred)
         {
             // We have written part of the frame, but there is more to write.
             // The API will not allow to send two data frames for the same
             // stream so we append the unfinished frame at the end to allow
             // better interleaving with other streams.
-            int index = actives.indexOf(stalled);
+            int index = stalled == null ? 0 : actives.indexOf(stalled);
             for (int i = index; i < actives.size(); ++i)
             {
                 Entry entry = actives.get(i);
@@ -236,6 +311,7 @@ public class HTTP2Flusher extends IteratingCallback
                     append(entry);
             }
             stalled = null;
+            deferred = false;
         }
 
         actives.clear();
@@ -296,6 +372,7 @@ public class HTTP2Flusher extends IteratingCallback
         protected final Frame frame;
         protected final IStream stream;
         private boolean reset;
+        private int quota = Integer.MAX_VALUE;
 
         protected Entry(Frame frame, IStream stream, Callback callback)
         {
@@ -311,6 +388,16 @@ public class HTTP2Flusher extends IteratingCallback
 
         protected abstract boolean generate(ByteBufferPool.Lease lease);
 
+        /**
+         * @param lease the lease to generate the frame into
+         * @param maxDataLength the max number of DATA bytes to generate
+         * @return whether the frame could be generated
+         */
+        protected boolean generate(ByteBufferPool.Lease lease, int maxDataLength)
+        {
+            return generate(lease);
+        }
+
         private void complete()
         {
             if (reset)
@@ -83,6 +83,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
     private final Session.Listener listener;
     private final FlowControlStrategy flowControl;
     private final HTTP2Flusher flusher;
+    private final PriorityTree priorities = new PriorityTree(streamId -> streams.containsKey(streamId), 1024);
     private int maxLocalStreams;
     private int maxRemoteStreams;
     private long streamIdleTimeout;
@@ -147,6 +148,14 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         return flowControl;
     }
 
+    /**
+     * @return the stream dependency tree built from the priority information received
+     */
+    public PriorityTree getPriorityTree()
+    {
+        return priorities;
+    }
+
     public int getMaxLocalStreams()
     {
         return maxLocalStreams;
@@ -276,6 +285,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {}", frame);
+        priorities.prioritize(frame);
     }
 
     @Override
@@ -392,7 +402,8 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
 
         if (frame.isReply())
         {
-            notifyPing(this, frame);
+            if (!flowControl.onPingReply(this, frame))
+                notifyPing(this, frame);
         }
         else
         {
@@ -770,6 +781,8 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
 
             flowControl.onStreamDestroyed(stream);
 
+            priorities.remove(stream.getId());
+
             if (LOG.isDebugEnabled())
                 LOG.debug("Removed {} {}", local ? "local" : "remote", stream);
         }
@@ -1260,6 +1273,12 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         }
 
         protected boolean generate(ByteBufferPool.Lease lease)
+        {
+            return generate(lease, Integer.MAX_VALUE);
+        }
+
+        @Override
+        protected boolean generate(ByteBufferPool.Lease lease, int maxDataLength)
         {
             int dataRemaining = dataRemaining();
 
@@ -1269,7 +1288,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
             if (window <= 0 && dataRemaining > 0)
                 return false;
 
-            int length = Math.min(dataRemaining, window);
+            int length = Math.min(dataRemaining, Math.min(window, maxDataLength));
 
             // Only one DATA frame is generated.
             bytes = generator.data(lease, (DataFrame)frame, length);
@@ -1290,6 +1309,9 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         {
             bytesWritten.addAndGet(bytes);
             flowControl.onDataSent(stream, dataWritten);
+            // Entries that were not generated in this iteration must not count again.
+            bytes = 0;
+            dataWritten = 0;
 
             // Do we have more to send ?
             DataFrame dataFrame = (DataFrame)frame;
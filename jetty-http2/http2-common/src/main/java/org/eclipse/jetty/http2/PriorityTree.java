@@ -0,0 +1,329 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import org.eclipse.jetty.http2.frames.PriorityFrame;
+
+/**
+ * <p>The stream dependency tree of a session, as specified by
+ * <a href="https://tools.ietf.org/html/rfc7540#section-5.3">RFC 7540, section 5.3</a>.</p>
+ * <p>The tree is built from the priority information of HEADERS and PRIORITY frames,
+ * and is used by {@link HTTP2Flusher} to share the connection among the streams
+ * that have data to send: a stream is served before the streams that depend on it,
+ * and sibling streams share the resources of their parent in proportion to their weights.</p>
+ * <p>Streams without priority information depend on the root with the default weight.
+ * Closed streams must be {@link #remove(int) removed}. Priority information for streams
+ * that are not open is retained, as clients may build the tree from idle streams used as
+ * placeholders for groups of streams (section 5.3.4). The number of nodes is bounded, and
+ * the least recently used nodes of streams that are not open are evicted to make room for
+ * new nodes.</p>
+ */
+public class PriorityTree
+{
+    public static final int DEFAULT_WEIGHT = 16;
+
+    // In access order, so that the least recently used idle nodes are evicted first.
+    private final Map<Integer, Node> nodes = new LinkedHashMap<>(16, 0.75F, true);
+    private final Node root = new Node(0);
+    private final IntPredicate streams;
+    private final int maxNodes;
+
+    public PriorityTree()
+    {
+        this(1024);
+    }
+
+    /**
+     * @param maxNodes the max number of streams tracked by the tree; priority information
+     * for open streams beyond this limit is ignored, so that they depend on the root.
+     */
+    public PriorityTree(int maxNodes)
+    {
+        this(streamId -> true, maxNodes);
+    }
+
+    /**
+     * @param streams tests whether a stream is open
+     * @param maxNodes the max number of streams tracked by the tree; beyond this limit,
+     * the least recently used streams that are not open are evicted, or priority information
+     * is ignored if all the tracked streams are open, so that they depend on the root.
+     */
+    public PriorityTree(IntPredicate streams, int maxNodes)
+    {
+        this.streams = streams;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * <p>Applies the given priority information, creating the stream nodes as necessary.</p>
+     *
+     * @param frame the priority information
+     */
+    public void prioritize(PriorityFrame frame)
+    {
+        prioritize(frame.getStreamId(), frame.getParentStreamId(), frame.getWeight(), frame.isExclusive());
+    }
+
+    /**
+     * @param streamId the stream to prioritize
+     * @param parentStreamId the stream the given stream depends on, or 0 for the root
+     * @param weight the weight of the stream, from 1 to 256
+     * @param exclusive whether the stream becomes the sole dependency of its parent
+     */
+    public synchronized void prioritize(int streamId, int parentStreamId, int weight, boolean exclusive)
+    {
+        // A stream cannot depend on itself; this is a stream error reported elsewhere.
+        if (streamId <= 0 || streamId == parentStreamId)
+            return;
+
+        Node node = node(streamId, null);
+        if (node == null)
+            return;
+        // A parent that cannot be tracked is replaced by the root with the default priority (section 5.3.1).
+        Node parent = parentStreamId == 0 ? root : node(parentStreamId, node);
+        if (parent == null)
+        {
+            parent = root;
+            weight = DEFAULT_WEIGHT;
+            exclusive = false;
+        }
+
+        // If the new parent depends on the stream, it is first moved
+        // to depend on the former parent of the stream (section 5.3.3).
+        if (parent.dependsOn(node))
+            parent.moveTo(node.parent);
+
+        node.weight = Math.max(1, Math.min(256, weight));
+        node.detach();
+        if (exclusive)
+        {
+            for (Node child : parent.children)
+            {
+                child.parent = node;
+                node.children.add(child);
+            }
+            parent.children.clear();
+        }
+        node.attach(parent);
+    }
+
+    /**
+     * <p>Removes the given stream from the tree.</p>
+     * <p>The streams that depend on it then depend on its parent, sharing its weight
+     * in proportion to their weights (section 5.3.4).</p>
+     *
+     * @param streamId the stream to remove
+     */
+    public synchronized void remove(int streamId)
+    {
+        Node node = nodes.remove(streamId);
+        if (node != null)
+            remove(node);
+    }
+
+    private void remove(Node node)
+    {
+        Node parent = node.parent;
+        node.detach();
+        int total = 0;
+        for (Node child : node.children)
+            total += child.weight;
+        for (Node child : node.children)
+        {
+            child.weight = Math.max(1, child.weight * node.weight / total);
+            child.parent = null;
+            child.attach(parent);
+        }
+        node.children.clear();
+    }
+
+    /**
+     * @return the number of streams in the tree
+     */
+    public synchronized int size()
+    {
+        return nodes.size();
+    }
+
+    /**
+     * @param streamId the stream
+     * @return the id of the stream the given stream depends on, or 0 if it depends on the root
+     */
+    public synchronized int getParent(int streamId)
+    {
+        Node node = nodes.get(streamId);
+        return node == null ? 0 : node.parent.streamId;
+    }
+
+    /**
+     * @param streamId the stream
+     * @return the weight of the stream
+     */
+    public synchronized int getWeight(int streamId)
+    {
+        Node node = nodes.get(streamId);
+        return node == null ? DEFAULT_WEIGHT : node.weight;
+    }
+
+    /**
+     * <p>Computes the share of the connection that each of the given streams
+     * should be allocated, given that all of them are ready to send data.</p>
+     * <p>A stream that depends, directly or indirectly, on another of the given
+     * streams has a share of 0, as it must wait for its ancestor. The shares of the
+     * other streams are the product of their relative weights among the siblings
+     * that lead to ready streams, so they add up to 1.</p>
+     *
+     * @param streamIds the streams that are ready to send data
+     * @return the share of each stream, between 0 and 1
+     */
+    public synchronized Map<Integer, Double> shares(Collection<Integer> streamIds)
+    {
+        Set<Node> ready = new HashSet<>();
+        for (Integer streamId : streamIds)
+            ready.add(nodes.getOrDefault(streamId, new Node(streamId)));
+
+        // Sum, for each parent, the weights of the children
+        // that are ready or have ready descendants.
+        Map<Node, Integer> weights = new HashMap<>();
+        Set<Node> active = new HashSet<>();
+        for (Node node : ready)
+        {
+            for (Node n = node; n != root && active.add(n); n = n.parent())
+                weights.merge(n.parent(), n.weight, Integer::sum);
+        }
+
+        Map<Integer, Double> result = new HashMap<>();
+        for (Node node : ready)
+        {
+            double share = 1.0;
+            for (Node n = node; n != root; n = n.parent())
+            {
+                if (n != node && ready.contains(n))
+                {
+                    share = 0.0;
+                    break;
+                }
+                share *= (double)n.weight / weights.get(n.parent());
+            }
+            result.put(node.streamId, share);
+        }
+        return result;
+    }
+
+    private Node node(int streamId, Node keep)
+    {
+        Node node = nodes.get(streamId);
+        if (node == null)
+        {
+            if (nodes.size() >= maxNodes && !evict(keep))
+                return null;
+            node = new Node(streamId);
+            nodes.put(streamId, node);
+            node.attach(root);
+        }
+        return node;
+    }
+
+    private boolean evict(Node keep)
+    {
+        // Evict the least recently used node of a stream that is not open.
+        for (Iterator<Node> i = nodes.values().iterator(); i.hasNext();)
+        {
+            Node node = i.next();
+            if (node != keep && !streams.test(node.streamId))
+            {
+                i.remove();
+                remove(node);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("%s@%x{streams=%d}", getClass().getSimpleName(), hashCode(), nodes.size());
+    }
+
+    private class Node
+    {
+        private final int streamId;
+        private final List<Node> children = new ArrayList<>();
+        private Node parent;
+        private int weight = DEFAULT_WEIGHT;
+
+        private Node(int streamId)
+        {
+            this.streamId = streamId;
+        }
+
+        private Node parent()
+        {
+            // Nodes not in the tree depend on the root.
+            return parent == null ? root : parent;
+        }
+
+        private boolean dependsOn(Node ancestor)
+        {
+            for (Node n = parent; n != null; n = n.parent)
+            {
+                if (n == ancestor)
+                    return true;
+            }
+            return false;
+        }
+
+        private void moveTo(Node newParent)
+        {
+            detach();
+            attach(newParent);
+        }
+
+        private void attach(Node newParent)
+        {
+            parent = newParent;
+            newParent.children.add(this);
+        }
+
+        private void detach()
+        {
+            if (parent != null)
+                parent.children.remove(this);
+            parent = null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("#%d/%d", streamId, weight);
+        }
+    }
+}
@@ -18,6 +18,8 @@
 
 package org.eclipse.jetty.http2.generator;
 
+import java.util.Set;
+
 import org.eclipse.jetty.http2.frames.DataFrame;
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.FrameType;
@@ -70,6 +72,11 @@ public class Generator
         hpackEncoder.setRemoteMaxDynamicTableSize(headerTableSize);
     }
 
+    public void setCacheableFields(Set<String> cacheableFields)
+    {
+        hpackEncoder.setCacheableFields(cacheableFields);
+    }
+
     public void setMaxFrameSize(int maxFrameSize)
     {
         headerGenerator.setMaxFrameSize(maxFrameSize);
@@ -0,0 +1,197 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PriorityTreeTest
+{
+    @Test
+    public void testDefaultPriority() throws Exception
+    {
+        PriorityTree tree = new PriorityTree();
+
+        Map<Integer, Double> shares = tree.shares(Arrays.asList(1, 3));
+        Assert.assertEquals(0.5, shares.get(1), 0.001);
+        Assert.assertEquals(0.5, shares.get(3), 0.001);
+        Assert.assertEquals(0, tree.size());
+    }
+
+    @Test
+    public void testWeights() throws Exception
+    {
+        PriorityTree tree = new PriorityTree();
+        tree.prioritize(1, 0, 256, false);
+        tree.prioritize(3, 0, 64, false);
+
+        Map<Integer, Double> shares = tree.shares(Arrays.asList(1, 3));
+        Assert.assertEquals(0.8, shares.get(1), 0.001);
+        Assert.assertEquals(0.2, shares.get(3), 0.001);
+    }
+
+    @Test
+    public void testDependentWaitsForParent() throws Exception
+    {
+        PriorityTree tree = new PriorityTree();
+        tree.prioritize(3, 1, 16, false);
+        tree.prioritize(5, 3, 16, false);
+
+        Map<Integer, Double> shares = tree.shares(Arrays.asList(1, 5));
+        Assert.assertEquals(1.0, shares.get(1), 0.001);
+        Assert.assertEquals(0.0, shares.get(5), 0.001);
+
+        // When the parent has nothing to send, the dependent gets its resources.
+        shares = tree.shares(Arrays.asList(5, 7));
+        Assert.assertEquals(0.5, shares.get(5), 0.001);
+        Assert.assertEquals(0.5, shares.get(7), 0.001);
+    }
+
+    @Test
+    public void testExclusive() throws Exception
+    {
+        PriorityTree tree = new PriorityTree();
+        tree.prioritize(3, 1, 16, false);
+        tree.prioritize(5, 1, 16, false);
+        tree.prioritize(7, 1, 32, true);
+
+        Assert.assertEquals(1, tree.getParent(7));
+        Assert.assertEquals(7, tree.getParent(3));
+        Assert.assertEquals(7, tree.getParent(5));
+    }
+
+    @Test
+    public void testDependencyOnDependent() throws Exception
+    {
+        // Example from RFC 7540, section 5.3.3.
+        PriorityTree tree = new PriorityTree();
+        tree.prioritize(1, 0, 16, false);
+        tree.prioritize(2, 1, 16, false);
+        tree.prioritize(3, 1, 16, false);
+        tree.prioritize(4, 3, 16, false);
+        tree.prioritize(5, 3, 16, false);
+        tree.prioritize(6, 4, 16, false);
+
+        // Stream 1 becomes dependent on stream 4, non-exclusively.
+        tree.prioritize(1, 4, 16, false);
+
+        Assert.assertEquals(0, tree.getParent(4));
+        Assert.assertEquals(4, tree.getParent(1));
+        Assert.assertEquals(4, tree.getParent(6));
+        Assert.assertEquals(1, tree.getParent(2));
+        Assert.assertEquals(1, tree.getParent(3));
+        Assert.assertEquals(3, tree.getParent(5));
+    }
+
+    @Test
+    public void testRemoveRedistributesWeight() throws Exception
+    {
+        PriorityTree tree = new PriorityTree();
+        tree.prioritize(1, 0, 32, false);
+        tree.prioritize(3, 1, 16, false);
+        tree.prioritize(5, 1, 48, false);
+
+        tree.remove(1);
+
+        Assert.assertEquals(2, tree.size());
+        Assert.assertEquals(0, tree.getParent(3));
+        Assert.assertEquals(0, tree.getParent(5));
+        Assert.assertEquals(8, tree.getWeight(3));
+        Assert.assertEquals(24, tree.getWeight(5));
+    }
+
+    @Test
+    public void testMaxNodes() throws Exception
+    {
+        PriorityTree tree = new PriorityTree(2);
+        tree.prioritize(1, 0, 32, false);
+        tree.prioritize(3, 0, 32, false);
+        tree.prioritize(5, 1, 32, false);
+
+        Assert.assertEquals(2, tree.size());
+        Assert.assertEquals(0, tree.getParent(5));
+    }
+
+    @Test
+    public void testIdleParentTree() throws Exception
+    {
+        // Like Firefox, the client groups its streams under idle placeholder streams.
+        Set<Integer> open = new HashSet<>();
+        PriorityTree tree = new PriorityTree(open::contains, 1024);
+        tree.prioritize(3, 0, 201, false);
+        tree.prioritize(5, 0, 101, false);
+        tree.prioritize(7, 0, 1, false);
+        tree.prioritize(9, 7, 1, false);
+        tree.prioritize(11, 3, 1, false);
+        Assert.assertEquals(5, tree.size());
+
+        // Requests depend on the placeholders, that are never opened.
+        open.addAll(Arrays.asList(13, 15, 17));
+        tree.prioritize(13, 3, 22, false);
+        tree.prioritize(15, 5, 22, false);
+        tree.prioritize(17, 9, 22, false);
+        Assert.assertEquals(3, tree.getParent(13));
+        Assert.assertEquals(5, tree.getParent(15));
+        Assert.assertEquals(9, tree.getParent(17));
+
+        // The streams share the connection as their placeholders do.
+        Map<Integer, Double> shares = tree.shares(Arrays.asList(13, 15, 17));
+        Assert.assertEquals(201.0 / 303, shares.get(13), 0.001);
+        Assert.assertEquals(101.0 / 303, shares.get(15), 0.001);
+        Assert.assertEquals(1.0 / 303, shares.get(17), 0.001);
+
+        // Closed streams are removed, while the placeholders are kept.
+        open.remove(13);
+        tree.remove(13);
+        Assert.assertEquals(7, tree.size());
+        Assert.assertEquals(0, tree.getParent(3));
+        Assert.assertEquals(201, tree.getWeight(3));
+    }
+
+    @Test
+    public void testIdleNodesEvicted() throws Exception
+    {
+        Set<Integer> open = new HashSet<>(Arrays.asList(1, 3));
+        PriorityTree tree = new PriorityTree(open::contains, 4);
+        tree.prioritize(1, 0, 32, false);
+        tree.prioritize(5, 0, 64, false);
+        tree.prioritize(7, 0, 128, false);
+        tree.prioritize(1, 5, 32, false);
+        Assert.assertEquals(3, tree.size());
+
+        // The least recently used idle node is evicted to make room.
+        tree.prioritize(3, 0, 32, false);
+        tree.prioritize(9, 0, 16, false);
+        Assert.assertEquals(4, tree.size());
+        Assert.assertEquals(5, tree.getParent(1));
+        Assert.assertEquals(PriorityTree.DEFAULT_WEIGHT, tree.getWeight(7));
+
+        // Open streams are not evicted: beyond the limit, they depend on the root.
+        open.addAll(Arrays.asList(5, 9, 11));
+        tree.prioritize(11, 3, 32, false);
+        Assert.assertEquals(4, tree.size());
+        Assert.assertEquals(0, tree.getParent(11));
+        Assert.assertEquals(5, tree.getParent(1));
+    }
+}
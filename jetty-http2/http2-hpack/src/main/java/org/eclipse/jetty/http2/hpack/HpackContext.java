@@ -29,7 +29,6 @@ import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpScheme;
 import org.eclipse.jetty.util.ArrayTernaryTrie;
-import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.Trie;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -189,8 +188,8 @@ public class HpackContext
     private int _maxDynamicTableSizeInBytes;
     private int _dynamicTableSizeInBytes;
     private final DynamicTable _dynamicTable;
-    private final Map<HttpField,Entry> _fieldMap = new HashMap<>();
-    private final Map<String,Entry> _nameMap = new HashMap<>();
+    private final EntryIndex _fieldIndex = new EntryIndex(false);
+    private final EntryIndex _nameIndex = new EntryIndex(true);
 
     HpackContext(int maxDynamicTableSize)
     {
@@ -211,7 +210,7 @@ public class HpackContext
 
     public Entry get(HttpField field)
     {
-        Entry entry = _fieldMap.get(field);
+        Entry entry = _fieldIndex.get(field);
         if (entry==null)
             entry=__staticFieldMap.get(field);
         return entry;
@@ -222,7 +221,7 @@ public class HpackContext
         Entry entry = __staticNameMap.get(name);
         if (entry!=null)
             return entry;
-        return _nameMap.get(StringUtil.asciiToLowerCase(name));
+        return _nameIndex.get(name);
     }
 
     public Entry get(int index)
@@ -258,8 +257,8 @@ public class HpackContext
         }
         _dynamicTableSizeInBytes+=size;
         _dynamicTable.add(entry);
-        _fieldMap.put(field,entry);
-        _nameMap.put(StringUtil.asciiToLowerCase(field.getName()),entry);
+        _fieldIndex.put(entry);
+        _nameIndex.put(entry);
 
         if (LOG.isDebugEnabled())
             LOG.debug(String.format("HdrTbl[%x] added %s",hashCode(),entry));
@@ -381,11 +380,8 @@ public class HpackContext
                     LOG.debug(String.format("HdrTbl[%x] evict %s",HpackContext.this.hashCode(),entry));
                 _dynamicTableSizeInBytes-=entry.getSize();
                 entry._slot=-1;
-                _fieldMap.remove(entry.getHttpField());
-                String lc=StringUtil.asciiToLowerCase(entry.getHttpField().getName());
-                if (entry==_nameMap.get(lc))
-                    _nameMap.remove(lc);
-
+                _fieldIndex.remove(entry);
+                _nameIndex.remove(entry);
             }
             if (LOG.isDebugEnabled())
                 LOG.debug(String.format("HdrTbl[%x] entries=%d, size=%d, max=%d",HpackContext.this.hashCode(),_dynamicTable.size(),_dynamicTableSizeInBytes,_maxDynamicTableSizeInBytes));
@@ -393,6 +389,151 @@ public class HpackContext
 
     }
 
+    /**
+     * <p>An open addressing index of the dynamic table entries, either by field
+     * or by case insensitive name, that maps a key to the most recently added
+     * entry with that key.</p>
+     * <p>Lookups, additions and removals do not allocate (other than to grow
+     * the index) and names are hashed and compared ignoring case in place,
+     * without being converted to lower case.</p>
+     */
+    private static class EntryIndex
+    {
+        private final boolean _byName;
+        private Entry[] _slots = new Entry[16];
+        private int _size;
+
+        private EntryIndex(boolean byName)
+        {
+            _byName=byName;
+        }
+
+        private static int nameHash(String name)
+        {
+            int h=0;
+            for (int i=0;i<name.length();i++)
+            {
+                char c=name.charAt(i);
+                if (c>='A' && c<='Z')
+                    c+='a'-'A';
+                h=31*h+c;
+            }
+            return h;
+        }
+
+        private static int spread(int h)
+        {
+            return h^(h>>>16);
+        }
+
+        private int hash(Entry entry)
+        {
+            HttpField field=entry.getHttpField();
+            return spread(_byName?nameHash(field.getName()):field.hashCode());
+        }
+
+        public Entry get(HttpField field)
+        {
+            Entry[] slots=_slots;
+            int mask=slots.length-1;
+            for (int i=spread(field.hashCode())&mask;;i=(i+1)&mask)
+            {
+                Entry entry=slots[i];
+                if (entry==null || entry.getHttpField().equals(field))
+                    return entry;
+            }
+        }
+
+        public Entry get(String name)
+        {
+            Entry[] slots=_slots;
+            int mask=slots.length-1;
+            for (int i=spread(nameHash(name))&mask;;i=(i+1)&mask)
+            {
+                Entry entry=slots[i];
+                if (entry==null || entry.getHttpField().getName().equalsIgnoreCase(name))
+                    return entry;
+            }
+        }
+
+        private boolean matches(Entry entry, Entry other)
+        {
+            HttpField field=other.getHttpField();
+            return _byName?entry.getHttpField().getName().equalsIgnoreCase(field.getName()):entry.getHttpField().equals(field);
+        }
+
+        public void put(Entry entry)
+        {
+            if (2*(_size+1)>_slots.length)
+                grow();
+            int mask=_slots.length-1;
+            for (int i=hash(entry)&mask;;i=(i+1)&mask)
+            {
+                Entry slot=_slots[i];
+                if (slot==null)
+                {
+                    _slots[i]=entry;
+                    _size++;
+                    return;
+                }
+                if (matches(slot,entry))
+                {
+                    // The most recent entry replaces the older one.
+                    _slots[i]=entry;
+                    return;
+                }
+            }
+        }
+
+        public void remove(Entry entry)
+        {
+            int mask=_slots.length-1;
+            int i=hash(entry)&mask;
+            while (true)
+            {
+                Entry slot=_slots[i];
+                if (slot==null)
+                    return; // Not indexed, as replaced by a more recent entry.
+                if (slot==entry)
+                    break;
+                i=(i+1)&mask;
+            }
+
+            // Shift back the following entries of the cluster, so no tombstones are needed.
+            int j=i;
+            while (true)
+            {
+                j=(j+1)&mask;
+                Entry slot=_slots[j];
+                if (slot==null)
+                    break;
+                int k=hash(slot)&mask;
+                if (i<=j?(i<k && k<=j):(i<k || k<=j))
+                    continue;
+                _slots[i]=slot;
+                i=j;
+            }
+            _slots[i]=null;
+            _size--;
+        }
+
+        private void grow()
+        {
+            Entry[] slots=_slots;
+            _slots=new Entry[slots.length*2];
+            int mask=_slots.length-1;
+            for (Entry entry : slots)
+            {
+                if (entry==null)
+                    continue;
+                int i=hash(entry)&mask;
+                while (_slots[i]!=null)
+                    i=(i+1)&mask;
+                _slots[i]=entry;
+            }
+        }
+    }
+
     public static class Entry
     {
         final HttpField _field;
@@ -20,7 +20,12 @@
 package org.eclipse.jetty.http2.hpack;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
@@ -31,6 +36,7 @@ import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http2.hpack.HpackContext.Entry;
 import org.eclipse.jetty.http2.hpack.HpackContext.StaticEntry;
+import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.TypeUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -77,6 +83,32 @@ public class HpackEncoder
                     HttpHeader.SET_COOKIE,
                     HttpHeader.SET_COOKIE2);
 
+    // The values of these fields are shared by many connections and are not sensitive,
+    // so they can be kept in an encoding cache shared by all connections.
+    public final static Set<String> DEFAULT_CACHEABLE_FIELDS =
+            Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+                    HttpHeader.ACCEPT.asString(),
+                    HttpHeader.ACCEPT_CHARSET.asString(),
+                    HttpHeader.ACCEPT_ENCODING.asString(),
+                    HttpHeader.ACCEPT_LANGUAGE.asString(),
+                    HttpHeader.ACCEPT_RANGES.asString(),
+                    HttpHeader.ALLOW.asString(),
+                    HttpHeader.CACHE_CONTROL.asString(),
+                    HttpHeader.CONTENT_ENCODING.asString(),
+                    HttpHeader.CONTENT_LANGUAGE.asString(),
+                    HttpHeader.CONTENT_TYPE.asString(),
+                    HttpHeader.SERVER.asString(),
+                    HttpHeader.STRICT_TRANSPORT_SECURITY.asString(),
+                    HttpHeader.USER_AGENT.asString(),
+                    HttpHeader.VARY.asString(),
+                    HttpHeader.VIA.asString(),
+                    HttpHeader.X_POWERED_BY.asString(),
+                    HttpHeader.C_METHOD.asString(),
+                    HttpHeader.C_SCHEME.asString(),
+                    "Content-Security-Policy",
+                    "X-Content-Type-Options",
+                    "X-Frame-Options")));
+
     static
     {
         for (HttpStatus.Code code : HttpStatus.Code.values())
@@ -85,6 +117,10 @@ public class HpackEncoder
 
     private final HpackContext _context;
     private final boolean _debug;
+    private HpackEncodingCache _encodingCache = HpackEncodingCache.getSharedCache();
+    private Set<String> _cacheableFields;
+    private EnumSet<HttpHeader> _cacheableHeaders;
+    private Set<String> _cacheableNames;
     private int _remoteMaxDynamicTableSize;
     private int _localMaxDynamicTableSize;
     private int _maxHeaderListSize;
@@ -112,6 +148,7 @@ public class HpackEncoder
         _localMaxDynamicTableSize=localMaxDynamicTableSize;
         _maxHeaderListSize=maxHeaderListSize;
         _debug=LOG.isDebugEnabled();
+        setCacheableFields(DEFAULT_CACHEABLE_FIELDS);
     }
 
     public int getMaxHeaderListSize()
@@ -129,6 +166,49 @@ public class HpackEncoder
         return _context;
     }
 
+    public HpackEncodingCache getEncodingCache()
+    {
+        return _encodingCache;
+    }
+
+    /**
+     * @param encodingCache the cache of encoded values, possibly shared with other encoders, or null to disable caching
+     */
+    public void setEncodingCache(HpackEncodingCache encodingCache)
+    {
+        _encodingCache = encodingCache;
+    }
+
+    public Set<String> getCacheableFields()
+    {
+        return _cacheableFields;
+    }
+
+    /**
+     * <p>Sets the names of the fields whose encoded values may be kept in the encoding cache,
+     * and so shared with other connections.</p>
+     * <p>Only fields with common values that are not sensitive should be cached, such as those
+     * of {@link #DEFAULT_CACHEABLE_FIELDS} or of security headers set on every response.</p>
+     *
+     * @param fields the case insensitive names of the cacheable fields
+     */
+    public void setCacheableFields(Set<String> fields)
+    {
+        EnumSet<HttpHeader> headers=EnumSet.noneOf(HttpHeader.class);
+        Set<String> names=new HashSet<>();
+        for (String field : fields)
+        {
+            HttpHeader header=HttpHeader.CACHE.get(field);
+            if (header==null)
+                names.add(StringUtil.asciiToLowerCase(field));
+            else
+                headers.add(header);
+        }
+        _cacheableFields=Collections.unmodifiableSet(new LinkedHashSet<>(fields));
+        _cacheableHeaders=headers;
+        _cacheableNames=names;
+    }
+
     public void setRemoteMaxDynamicTableSize(int remoteMaxDynamicTableSize)
     {
         _remoteMaxDynamicTableSize=remoteMaxDynamicTableSize;
@@ -262,7 +342,7 @@ public class HpackEncoder
                     // unless the name is changing, this is worthwhile
                     indexed=true;
                     encodeName(buffer,(byte)0x40,6,field.getName(),null);
-                    encodeValue(buffer,true,field.getValue());
+                    encodeCachedValue(buffer,true,field,field.getValue());
                     if (_debug)
                         encoding="LitHuffNHuffVIdx";
                 }
@@ -272,7 +352,7 @@ public class HpackEncoder
                     // This is probably a custom field with changing value, so don't index.
                     indexed=false;
                     encodeName(buffer,(byte)0x00,4,field.getName(),null);
-                    encodeValue(buffer,true,field.getValue());
+                    encodeCachedValue(buffer,true,field,field.getValue());
                     if (_debug)
                         encoding="LitHuffNHuffV!Idx";
                 }
@@ -322,7 +402,7 @@ public class HpackEncoder
                     indexed=true;
                     boolean huffman=!__DO_NOT_HUFFMAN.contains(header);
                     encodeName(buffer,(byte)0x40,6,header.asString(),name);
-                    encodeValue(buffer,huffman,field.getValue());
+                    encodeCachedValue(buffer,huffman,field,field.getValue());
                     if (_debug)
                         encoding=((name==null)?"LitHuffN":("LitIdxN"+(name.isStatic()?"S":"")+(1+NBitInteger.octectsNeeded(6,_context.index(name)))))+
                                 (huffman?"HuffVIdx":"LitVIdx");
@@ -361,6 +441,25 @@ public class HpackEncoder
         }
     }
 
+    private void encodeCachedValue(ByteBuffer buffer, boolean huffman, HttpField field, String value)
+    {
+        // Only values of allow-listed fields are cached, so that values
+        // that are unique or sensitive are never shared between connections.
+        HpackEncodingCache cache=_encodingCache;
+        if (huffman && cache!=null && isCacheable(field))
+            cache.putHuffmanValue(buffer,value);
+        else
+            encodeValue(buffer,huffman,value);
+    }
+
+    private boolean isCacheable(HttpField field)
+    {
+        HttpHeader header=field.getHeader();
+        if (header!=null)
+            return _cacheableHeaders.contains(header);
+        return !_cacheableNames.isEmpty() && _cacheableNames.contains(StringUtil.asciiToLowerCase(field.getName()));
+    }
+
     static void encodeValue(ByteBuffer buffer, boolean huffman, String value)
     {
         if (huffman)
@@ -0,0 +1,185 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.MimeTypes;
+
+/* ------------------------------------------------------------ */
+/**
+ * <p>A bounded cache of Huffman encoded header values, that can be shared
+ * by the {@link HpackEncoder}s of all connections.</p>
+ * <p>The encoded representation of a literal value (the H bit, the length
+ * and the Huffman coded octets) does not depend on the dynamic table of a
+ * connection, so once a value has been encoded by one connection, the other
+ * connections just copy the encoded bytes.
+ * The name part of a literal field is not cached, as it may be an index
+ * into the dynamic table of the connection.</p>
+ * <p>{@link HpackEncoder} only caches the values of a fixed set of header names
+ * whose values are shared by many connections and are not sensitive, such as
+ * Content-Type or Cache-Control, and never the values of headers such as Cookie,
+ * Authorization, :path or unknown headers.</p>
+ * <p>The {@link HttpHeaderValue} and {@link MimeTypes.Type} constants are
+ * encoded once when this class is loaded and are always available.
+ * Other values are cached up to {@link #getMaxEntries()}, after which
+ * an arbitrary value is evicted for each new value.</p>
+ */
+public class HpackEncodingCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 256;
+
+    private static final Map<String, byte[]> __preEncoded;
+    private static final HpackEncodingCache __shared = new HpackEncodingCache();
+
+    static
+    {
+        Map<String, byte[]> preEncoded = new HashMap<>();
+        for (HttpHeaderValue value : HttpHeaderValue.values())
+            preEncoded.put(value.asString(), encode(value.asString()));
+        for (MimeTypes.Type type : MimeTypes.Type.values())
+            preEncoded.put(type.asString(), encode(type.asString()));
+        __preEncoded = Collections.unmodifiableMap(preEncoded);
+    }
+
+    /**
+     * @return the cache shared by default by all {@link HpackEncoder}s
+     */
+    public static HpackEncodingCache getSharedCache()
+    {
+        return __shared;
+    }
+
+    private final Map<String, byte[]> _cache = new ConcurrentHashMap<>();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final int _maxEntries;
+    private final int _maxValueLength;
+
+    public HpackEncodingCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_VALUE_LENGTH);
+    }
+
+    /**
+     * @param maxEntries the max number of values cached, in addition to the pre-encoded constants
+     * @param maxValueLength the max length of the values that can be cached
+     */
+    public HpackEncodingCache(int maxEntries, int maxValueLength)
+    {
+        _maxEntries = maxEntries;
+        _maxValueLength = maxValueLength;
+    }
+
+    public int getMaxEntries()
+    {
+        return _maxEntries;
+    }
+
+    public int getMaxValueLength()
+    {
+        return _maxValueLength;
+    }
+
+    /**
+     * @return the number of values cached, excluding the pre-encoded constants
+     */
+    public int size()
+    {
+        return _cache.size();
+    }
+
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    public void clear()
+    {
+        _cache.clear();
+    }
+
+    /**
+     * <p>Puts the Huffman encoded literal representation of the given value into the buffer,
+     * copying it from the cache if available, or encoding and caching it otherwise.</p>
+     *
+     * @param buffer the buffer to put the encoded value into
+     * @param value the value to encode
+     */
+    public void putHuffmanValue(ByteBuffer buffer, String value)
+    {
+        byte[] encoded = __preEncoded.get(value);
+        if (encoded == null)
+            encoded = _cache.get(value);
+
+        if (encoded != null)
+        {
+            _hits.increment();
+            buffer.put(encoded);
+            return;
+        }
+
+        _misses.increment();
+        if (value.length() > _maxValueLength || _maxEntries <= 0)
+        {
+            HpackEncoder.encodeValue(buffer, true, value);
+            return;
+        }
+
+        encoded = encode(value);
+        if (_cache.size() >= _maxEntries)
+        {
+            Iterator<String> iterator = _cache.keySet().iterator();
+            if (iterator.hasNext())
+            {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        _cache.put(value, encoded);
+        buffer.put(encoded);
+    }
+
+    private static byte[] encode(String value)
+    {
+        int length = Huffman.octetsNeeded(value);
+        byte[] encoded = new byte[1 + NBitInteger.octectsNeeded(7, length) + length];
+        HpackEncoder.encodeValue(ByteBuffer.wrap(encoded), true, value);
+        return encoded;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d/%d,hits=%d,misses=%d}", getClass().getSimpleName(), hashCode(), size(), _maxEntries, getHits(), getMisses());
+    }
+}
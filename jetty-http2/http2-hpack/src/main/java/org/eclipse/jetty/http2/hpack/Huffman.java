@@ -287,145 +287,153 @@ public class Huffman
     };
 
     static final int[][] LCCODES = new int[CODES.length][];
-    
-    // Huffman decode tree stored in a flattened char array for good 
-    // locality of reference.
-    static final char[] tree;
-    static final char[] rowsym;
-    static final byte[] rowbits;
-
-    // Build the Huffman lookup tree and LC TABLE
-    static 
+
+    // The codes and their lengths, in flat arrays for the encoder.
+    private static final int[] CODE = new int[CODES.length];
+    private static final byte[] LENGTH = new byte[CODES.length];
+    private static final int[] LCCODE = new int[CODES.length];
+    private static final byte[] LCLENGTH = new byte[CODES.length];
+
+    private static final int EOS = 256;
+
+    // Huffman decode state machine, stored in a flattened int array for good
+    // locality of reference. The states are the internal nodes of the code
+    // tree, and each state has a transition for each of the 16 nibble values.
+    // Since the shortest code is 5 bits, a nibble completes at most one symbol.
+    // Each transition is encoded as (next state << 16) | flags | symbol.
+    private static final int[] DECODE;
+    private static final int SYMBOL = 0x1FF;
+    private static final int EMIT = 0x200;
+    private static final int FAIL = 0x400;
+
+    // Build the Huffman decode state machine and LC TABLE
+    static
     {
         System.arraycopy(CODES,0,LCCODES,0,CODES.length);
         for (int i='A';i<='Z';i++)
             LCCODES[i]=LCCODES['a'+i-'A'];
-        
-        int r=0;
-        for (int i=0;i<CODES.length;i++)
-            r+=(CODES[i][1]+7)/8;
-        tree=new char[r*256];
-        rowsym=new char[r];
-        rowbits=new byte[r];
 
-        r=0;
-        for (int sym = 0; sym < CODES.length; sym++) 
+        for (int i=0;i<CODES.length;i++)
         {
-            int code = CODES[sym][0];
-            int len = CODES[sym][1];
-
-            int current = 0;
+            CODE[i]=CODES[i][0];
+            LENGTH[i]=(byte)CODES[i][1];
+            LCCODE[i]=LCCODES[i][0];
+            LCLENGTH[i]=(byte)LCCODES[i][1];
+        }
 
-            while (len > 8) 
+        // Build the binary code tree: children[2*node+bit] is either
+        // the index of an internal node or ~symbol for a leaf.
+        int[] children=new int[2*CODES.length];
+        int nodes=1;
+        for (int sym=0;sym<CODES.length;sym++)
+        {
+            int code=CODES[sym][0];
+            int len=CODES[sym][1];
+            int node=0;
+            for (int b=len-1;b>0;b--)
             {
-                len -= 8;
-                int i = ((code >>> len) & 0xFF);
+                int t=2*node+((code>>>b)&1);
+                if (children[t]==0)
+                    children[t]=nodes++;
+                node=children[t];
+            }
+            children[2*node+(code&1)]=~sym;
+        }
 
-                int t=current*256+i;
-                current = tree[t];
-                if (current == 0)
+        DECODE=new int[nodes*16];
+        for (int state=0;state<nodes;state++)
+        {
+            for (int nibble=0;nibble<16;nibble++)
+            {
+                int node=state;
+                int flags=0;
+                int symbol=0;
+                for (int b=3;b>=0;b--)
                 {
-                    tree[t] = (char)++r;
-                    current=r;
+                    int child=children[2*node+((nibble>>>b)&1)];
+                    if (child<0)
+                    {
+                        symbol=~child;
+                        flags|=symbol==EOS?FAIL:EMIT;
+                        node=0;
+                    }
+                    else
+                    {
+                        node=child;
+                    }
                 }
+                DECODE[state*16+nibble]=(node<<16)|flags|symbol;
             }
-
-            int terminal = ++r;
-            rowsym[r]=(char)sym;
-            int b = len & 0x07;
-            int terminalBits = b == 0?8:b;
-
-            rowbits[r]=(byte)terminalBits;
-            int shift = 8 - len;
-            int start = current*256 + ((code << shift) & 0xFF);
-            int end = start + (1<<shift);
-            for (int i = start; i < end; i++)
-                tree[i]=(char)terminal;
         }
     }
 
     public static String decode(ByteBuffer buffer)
-    {  
+    {
         return decode(buffer,buffer.remaining());
     }
 
     public static String decode(ByteBuffer buffer,int length)
-    {        
-        StringBuilder out = new StringBuilder(length*2);
-        int node = 0;
-        int current = 0;
-        int bits = 0;
-        
+    {
+        // The shortest code is 5 bits, so 8 octets decode to at most 12 symbols.
+        char[] out=new char[length*8/5];
+        int n=0;
+        int state=0;
+
         byte[] array = buffer.array();
         int position=buffer.position();
         int start=buffer.arrayOffset()+position;
         int end=start+length;
         buffer.position(position+length);
-        
+
         for (int i=start; i<end; i++)
         {
             int b = array[i]&0xFF;
-            current = (current << 8) | b;
-            bits += 8;
-            while (bits >= 8) 
+
+            int t=DECODE[(state<<4)|(b>>>4)];
+            if ((t&(EMIT|FAIL))!=0)
             {
-                int c = (current >>> (bits - 8)) & 0xFF;
-                node = tree[node*256+c];
-                if (rowbits[node]!=0) 
-                {
-                    // terminal node
-                    out.append(rowsym[node]);
-                    bits -= rowbits[node];
-                    node = 0;
-                } 
-                else 
-                {
-                    // non-terminal node
-                    bits -= 8;
-                }
+                if ((t&FAIL)!=0)
+                    throw new IllegalArgumentException("Huffman EOS");
+                out[n++]=(char)(t&SYMBOL);
             }
-        }
+            state=t>>>16;
 
-        while (bits > 0) 
-        {
-            int c = (current << (8 - bits)) & 0xFF;
-            node = tree[node*256+c];
-            if (rowbits[node]==0 || rowbits[node] > bits) 
-                break;
-            
-            if (rowbits[node]==0)
-                throw new IllegalStateException();
-            
-            out.append(rowsym[node]);
-            bits -= rowbits[node];
-            node = 0;
+            t=DECODE[(state<<4)|(b&0x0F)];
+            if ((t&(EMIT|FAIL))!=0)
+            {
+                if ((t&FAIL)!=0)
+                    throw new IllegalArgumentException("Huffman EOS");
+                out[n++]=(char)(t&SYMBOL);
+            }
+            state=t>>>16;
         }
 
-        return out.toString();
+        // Any bits left in a non-root state are the padding.
+        return new String(out,0,n);
     }
 
     public static int octetsNeeded(String s)
-    {   
-        return octetsNeeded(CODES,s);
+    {
+        return octetsNeeded(LENGTH,s);
     }
-    
+
     public static void encode(ByteBuffer buffer,String s)
     {
-        encode(CODES,buffer,s);
+        encode(CODE,LENGTH,buffer,s);
     }
-    
+
     public static int octetsNeededLC(String s)
     {
-        return octetsNeeded(LCCODES,s);
+        return octetsNeeded(LCLENGTH,s);
     }
 
     public static void encodeLC(ByteBuffer buffer, String s)
     {
-        encode(LCCODES,buffer,s);
+        encode(LCCODE,LCLENGTH,buffer,s);
     }
-    
-    private static int octetsNeeded(final int[][] table,String s)
-    {   
+
+    private static int octetsNeeded(final byte[] lengths,String s)
+    {
         int needed=0;
         int len = s.length();
         for (int i=0;i<len;i++)
@@ -433,14 +441,16 @@ public class Huffman
             char c=s.charAt(i);
             if (c>=128 || c<' ')
                 throw new IllegalArgumentException();
-            needed += table[c][1];
+            needed += lengths[c];
         }
 
         return (needed+7) / 8;
     }
 
-    private static void encode(final int[][] table,ByteBuffer buffer,String s)
+    private static void encode(final int[] codes,final byte[] lengths,ByteBuffer buffer,String s)
     {
+        // Codes are at most 30 bits, so up to 31 pending bits plus
+        // a code always fit in the 64 bits accumulator.
         long current = 0;
         int n = 0;
 
@@ -453,28 +463,35 @@ public class Huffman
             char c=s.charAt(i);
             if (c>=128 || c<' ')
                 throw new IllegalArgumentException();
-            int code = table[c][0];
-            int bits = table[c][1];
 
-            current <<= bits;
-            current |= code;
-            n += bits;
+            current = (current << lengths[c]) | codes[c];
+            n += lengths[c];
 
-            while (n >= 8) 
+            if (n >= 32)
             {
-                n -= 8;
-                array[p++]=(byte)(current >> n);
+                n -= 32;
+                int word = (int)(current >>> n);
+                array[p++]=(byte)(word >>> 24);
+                array[p++]=(byte)(word >>> 16);
+                array[p++]=(byte)(word >>> 8);
+                array[p++]=(byte)word;
             }
         }
 
-        if (n > 0) 
+        while (n >= 8)
         {
-          current <<= (8 - n);
-          current |= (0xFF >>> n); 
-          array[p++]=(byte)current;
+            n -= 8;
+            array[p++]=(byte)(current >>> n);
         }
-        
+
+        if (n > 0)
+        {
+            // Pad with the most significant bits of EOS.
+            current <<= (8 - n);
+            current |= (0xFF >>> n);
+            array[p++]=(byte)current;
+        }
+
         buffer.position(p-buffer.arrayOffset());
     }
-
 }
@@ -22,6 +22,7 @@ package org.eclipse.jetty.http2.hpack;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -448,4 +449,45 @@ public class HpackContextTest
         assertEquals("Wibble",ctx.get("Wibble").getHttpField().getName());
         
     }
+
+    @Test
+    public void testDynamicIndexEvictionAndDuplicates()
+    {
+        // Room for about 100 small entries, so the dynamic index grows and entries are evicted.
+        HpackContext ctx = new HpackContext(100*(32+6));
+        for (int i=0;i<1000;i++)
+        {
+            HttpField field = new HttpField(String.format("N%03d",i%150),String.format("v%d",i%7));
+            Entry entry = ctx.get(field);
+            if (entry==null)
+                entry = ctx.add(field);
+            assertEquals(field,entry.getHttpField());
+            assertEquals(entry,ctx.get(field));
+            assertEquals(field.getName(),ctx.get(field.getName().toLowerCase()).getHttpField().getName());
+        }
+
+        // Every entry in the dynamic table is indexed by field and name.
+        for (int i=1;i<=ctx.size();i++)
+        {
+            Entry entry = ctx.get(HpackContext.STATIC_SIZE+i);
+            assertEquals(entry,ctx.get(entry.getHttpField()));
+            assertNotNull(ctx.get(entry.getHttpField().getName()));
+        }
+
+        // Evicted entries are no longer indexed.
+        ctx.resize(0);
+        assertEquals(0,ctx.size());
+        assertNull(ctx.get(new HttpField("N149","v2")));
+        assertNull(ctx.get("n149"));
+
+        // A duplicate field is indexed to the most recent entry, which survives the eviction of the older one.
+        ctx.resize(44*2);
+        Entry first = ctx.add(new HttpField("Wibble","Wobble"));
+        Entry second = ctx.add(new HttpField("wibble","Wobble"));
+        assertEquals(second,ctx.get(new HttpField("WIBBLE","Wobble")));
+        ctx.add(new HttpField("other","value"));
+        assertEquals(-1,first._slot);
+        assertEquals(second,ctx.get(new HttpField("wibble","Wobble")));
+        assertEquals(second,ctx.get("wibble"));
+    }
 }
@@ -0,0 +1,177 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.eclipse.jetty.http.HostPortHttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HpackEncodingCacheTest
+{
+    private ByteBuffer encode(HpackEncoder encoder, HttpFields fields)
+    {
+        ByteBuffer buffer = BufferUtil.allocate(4096);
+        int pos = BufferUtil.flipToFill(buffer);
+        encoder.encode(buffer, new MetaData.Response(HttpVersion.HTTP_2, 200, fields));
+        BufferUtil.flipToFlush(buffer, pos);
+        return buffer;
+    }
+
+    private HttpFields newFields()
+    {
+        HttpFields fields = new HttpFields();
+        fields.put(HttpHeader.SERVER, "jetty");
+        fields.put(HttpHeader.CONTENT_TYPE, MimeTypes.Type.TEXT_HTML_UTF_8.asString());
+        fields.put(HttpHeader.CACHE_CONTROL, "max-age=3600");
+        fields.put("X-Frame-Options", "DENY");
+        fields.put(HttpHeader.ETAG, "W/\"12345\"");
+        fields.put(HttpHeader.AUTHORIZATION, "secret");
+        return fields;
+    }
+
+    @Test
+    public void testCachedEncodingIsIdentical()
+    {
+        HpackEncodingCache cache = new HpackEncodingCache();
+        HpackEncoder cached = new HpackEncoder();
+        cached.setEncodingCache(cache);
+        HpackEncoder uncached = new HpackEncoder();
+        uncached.setEncodingCache(null);
+
+        // The second connection copies the values encoded by the first.
+        ByteBuffer first = encode(cached, newFields());
+        Assert.assertEquals(first, encode(uncached, newFields()));
+        HpackEncoder other = new HpackEncoder();
+        other.setEncodingCache(cache);
+        ByteBuffer second = encode(other, newFields());
+        Assert.assertEquals(first, second);
+        Assert.assertTrue(cache.getHits() > 0);
+
+        // The decoder sees the same fields.
+        HpackDecoder decoder = new HpackDecoder(4096, 8192);
+        MetaData metaData = decoder.decode(second);
+        Assert.assertEquals(newFields().size(), metaData.getFields().size());
+        Assert.assertEquals("DENY", metaData.getFields().get("X-Frame-Options"));
+    }
+
+    @Test
+    public void testConstantsArePreEncoded()
+    {
+        HpackEncodingCache cache = new HpackEncodingCache();
+        ByteBuffer buffer = BufferUtil.allocate(1024);
+        int pos = BufferUtil.flipToFill(buffer);
+        cache.putHuffmanValue(buffer, HttpHeaderValue.KEEP_ALIVE.asString());
+        cache.putHuffmanValue(buffer, MimeTypes.Type.APPLICATION_JSON.asString());
+        BufferUtil.flipToFlush(buffer, pos);
+
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+        Assert.assertEquals(0, cache.size());
+
+        ByteBuffer expected = BufferUtil.allocate(1024);
+        pos = BufferUtil.flipToFill(expected);
+        HpackEncoder.encodeValue(expected, true, HttpHeaderValue.KEEP_ALIVE.asString());
+        HpackEncoder.encodeValue(expected, true, MimeTypes.Type.APPLICATION_JSON.asString());
+        BufferUtil.flipToFlush(expected, pos);
+        Assert.assertEquals(expected, buffer);
+    }
+
+    @Test
+    public void testSensitiveValuesAreNotCached()
+    {
+        HpackEncodingCache cache = new HpackEncodingCache();
+        HpackEncoder encoder = new HpackEncoder();
+        encoder.setEncodingCache(cache);
+        encode(encoder, newFields());
+
+        // server, cache-control and x-frame-options values; content-type is pre-encoded,
+        // while the etag and authorization values are never cached.
+        Assert.assertEquals(3, cache.size());
+
+        // Nor are the cookie, path and unknown header values of requests.
+        HttpFields fields = new HttpFields();
+        fields.put(HttpHeader.COOKIE, "JSESSIONID=secret");
+        fields.put("X-Auth-Token", "secret");
+        fields.put(HttpHeader.USER_AGENT, "jetty-client");
+        ByteBuffer buffer = BufferUtil.allocate(4096);
+        int pos = BufferUtil.flipToFill(buffer);
+        encoder.encode(buffer, new MetaData.Request("GET", HttpScheme.HTTPS, new HostPortHttpField("localhost:8443"), "/secret?token=secret", HttpVersion.HTTP_2, fields));
+        BufferUtil.flipToFlush(buffer, pos);
+        Assert.assertEquals(4, cache.size());
+
+        HpackDecoder decoder = new HpackDecoder(4096, 8192);
+        MetaData.Request request = (MetaData.Request)decoder.decode(buffer);
+        Assert.assertEquals("JSESSIONID=secret", request.getFields().get(HttpHeader.COOKIE));
+        Assert.assertEquals("secret", request.getFields().get("X-Auth-Token"));
+    }
+
+    @Test
+    public void testCacheableFields()
+    {
+        HpackEncodingCache cache = new HpackEncodingCache();
+        HpackEncoder encoder = new HpackEncoder();
+        encoder.setEncodingCache(cache);
+        encoder.setCacheableFields(new HashSet<>(Arrays.asList("strict-transport-security", "X-Custom-Policy")));
+
+        HttpFields fields = new HttpFields();
+        fields.put(HttpHeader.SERVER, "jetty");
+        fields.put(HttpHeader.STRICT_TRANSPORT_SECURITY, "max-age=31536000");
+        fields.put("x-custom-policy", "none");
+        fields.put("X-Frame-Options", "DENY");
+        ByteBuffer buffer = encode(encoder, fields);
+
+        // Only the values of the configured fields are cached, whatever the case of their names.
+        Assert.assertEquals(2, cache.size());
+        HpackEncoder other = new HpackEncoder();
+        other.setEncodingCache(cache);
+        other.setCacheableFields(encoder.getCacheableFields());
+        Assert.assertEquals(buffer, encode(other, fields));
+        Assert.assertEquals(2, cache.getHits());
+
+        HpackDecoder decoder = new HpackDecoder(4096, 8192);
+        MetaData metaData = decoder.decode(buffer);
+        Assert.assertEquals("max-age=31536000", metaData.getFields().get(HttpHeader.STRICT_TRANSPORT_SECURITY));
+        Assert.assertEquals("none", metaData.getFields().get("X-Custom-Policy"));
+    }
+
+    @Test
+    public void testBounded()
+    {
+        HpackEncodingCache cache = new HpackEncodingCache(4, 8);
+        ByteBuffer buffer = BufferUtil.allocate(1024);
+        BufferUtil.flipToFill(buffer);
+        for (int i = 0; i < 10; i++)
+            cache.putHuffmanValue(buffer, "value" + i);
+        cache.putHuffmanValue(buffer, "a value too long to be cached");
+        Assert.assertEquals(4, cache.size());
+        Assert.assertEquals(11, cache.getMisses());
+    }
+}
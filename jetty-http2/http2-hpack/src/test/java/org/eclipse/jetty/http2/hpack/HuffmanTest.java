@@ -20,6 +20,7 @@ package org.eclipse.jetty.http2.hpack;
 
 import java.nio.ByteBuffer;
 import java.util.Locale;
+import java.util.Random;
 
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.TypeUtil;
@@ -37,6 +38,13 @@ public class HuffmanTest
             {"D.6.1d","d07abe941054d444a8200595040b8166e082a62d1bff","Mon, 21 Oct 2013 20:13:21 GMT"},
             {"D.6.1l","9d29ad171863c78f0b97c8e9ae82ae43d3","https://www.example.com"},
             {"D.6.2te","640cff","303"},
+            // RFC 7541 Appendix C.4 and C.6.
+            {"C.4.3k","25a849e95ba97d7f","custom-key"},
+            {"C.4.3v","25a849e95bb8e8b4bf","custom-value"},
+            {"C.6.2s","640eff","307"},
+            {"C.6.3d","d07abe941054d444a8200595040b8166e084a62d1bff","Mon, 21 Oct 2013 20:13:22 GMT"},
+            {"C.6.3e","9bd9ab","gzip"},
+            {"C.6.3c","94e7821dd7f2e6c7b335dfdfcd5b3960d5af27087f3672c1ab270fb5291f9587316065c003ed4ee5b1063d5007","foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1"},
         };
 
     @Test
@@ -76,6 +84,51 @@ public class HuffmanTest
         }
     }
 
+    @Test
+    public void testDecodeAllSymbols() throws Exception
+    {
+        // Every code, padded with the most significant bits of EOS, decodes to its symbol.
+        for (int sym=0;sym<256;sym++)
+        {
+            int code=Huffman.CODES[sym][0];
+            int bits=Huffman.CODES[sym][1];
+            int octets=(bits+7)/8;
+            long padded=((long)code<<(octets*8-bits))|((1L<<(octets*8-bits))-1);
+            byte[] encoded=new byte[octets];
+            for (int i=0;i<octets;i++)
+                encoded[i]=(byte)(padded>>>(8*(octets-1-i)));
+            String decoded=Huffman.decode(ByteBuffer.wrap(encoded));
+            Assert.assertEquals(1,decoded.length());
+            Assert.assertEquals(sym,decoded.charAt(0));
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDecodeEOS() throws Exception
+    {
+        Huffman.decode(ByteBuffer.wrap(TypeUtil.fromHexString("fffffffc")));
+    }
+
+    @Test
+    public void testEncodeDecodeRandom() throws Exception
+    {
+        Random random=new Random();
+        for (int i=0;i<1000;i++)
+        {
+            char[] chars=new char[random.nextInt(200)];
+            for (int c=0;c<chars.length;c++)
+                chars[c]=(char)(' '+random.nextInt(128-' '));
+            String value=new String(chars);
+
+            ByteBuffer buf = BufferUtil.allocate(1024);
+            int pos=BufferUtil.flipToFill(buf);
+            Huffman.encode(buf,value);
+            BufferUtil.flipToFlush(buf,pos);
+            Assert.assertEquals(Huffman.octetsNeeded(value),buf.remaining());
+            Assert.assertEquals(value,Huffman.decode(buf));
+        }
+    }
+
     @Test
     public void testEncode8859Only() throws Exception
     {
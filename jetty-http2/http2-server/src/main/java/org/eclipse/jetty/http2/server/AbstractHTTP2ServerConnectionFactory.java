@@ -19,12 +19,14 @@
 package org.eclipse.jetty.http2.server;
 
 import java.util.Objects;
+import java.util.Set;
 
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.FlowControlStrategy;
 import org.eclipse.jetty.http2.HTTP2Connection;
 import org.eclipse.jetty.http2.api.server.ServerSessionListener;
 import org.eclipse.jetty.http2.generator.Generator;
+import org.eclipse.jetty.http2.hpack.HpackEncoder;
 import org.eclipse.jetty.http2.parser.ServerParser;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
@@ -36,6 +38,7 @@ import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.thread.ReservedThreadExecutor;
+import org.eclipse.jetty.util.thread.Scheduler;
 
 @ManagedObject
 public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConnectionFactory
@@ -49,7 +52,9 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
     private int maxHeaderBlockFragment = 0;
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
     private long streamIdleTimeout;
+    private Scheduler streamScheduler;
     private int reservedThreads;
+    private Set<String> cacheableFields = HpackEncoder.DEFAULT_CACHEABLE_FIELDS;
 
     public AbstractHTTP2ServerConnectionFactory(@Name("config") HttpConfiguration httpConfiguration)
     {
@@ -142,6 +147,30 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         this.streamIdleTimeout = streamIdleTimeout;
     }
 
+    /**
+     * @return the scheduler used for the stream idle timeouts, or null to use the connector's scheduler
+     */
+    @ManagedAttribute("The scheduler of the stream idle timeouts")
+    public Scheduler getStreamScheduler()
+    {
+        return streamScheduler;
+    }
+
+    /**
+     * <p>Sets the scheduler used for the stream idle timeouts.</p>
+     * <p>Streams are created and idle out far more often than connections, so a scheduler
+     * with cheap schedule and cancel operations such as
+     * {@link org.eclipse.jetty.util.thread.HashedWheelScheduler} may be used for them,
+     * rather than the connector's scheduler. The scheduler is managed by this factory.</p>
+     *
+     * @param streamScheduler the scheduler, or null to use the connector's scheduler
+     */
+    public void setStreamScheduler(Scheduler streamScheduler)
+    {
+        updateBean(this.streamScheduler, streamScheduler, true);
+        this.streamScheduler = streamScheduler;
+    }
+
     /**
      * @see ReservedThreadExecutor
      * @return The number of reserved threads
@@ -159,6 +188,26 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
 //        this.reservedThreads = threads;
     }
 
+    @ManagedAttribute("The names of the fields whose encoded values are shared by connections")
+    public Set<String> getCacheableFields()
+    {
+        return cacheableFields;
+    }
+
+    /**
+     * <p>Sets the names of the fields whose HPACK encoded values are cached and shared
+     * by all connections, by default {@link HpackEncoder#DEFAULT_CACHEABLE_FIELDS}.</p>
+     * <p>Headers with common values that are set on every response, such as custom
+     * security headers, may be added to them. Fields with sensitive or unique values
+     * must not be.</p>
+     *
+     * @param cacheableFields the case insensitive names of the cacheable fields
+     */
+    public void setCacheableFields(Set<String> cacheableFields)
+    {
+        this.cacheableFields = cacheableFields;
+    }
+
     public HttpConfiguration getHttpConfiguration()
     {
         return httpConfiguration;
@@ -170,8 +219,12 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         ServerSessionListener listener = newSessionListener(connector, endPoint);
 
         Generator generator = new Generator(connector.getByteBufferPool(), getMaxDynamicTableSize(), getMaxHeaderBlockFragment());
+        generator.setCacheableFields(getCacheableFields());
         FlowControlStrategy flowControl = getFlowControlStrategyFactory().newFlowControlStrategy();
-        HTTP2ServerSession session = new HTTP2ServerSession(connector.getScheduler(), endPoint, generator, listener, flowControl);
+        Scheduler scheduler = getStreamScheduler();
+        if (scheduler == null)
+            scheduler = connector.getScheduler();
+        HTTP2ServerSession session = new HTTP2ServerSession(scheduler, endPoint, generator, listener, flowControl);
         session.setMaxLocalStreams(getMaxConcurrentStreams());
         session.setMaxRemoteStreams(getMaxConcurrentStreams());
         // For a single stream in a connection, there will be a race between
@@ -0,0 +1,235 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>Base class for {@link ByteBufferPool}s made of {@link ByteBufferPool.Bucket}s.</p>
+ * <p>Tracks the heap and direct memory retained by the buckets, and refuses to
+ * retain released buffers beyond {@link #getMaxHeapMemory()} and
+ * {@link #getMaxDirectMemory()}.</p>
+ * <p>If {@link #getIdleTimeout()} is positive, buffers that have not been
+ * acquired for at least the idle timeout are evicted from the buckets, so
+ * that the pool shrinks back after a traffic spike.</p>
+ */
+@ManagedObject
+public abstract class AbstractByteBufferPool implements ByteBufferPool
+{
+    private final AtomicLong _heapMemory = new AtomicLong();
+    private final AtomicLong _directMemory = new AtomicLong();
+    private final AtomicLong _lastSweep = new AtomicLong(System.nanoTime());
+    private long _maxHeapMemory = -1;
+    private long _maxDirectMemory = -1;
+    private long _idleTimeout = -1;
+
+    @ManagedAttribute("The bytes retained by heap ByteBuffers")
+    public long getHeapMemory()
+    {
+        return _heapMemory.get();
+    }
+
+    @ManagedAttribute("The bytes retained by direct ByteBuffers")
+    public long getDirectMemory()
+    {
+        return _directMemory.get();
+    }
+
+    @ManagedAttribute("The max bytes retained by heap ByteBuffers")
+    public long getMaxHeapMemory()
+    {
+        return _maxHeapMemory;
+    }
+
+    /**
+     * @param maxHeapMemory the max heap memory retained by this pool,
+     * -1 for unlimited or 0 for a heuristic based on the max JVM memory
+     */
+    public void setMaxHeapMemory(long maxHeapMemory)
+    {
+        _maxHeapMemory = memoryLimit(maxHeapMemory);
+    }
+
+    @ManagedAttribute("The max bytes retained by direct ByteBuffers")
+    public long getMaxDirectMemory()
+    {
+        return _maxDirectMemory;
+    }
+
+    /**
+     * @param maxDirectMemory the max direct memory retained by this pool,
+     * -1 for unlimited or 0 for a heuristic based on the max JVM memory
+     */
+    public void setMaxDirectMemory(long maxDirectMemory)
+    {
+        _maxDirectMemory = memoryLimit(maxDirectMemory);
+    }
+
+    @ManagedAttribute("The time in ms after which idle ByteBuffers are evicted")
+    public long getIdleTimeout()
+    {
+        return _idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout the time in ms after which pooled buffers that have not
+     * been acquired are evicted, or a non-positive value to never evict buffers
+     */
+    public void setIdleTimeout(long idleTimeout)
+    {
+        _idleTimeout = idleTimeout;
+    }
+
+    @ManagedAttribute("The number of ByteBuffer acquisitions satisfied by the pool")
+    public long getHits()
+    {
+        long hits = 0;
+        for (Bucket bucket : buckets(true))
+            hits += bucket.getHits();
+        for (Bucket bucket : buckets(false))
+            hits += bucket.getHits();
+        return hits;
+    }
+
+    @ManagedAttribute("The number of ByteBuffer acquisitions that allocated a new ByteBuffer")
+    public long getMisses()
+    {
+        long misses = 0;
+        for (Bucket bucket : buckets(true))
+            misses += bucket.getMisses();
+        for (Bucket bucket : buckets(false))
+            misses += bucket.getMisses();
+        return misses;
+    }
+
+    @ManagedAttribute("The statistics of the heap ByteBuffer buckets")
+    public List<String> getHeapBuckets()
+    {
+        return statistics(false);
+    }
+
+    @ManagedAttribute("The statistics of the direct ByteBuffer buckets")
+    public List<String> getDirectBuckets()
+    {
+        return statistics(true);
+    }
+
+    private List<String> statistics(boolean direct)
+    {
+        List<String> result = new ArrayList<>();
+        for (Bucket bucket : buckets(direct))
+        {
+            if (bucket.size() > 0 || bucket.getHits() > 0 || bucket.getMisses() > 0 || bucket.getEvictions() > 0)
+                result.add(bucket.toString());
+        }
+        return result;
+    }
+
+    @ManagedOperation(value = "Evicts the ByteBuffers idle for longer than the idle timeout", impact = "ACTION")
+    public void evictIdle()
+    {
+        _lastSweep.set(System.nanoTime());
+        for (Bucket bucket : buckets(true))
+            bucket.evictIdle();
+        for (Bucket bucket : buckets(false))
+            bucket.evictIdle();
+    }
+
+    @ManagedOperation(value = "Clears this ByteBufferPool", impact = "ACTION")
+    public abstract void clear();
+
+    /**
+     * @param direct whether to return the direct or heap buckets
+     * @return the buckets of this pool
+     */
+    protected abstract Iterable<Bucket> buckets(boolean direct);
+
+    /**
+     * <p>Evicts idle buffers if the idle timeout has expired since the last eviction.</p>
+     * <p>Called by subclasses when buffers are acquired or released.</p>
+     */
+    protected void checkIdle()
+    {
+        long idleTimeout = _idleTimeout;
+        if (idleTimeout <= 0)
+            return;
+        long last = _lastSweep.get();
+        long now = System.nanoTime();
+        if (now - last >= TimeUnit.MILLISECONDS.toNanos(idleTimeout) && _lastSweep.compareAndSet(last, now))
+            evictIdle();
+    }
+
+    /**
+     * @param capacity the capacity of a buffer about to be retained
+     * @param direct whether the buffer is direct
+     * @return whether the buffer can be retained within the memory limits
+     */
+    boolean reserve(int capacity, boolean direct)
+    {
+        AtomicLong memory = direct ? _directMemory : _heapMemory;
+        long max = direct ? _maxDirectMemory : _maxHeapMemory;
+        if (max < 0)
+        {
+            memory.addAndGet(capacity);
+            return true;
+        }
+        while (true)
+        {
+            long current = memory.get();
+            long updated = current + capacity;
+            if (updated > max)
+                return false;
+            if (memory.compareAndSet(current, updated))
+                return true;
+        }
+    }
+
+    /**
+     * @param capacity the capacity of a buffer no longer retained
+     * @param direct whether the buffer is direct
+     */
+    void unreserve(int capacity, boolean direct)
+    {
+        (direct ? _directMemory : _heapMemory).addAndGet(-capacity);
+    }
+
+    private static long memoryLimit(long maxMemory)
+    {
+        if (maxMemory == 0)
+            return Runtime.getRuntime().maxMemory() / 4;
+        return maxMemory;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{heap=%d/%d,direct=%d/%d,idleTimeout=%d}",
+                getClass().getSimpleName(), hashCode(),
+                getHeapMemory(), getMaxHeapMemory(),
+                getDirectMemory(), getMaxDirectMemory(),
+                getIdleTimeout());
+    }
+}
@@ -20,6 +20,8 @@ package org.eclipse.jetty.io;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritePendingException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -53,6 +55,16 @@ public abstract class AbstractEndPoint extends IdleTimeout implements EndPoint
         {
             AbstractEndPoint.this.onIncompleteFlush();
         }
+
+        @Override
+        protected void onAggregated()
+        {
+            Scheduler scheduler = getScheduler();
+            if (scheduler==null)
+                flushAggregated();
+            else
+                scheduler.schedule(this::flushAggregated,getAggregationDelay(),TimeUnit.MILLISECONDS);
+        }
     };
 
     protected AbstractEndPoint(Scheduler scheduler)
@@ -114,6 +126,35 @@ public abstract class AbstractEndPoint extends IdleTimeout implements EndPoint
     @Override
     public final void shutdownOutput()
     {
+        if (_writeFlusher.hasAggregated())
+        {
+            try
+            {
+                // Write the aggregated content before shutting down
+                _writeFlusher.write(new Callback()
+                {
+                    @Override
+                    public void succeeded()
+                    {
+                        shutdownOutput();
+                    }
+
+                    @Override
+                    public void failed(Throwable x)
+                    {
+                        close(x);
+                    }
+                },BufferUtil.EMPTY_BUFFER);
+                return;
+            }
+            catch (WritePendingException e)
+            {
+                // The pending write includes the aggregated content
+                if (LOG.isDebugEnabled())
+                    LOG.debug(e);
+            }
+        }
+
         while(true)
         {
             State s = _state.get();
@@ -171,6 +212,11 @@ public abstract class AbstractEndPoint extends IdleTimeout implements EndPoint
 
     protected final void close(Throwable failure)
     {
+        // Write without blocking the aggregated content, whose writes have already
+        // succeeded; whatever the network cannot accept is discarded.
+        if (failure==null && _writeFlusher.hasAggregated())
+            _writeFlusher.flushAggregated(false);
+
         while(true)
         {
             State s = _state.get();
@@ -386,6 +432,72 @@ public abstract class AbstractEndPoint extends IdleTimeout implements EndPoint
         return _writeFlusher;
     }
 
+    /**
+     * @return the size in bytes of the buffer used to aggregate small writes, or 0 if writes are not aggregated
+     * @see WriteFlusher#getAggregationSize()
+     */
+    public int getWriteAggregationSize()
+    {
+        return _writeFlusher.getAggregationSize();
+    }
+
+    /**
+     * Writes are not aggregated by endpoints without a scheduler, as the aggregated
+     * content could not be flushed after the aggregation delay.
+     * @param size the size in bytes of the buffer used to aggregate small writes, or 0 to not aggregate writes
+     * @see WriteFlusher#setAggregationSize(int)
+     */
+    public void setWriteAggregationSize(int size)
+    {
+        if (size>0 && getScheduler()==null)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Writes not aggregated without scheduler {}",this);
+            size=0;
+        }
+        _writeFlusher.setAggregationSize(size);
+    }
+
+    /**
+     * @return the max time in ms that aggregated writes may wait before being flushed
+     */
+    public long getWriteAggregationDelay()
+    {
+        return _writeFlusher.getAggregationDelay();
+    }
+
+    /**
+     * @param delay the max time in ms that aggregated writes may wait before being flushed
+     * @throws IllegalArgumentException if the delay is not positive
+     * @see WriteFlusher#setAggregationDelay(long)
+     */
+    public void setWriteAggregationDelay(long delay)
+    {
+        _writeFlusher.setAggregationDelay(delay);
+    }
+
+    /**
+     * Writes the buffers, or aggregates them with the content of other writes if
+     * writes are aggregated and they fit.
+     * @param callback the callback to call when the buffers are written or aggregated
+     * @param buffers the buffers to write
+     * @throws WritePendingException if another write operation is concurrent
+     * @see WriteFlusher#aggregate(Callback, ByteBuffer...)
+     */
+    public void writeAggregated(Callback callback, ByteBuffer... buffers) throws WritePendingException
+    {
+        _writeFlusher.aggregate(callback, buffers);
+    }
+
+    /**
+     * Writes any aggregated content without blocking.
+     * @see WriteFlusher#flushAggregated()
+     */
+    public void flushAggregated()
+    {
+        _writeFlusher.flushAggregated();
+    }
+
     @Override
     protected void onIdleExpired(TimeoutException timeout)
     {
@@ -19,8 +19,12 @@
 package org.eclipse.jetty.io;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
-public class ArrayByteBufferPool implements ByteBufferPool
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+@ManagedObject
+public class ArrayByteBufferPool extends AbstractByteBufferPool
 {
     private final int _min;
     private final int _maxQueue;
@@ -39,6 +43,19 @@ public class ArrayByteBufferPool implements ByteBufferPool
     }
     
     public ArrayByteBufferPool(int minSize, int increment, int maxSize, int maxQueue)
+    {
+        this(minSize,increment,maxSize,maxQueue,-1,-1);
+    }
+
+    /**
+     * @param minSize the minimum buffer capacity that is pooled
+     * @param increment the capacity increment between buckets
+     * @param maxSize the maximum buffer capacity that is pooled
+     * @param maxQueue the max number of buffers per bucket, or -1 for unlimited
+     * @param maxHeapMemory the max heap memory retained, -1 for unlimited or 0 for a heuristic
+     * @param maxDirectMemory the max direct memory retained, -1 for unlimited or 0 for a heuristic
+     */
+    public ArrayByteBufferPool(int minSize, int increment, int maxSize, int maxQueue, long maxHeapMemory, long maxDirectMemory)
     {
         if (minSize<=0)
             minSize=0;
@@ -64,11 +81,14 @@ public class ArrayByteBufferPool implements ByteBufferPool
             _direct[i]=new ByteBufferPool.Bucket(this,size,_maxQueue);
             _indirect[i]=new ByteBufferPool.Bucket(this,size,_maxQueue);
         }
+        setMaxHeapMemory(maxHeapMemory);
+        setMaxDirectMemory(maxDirectMemory);
     }
 
     @Override
     public ByteBuffer acquire(int size, boolean direct)
     {
+        checkIdle();
         ByteBufferPool.Bucket bucket = bucketFor(size,direct);
         if (bucket==null)
             return newByteBuffer(size,direct);
@@ -88,6 +108,7 @@ public class ArrayByteBufferPool implements ByteBufferPool
         }
     }
 
+    @Override
     public void clear()
     {
         for (int i=0;i<_direct.length;i++)
@@ -109,6 +130,12 @@ public class ArrayByteBufferPool implements ByteBufferPool
         return bucket;
     }
 
+    @Override
+    protected Iterable<Bucket> buckets(boolean direct)
+    {
+        return Arrays.asList(bucketsFor(direct));
+    }
+
     // Package local for testing
     ByteBufferPool.Bucket[] bucketsFor(boolean direct)
     {
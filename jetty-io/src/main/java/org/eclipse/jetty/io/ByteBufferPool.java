@@ -24,6 +24,7 @@ import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.util.BufferUtil;
 
@@ -128,12 +129,19 @@ public interface ByteBufferPool
     {
         private final Deque<ByteBuffer> _queue = new ConcurrentLinkedDeque<>();
         private final ByteBufferPool _pool;
+        private final AbstractByteBufferPool _memory;
         private final int _capacity;
         private final AtomicInteger _space;
+        private final AtomicInteger _size = new AtomicInteger();
+        private final AtomicInteger _idle = new AtomicInteger();
+        private final LongAdder _hits = new LongAdder();
+        private final LongAdder _misses = new LongAdder();
+        private final LongAdder _evictions = new LongAdder();
 
         public Bucket(ByteBufferPool pool, int bufferSize, int maxSize)
         {
             _pool = pool;
+            _memory = pool instanceof AbstractByteBufferPool ? (AbstractByteBufferPool)pool : null;
             _capacity = bufferSize;
             _space = maxSize > 0 ? new AtomicInteger(maxSize) : null;
         }
@@ -142,38 +150,77 @@ public interface ByteBufferPool
         {
             ByteBuffer buffer = queuePoll();
             if (buffer == null)
+            {
+                _misses.increment();
                 return _pool.newByteBuffer(_capacity, direct);
-            if (_space != null)
-                _space.incrementAndGet();
+            }
+            _hits.increment();
+            removed(buffer);
+
+            // The buffers below the lowest size seen since the last
+            // eviction have not been acquired, so they are idle.
+            int size = _size.get();
+            while (true)
+            {
+                int idle = _idle.get();
+                if (size >= idle || _idle.compareAndSet(idle, size))
+                    break;
+            }
             return buffer;
         }
 
         public void release(ByteBuffer buffer)
         {
             BufferUtil.clear(buffer);
-            if (_space == null)
-                queueOffer(buffer);
-            else if (_space.decrementAndGet() >= 0)
-                queueOffer(buffer);
-            else
+            if (_space != null && _space.decrementAndGet() < 0)
+            {
                 _space.incrementAndGet();
+                return;
+            }
+            if (_memory != null && !_memory.reserve(buffer.capacity(), buffer.isDirect()))
+            {
+                if (_space != null)
+                    _space.incrementAndGet();
+                return;
+            }
+            _size.incrementAndGet();
+            queueOffer(buffer);
         }
 
         public void clear()
         {
-            if (_space == null)
-            {
-                queueClear();
-            }
-            else
+            ByteBuffer buffer;
+            while ((buffer = queuePoll()) != null)
+                removed(buffer);
+            _idle.set(0);
+        }
+
+        /**
+         * <p>Evicts the buffers that have not been acquired since the previous call
+         * to this method, i.e. the buffers idle for at least the interval between calls.</p>
+         */
+        public void evictIdle()
+        {
+            int idle = _idle.get();
+            while (idle-- > 0)
             {
-                int s = _space.getAndSet(0);
-                while (s-- > 0)
-                {
-                    if (queuePoll() == null)
-                        _space.incrementAndGet();
-                }
+                // The queue is LIFO, so the idle buffers are at the tail.
+                ByteBuffer buffer = _queue.pollLast();
+                if (buffer == null)
+                    break;
+                removed(buffer);
+                _evictions.increment();
             }
+            _idle.set(_size.get());
+        }
+
+        private void removed(ByteBuffer buffer)
+        {
+            _size.decrementAndGet();
+            if (_space != null)
+                _space.incrementAndGet();
+            if (_memory != null)
+                _memory.unreserve(buffer.capacity(), buffer.isDirect());
         }
 
         private void queueOffer(ByteBuffer buffer)
@@ -186,9 +233,24 @@ public interface ByteBufferPool
             return _queue.poll();
         }
 
-        private void queueClear()
+        public int getCapacity()
+        {
+            return _capacity;
+        }
+
+        public long getHits()
+        {
+            return _hits.longValue();
+        }
+
+        public long getMisses()
+        {
+            return _misses.longValue();
+        }
+
+        public long getEvictions()
         {
-            _queue.clear();
+            return _evictions.longValue();
         }
 
         boolean isEmpty()
@@ -198,13 +260,14 @@ public interface ByteBufferPool
 
         int size()
         {
-            return _queue.size();
+            return _size.get();
         }
 
         @Override
         public String toString()
         {
-            return String.format("Bucket@%x{%d/%d}", hashCode(), size(), _capacity);
+            return String.format("Bucket@%x{%d/%d,hits=%d,misses=%d,evictions=%d}",
+                    hashCode(), size(), _capacity, getHits(), getMisses(), getEvictions());
         }
     }
 }
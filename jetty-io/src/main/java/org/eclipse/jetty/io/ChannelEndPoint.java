@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectionKey;
 
@@ -302,6 +303,44 @@ public abstract class ChannelEndPoint extends AbstractEndPoint implements Manage
         return true;
     }
 
+    /**
+     * <p>Transfers bytes from a file to the channel of this end point with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * which the operating system may implement without copying the bytes through user space.</p>
+     * <p>Like {@link #flush(ByteBuffer...)}, this method does not block, and must not be
+     * called while a {@link #write(org.eclipse.jetty.util.Callback, ByteBuffer...) write} is pending.
+     * No bytes are transferred while {@link #writeAggregated(org.eclipse.jetty.util.Callback, ByteBuffer...)
+     * aggregated} content is waiting to be written, as it must be written first by a write.</p>
+     *
+     * @param file the file to transfer bytes from
+     * @param position the position within the file of the first byte to transfer
+     * @param count the max number of bytes to transfer
+     * @return the number of bytes transferred, possibly 0 if the channel cannot accept more bytes
+     * or if aggregated content is waiting to be written
+     * @throws IOException if the transfer fails
+     */
+    public long transferFrom(FileChannel file, long position, long count) throws IOException
+    {
+        if (getWriteFlusher().hasAggregated())
+            return 0;
+
+        long transferred;
+        try
+        {
+            transferred=file.transferTo(position,count,_channel);
+            if (LOG.isDebugEnabled())
+                LOG.debug("transferred {} {}", transferred, this);
+        }
+        catch (IOException e)
+        {
+            throw new EofException(e);
+        }
+
+        if (transferred>0)
+            notIdle();
+        return transferred;
+    }
+
     public ByteChannel getChannel()
     {
         return _channel;
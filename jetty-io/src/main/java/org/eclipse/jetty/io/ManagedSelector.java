@@ -37,15 +37,22 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.component.DumpableCollection;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
 import org.eclipse.jetty.util.thread.ExecutionStrategy;
 import org.eclipse.jetty.util.thread.Invocable;
 import org.eclipse.jetty.util.thread.Invocable.InvocationType;
 import org.eclipse.jetty.util.thread.Locker;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.ReservedThreadExecutor;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.util.thread.strategy.EatWhatYouKill;
@@ -55,30 +62,71 @@ import org.eclipse.jetty.util.thread.strategy.EatWhatYouKill;
  * <p>{@link ManagedSelector} runs the select loop, which waits on {@link Selector#select()} until events
  * happen for registered channels. When events happen, it notifies the {@link EndPoint} associated
  * with the channel.</p>
+ * <p>If the {@link SelectorManager} has {@link SelectorManager#getSelectorAffinityThreads() selector affinity}
+ * enabled, the select loop and the non-blocking tasks it produces run on a small group of threads
+ * dedicated to this selector, so that the state of a connection stays on the threads (and the caches)
+ * of its selector, while tasks that may block are executed by the shared executor.</p>
  */
+@ManagedObject("A NIO Selector")
 public class ManagedSelector extends ContainerLifeCycle implements Dumpable
 {
     private static final Logger LOG = Log.getLogger(ManagedSelector.class);
 
     private final Locker _locker = new Locker();
     private boolean _selecting = false;
-    private final Queue<Runnable> _actions = new ArrayDeque<>();
+    private Queue<Runnable> _actions = new ArrayDeque<>();
     private final SelectorManager _selectorManager;
     private final int _id;
+    private final SelectorProducer _producer;
     private final ExecutionStrategy _strategy;
+    private final QueuedThreadPool _workers;
+    private final LongAdder _selects = new LongAdder();
+    private final LongAdder _tasks = new LongAdder();
+    private final LongAdder _submitted = new LongAdder();
+    private final LongAdder _wakeups = new LongAdder();
+    private final SampleStatistic _actionsPerCycle = new SampleStatistic();
+    private final SampleStatistic _keysPerCycle = new SampleStatistic();
+    private final Locker _sampleLocker = new Locker();
+    private long _sampleTime = System.nanoTime();
+    private long _sampleSelects;
+    private long _selectsPerSecond;
     private Selector _selector;
 
     public ManagedSelector(SelectorManager selectorManager, int id)
     {
         _selectorManager = selectorManager;
         _id = id;
-        SelectorProducer producer = new SelectorProducer();
+        SelectorProducer producer = _producer = new SelectorProducer();
         Executor executor = selectorManager.getExecutor();
-        _strategy = new EatWhatYouKill(producer,executor,_selectorManager.getBean(ReservedThreadExecutor.class));            
+        int affinity = selectorManager.getSelectorAffinityThreads();
+        if (affinity > 0)
+        {
+            _workers = newWorkers(executor, affinity);
+            addBean(_workers,true);
+            // No reserved threads, so tasks that may block are always executed
+            // by the shared executor rather than consumed by a selector thread.
+            _strategy = new EatWhatYouKill(producer,new AffinityExecutor(executor),new ReservedThreadExecutor(_workers,0));
+        }
+        else
+        {
+            _workers = null;
+            _strategy = new EatWhatYouKill(producer,executor,_selectorManager.getBean(ReservedThreadExecutor.class));
+        }
         addBean(_strategy,true);
         setStopTimeout(5000);
     }
 
+    private QueuedThreadPool newWorkers(Executor executor, int threads)
+    {
+        // One more thread than configured, as one is always selecting.
+        QueuedThreadPool workers = new QueuedThreadPool(threads + 1, 1);
+        String name = executor instanceof QueuedThreadPool ? ((QueuedThreadPool)executor).getName() : "qtp" + _selectorManager.hashCode();
+        workers.setName(name + "-selector" + _id);
+        if (executor instanceof QueuedThreadPool)
+            workers.setDaemon(((QueuedThreadPool)executor).isDaemon());
+        return workers;
+    }
+
     public Selector getSelector()
     {
         return _selector;
@@ -96,7 +144,10 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
 
         // The normal strategy obtains the produced task, schedules
         // a new thread to produce more, runs the task and then exits.
-        _selectorManager.execute(_strategy::produce);
+        if (_workers == null)
+            _selectorManager.execute(_strategy::produce);
+        else
+            _workers.execute(_strategy::produce);
     }
 
     public int size()
@@ -107,6 +158,101 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         return s.keys().size();
     }
 
+    @ManagedAttribute(value = "The number of keys registered with the selector", readonly = true)
+    public int getKeyCount()
+    {
+        return size();
+    }
+
+    @ManagedAttribute(value = "The number of selects", readonly = true)
+    public long getSelects()
+    {
+        return _selects.longValue();
+    }
+
+    @ManagedAttribute(value = "The rate of selects per second over the last sample period", readonly = true)
+    public long getSelectsPerSecond()
+    {
+        long selects = _selects.longValue();
+        long now = System.nanoTime();
+        try (Locker.Lock lock = _sampleLocker.lock())
+        {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(now - _sampleTime);
+            if (elapsed >= 1000)
+            {
+                _selectsPerSecond = (selects - _sampleSelects) * 1000 / elapsed;
+                _sampleSelects = selects;
+                _sampleTime = now;
+            }
+            return _selectsPerSecond;
+        }
+    }
+
+    @ManagedAttribute(value = "The number of tasks produced by the selector", readonly = true)
+    public long getTasks()
+    {
+        return _tasks.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of actions submitted to the selector", readonly = true)
+    public long getActionsSubmitted()
+    {
+        return _submitted.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of selector wakeups", readonly = true)
+    public long getWakeups()
+    {
+        return _wakeups.longValue();
+    }
+
+    @ManagedAttribute(value = "The mean number of actions run per select cycle", readonly = true)
+    public double getActionsPerCycleMean()
+    {
+        return _actionsPerCycle.getMean();
+    }
+
+    @ManagedAttribute(value = "The maximum number of actions run in a select cycle", readonly = true)
+    public long getActionsPerCycleMax()
+    {
+        return _actionsPerCycle.getMax();
+    }
+
+    @ManagedAttribute(value = "The mean number of keys selected per select cycle", readonly = true)
+    public double getSelectedKeysPerCycleMean()
+    {
+        return _keysPerCycle.getMean();
+    }
+
+    @ManagedAttribute(value = "The maximum number of keys selected in a select cycle", readonly = true)
+    public long getSelectedKeysPerCycleMax()
+    {
+        return _keysPerCycle.getMax();
+    }
+
+    @ManagedAttribute(value = "Whether the selector runs on its own threads", readonly = true)
+    public boolean isAffine()
+    {
+        return _workers != null;
+    }
+
+    @ManagedOperation(value = "Resets the selector statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _selects.reset();
+        _tasks.reset();
+        _submitted.reset();
+        _wakeups.reset();
+        _actionsPerCycle.reset();
+        _keysPerCycle.reset();
+        try (Locker.Lock lock = _sampleLocker.lock())
+        {
+            _sampleTime = System.nanoTime();
+            _sampleSelects = 0;
+            _selectsPerSecond = 0;
+        }
+    }
+
     @Override
     protected void doStop() throws Exception
     {
@@ -125,11 +271,21 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
             LOG.debug("Stopped {}", this);
     }
 
+    /**
+     * <p>Queues an action to be run by the selector thread.</p>
+     * <p>Wakeups are coalesced: only the first action submitted while the selector
+     * is blocked in (or about to enter) {@link Selector#select()} wakes it up, and
+     * all the actions queued until the selector thread runs them are taken as a
+     * single batch.</p>
+     *
+     * @param change the action to run
+     */
     public void submit(Runnable change)
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Queued change {} on {}", change, this);
 
+        _submitted.increment();
         Selector selector = null;
         try (Locker.Lock lock = _locker.lock())
         {
@@ -142,7 +298,10 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
             }
         }
         if (selector != null)
+        {
+            _wakeups.increment();
             selector.wakeup();
+        }
     }
 
     private Runnable processConnect(SelectionKey key, final Connect connect)
@@ -248,11 +407,20 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
     public String toString()
     {
         Selector selector = _selector;
-        return String.format("%s id=%s keys=%d selected=%d",
+        return String.format("%s id=%s keys=%d selected=%d selects=%d tasks=%d actions=%d wakeups=%d actions/cycle=%.1f/%d keys/cycle=%.1f/%d%s",
                 super.toString(),
                 _id,
                 selector != null && selector.isOpen() ? selector.keys().size() : -1,
-                selector != null && selector.isOpen() ? selector.selectedKeys().size() : -1);
+                selector != null && selector.isOpen() ? selector.selectedKeys().size() : -1,
+                _selects.longValue(),
+                _tasks.longValue(),
+                _submitted.longValue(),
+                _wakeups.longValue(),
+                _actionsPerCycle.getMean(),
+                _actionsPerCycle.getMax(),
+                _keysPerCycle.getMean(),
+                _keysPerCycle.getMax(),
+                _workers == null ? "" : " affine");
     }
 
     /**
@@ -280,6 +448,8 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
     {
         private Set<SelectionKey> _keys = Collections.emptySet();
         private Iterator<SelectionKey> _cursor = Collections.emptyIterator();
+        private Queue<Runnable> _batch = new ArrayDeque<>();
+        private int _cycleActions;
 
         @Override
         public Runnable produce()
@@ -288,11 +458,17 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
             {
                 Runnable task = processSelected();
                 if (task != null)
+                {
+                    _tasks.increment();
                     return task;
+                }
 
                 Runnable action = nextAction();
                 if (action != null)
+                {
+                    _tasks.increment();
                     return action;
+                }
 
                 update();
 
@@ -305,17 +481,26 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         {
             while (true)
             {
-                Runnable action;
-                try (Locker.Lock lock = _locker.lock())
+                Runnable action = _batch.poll();
+                if (action == null)
                 {
-                    action = _actions.poll();
-                    if (action == null)
+                    try (Locker.Lock lock = _locker.lock())
                     {
-                        // No more actions, so we need to select
-                        _selecting = true;
-                        return null;
+                        if (_actions.isEmpty())
+                        {
+                            // No more actions, so we need to select
+                            _selecting = true;
+                            return null;
+                        }
+
+                        // Take all the queued actions with a single lock.
+                        Queue<Runnable> batch = _actions;
+                        _actions = _batch;
+                        _batch = batch;
                     }
+                    action = _batch.poll();
                 }
+                _cycleActions++;
 
                 if (Invocable.getInvocationType(action)==InvocationType.BLOCKING)
                     return action;
@@ -343,7 +528,10 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
                 {
                     if (LOG.isDebugEnabled())
                         LOG.debug("Selector loop waiting on select");
+                    _actionsPerCycle.set(_cycleActions);
+                    _cycleActions = 0;
                     int selected = selector.select();
+                    _selects.increment();
                     if (LOG.isDebugEnabled())
                         LOG.debug("Selector loop woken up from select, {}/{} selected", selected, selector.keys().size());
 
@@ -355,6 +543,7 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
 
                     _keys = selector.selectedKeys();
                     _cursor = _keys.iterator();
+                    _keysPerCycle.set(_keys.size());
 
                     return true;
                 }
@@ -446,6 +635,50 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         }
     }
 
+    /**
+     * <p>Routes the executions of the strategy to the threads dedicated to this selector:
+     * producing and tasks that will not block are run by the selector threads, while
+     * tasks that may block are executed by the shared executor.</p>
+     */
+    private class AffinityExecutor implements Executor
+    {
+        private final Executor _executor;
+
+        private AffinityExecutor(Executor executor)
+        {
+            _executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable task)
+        {
+            if (task == _strategy)
+            {
+                _workers.execute(task);
+                return;
+            }
+
+            switch (Invocable.getInvocationType(task))
+            {
+                case NON_BLOCKING:
+                    _workers.execute(task);
+                    break;
+                case EITHER:
+                    _workers.execute(() -> Invocable.invokeNonBlocking(task));
+                    break;
+                default:
+                    _executor.execute(task);
+                    break;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), _workers.getName());
+        }
+    }
+
     private abstract static class NonBlockingAction implements Runnable, Invocable
     {
         @Override
@@ -455,7 +688,7 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         }
     }
 
-    private class DumpKeys implements Runnable
+    private class DumpKeys extends NonBlockingAction
     {
         private final CountDownLatch latch = new CountDownLatch(1);
         private final List<Object> _dumps;
@@ -468,6 +701,15 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         @Override
         public void run()
         {
+            // Run by the selector thread, so the actions of the batch
+            // being run are dumped along with those still queued.
+            List<Runnable> actions = new ArrayList<>(_producer._batch);
+            try (Locker.Lock lock = _locker.lock())
+            {
+                actions.addAll(_actions);
+            }
+            _dumps.add(new DumpableCollection("actions", actions));
+
             Selector selector = _selector;
             if (selector != null && selector.isOpen())
             {
@@ -25,8 +25,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedObject;
 
-public class MappedByteBufferPool implements ByteBufferPool
+@ManagedObject
+public class MappedByteBufferPool extends AbstractByteBufferPool
 {
     private final ConcurrentMap<Integer, Bucket> directBuffers = new ConcurrentHashMap<>();
     private final ConcurrentMap<Integer, Bucket> heapBuffers = new ConcurrentHashMap<>();
@@ -50,15 +52,30 @@ public class MappedByteBufferPool implements ByteBufferPool
     }
     
     public MappedByteBufferPool(int factor,int maxQueue,Function<Integer, Bucket> newBucket)
+    {
+        this(factor,maxQueue,newBucket,-1,-1);
+    }
+
+    /**
+     * @param factor the capacity factor of the buckets
+     * @param maxQueue the max number of buffers per bucket, or -1 for unlimited
+     * @param newBucket the function that creates new buckets, or null for the default
+     * @param maxHeapMemory the max heap memory retained, -1 for unlimited or 0 for a heuristic
+     * @param maxDirectMemory the max direct memory retained, -1 for unlimited or 0 for a heuristic
+     */
+    public MappedByteBufferPool(int factor,int maxQueue,Function<Integer, Bucket> newBucket,long maxHeapMemory,long maxDirectMemory)
     {
         _factor = factor<=0?1024:factor;
         _maxQueue = maxQueue;
         _newBucket = newBucket!=null?newBucket:i->new Bucket(this,i*_factor,_maxQueue);
+        setMaxHeapMemory(maxHeapMemory);
+        setMaxDirectMemory(maxDirectMemory);
     }
 
     @Override
     public ByteBuffer acquire(int size, boolean direct)
     {
+        checkIdle();
         int b = bucketFor(size);
         ConcurrentMap<Integer, Bucket> buffers = bucketsFor(direct);
 
@@ -84,6 +101,7 @@ public class MappedByteBufferPool implements ByteBufferPool
         bucket.release(buffer);
     }
 
+    @Override
     public void clear()
     {
         directBuffers.values().forEach(Bucket::clear);
@@ -100,6 +118,12 @@ public class MappedByteBufferPool implements ByteBufferPool
         return bucket;
     }
 
+    @Override
+    protected Iterable<Bucket> buckets(boolean direct)
+    {
+        return bucketsFor(direct).values();
+    }
+
     // Package local for testing
     ConcurrentMap<Integer, Bucket> bucketsFor(boolean direct)
     {
@@ -28,6 +28,8 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
@@ -60,6 +62,7 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
     private long _connectTimeout = DEFAULT_CONNECT_TIMEOUT;
     private long _selectorIndex;
     private int _reservedThreads = -1;
+    private int _selectorAffinityThreads;
 
     public static int defaultSchedulers(Executor executor)
     {
@@ -157,6 +160,51 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
         _reservedThreads = threads;
     }
     
+    /**
+     * @return the number of threads dedicated to each selector, or 0 if selectors share the executor
+     * @see #setSelectorAffinityThreads(int)
+     */
+    @ManagedAttribute("The number of threads dedicated to each selector")
+    public int getSelectorAffinityThreads()
+    {
+        return _selectorAffinityThreads;
+    }
+
+    /**
+     * Set the number of threads dedicated to each selector.
+     * <p>If greater than 0, each {@link ManagedSelector} has its own small thread pool
+     * that runs its select loop and the tasks it produces that will not block, so that
+     * the non-blocking work of a connection stays on the threads of its selector rather than
+     * migrating across the threads of the shared executor. Tasks that may block are still
+     * executed by the shared executor. The Java platform cannot pin threads to cores, so
+     * this mode relies on the OS scheduler keeping the few threads of each selector warm.</p>
+     * @param threads the number of threads, in addition to the selecting thread, dedicated
+     * to each selector, or 0 (the default) to run the selectors on the shared executor.
+     */
+    public void setSelectorAffinityThreads(int threads)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _selectorAffinityThreads = threads;
+    }
+
+    /**
+     * @return the load of each selector, as keys, selects per second and tasks produced
+     */
+    @ManagedAttribute("The load of each selector")
+    public List<String> getSelectorLoads()
+    {
+        List<String> loads = new ArrayList<>(_selectors.length);
+        for (int i = 0; i < _selectors.length; i++)
+        {
+            ManagedSelector selector = _selectors[i];
+            if (selector != null)
+                loads.add(String.format("id=%d keys=%d selects/s=%d tasks=%d",
+                        i, selector.getKeyCount(), selector.getSelectsPerSecond(), selector.getTasks()));
+        }
+        return loads;
+    }
+
     /**
      * Executes the given task in a different thread.
      *
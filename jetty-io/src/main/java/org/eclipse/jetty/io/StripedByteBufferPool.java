@@ -0,0 +1,289 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/**
+ * <p>A {@link ByteBufferPool} that keeps small lock-free, thread-striped caches
+ * in front of shared buckets.</p>
+ * <p>Buffers are grouped in buckets of capacity multiple of {@code increment},
+ * as for {@link ArrayByteBufferPool}. Each bucket has a number of stripes, and a
+ * thread always hits the same stripe, so that selector and worker threads
+ * acquiring and releasing buffers of the same size do not contend on a single
+ * queue. When a stripe is full, released buffers spill over to the shared bucket;
+ * when a stripe is empty, buffers are taken from the shared bucket, so that
+ * buffers rebalance between stripes.</p>
+ * <p>The buffers cached in the stripes count towards the memory limits of
+ * {@link AbstractByteBufferPool}, like those in the shared buckets; only the
+ * buffers of the shared buckets are evicted when idle.</p>
+ */
+@ManagedObject
+public class StripedByteBufferPool extends AbstractByteBufferPool
+{
+    private final int _min;
+    private final int _inc;
+    private final int _stripeCapacity;
+    private final Stripes[] _direct;
+    private final Stripes[] _indirect;
+    private final LongAdder _stripeHits = new LongAdder();
+
+    public StripedByteBufferPool()
+    {
+        this(-1,-1,-1,-1,-1,0,0);
+    }
+
+    public StripedByteBufferPool(int minSize, int increment, int maxSize)
+    {
+        this(minSize,increment,maxSize,-1,-1,0,0);
+    }
+
+    /**
+     * @param minSize the minimum buffer capacity that is pooled
+     * @param increment the capacity increment between buckets
+     * @param maxSize the maximum buffer capacity that is pooled
+     * @param stripes the number of stripes per bucket, or -1 for the number of available processors
+     * @param stripeCapacity the number of buffers cached in each stripe, or -1 for the default
+     * @param maxHeapMemory the max heap memory retained, -1 for unlimited or 0 for a heuristic
+     * @param maxDirectMemory the max direct memory retained, -1 for unlimited or 0 for a heuristic
+     */
+    public StripedByteBufferPool(int minSize, int increment, int maxSize, int stripes, int stripeCapacity, long maxHeapMemory, long maxDirectMemory)
+    {
+        if (minSize<=0)
+            minSize=0;
+        if (increment<=0)
+            increment=1024;
+        if (maxSize<=0)
+            maxSize=64*1024;
+        if (minSize>=increment)
+            throw new IllegalArgumentException("minSize >= increment");
+        if ((maxSize%increment)!=0 || increment>=maxSize)
+            throw new IllegalArgumentException("increment must be a divisor of maxSize");
+        if (stripes<=0)
+            stripes=Runtime.getRuntime().availableProcessors();
+        if (stripeCapacity<=0)
+            stripeCapacity=4;
+        _min=minSize;
+        _inc=increment;
+        _stripeCapacity=stripeCapacity;
+
+        _direct=new Stripes[maxSize/increment];
+        _indirect=new Stripes[maxSize/increment];
+        int size=0;
+        for (int i=0;i<_direct.length;i++)
+        {
+            size+=_inc;
+            _direct[i]=new Stripes(size,stripes,true);
+            _indirect[i]=new Stripes(size,stripes,false);
+        }
+        setMaxHeapMemory(maxHeapMemory);
+        setMaxDirectMemory(maxDirectMemory);
+    }
+
+    @Override
+    public ByteBuffer acquire(int size, boolean direct)
+    {
+        checkIdle();
+        Stripes stripes = stripesFor(size,direct);
+        if (stripes==null)
+            return newByteBuffer(size,direct);
+        return stripes.acquire();
+    }
+
+    @Override
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer==null)
+            return;
+
+        Stripes stripes = stripesFor(buffer.capacity(),buffer.isDirect());
+        if (stripes==null || stripes._shared.getCapacity()!=buffer.capacity())
+            return;
+        stripes.release(buffer);
+    }
+
+    @Override
+    public void clear()
+    {
+        for (int i=0;i<_direct.length;i++)
+        {
+            _direct[i].clear();
+            _indirect[i].clear();
+        }
+    }
+
+    @Override
+    public long getHits()
+    {
+        return super.getHits()+_stripeHits.longValue();
+    }
+
+    @ManagedAttribute("The number of stripes per bucket")
+    public int getStripes()
+    {
+        return _direct[0]._stripes.length;
+    }
+
+    @ManagedAttribute("The number of ByteBuffers cached per stripe")
+    public int getStripeCapacity()
+    {
+        return _stripeCapacity;
+    }
+
+    @Override
+    protected Iterable<Bucket> buckets(boolean direct)
+    {
+        Stripes[] stripes = direct ? _direct : _indirect;
+        List<Bucket> buckets = new ArrayList<>(stripes.length);
+        for (Stripes s : stripes)
+            buckets.add(s._shared);
+        return buckets;
+    }
+
+    private Stripes stripesFor(int size, boolean direct)
+    {
+        if (size<=_min)
+            return null;
+        int b=(size-1)/_inc;
+        if (b>=_direct.length)
+            return null;
+        return direct?_direct[b]:_indirect[b];
+    }
+
+    // Package local for testing
+    int shared(int size, boolean direct)
+    {
+        Stripes stripes = stripesFor(size,direct);
+        return stripes==null ? 0 : stripes._shared.size();
+    }
+
+    // Package local for testing
+    int cached(int size, boolean direct)
+    {
+        Stripes stripes = stripesFor(size,direct);
+        if (stripes==null)
+            return 0;
+        int cached=0;
+        for (AtomicReferenceArray<ByteBuffer> stripe : stripes._stripes)
+        {
+            for (int i=0;i<stripe.length();i++)
+            {
+                if (stripe.get(i)!=null)
+                    cached++;
+            }
+        }
+        return cached;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{heap=%d/%d,direct=%d/%d,stripes=%d}",
+                getClass().getSimpleName(),hashCode(),
+                getHeapMemory(),getMaxHeapMemory(),
+                getDirectMemory(),getMaxDirectMemory(),
+                getStripes());
+    }
+
+    /**
+     * <p>The stripes of a bucket: per-thread lock-free slot arrays backed by
+     * a shared {@link Bucket}.</p>
+     */
+    private class Stripes
+    {
+        private final boolean _isDirect;
+        private final AtomicReferenceArray<ByteBuffer>[] _stripes;
+        private final Bucket _shared;
+
+        @SuppressWarnings("unchecked")
+        private Stripes(int capacity, int stripes, boolean direct)
+        {
+            _isDirect=direct;
+            _shared=new Bucket(StripedByteBufferPool.this,capacity,-1);
+            _stripes=(AtomicReferenceArray<ByteBuffer>[])new AtomicReferenceArray<?>[stripes];
+            for (int i=0;i<stripes;i++)
+                _stripes[i]=new AtomicReferenceArray<>(_stripeCapacity);
+        }
+
+        private AtomicReferenceArray<ByteBuffer> stripe()
+        {
+            return _stripes[(int)(Thread.currentThread().getId()%_stripes.length)];
+        }
+
+        private ByteBuffer acquire()
+        {
+            AtomicReferenceArray<ByteBuffer> stripe = stripe();
+            for (int i=0;i<stripe.length();i++)
+            {
+                ByteBuffer buffer = stripe.get(i);
+                if (buffer!=null && stripe.compareAndSet(i,buffer,null))
+                {
+                    unreserve(buffer.capacity(),_isDirect);
+                    _stripeHits.increment();
+                    return buffer;
+                }
+            }
+            return _shared.acquire(_isDirect);
+        }
+
+        private void release(ByteBuffer buffer)
+        {
+            BufferUtil.clear(buffer);
+            int capacity = buffer.capacity();
+            AtomicReferenceArray<ByteBuffer> stripe = stripe();
+            for (int i=0;i<stripe.length();i++)
+            {
+                if (stripe.get(i)==null)
+                {
+                    // Over the memory limit, let the GC have the buffer.
+                    if (!reserve(capacity,_isDirect))
+                        return;
+                    if (stripe.compareAndSet(i,null,buffer))
+                        return;
+                    unreserve(capacity,_isDirect);
+                }
+            }
+            _shared.release(buffer);
+        }
+
+        private void clear()
+        {
+            // Only unreserve the buffers actually removed, as other
+            // threads may be acquiring and releasing concurrently.
+            for (AtomicReferenceArray<ByteBuffer> stripe : _stripes)
+            {
+                for (int i=0;i<stripe.length();i++)
+                {
+                    ByteBuffer buffer = stripe.getAndSet(i,null);
+                    if (buffer!=null)
+                        unreserve(buffer.capacity(),_isDirect);
+                }
+            }
+            _shared.clear();
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.util.BufferUtil;
@@ -42,6 +43,20 @@ import org.eclipse.jetty.util.thread.Invocable.InvocationType;
  * The abstract method {@link #onIncompleteFlush()} is called when not all content has been written after a call to
  * flush and should organize for the {@link #completeWrite()} method to be called when a subsequent call to flush
  * should  be able to make more progress.
+ * <p>
+ * If an aggregation size is set with {@link #setAggregationSize(int)}, writes made with
+ * {@link #aggregate(Callback, ByteBuffer...)} are copied into an aggregation buffer if they fit, so that the
+ * content of several consecutive writes (for example small pipelined responses) is written with a single
+ * gathering write.  The aggregated content is written ahead of the next write, or by a call to
+ * {@link #flushAggregated()}, which {@link #onAggregated()} should arrange to happen.
+ * </p>
+ * <p>
+ * The callback of an aggregated write is succeeded as soon as its content is copied, before it reaches the
+ * network, and a later failure to write the aggregated content is not reported to it: the endpoint is closed
+ * instead. Aggregation must therefore only be used for writes, such as the last write of a response, whose
+ * loss after their callback completes is tolerated by the caller, just as for content accepted by the send
+ * buffer of a socket that is later reset.
+ * </p>
  */
 abstract public class WriteFlusher
 {
@@ -51,18 +66,24 @@ abstract public class WriteFlusher
     private static final EnumMap<StateType, Set<StateType>> __stateTransitions = new EnumMap<>(StateType.class);
     private static final State __IDLE = new IdleState();
     private static final State __WRITING = new WritingState();
+    private static final State __FLUSHING = new FlushingState(null,null);
     private static final State __COMPLETING = new CompletingState();
     private final EndPoint _endPoint;
     private final AtomicReference<State> _state = new AtomicReference<>();
+    private final AtomicBoolean _aggregateScheduled = new AtomicBoolean();
+    private ByteBuffer _aggregate;
+    private volatile int _aggregationSize;
+    private volatile long _aggregationDelay=1;
 
     static
     {
         // fill the state machine
-        __stateTransitions.put(StateType.IDLE, EnumSet.of(StateType.WRITING));
+        __stateTransitions.put(StateType.IDLE, EnumSet.of(StateType.WRITING, StateType.FLUSHING));
         __stateTransitions.put(StateType.WRITING, EnumSet.of(StateType.IDLE, StateType.PENDING, StateType.FAILED));
-        __stateTransitions.put(StateType.PENDING, EnumSet.of(StateType.COMPLETING,StateType.IDLE));
+        __stateTransitions.put(StateType.PENDING, EnumSet.of(StateType.COMPLETING, StateType.IDLE, StateType.PENDING, StateType.FLUSHING));
         __stateTransitions.put(StateType.COMPLETING, EnumSet.of(StateType.IDLE, StateType.PENDING, StateType.FAILED));
         __stateTransitions.put(StateType.FAILED, EnumSet.of(StateType.IDLE));
+        __stateTransitions.put(StateType.FLUSHING, EnumSet.of(StateType.IDLE, StateType.FLUSHING, StateType.PENDING, StateType.FAILED));
     }
 
     // A write operation may either complete immediately:
@@ -77,6 +98,18 @@ abstract public class WriteFlusher
     // the callback's complete or respectively failed methods will be called.
     // If a failure happens in PENDING state, then the fail method calls the pending callback and moves to IDLE state
     //
+    // Aggregated content is flushed without a callback, and is left pending without a callback if incomplete:
+    //     IDLE-->FLUSHING-->IDLE
+    //     IDLE-->FLUSHING-->PENDING(no callback)-->FLUSHING-->IDLE
+    // A write attempted while aggregated content is pending without a callback is queued behind it:
+    //     PENDING(no callback)-->PENDING-->COMPLETING-->IDLE
+    // Aggregated content pending without a callback is completed as a flush, so that writes are queued meanwhile:
+    //     PENDING(no callback)-->FLUSHING-->FLUSHING(queued)-->PENDING-->COMPLETING-->IDLE
+    // A write attempted while flushing is queued in the FLUSHING state, and the flush then leaves it pending,
+    // ahead of any remaining aggregated content, to be completed by completeWrite:
+    //     IDLE-->FLUSHING-->FLUSHING(queued)-->PENDING-->COMPLETING-->IDLE
+    //   FLUSHING(queued)--(fail)-->FAILED-->IDLE
+    //
     //   IDLE--(fail)-->IDLE
     //   IDLE-->WRITING--(fail)-->FAILED-->IDLE
     //   IDLE-->WRITING-->PENDING--(fail)-->IDLE
@@ -93,13 +126,53 @@ abstract public class WriteFlusher
         _endPoint = endPoint;
     }
 
+    /**
+     * @return the size in bytes of the aggregation buffer, or 0 if writes are not aggregated
+     */
+    public int getAggregationSize()
+    {
+        return _aggregationSize;
+    }
+
+    /**
+     * <p>Sets the size of the buffer used to aggregate small writes.</p>
+     * <p>Writes made with {@link #aggregate(Callback, ByteBuffer...)} whose content fits into the
+     * remaining space of the aggregation buffer are copied into it and their callbacks succeeded immediately.</p>
+     *
+     * @param size the size in bytes of the aggregation buffer, or 0 to not aggregate writes
+     */
+    public void setAggregationSize(int size)
+    {
+        _aggregationSize = size;
+    }
+
+    /**
+     * @return the max time in ms that aggregated content may wait before being flushed
+     */
+    public long getAggregationDelay()
+    {
+        return _aggregationDelay;
+    }
+
+    /**
+     * @param delay the max time in ms that aggregated content may wait before being flushed
+     * @throws IllegalArgumentException if the delay is not positive
+     */
+    public void setAggregationDelay(long delay)
+    {
+        if (delay<=0)
+            throw new IllegalArgumentException("Invalid aggregation delay: "+delay);
+        _aggregationDelay = delay;
+    }
+
     private enum StateType
     {
         IDLE,
         WRITING,
         PENDING,
         COMPLETING,
-        FAILED
+        FAILED,
+        FLUSHING
     }
 
     /**
@@ -203,6 +276,29 @@ abstract public class WriteFlusher
         }
     }
 
+    /**
+     * In FlushingState WriteFlusher is flushing the aggregated content, without a callback.
+     * A write attempted meanwhile is queued in a new FlushingState, to be left pending by the flush.
+     */
+    private static class FlushingState extends State
+    {
+        private final Callback _callback;
+        private final ByteBuffer[] _buffers;
+
+        private FlushingState(ByteBuffer[] buffers, Callback callback)
+        {
+            super(StateType.FLUSHING);
+            _buffers = buffers;
+            _callback = callback;
+        }
+
+        private void fail(Throwable cause)
+        {
+            if (_callback!=null)
+                _callback.failed(cause);
+        }
+    }
+
     /**
      * In FailedState no more operations are allowed. The current implementation will never recover from this state.
      */
@@ -296,6 +392,15 @@ abstract public class WriteFlusher
      */
     abstract protected void onIncompleteFlush();
 
+    /**
+     * Called when content has been added to an empty aggregation buffer. It should arrange for
+     * {@link #flushAggregated()} to be called from another thread within the
+     * {@link #getAggregationDelay() aggregation delay}.
+     */
+    protected void onAggregated()
+    {
+    }
+
     /**
      * Tries to switch state to WRITING. If successful it writes the given buffers to the EndPoint. If state transition
      * fails it'll fail the callback.
@@ -310,15 +415,79 @@ abstract public class WriteFlusher
      * @throws WritePendingException if unable to write due to prior pending write
      */
     public void write(Callback callback, ByteBuffer... buffers) throws WritePendingException
+    {
+        write(callback,buffers,false);
+    }
+
+    /**
+     * <p>Writes the given buffers as {@link #write(Callback, ByteBuffer...)} does, unless an
+     * {@link #setAggregationSize(int) aggregation size} is set and they fit into the remaining space
+     * of the aggregation buffer, in which case they are copied into it and the callback succeeded
+     * immediately.</p>
+     * <p>A failure to later write the aggregated content is not reported to the callback, but closes
+     * the endpoint, so this method must only be used for writes whose loss is tolerated by the caller
+     * once their callback has completed.</p>
+     *
+     * @param callback the callback to call on either failed or complete
+     * @param buffers the buffers to aggregate or flush to the endpoint
+     * @throws WritePendingException if unable to write due to prior pending write
+     */
+    public void aggregate(Callback callback, ByteBuffer... buffers) throws WritePendingException
+    {
+        write(callback,buffers,true);
+    }
+
+    private void write(Callback callback, ByteBuffer[] buffers, boolean aggregate) throws WritePendingException
     {
         if (DEBUG)
             LOG.debug("write: {} {}", this, BufferUtil.toDetailString(buffers));
 
-        if (!updateState(__IDLE,__WRITING))
-            throw new WritePendingException();
+        while (true)
+        {
+            State current=_state.get();
+            if (current==__IDLE)
+            {
+                if (updateState(__IDLE,__WRITING))
+                    break;
+            }
+            else if (current==__FLUSHING)
+            {
+                // Queue the write, to be left pending by the concurrent flush of the aggregated content
+                if (updateState(__FLUSHING,new FlushingState(buffers,callback)))
+                    return;
+            }
+            else if (current instanceof PendingState && ((PendingState)current)._callback==null)
+            {
+                // Queue the write behind the aggregated content left pending, to be completed by completeWrite
+                PendingState pending=(PendingState)current;
+                ByteBuffer[] gather=new ByteBuffer[pending._buffers.length+buffers.length];
+                System.arraycopy(pending._buffers,0,gather,0,pending._buffers.length);
+                System.arraycopy(buffers,0,gather,pending._buffers.length,buffers.length);
+                if (updateState(pending,new PendingState(gather,callback)))
+                    return;
+            }
+            else
+            {
+                throw new WritePendingException();
+            }
+        }
 
         try
         {
+            if (aggregate && _aggregationSize>0 && copyToAggregate(buffers))
+            {
+                if (!updateState(__WRITING,__IDLE))
+                    ignoreFail();
+                if (_aggregateScheduled.compareAndSet(false,true))
+                    onAggregated();
+                if (callback!=null)
+                    callback.succeeded();
+                return;
+            }
+
+            // Write any aggregated content ahead of these buffers
+            buffers=gatherAggregate(buffers);
+
             buffers=flush(buffers);
 
             // if we are incomplete?
@@ -355,27 +524,212 @@ abstract public class WriteFlusher
     }
 
 
+    /**
+     * Copies the buffers into the aggregation buffer if they fit.
+     * @param buffers the buffers to aggregate
+     * @return true if the buffers have been aggregated
+     */
+    private boolean copyToAggregate(ByteBuffer[] buffers)
+    {
+        long length=0;
+        for (ByteBuffer buffer : buffers)
+            length+=buffer.remaining();
+
+        // An empty write is a request to flush what has been aggregated
+        if (length==0)
+            return false;
+
+        if (_aggregate==null)
+        {
+            if (length>_aggregationSize)
+                return false;
+            _aggregate=_endPoint.isOptimizedForDirectBuffers()
+                ?BufferUtil.allocateDirect(_aggregationSize)
+                :BufferUtil.allocate(_aggregationSize);
+        }
+
+        if (_aggregate.remaining()+length>_aggregate.capacity())
+            return false;
+        if (BufferUtil.space(_aggregate)<length)
+            BufferUtil.compact(_aggregate);
+        for (ByteBuffer buffer : buffers)
+            BufferUtil.append(_aggregate,buffer);
+
+        if (DEBUG)
+            LOG.debug("aggregated {} {}", length, this);
+        return true;
+    }
+
+    /**
+     * @param buffers the buffers to write
+     * @return the buffers, preceded by the aggregated content if any
+     */
+    private ByteBuffer[] gatherAggregate(ByteBuffer[] buffers)
+    {
+        if (!BufferUtil.hasContent(_aggregate))
+            return buffers;
+        ByteBuffer[] gather = new ByteBuffer[buffers.length+1];
+        gather[0]=_aggregate;
+        System.arraycopy(buffers,0,gather,1,buffers.length);
+        return gather;
+    }
+
+    /**
+     * <p>Writes the aggregated content, if any, without blocking.</p>
+     * <p>If a write is in progress, the aggregated content is written by it. If the
+     * aggregated content cannot be fully written, it is left pending without a callback
+     * and {@link #onIncompleteFlush()} is called, so that it is completed by
+     * {@link #completeWrite()}. If it fails to write, the endpoint is closed.</p>
+     */
+    public void flushAggregated()
+    {
+        flushAggregated(true);
+    }
+
+    /**
+     * <p>Writes the aggregated content, if any, without blocking.</p>
+     *
+     * @param retry true to leave pending the aggregated content that cannot be written and to close
+     * the endpoint on failure, false to discard the content that cannot be written, as when the
+     * endpoint is being closed
+     */
+    void flushAggregated(boolean retry)
+    {
+        if (retry)
+            _aggregateScheduled.set(false);
+
+        if (!updateState(__IDLE,__FLUSHING))
+            return;
+
+        flushing(BufferUtil.hasContent(_aggregate)?new ByteBuffer[]{_aggregate}:null,retry);
+    }
+
+    /**
+     * <p>Writes the aggregated content while in the FLUSHING state, then leaves pending the content
+     * not written and any write queued meanwhile.</p>
+     *
+     * @param buffers the aggregated content to write, or null if there is none
+     * @param retry as for {@link #flushAggregated(boolean)}
+     */
+    private void flushing(ByteBuffer[] buffers, boolean retry)
+    {
+        ByteBuffer[] remaining=null;
+        IOException failure=null;
+        try
+        {
+            if (buffers!=null)
+                remaining=flush(buffers);
+        }
+        catch (IOException e)
+        {
+            if (DEBUG)
+                LOG.debug("flushAggregated exception", e);
+            failure=e;
+        }
+        if (failure!=null || !retry)
+        {
+            BufferUtil.clear(_aggregate);
+            remaining=null;
+        }
+
+        while (true)
+        {
+            State current=_state.get();
+            if (current.getType()!=StateType.FLUSHING)
+            {
+                // Failed while flushing, a queued write has been failed
+                ignoreFail();
+                break;
+            }
+
+            FlushingState queued=(FlushingState)current;
+            if (queued==__FLUSHING && remaining!=null)
+            {
+                // Leave the aggregated content not written pending, without a callback
+                if (!updateState(queued,new PendingState(remaining,null)))
+                    continue;
+                if (DEBUG)
+                    LOG.debug("flushAggregated incomplete {}", this);
+                onIncompleteFlush();
+                return;
+            }
+
+            if (queued==__FLUSHING || failure!=null)
+            {
+                if (!updateState(queued,__IDLE))
+                    continue;
+                if (failure!=null)
+                    queued.fail(failure);
+                break;
+            }
+
+            // Leave the queued write pending, after any aggregated content not written
+            PendingState pending=new PendingState(gatherAggregate(queued._buffers),queued._callback);
+            if (!updateState(queued,pending))
+                continue;
+            if (DEBUG)
+                LOG.debug("flushAggregated queued {}", this);
+            onIncompleteFlush();
+            return;
+        }
+
+        if (failure!=null)
+        {
+            if (retry)
+                _endPoint.close();
+            return;
+        }
+
+        if (DEBUG)
+            LOG.debug("flushAggregated complete {}", this);
+    }
+
+    /**
+     * @return whether there is aggregated content not yet written
+     */
+    public boolean hasAggregated()
+    {
+        return _aggregationSize>0 && BufferUtil.hasContent(_aggregate);
+    }
+
     /**
      * Complete a write that has not completed and that called {@link #onIncompleteFlush()} to request a call to this
      * method when a call to {@link EndPoint#flush(ByteBuffer...)} is likely to be able to progress.
      *
-     * It tries to switch from PENDING to COMPLETING. If state transition fails, then it does nothing as the callback
-     * should have been already failed. That's because the only way to switch from PENDING outside this method is
-     * {@link #onFail(Throwable)} or {@link #onClose()}
+     * It tries to switch from PENDING to COMPLETING, or to FLUSHING if only aggregated content is pending. If state
+     * transition fails because a write has been queued behind the aggregated content, it retries with the new pending
+     * state. Otherwise it does nothing as the callback should have been already failed. That's because the only other
+     * way to switch from PENDING outside this method is {@link #onFail(Throwable)} or {@link #onClose()}
      */
     public void completeWrite()
     {
         if (DEBUG)
             LOG.debug("completeWrite: {}", this);
 
-        State previous = _state.get();
+        PendingState pending;
+        while (true)
+        {
+            State previous = _state.get();
 
-        if (previous.getType()!=StateType.PENDING)
-            return; // failure already handled.
+            if (previous.getType()!=StateType.PENDING)
+                return; // failure already handled.
 
-        PendingState pending = (PendingState)previous;
-        if (!updateState(pending,__COMPLETING))
-            return; // failure already handled.
+            // A write may replace a pending state without callback, so retry with the current one.
+            pending = (PendingState)previous;
+            if (pending._callback==null)
+            {
+                // Only aggregated content is pending, complete it as a flush so that writes are queued meanwhile.
+                if (updateState(pending,__FLUSHING))
+                {
+                    flushing(pending.getBuffers(),true);
+                    return;
+                }
+            }
+            else if (updateState(pending,__COMPLETING))
+            {
+                break;
+            }
+        }
 
         try
         {
@@ -491,6 +845,19 @@ abstract public class WriteFlusher
                         return pending.fail(cause);
                     break;
 
+                case FLUSHING:
+                    if (DEBUG)
+                        LOG.debug("failed: {} {}", this, cause);
+
+                    // The flush of the aggregated content will go back to IDLE, fail any queued write now
+                    FlushingState queued = (FlushingState)current;
+                    if (updateState(queued,new FailedState(cause)))
+                    {
+                        queued.fail(cause);
+                        return queued._callback!=null;
+                    }
+                    break;
+
                 default:
                     if (DEBUG)
                         LOG.debug("failed: {} {}", this, cause);
@@ -519,6 +886,7 @@ abstract public class WriteFlusher
             case WRITING:
             case PENDING:
             case COMPLETING:
+            case FLUSHING:
                 return true;
             default:
                 return false;
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.io.ByteBufferPool.Bucket;
 import org.junit.Test;
@@ -169,4 +170,101 @@ public class ArrayByteBufferPoolTest
         assertEquals(2, bucket.size());
     }
 
+    @Test
+    public void testMaxMemory() throws Exception
+    {
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(-1,1024,8192,-1,2048,3*1024);
+
+        ByteBuffer heap1 = bufferPool.acquire(1024, false);
+        ByteBuffer heap2 = bufferPool.acquire(1024, false);
+        ByteBuffer heap3 = bufferPool.acquire(1024, false);
+        bufferPool.release(heap1);
+        bufferPool.release(heap2);
+        bufferPool.release(heap3);
+        assertEquals(2048, bufferPool.getHeapMemory());
+        assertEquals(2, bufferPool.bucketsFor(false)[0].size());
+
+        ByteBuffer direct1 = bufferPool.acquire(2048, true);
+        ByteBuffer direct2 = bufferPool.acquire(2048, true);
+        bufferPool.release(direct1);
+        bufferPool.release(direct2);
+        assertEquals(2048, bufferPool.getDirectMemory());
+
+        bufferPool.acquire(2048, true);
+        assertEquals(0, bufferPool.getDirectMemory());
+
+        bufferPool.clear();
+        assertEquals(0, bufferPool.getHeapMemory());
+        assertEquals(0, bufferPool.getDirectMemory());
+    }
+
+    @Test
+    public void testStatistics() throws Exception
+    {
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(-1,1024,8192);
+
+        ByteBuffer buffer = bufferPool.acquire(1000, true);
+        bufferPool.release(buffer);
+        bufferPool.acquire(1000, true);
+        bufferPool.acquire(1000, true);
+
+        Bucket bucket = bufferPool.bucketsFor(true)[0];
+        assertEquals(1, bucket.getHits());
+        assertEquals(2, bucket.getMisses());
+        assertEquals(1, bufferPool.getHits());
+        assertEquals(2, bufferPool.getMisses());
+        assertEquals(1, bufferPool.getDirectBuckets().size());
+        assertEquals(0, bufferPool.getHeapBuckets().size());
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception
+    {
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(-1,1024,8192);
+        Bucket bucket = bufferPool.bucketsFor(true)[0];
+
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i=0;i<buffers.length;i++)
+            buffers[i] = bufferPool.acquire(1024, true);
+        for (ByteBuffer buffer : buffers)
+            bufferPool.release(buffer);
+        assertEquals(4, bucket.size());
+
+        // The first eviction only marks the current buffers.
+        bufferPool.evictIdle();
+        assertEquals(4, bucket.size());
+
+        // One buffer is in use during the interval, the other 3 are idle.
+        bufferPool.release(bufferPool.acquire(1024, true));
+        bufferPool.evictIdle();
+        assertEquals(1, bucket.size());
+        assertEquals(3, bucket.getEvictions());
+        assertEquals(1024, bufferPool.getDirectMemory());
+
+        bufferPool.evictIdle();
+        assertEquals(0, bucket.size());
+        assertEquals(0, bufferPool.getDirectMemory());
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception
+    {
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(-1,1024,8192);
+        bufferPool.setIdleTimeout(100);
+        Bucket bucket = bufferPool.bucketsFor(false)[0];
+
+        bufferPool.release(bufferPool.acquire(1024, false));
+        assertEquals(1, bucket.size());
+
+        // Each sweep happens after the idle timeout, and the
+        // buffer is evicted at the second sweep after its release.
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bucket.size() > 0 && System.nanoTime() < end)
+        {
+            Thread.sleep(50);
+            bufferPool.acquire(4096, false);
+        }
+        assertEquals(0, bucket.size());
+        assertEquals(0, bufferPool.getHeapMemory());
+    }
 }
@@ -159,4 +159,42 @@ public class MappedByteBufferPoolTest
         assertEquals(2, bucket.size());
 
     }
+
+    @Test
+    public void testMaxMemory() throws Exception
+    {
+        MappedByteBufferPool bufferPool = new MappedByteBufferPool(1024,-1,null,-1,2048);
+
+        ByteBuffer buffer1 = bufferPool.acquire(1024, true);
+        ByteBuffer buffer2 = bufferPool.acquire(1024, true);
+        ByteBuffer buffer3 = bufferPool.acquire(1024, true);
+        bufferPool.release(buffer1);
+        bufferPool.release(buffer2);
+        bufferPool.release(buffer3);
+
+        assertEquals(2048, bufferPool.getDirectMemory());
+        assertEquals(2, bufferPool.bucketsFor(true).get(1).size());
+
+        assertSame(buffer2, bufferPool.acquire(1024, true));
+        assertEquals(1024, bufferPool.getDirectMemory());
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception
+    {
+        MappedByteBufferPool bufferPool = new MappedByteBufferPool();
+
+        ByteBuffer buffer1 = bufferPool.acquire(1024, false);
+        ByteBuffer buffer2 = bufferPool.acquire(1024, false);
+        bufferPool.release(buffer1);
+        bufferPool.release(buffer2);
+        Bucket bucket = bufferPool.bucketsFor(false).get(1);
+
+        bufferPool.evictIdle();
+        bufferPool.evictIdle();
+        assertEquals(0, bucket.size());
+        assertEquals(2, bucket.getEvictions());
+        assertEquals(0, bufferPool.getHeapMemory());
+        assertThat(bufferPool.getHeapBuckets().get(0), containsString("evictions=2"));
+    }
 }
@@ -21,6 +21,7 @@ package org.eclipse.jetty.io;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
@@ -28,9 +29,12 @@ import java.nio.channels.SocketChannel;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.toolchain.test.annotation.Slow;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.Invocable;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.TimerScheduler;
 import org.junit.After;
@@ -161,4 +165,255 @@ public class SelectorManagerTest
             selectorManager.stop();
         }
     }
+
+    @Test
+    public void testSelectorAffinity() throws Exception
+    {
+        final AtomicReference<String> fillThread = new AtomicReference<>();
+        final CountDownLatch filled = new CountDownLatch(1);
+        SelectorManager selectorManager = new SelectorManager(executor, scheduler, 1)
+        {
+            @Override
+            protected EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey key) throws IOException
+            {
+                return new SocketChannelEndPoint(channel, selector, key, getScheduler());
+            }
+
+            @Override
+            public Connection newConnection(SelectableChannel channel, EndPoint endpoint, Object attachment) throws IOException
+            {
+                return new AbstractConnection(endpoint, executor)
+                {
+                    private final Callback _fillable = new Callback()
+                    {
+                        @Override
+                        public void succeeded()
+                        {
+                            onFillable();
+                        }
+
+                        @Override
+                        public InvocationType getInvocationType()
+                        {
+                            return InvocationType.NON_BLOCKING;
+                        }
+                    };
+
+                    @Override
+                    public void onOpen()
+                    {
+                        super.onOpen();
+                        getEndPoint().fillInterested(_fillable);
+                    }
+
+                    @Override
+                    public void onFillable()
+                    {
+                        try
+                        {
+                            ByteBuffer buffer = BufferUtil.allocate(64);
+                            if (getEndPoint().fill(buffer) > 0)
+                            {
+                                fillThread.set(Thread.currentThread().getName());
+                                filled.countDown();
+                            }
+                            getEndPoint().fillInterested(_fillable);
+                        }
+                        catch (IOException x)
+                        {
+                            getEndPoint().close();
+                        }
+                    }
+                };
+            }
+        };
+        selectorManager.setSelectorAffinityThreads(2);
+        selectorManager.start();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open())
+        {
+            server.bind(new InetSocketAddress("localhost", 0));
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress()))
+            {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                selectorManager.accept(channel);
+
+                client.write(BufferUtil.toBuffer("hello"));
+                Assert.assertTrue(filled.await(5, TimeUnit.SECONDS));
+
+                // The non-blocking fill ran on the selector threads, not the shared pool.
+                Assert.assertTrue(fillThread.get(), fillThread.get().startsWith(executor.getName() + "-selector0"));
+
+                ManagedSelector selector = selectorManager.getBean(ManagedSelector.class);
+                Assert.assertTrue(selector.isAffine());
+                Assert.assertEquals(1, selector.getKeyCount());
+                Assert.assertTrue(selector.getSelects() > 0);
+                Assert.assertTrue(selector.getTasks() > 0);
+                Assert.assertEquals(1, selectorManager.getSelectorLoads().size());
+                Assert.assertTrue(selector.toString().contains("affine"));
+            }
+        }
+        finally
+        {
+            selectorManager.stop();
+        }
+    }
+
+    @Test
+    public void testCoalescedWakeups() throws Exception
+    {
+        SelectorManager selectorManager = new SelectorManager(executor, scheduler, 1)
+        {
+            @Override
+            protected EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey key) throws IOException
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Connection newConnection(SelectableChannel channel, EndPoint endpoint, Object attachment) throws IOException
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+        selectorManager.start();
+
+        try
+        {
+            ManagedSelector selector = selectorManager.getBean(ManagedSelector.class);
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            int actions = 100;
+            CountDownLatch done = new CountDownLatch(actions);
+
+            // Keep the selector thread busy, so the following
+            // actions are all queued within the same select cycle.
+            selector.submit(new NonBlocking(() ->
+            {
+                running.countDown();
+                try
+                {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new RuntimeException(x);
+                }
+            }));
+            Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+            long wakeups = selector.getWakeups();
+
+            for (int i = 0; i < actions; i++)
+                selector.submit(new NonBlocking(done::countDown));
+            release.countDown();
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+            Assert.assertEquals(wakeups, selector.getWakeups());
+            Assert.assertEquals(actions + 1, selector.getActionsSubmitted());
+
+            // Wait for the batch to be accounted when the selector selects again.
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (selector.getActionsPerCycleMax() <= actions && System.nanoTime() < end)
+                Thread.sleep(10);
+            Assert.assertEquals(actions + 1, selector.getActionsPerCycleMax());
+            Assert.assertTrue(selector.toString().contains("wakeups="));
+        }
+        finally
+        {
+            selectorManager.stop();
+        }
+    }
+
+    @Test
+    public void testDumpQueuedActions() throws Exception
+    {
+        SelectorManager selectorManager = new SelectorManager(executor, scheduler, 1)
+        {
+            @Override
+            protected EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey key) throws IOException
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Connection newConnection(SelectableChannel channel, EndPoint endpoint, Object attachment) throws IOException
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+        selectorManager.start();
+
+        try
+        {
+            ManagedSelector selector = selectorManager.getBean(ManagedSelector.class);
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            selector.submit(new NonBlocking(() ->
+            {
+                running.countDown();
+                try
+                {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new RuntimeException(x);
+                }
+            }));
+            Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+
+            // The dump is queued before the action, so the action is
+            // still in the batch being run when the dump is taken.
+            StringBuilder dump = new StringBuilder();
+            Thread dumper = new Thread(() ->
+            {
+                try
+                {
+                    selector.dump(dump, "");
+                }
+                catch (IOException x)
+                {
+                    throw new RuntimeException(x);
+                }
+            });
+            dumper.start();
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (selector.getActionsSubmitted() < 2 && System.nanoTime() < end)
+                Thread.sleep(10);
+            Runnable action = new NonBlocking(() -> {});
+            selector.submit(action);
+            release.countDown();
+            dumper.join(TimeUnit.SECONDS.toMillis(10));
+
+            Assert.assertFalse(dumper.isAlive());
+            Assert.assertTrue(dump.toString(), dump.toString().contains(action.toString()));
+        }
+        finally
+        {
+            selectorManager.stop();
+        }
+    }
+
+    private static class NonBlocking implements Runnable, Invocable
+    {
+        private final Runnable _task;
+
+        private NonBlocking(Runnable task)
+        {
+            _task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            _task.run();
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return InvocationType.NON_BLOCKING;
+        }
+    }
 }
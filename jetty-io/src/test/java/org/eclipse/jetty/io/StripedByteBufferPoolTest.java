@@ -0,0 +1,264 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class StripedByteBufferPoolTest
+{
+    @Test
+    public void testMinimumRelease() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000);
+
+        for (int size=1;size<=9;size++)
+        {
+            ByteBuffer buffer = bufferPool.acquire(size, true);
+            assertTrue(buffer.isDirect());
+            assertEquals(size,buffer.capacity());
+
+            bufferPool.release(buffer);
+            assertEquals(0,bufferPool.cached(size,true));
+            assertEquals(0,bufferPool.getDirectMemory());
+        }
+    }
+
+    @Test
+    public void testMaxRelease() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000);
+
+        for (int size=999;size<=1001;size++)
+        {
+            bufferPool.clear();
+            ByteBuffer buffer = bufferPool.acquire(size, true);
+            assertTrue(buffer.isDirect());
+            assertThat(buffer.capacity(),greaterThanOrEqualTo(size));
+
+            bufferPool.release(buffer);
+            assertEquals(size<=1000,bufferPool.cached(size,true)==1);
+        }
+    }
+
+    @Test
+    public void testAcquireRelease() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000);
+
+        for (int size=390;size<=510;size++)
+        {
+            bufferPool.clear();
+            ByteBuffer buffer = bufferPool.acquire(size, false);
+            assertThat(buffer.capacity(),greaterThanOrEqualTo(size));
+            assertThat(buffer.capacity(),lessThanOrEqualTo(size+99));
+            assertEquals(0,buffer.remaining());
+
+            bufferPool.release(buffer);
+            assertEquals(buffer.capacity(),bufferPool.getHeapMemory());
+
+            ByteBuffer again = bufferPool.acquire(size, false);
+            assertSame(buffer,again);
+            assertEquals(0,bufferPool.getHeapMemory());
+        }
+    }
+
+    @Test
+    public void testStripeSpillsToShared() throws Exception
+    {
+        int stripeCapacity = 4;
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(0,1024,8192,1,stripeCapacity,-1,-1);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i=0;i<stripeCapacity+3;i++)
+            buffers.add(bufferPool.acquire(1024,true));
+        buffers.forEach(bufferPool::release);
+
+        assertEquals(stripeCapacity,bufferPool.cached(1024,true));
+        assertEquals(3,bufferPool.shared(1024,true));
+        assertEquals((stripeCapacity+3)*1024,bufferPool.getDirectMemory());
+
+        for (int i=0;i<stripeCapacity+3;i++)
+            assertTrue(buffers.contains(bufferPool.acquire(1024,true)));
+        assertEquals(0,bufferPool.cached(1024,true));
+        assertEquals(0,bufferPool.shared(1024,true));
+        assertEquals(0,bufferPool.getDirectMemory());
+    }
+
+    @Test
+    public void testRebalanceAcrossThreads() throws Exception
+    {
+        // Many stripes, so that two threads are unlikely to share one.
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(0,1024,8192,64,1,-1,-1);
+
+        // A buffer released by another thread is found via the shared queue
+        // once the other thread's stripe is full.
+        List<ByteBuffer> released = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        new Thread(() ->
+        {
+            for (int i=0;i<2;i++)
+                released.add(bufferPool.acquire(2048,false));
+            released.forEach(bufferPool::release);
+            latch.countDown();
+        }).start();
+        assertTrue(latch.await(5,TimeUnit.SECONDS));
+
+        assertEquals(1,bufferPool.shared(2048,false));
+        ByteBuffer buffer = bufferPool.acquire(2048,false);
+        assertTrue(released.contains(buffer));
+    }
+
+    @Test
+    public void testMaxDirectMemory() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(0,1024,8192,1,4,-1,3*1024);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i=0;i<5;i++)
+            buffers.add(bufferPool.acquire(1024,true));
+        buffers.forEach(bufferPool::release);
+
+        assertEquals(3*1024,bufferPool.getDirectMemory());
+        assertEquals(3,bufferPool.cached(1024,true));
+
+        // Heap memory is not limited.
+        buffers.clear();
+        for (int i=0;i<5;i++)
+            buffers.add(bufferPool.acquire(1024,false));
+        buffers.forEach(bufferPool::release);
+        assertEquals(5*1024,bufferPool.getHeapMemory());
+    }
+
+    @Test
+    public void testForeignBufferNotPooled() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(0,1024,8192);
+        bufferPool.release(ByteBuffer.allocate(1000));
+        assertEquals(0,bufferPool.getHeapMemory());
+        assertEquals(1024,bufferPool.acquire(1000,false).capacity());
+    }
+
+    @Test
+    public void testClearWhileInUse() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(0,1024,8192,1,4,-1,-1);
+
+        ByteBuffer pooled = bufferPool.acquire(1024,true);
+        ByteBuffer inUse = bufferPool.acquire(1024,true);
+        bufferPool.release(pooled);
+        bufferPool.clear();
+        assertEquals(0,bufferPool.getDirectMemory());
+
+        // A buffer released after the clear is accounted.
+        bufferPool.release(inUse);
+        assertEquals(1024,bufferPool.getDirectMemory());
+        assertSame(inUse,bufferPool.acquire(1024,true));
+        assertEquals(0,bufferPool.getDirectMemory());
+    }
+
+    @Test
+    public void testConcurrentClear() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(0,1024,8192,4,2,-1,-1);
+        int threads = 4;
+        int iterations = 10000;
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t=0;t<threads;t++)
+        {
+            new Thread(() ->
+            {
+                try
+                {
+                    for (int i=0;i<iterations;i++)
+                        bufferPool.release(bufferPool.acquire(1024,true));
+                }
+                finally
+                {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        while (latch.getCount()>0)
+            bufferPool.clear();
+        assertTrue(latch.await(30,TimeUnit.SECONDS));
+
+        // The memory accounted is that of the buffers actually retained.
+        long retained = (bufferPool.cached(1024,true)+bufferPool.shared(1024,true))*1024L;
+        assertEquals(retained,bufferPool.getDirectMemory());
+        bufferPool.clear();
+        assertEquals(0,bufferPool.getDirectMemory());
+    }
+
+    @Test
+    public void testConcurrentAcquireRelease() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(0,1024,8192,4,2,-1,-1);
+        int threads = 8;
+        int iterations = 10000;
+        CountDownLatch latch = new CountDownLatch(threads);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t=0;t<threads;t++)
+        {
+            new Thread(() ->
+            {
+                try
+                {
+                    for (int i=0;i<iterations;i++)
+                    {
+                        ByteBuffer buffer = bufferPool.acquire(1024+(i%4)*1024,true);
+                        buffer.limit(buffer.capacity());
+                        buffer.putInt(0,i);
+                        if (buffer.getInt(0)!=i)
+                            throw new IllegalStateException("buffer shared by two threads");
+                        bufferPool.release(buffer);
+                    }
+                }
+                catch (Throwable x)
+                {
+                    failure.compareAndSet(null,x);
+                }
+                finally
+                {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        assertTrue(latch.await(30,TimeUnit.SECONDS));
+        assertEquals(null,failure.get());
+
+        long retained = 0;
+        for (int size=1024;size<=4096;size+=1024)
+            retained += (bufferPool.cached(size,true)+bufferPool.shared(size,true))*(long)size;
+        assertEquals(retained,bufferPool.getDirectMemory());
+    }
+}
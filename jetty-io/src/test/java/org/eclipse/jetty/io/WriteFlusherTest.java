@@ -31,10 +31,12 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
@@ -442,6 +444,302 @@ public class WriteFlusherTest
         }
     }
 
+    @Test
+    public void testAggregation() throws Exception
+    {
+        ByteArrayEndPoint endPoint = new ByteArrayEndPoint(new byte[0], 16);
+        endPoint.setGrowOutput(true);
+
+        AtomicInteger aggregated = new AtomicInteger();
+        WriteFlusher flusher = new WriteFlusher(endPoint)
+        {
+            @Override
+            protected void onIncompleteFlush()
+            {
+            }
+
+            @Override
+            protected void onAggregated()
+            {
+                aggregated.incrementAndGet();
+            }
+        };
+        flusher.setAggregationSize(16);
+
+        FutureCallback callback1 = new FutureCallback();
+        flusher.aggregate(callback1, BufferUtil.toBuffer("How "), BufferUtil.toBuffer("now "));
+        FutureCallback callback2 = new FutureCallback();
+        flusher.aggregate(callback2, BufferUtil.toBuffer("brown "));
+
+        Assert.assertTrue(callback1.isDone());
+        Assert.assertTrue(callback2.isDone());
+        Assert.assertEquals(1, aggregated.get());
+        Assert.assertEquals("", endPoint.takeOutputString());
+        Assert.assertTrue(flusher.hasAggregated());
+
+        flusher.flushAggregated();
+        Assert.assertEquals("How now brown ", endPoint.takeOutputString());
+        Assert.assertFalse(flusher.hasAggregated());
+        Assert.assertTrue(flusher.isIdle());
+
+        // A write that does not fit is written after the aggregated content.
+        flusher.aggregate(Callback.NOOP, BufferUtil.toBuffer("cow"));
+        FutureCallback callback3 = new FutureCallback();
+        flusher.aggregate(callback3, BufferUtil.toBuffer("! How now brown cow!"));
+
+        Assert.assertTrue(callback3.isDone());
+        Assert.assertEquals(2, aggregated.get());
+        Assert.assertEquals("cow! How now brown cow!", endPoint.takeOutputString());
+        Assert.assertFalse(flusher.hasAggregated());
+        Assert.assertTrue(flusher.isIdle());
+    }
+
+    @Test
+    public void testAggregationIncompleteFlush() throws Exception
+    {
+        ByteArrayEndPoint endPoint = new ByteArrayEndPoint(new byte[0], 4);
+
+        AtomicInteger aggregated = new AtomicInteger();
+        AtomicInteger incompleteFlush = new AtomicInteger();
+        WriteFlusher flusher = new WriteFlusher(endPoint)
+        {
+            @Override
+            protected void onIncompleteFlush()
+            {
+                incompleteFlush.incrementAndGet();
+            }
+
+            @Override
+            protected void onAggregated()
+            {
+                aggregated.incrementAndGet();
+            }
+        };
+        flusher.setAggregationSize(16);
+
+        flusher.aggregate(Callback.NOOP, BufferUtil.toBuffer("How now "));
+
+        // The aggregated content not written is left pending, waiting to be writable.
+        flusher.flushAggregated();
+        Assert.assertEquals("How ", endPoint.takeOutputString());
+        Assert.assertEquals(1, incompleteFlush.get());
+        Assert.assertTrue(flusher.isInProgress());
+        Assert.assertTrue(flusher.hasAggregated());
+        Assert.assertEquals(1, aggregated.get());
+
+        // A write is queued behind it.
+        FutureCallback callback = new FutureCallback();
+        flusher.write(callback, BufferUtil.toBuffer("cow"));
+        Assert.assertFalse(callback.isDone());
+
+        flusher.completeWrite();
+        Assert.assertEquals("now ", endPoint.takeOutputString());
+        Assert.assertEquals(2, incompleteFlush.get());
+        Assert.assertFalse(flusher.hasAggregated());
+        Assert.assertFalse(callback.isDone());
+
+        flusher.completeWrite();
+        Assert.assertEquals("cow", endPoint.takeOutputString());
+        Assert.assertTrue(callback.isDone());
+        callback.get();
+        Assert.assertTrue(flusher.isIdle());
+        Assert.assertEquals(1, aggregated.get());
+    }
+
+    @Test
+    public void testWriteRacingCompleteWriteOfAggregated() throws Exception
+    {
+        for (int i = 0; i < 1000; ++i)
+        {
+            ByteArrayEndPoint endPoint = new ByteArrayEndPoint(new byte[0], 4);
+
+            AtomicBoolean writeInterest = new AtomicBoolean();
+            WriteFlusher flusher = new WriteFlusher(endPoint)
+            {
+                @Override
+                protected void onIncompleteFlush()
+                {
+                    writeInterest.set(true);
+                }
+            };
+            flusher.setAggregationSize(16);
+
+            // Leave aggregated content pending, without callback.
+            flusher.aggregate(Callback.NOOP, BufferUtil.toBuffer("How now "));
+            flusher.flushAggregated();
+            Assert.assertTrue(writeInterest.getAndSet(false));
+            Assert.assertEquals("How ", endPoint.takeOutputString());
+
+            // The endpoint becomes writable while a write is queued behind the pending content.
+            AtomicInteger ready = new AtomicInteger();
+            Thread thread = new Thread(() ->
+            {
+                ready.incrementAndGet();
+                while (ready.get() < 2)
+                    Thread.yield();
+                flusher.completeWrite();
+            });
+            thread.start();
+            FutureCallback callback = new FutureCallback();
+            ready.incrementAndGet();
+            while (ready.get() < 2)
+                Thread.yield();
+            flusher.write(callback, BufferUtil.toBuffer("brown cow"));
+            thread.join(5000);
+
+            // The queued write is completed as long as write interest is registered.
+            StringBuilder output = new StringBuilder("How ");
+            output.append(endPoint.takeOutputString());
+            while (writeInterest.getAndSet(false))
+            {
+                flusher.completeWrite();
+                output.append(endPoint.takeOutputString());
+            }
+            Assert.assertTrue(callback.isDone());
+            callback.get();
+            Assert.assertEquals("How now brown cow", output.toString());
+            Assert.assertTrue(flusher.isIdle());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAggregationDelayMustBePositive() throws Exception
+    {
+        ByteArrayEndPoint endPoint = new ByteArrayEndPoint(new byte[0], 16);
+        endPoint.setWriteAggregationDelay(0);
+    }
+
+    @Test
+    public void testWriteNotAggregated() throws Exception
+    {
+        ByteArrayEndPoint endPoint = new ByteArrayEndPoint(new byte[0], 16);
+        endPoint.setGrowOutput(true);
+
+        WriteFlusher flusher = new WriteFlusher(endPoint)
+        {
+            @Override
+            protected void onIncompleteFlush()
+            {
+            }
+        };
+        flusher.setAggregationSize(16);
+
+        flusher.aggregate(Callback.NOOP, BufferUtil.toBuffer("How "));
+        Assert.assertEquals("", endPoint.takeOutputString());
+
+        // A plain write is never aggregated and is written after the aggregated content.
+        FutureCallback callback = new FutureCallback();
+        flusher.write(callback, BufferUtil.toBuffer("now "));
+        Assert.assertTrue(callback.isDone());
+        Assert.assertEquals("How now ", endPoint.takeOutputString());
+        Assert.assertFalse(flusher.hasAggregated());
+        Assert.assertTrue(flusher.isIdle());
+    }
+
+    @Test
+    public void testWriteQueuedWhileFlushingAggregated() throws Exception
+    {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean block = new AtomicBoolean();
+        ByteArrayEndPoint endPoint = new ByteArrayEndPoint(new byte[0], 16)
+        {
+            @Override
+            public boolean flush(ByteBuffer... buffers) throws IOException
+            {
+                if (block.compareAndSet(true, false))
+                {
+                    flushing.countDown();
+                    try
+                    {
+                        release.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException x)
+                    {
+                        throw new InterruptedIOException();
+                    }
+                }
+                return super.flush(buffers);
+            }
+        };
+        endPoint.setGrowOutput(true);
+
+        AtomicBoolean incompleteFlush = new AtomicBoolean();
+        WriteFlusher flusher = new WriteFlusher(endPoint)
+        {
+            @Override
+            protected void onIncompleteFlush()
+            {
+                incompleteFlush.set(true);
+            }
+        };
+        flusher.setAggregationSize(16);
+
+        flusher.aggregate(Callback.NOOP, BufferUtil.toBuffer("How "));
+        block.set(true);
+        Thread thread = new Thread(flusher::flushAggregated);
+        thread.start();
+        Assert.assertTrue(flushing.await(5, TimeUnit.SECONDS));
+
+        // The write does not wait for the flush, it is queued and left pending by it.
+        FutureCallback callback = new FutureCallback();
+        flusher.write(callback, BufferUtil.toBuffer("now "));
+        Assert.assertFalse(callback.isDone());
+
+        release.countDown();
+        thread.join(5000);
+        Assert.assertTrue(incompleteFlush.get());
+        Assert.assertFalse(callback.isDone());
+        Assert.assertTrue(flusher.isInProgress());
+
+        flusher.completeWrite();
+        Assert.assertTrue(callback.isDone());
+        callback.get();
+        Assert.assertEquals("How now ", endPoint.takeOutputString());
+        Assert.assertTrue(flusher.isIdle());
+    }
+
+    @Test
+    public void testCloseFlushesAggregated() throws Exception
+    {
+        ScheduledExecutorScheduler scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+        try
+        {
+            ByteArrayEndPoint endPoint = new ByteArrayEndPoint(scheduler, 0, new byte[0], 16);
+            endPoint.setGrowOutput(true);
+            endPoint.setWriteAggregationSize(16);
+            endPoint.setWriteAggregationDelay(TimeUnit.MINUTES.toMillis(1));
+
+            FutureCallback callback = new FutureCallback();
+            endPoint.writeAggregated(callback, BufferUtil.toBuffer("How now "));
+            Assert.assertTrue(callback.isDone());
+            Assert.assertEquals("", endPoint.takeOutputString());
+
+            // The aggregated content is written, not dropped, when the endpoint is closed.
+            endPoint.close();
+            Assert.assertEquals("How now ", endPoint.takeOutputString());
+            Assert.assertFalse(endPoint.getWriteFlusher().hasAggregated());
+        }
+        finally
+        {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testNotAggregatedWithoutScheduler() throws Exception
+    {
+        ByteArrayEndPoint endPoint = new ByteArrayEndPoint(new byte[0], 16);
+        endPoint.setWriteAggregationSize(16);
+        Assert.assertEquals(0, endPoint.getWriteAggregationSize());
+
+        FutureCallback callback = new FutureCallback();
+        endPoint.writeAggregated(callback, BufferUtil.toBuffer("How now "));
+        Assert.assertTrue(callback.isDone());
+        Assert.assertEquals("How now ", endPoint.takeOutputString());
+    }
+
     private static class ConcurrentWriteFlusher extends WriteFlusher implements Runnable
     {
         private final ByteArrayEndPoint endPoint;
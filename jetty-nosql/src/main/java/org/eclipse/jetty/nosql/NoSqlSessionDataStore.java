@@ -19,9 +19,6 @@
 
 package org.eclipse.jetty.nosql;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.eclipse.jetty.server.session.AbstractSessionDataStore;
 import org.eclipse.jetty.server.session.SessionData;
 
@@ -37,7 +34,6 @@ public abstract class NoSqlSessionDataStore extends AbstractSessionDataStore
     public class NoSqlSessionData extends SessionData
     {
         private Object _version;
-        private Set<String> _dirtyAttributes = new HashSet<String>();
         
 
         public NoSqlSessionData(String id, String cpath, String vhost, long created, long accessed, long lastAccessed, long maxInactiveMs)
@@ -54,27 +50,6 @@ public abstract class NoSqlSessionDataStore extends AbstractSessionDataStore
         {
             return _version;
         }
-
-        @Override
-        public void setDirty(String name)
-        {
-            super.setDirty(name);
-            _dirtyAttributes.add(name);
-        }
-        
-        
-        public Set<String> takeDirtyAttributes()
-        {
-            Set<String> copy = new HashSet<>(_dirtyAttributes);
-            _dirtyAttributes.clear();
-            return copy;
-            
-        }
-        
-        public Set<String> getAllAttributeNames ()
-        {
-            return new HashSet<String>(_attributes.keySet());
-        }
     }
 
 
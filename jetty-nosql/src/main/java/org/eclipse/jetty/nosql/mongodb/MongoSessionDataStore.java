@@ -22,6 +22,9 @@ package org.eclipse.jetty.nosql.mongodb;
 import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.BulkWriteResult;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
@@ -32,7 +35,6 @@ import com.mongodb.WriteResult;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,7 +45,6 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.nosql.NoSqlSessionDataStore;
 import org.eclipse.jetty.server.session.SessionData;
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.log.Log;
@@ -440,14 +441,62 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
     @Override
     public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
     {                
-        NoSqlSessionData nsqd = (NoSqlSessionData)data;
-        
         // Form query for upsert
         BasicDBObject key = new BasicDBObject(__ID, id);
+        boolean upsert = lastSaveTime <= 0;
+        BasicDBObject update = getUpdate(data, lastSaveTime);
+
+        WriteResult res = _dbSessions.update(key,update,upsert,false,WriteConcern.SAFE);
+        if (!upsert && res.getN() == 0)
+            LOG.warn("Session {} not found, can't update", id);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Save:db.sessions.update( {}, {},{} )", key, update, res); 
+    }
+
+
+    /** 
+     * Update the sessions with one bulk operation.
+     * 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#doStoreAll(java.util.Map, java.util.Map)
+     */
+    @Override
+    public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
+    {
+        if (sessions.isEmpty())
+            return;
+
+        BulkWriteOperation bulk = _dbSessions.initializeUnorderedBulkOperation();
+        for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+        {
+            long lastSaveTime = lastSaveTimes.get(entry.getKey());
+            BulkWriteRequestBuilder request = bulk.find(new BasicDBObject(__ID, entry.getKey()));
+            BasicDBObject update = getUpdate(entry.getValue(), lastSaveTime);
+            if (lastSaveTime <= 0)
+                request.upsert().updateOne(update);
+            else
+                request.updateOne(update);
+        }
+
+        BulkWriteResult res = bulk.execute(WriteConcern.SAFE);
+        if (res.getMatchedCount() + res.getUpserts().size() < sessions.size())
+            LOG.warn("{} of sessions {} not found, can't update", sessions.size() - res.getMatchedCount() - res.getUpserts().size(), sessions.keySet());
+        if (LOG.isDebugEnabled())
+            LOG.debug("Save:db.sessions bulk update {} {}", sessions.keySet(), res); 
+    }
+
+
+    /**
+     * @param data the session
+     * @param lastSaveTime time of previous save or 0 if never saved
+     * @return the update of the document of the session
+     * @throws IOException if an attribute cannot be serialized
+     */
+    protected BasicDBObject getUpdate(SessionData data, long lastSaveTime) throws IOException
+    {
+        NoSqlSessionData nsqd = (NoSqlSessionData)data;
 
         // Form updates
         BasicDBObject update = new BasicDBObject();
-        boolean upsert = false;
         BasicDBObject sets = new BasicDBObject();
         BasicDBObject unsets = new BasicDBObject();
         
@@ -456,7 +505,6 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
         // New session
         if (lastSaveTime <= 0)
         {
-            upsert = true;
             version = new Long(1);
             sets.put(__CREATED,nsqd.getCreated());
             sets.put(__VALID,true);
@@ -474,35 +522,20 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
             version = new Long(((Number)version).longValue() + 1);
             nsqd.setVersion(version);
             update.put("$inc",_version_1); 
-            //if max idle time and/or expiry is smaller for this context, then choose that for the whole session doc
-            BasicDBObject fields = new BasicDBObject();
-            fields.append(__MAX_IDLE, true);
-            fields.append(__EXPIRY, true);
-            DBObject o = _dbSessions.findOne(new BasicDBObject("id", id), fields);
-            if (o != null)
-            {
-                Long tmpLong = (Long)o.get(__MAX_IDLE);
-                long currentMaxIdle = (tmpLong == null? 0:tmpLong.longValue());
-                tmpLong = (Long)o.get(__EXPIRY);
-                long currentExpiry = (tmpLong == null? 0 : tmpLong.longValue()); 
-
-                if (currentMaxIdle != nsqd.getMaxInactiveMs())
-                    sets.put(__MAX_IDLE, nsqd.getMaxInactiveMs());
-
-                if (currentExpiry != nsqd.getExpiry())
-                    sets.put(__EXPIRY, nsqd.getExpiry());
-            }
-            else
-                LOG.warn("Session {} not found, can't update", id);
+            //the max idle time and expiry of this context are set for the whole session doc,
+            //without reading them first, so that only the changes are written
+            sets.put(__MAX_IDLE, nsqd.getMaxInactiveMs());
+            sets.put(__EXPIRY, nsqd.getExpiry());
         }
 
         sets.put(__ACCESSED, nsqd.getAccessed());
 
-        Set<String> names = nsqd.takeDirtyAttributes();
+        //only the attributes changed since the last save are written
+        Set<String> names = nsqd.getDirtyAttributes();
 
         if (lastSaveTime <= 0)
         {         
-            names.addAll(nsqd.getAllAttributeNames()); // note dirty may include removed names
+            names.addAll(nsqd.getKeys()); // note dirty may include removed names
         }
 
 
@@ -515,14 +548,11 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
                 sets.put(getContextField() + "." + encodeName(name),encodeName(value));
         }
 
-        // Do the upsert
         if (!sets.isEmpty())
             update.put("$set",sets);
         if (!unsets.isEmpty())
             update.put("$unset",unsets);
-        WriteResult res = _dbSessions.update(key,update,upsert,false,WriteConcern.SAFE);
-        if (LOG.isDebugEnabled())
-            LOG.debug("Save:db.sessions.update( {}, {},{} )", key, update, res); 
+        return update;
     }
 
 
@@ -607,8 +637,7 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
         {
             final byte[] decodeObject = (byte[])valueToDecode;
             final ByteArrayInputStream bais = new ByteArrayInputStream(decodeObject);
-            final ClassLoadingObjectInputStream objectInputStream = new ClassLoadingObjectInputStream(bais);
-            return objectInputStream.readUnshared();
+            return _serializer.deserializeAttribute(bais);
         }
         else if (valueToDecode instanceof DBObject)
         {
@@ -664,10 +693,7 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
         }
         
         ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(bout);
-        out.reset();
-        out.writeUnshared(value);
-        out.flush();
+        _serializer.serializeAttribute(value, bout);
         return bout.toByteArray();
     }
     
@@ -136,6 +136,8 @@ public class MongoSessionDataStoreFactory extends AbstractSessionDataStoreFactor
         MongoSessionDataStore store = new MongoSessionDataStore();
         store.setGracePeriodSec(getGracePeriodSec());
         store.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            store.setSerializer(getSerializer());
         Mongo mongo;
 
         if (!StringUtil.isBlank(getConnectionString()))
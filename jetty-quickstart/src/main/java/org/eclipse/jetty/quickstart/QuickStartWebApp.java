@@ -21,6 +21,7 @@ package org.eclipse.jetty.quickstart;
 import java.io.FileOutputStream;
 import java.util.Locale;
 
+import org.eclipse.jetty.server.handler.gzip.PrecompressedContentGenerator;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.resource.JarResource;
@@ -48,6 +49,7 @@ public class QuickStartWebApp extends WebAppContext
     private PreconfigureDescriptorProcessor _preconfigProcessor;
     private String _originAttribute;
     private boolean _generateOrigin;
+    private PrecompressedContentGenerator _precompressedContentGenerator;
     
     
     public static final String[] __preconfigurationClasses = new String[]
@@ -121,11 +123,32 @@ public class QuickStartWebApp extends WebAppContext
         _generateOrigin = generateOrigin;
     }
 
+    /**
+     * @return the generator of precompressed static content
+     */
+    public PrecompressedContentGenerator getPrecompressedContentGenerator()
+    {
+        return _precompressedContentGenerator;
+    }
+
+    /**
+     * @param generator If not null, then preconfiguring the webapp will also generate
+     * the precompressed siblings of its static content.
+     */
+    public void setPrecompressedContentGenerator(PrecompressedContentGenerator generator)
+    {
+        _precompressedContentGenerator = generator;
+    }
+
     @Override
     protected void startWebapp() throws Exception
     {
         if (isPreconfigure())
+        {
             generateQuickstartWebXml(_preconfigProcessor.getXML());
+            if (_precompressedContentGenerator!=null)
+                _precompressedContentGenerator.generate(getBaseResource());
+        }
         
         if (_startWebapp)
             super.startWebapp();
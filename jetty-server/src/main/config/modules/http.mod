@@ -40,6 +40,9 @@ etc/jetty-http.xml
 ## Thread priority delta to give to acceptor threads
 # jetty.http.acceptorPriorityDelta=0
 
+## Whether to bind a SO_REUSEPORT channel per acceptor (or selector if no acceptors)
+# jetty.http.reusePort=false
+
 ## Reserve threads for high priority tasks (-1 use a heuristic, 0 no reserved threads)
 # jetty.http.reservedThreads=-1
 
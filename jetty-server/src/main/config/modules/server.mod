@@ -43,6 +43,12 @@ etc/jetty.xml
 ## Max response content write length that is buffered (in bytes)
 # jetty.httpConfig.outputAggregationSize=8192
 
+## Size of the connection buffer used to aggregate small writes (in bytes, 0 to disable)
+# jetty.httpConfig.writeAggregationSize=0
+
+## Max time aggregated writes may wait before being flushed (in ms)
+# jetty.httpConfig.writeAggregationDelay=1
+
 ## Max request headers size (in bytes)
 # jetty.httpConfig.requestHeaderSize=8192
 
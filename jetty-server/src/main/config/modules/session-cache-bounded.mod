@@ -0,0 +1,24 @@
+[description]
+Enable first level session cache in ConcurrentHashMap, bounded in number
+and estimated size of sessions. When full, the least valuable sessions
+are evicted to the session store.
+
+[tags]
+session
+
+[provides]
+session-cache
+
+[depends]
+sessions
+
+[xml]
+etc/sessions/session-cache-bounded.xml
+
+[ini-template]
+#jetty.session.evictionPolicy=-1
+#jetty.session.saveOnInactiveEvict=false
+#jetty.session.saveOnCreate=false
+#jetty.session.removeUnloadableSessions=false
+#jetty.session.maxCachedSessions=10000
+#jetty.session.maxCachedBytes=-1
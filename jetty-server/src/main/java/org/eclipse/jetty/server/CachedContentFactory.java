@@ -23,16 +23,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.DateGenerator;
@@ -44,7 +48,14 @@ import org.eclipse.jetty.http.MimeTypes.Type;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http.PrecompressedHttpContent;
 import org.eclipse.jetty.http.ResourceHttpContent;
+import org.eclipse.jetty.server.handler.gzip.CompressionEncoder;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.TinyLfuPolicy;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.resource.Resource;
@@ -52,11 +63,28 @@ import org.eclipse.jetty.util.resource.ResourceFactory;
 
 /**
  * Caching HttpContent.Factory
+ * <p>If {@link #setCompressionEncoders(CompressionEncoder...) compression encoders} are set,
+ * then cached content without a precompressed resource for one of the precompressed formats
+ * is compressed with the matching encoder, once and in the background, the first time its
+ * precompressed contents are requested. The compressed variants are held in memory, are
+ * counted against the max cache size and are invalidated together with their content.
+ * At most {@link #setMaxConcurrentCompressions(int) max concurrent compressions} are run at
+ * once; content requested meanwhile is compressed on a later request.</p>
+ * <p>When the cache exceeds its max size or max number of files, the content to evict
+ * is selected by a {@link TinyLfuPolicy}, so that frequently used content is not evicted
+ * by one-off requests of rarely used content. Accesses to the cached content are recorded
+ * in a lossy buffer, applied to the policy when it is not contended.</p>
  */
+@ManagedObject("Cache of static content")
 public class CachedContentFactory implements HttpContent.ContentFactory
 {
     private static final Logger LOG = Log.getLogger(CachedContentFactory.class);
     private final static Map<CompressedContentFormat, CachedPrecompressedHttpContent> NO_PRECOMPRESSED = Collections.unmodifiableMap(Collections.emptyMap());
+    private final static CompressionEncoder[] NO_ENCODERS = new CompressionEncoder[0];
+    private final static int COMPRESS_CHUNK_SIZE = 64*1024;
+    public final static int DEFAULT_MAX_CONCURRENT_COMPRESSIONS = 2;
+    private final static int ACCESS_BUFFER_SIZE = 64;
+    private final static int ACCESS_DRAIN_THRESHOLD = 16;
 
     private final ConcurrentMap<String,CachedHttpContent> _cache;
     private final AtomicInteger _cachedSize;
@@ -71,6 +99,16 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     private int _maxCachedFileSize = 128*1024*1024;
     private int _maxCachedFiles= 2048;
     private int _maxCacheSize = 256*1024*1024;
+    private volatile CompressionEncoder[] _compressionEncoders = NO_ENCODERS;
+    private volatile Executor _compressionExecutor;
+    private volatile int _maxConcurrentCompressions = DEFAULT_MAX_CONCURRENT_COMPRESSIONS;
+    private final AtomicInteger _compressions = new AtomicInteger();
+    private final TinyLfuPolicy<String> _policy = new TinyLfuPolicy<>(_maxCachedFiles);
+    private final ReentrantLock _policyLock = new ReentrantLock();
+    private final AtomicReferenceArray<String> _accesses = new AtomicReferenceArray<>(ACCESS_BUFFER_SIZE);
+    private final AtomicInteger _accessIndex = new AtomicInteger();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
     
     /* ------------------------------------------------------------ */
     /** Constructor.
@@ -95,18 +133,91 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     }
 
     /* ------------------------------------------------------------ */
+    @ManagedAttribute(value = "size in bytes of the cached buffers", readonly = true)
     public int getCachedSize()
     {
         return _cachedSize.get();
     }
     
     /* ------------------------------------------------------------ */
+    @ManagedAttribute(value = "number of cached files", readonly = true)
     public int getCachedFiles()
     {
         return _cachedFiles.get();
     }
-    
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute(value = "number of requests of valid cached content", readonly = true)
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute(value = "number of requests of content not in the cache", readonly = true)
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
     /* ------------------------------------------------------------ */
+    @ManagedAttribute(value = "ratio of the hits to the requests", readonly = true)
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long requests = hits + getMisses();
+        return requests==0?0.0:(double)hits/requests;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute(value = "number of cached files evicted", readonly = true)
+    public long getEvictions()
+    {
+        _policyLock.lock();
+        try
+        {
+            return _policy.getEvictions();
+        }
+        finally
+        {
+            _policyLock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute(value = "number of files evicted because not frequently used enough to be admitted", readonly = true)
+    public long getAdmissionRejects()
+    {
+        _policyLock.lock();
+        try
+        {
+            return _policy.getRejections();
+        }
+        finally
+        {
+            _policyLock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedOperation(value = "resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _policyLock.lock();
+        try
+        {
+            _policy.resetStatistics();
+        }
+        finally
+        {
+            _policyLock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("max size in bytes of a cached file")
     public int getMaxCachedFileSize()
     {
         return _maxCachedFileSize;
@@ -120,6 +231,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     }
 
     /* ------------------------------------------------------------ */
+    @ManagedAttribute("max size in bytes of the cached buffers")
     public int getMaxCacheSize()
     {
         return _maxCacheSize;
@@ -136,6 +248,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     /**
      * @return Returns the maxCachedFiles.
      */
+    @ManagedAttribute("max number of cached files")
     public int getMaxCachedFiles()
     {
         return _maxCachedFiles;
@@ -148,9 +261,86 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     public void setMaxCachedFiles(int maxCachedFiles)
     {
         _maxCachedFiles = maxCachedFiles;
+        _policyLock.lock();
+        try
+        {
+            _policy.setMaxSize(maxCachedFiles);
+        }
+        finally
+        {
+            _policyLock.unlock();
+        }
         shrinkCache();
     }
 
+    /* ------------------------------------------------------------ */
+    public CompressionEncoder[] getCompressionEncoders()
+    {
+        return _compressionEncoders.clone();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * <p>Sets the encoders used to compress cached content, for the precompressed formats
+     * that are not available as precompressed resources. Encoders whose encoding is not
+     * one of the precompressed formats are ignored.</p>
+     * @param encoders the encoders used to compress cached content, or none to disable compression
+     */
+    public void setCompressionEncoders(CompressionEncoder... encoders)
+    {
+        _compressionEncoders = Arrays.stream(encoders)
+                .filter(e->Arrays.stream(_precompressedFormats).anyMatch(f->f._encoding.equals(e.getFormat()._encoding)))
+                .toArray(CompressionEncoder[]::new);
+    }
+
+    /* ------------------------------------------------------------ */
+    public Executor getCompressionExecutor()
+    {
+        return _compressionExecutor;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param executor the executor used to compress cached content in the background,
+     * or null to compress cached content in the thread requesting it
+     */
+    public void setCompressionExecutor(Executor executor)
+    {
+        _compressionExecutor = executor;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("max number of cached contents compressed concurrently")
+    public int getMaxConcurrentCompressions()
+    {
+        return _maxConcurrentCompressions;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param maxConcurrentCompressions the max number of cached contents compressed concurrently,
+     * which also bounds the number of compressors in use at once
+     */
+    public void setMaxConcurrentCompressions(int maxConcurrentCompressions)
+    {
+        if (maxConcurrentCompressions<1)
+            throw new IllegalArgumentException("Invalid max concurrent compressions " + maxConcurrentCompressions);
+        _maxConcurrentCompressions = maxConcurrentCompressions;
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean tryAcquireCompression()
+    {
+        while (true)
+        {
+            int compressions = _compressions.get();
+            if (compressions>=_maxConcurrentCompressions)
+                return false;
+            if (_compressions.compareAndSet(compressions,compressions+1))
+                return true;
+        }
+    }
+
     /* ------------------------------------------------------------ */
     public boolean isUseFileMappedBuffer()
     {
@@ -158,18 +348,30 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     }
 
     /* ------------------------------------------------------------ */
+    @ManagedOperation(value = "flushes the cache", impact = "ACTION")
     public void flushCache()
     {
         if (_cache!=null)
         {
-            while (_cache.size()>0)
+            _policyLock.lock();
+            try
             {
-                for (String path : _cache.keySet())
+                while (_cache.size()>0)
                 {
-                    CachedHttpContent content = _cache.remove(path);
-                    if (content!=null)
-                        content.invalidate();
+                    for (String path : _cache.keySet())
+                    {
+                        CachedHttpContent content = _cache.remove(path);
+                        if (content!=null)
+                            content.invalidate();
+                    }
                 }
+                _policy.clear();
+                for (int i=0;i<ACCESS_BUFFER_SIZE;i++)
+                    _accesses.lazySet(i,null);
+            }
+            finally
+            {
+                _policyLock.unlock();
             }
         }
     }
@@ -202,7 +404,12 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         // Is the content in this cache?
         CachedHttpContent content =_cache.get(pathInContext);
         if (content!=null && (content).isValid())
+        {
+            _hits.increment();
+            recordAccess(pathInContext);
             return content;
+        }
+        _misses.increment();
        
         // try loading the content from our factory.
         Resource resource=_factory.getResource(pathInContext);
@@ -274,6 +481,8 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                                 compressedContent.invalidate();
                                 compressedContent = added;
                             }
+                            else
+                                added(compressedContent);
                         }
                     }
                     if (compressedContent != null)
@@ -291,6 +500,8 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 content.invalidate();
                 content = added;
             }
+            else
+                added(content);
 
             return content;
         }
@@ -322,42 +533,113 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return new ResourceHttpContent(resource,mt,maxBufferSize);
     }
     
+    /* ------------------------------------------------------------ */
+    /**
+     * @param content the cached content to test
+     * @return True if the content should be compressed by the {@link #setCompressionEncoders(CompressionEncoder...) compression encoders}.
+     * The default implementation excludes images (other than SVG), audio, video and compressed archives.
+     */
+    protected boolean isCompressible(HttpContent content)
+    {
+        String contentType = content.getContentTypeValue();
+        if (contentType==null)
+            return true;
+        String mimeType = StringUtil.asciiToLowerCase(MimeTypes.getContentTypeWithoutCharset(contentType));
+        if (mimeType.startsWith("image/"))
+            return mimeType.startsWith("image/svg");
+        if (mimeType.startsWith("audio/") || mimeType.startsWith("video/"))
+            return false;
+        return !mimeType.endsWith("zip") && !mimeType.endsWith("compress") && !mimeType.endsWith("bzip2") && !mimeType.endsWith("brotli");
+    }
+
+    /* ------------------------------------------------------------ */
+    private void recordAccess(String pathInContext)
+    {
+        // The access is buffered, and possibly lost, rather than contending on the policy.
+        int index = _accessIndex.getAndIncrement();
+        _accesses.lazySet(index&(ACCESS_BUFFER_SIZE-1),pathInContext);
+        if ((index&(ACCESS_DRAIN_THRESHOLD-1))==0 && _policyLock.tryLock())
+        {
+            try
+            {
+                drainAccesses();
+            }
+            finally
+            {
+                _policyLock.unlock();
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void drainAccesses()
+    {
+        for (int i=0;i<ACCESS_BUFFER_SIZE;i++)
+        {
+            String pathInContext = _accesses.getAndSet(i,null);
+            if (pathInContext!=null)
+                _policy.access(pathInContext);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void added(CachedHttpContent content)
+    {
+        _policyLock.lock();
+        try
+        {
+            if (_cache.get(content.getKey())==content)
+                _policy.add(content.getKey());
+        }
+        finally
+        {
+            _policyLock.unlock();
+        }
+        shrinkCache();
+    }
+
+    /* ------------------------------------------------------------ */
+    private void removed(CachedHttpContent content)
+    {
+        _policyLock.lock();
+        try
+        {
+            // The content may have been replaced in the meantime.
+            if (!_cache.containsKey(content.getKey()))
+                _policy.remove(content.getKey());
+        }
+        finally
+        {
+            _policyLock.unlock();
+        }
+    }
+
     /* ------------------------------------------------------------ */
     private void shrinkCache()
     {
-        // While we need to shrink
-        while (_cache.size()>0 && (_cachedFiles.get()>_maxCachedFiles || _cachedSize.get()>_maxCacheSize))
+        if (_cache.size()==0 || (_cachedFiles.get()<=_maxCachedFiles && _cachedSize.get()<=_maxCacheSize))
+            return;
+
+        _policyLock.lock();
+        try
         {
-            // Scan the entire cache and generate an ordered list by last accessed time.
-            SortedSet<CachedHttpContent> sorted= new TreeSet<CachedHttpContent>(
-                    new Comparator<CachedHttpContent>()
-                    {
-                        public int compare(CachedHttpContent c1, CachedHttpContent c2)
-                        {
-                            if (c1._lastAccessed<c2._lastAccessed)
-                                return -1;
-                            
-                            if (c1._lastAccessed>c2._lastAccessed)
-                                return 1;
-
-                            if (c1._contentLengthValue<c2._contentLengthValue)
-                                return -1;
-                            
-                            return c1._key.compareTo(c2._key);
-                        }
-                    });
-            for (CachedHttpContent content : _cache.values())
-                sorted.add(content);
-            
-            // Invalidate least recently used first
-            for (CachedHttpContent content : sorted)
+            drainAccesses();
+
+            // While we need to shrink, evict the content selected by the policy.
+            while (_cache.size()>0 && (_cachedFiles.get()>_maxCachedFiles || _cachedSize.get()>_maxCacheSize))
             {
-                if (_cachedFiles.get()<=_maxCachedFiles && _cachedSize.get()<=_maxCacheSize)
+                String pathInContext = _policy.evict();
+                if (pathInContext==null)
                     break;
-                if (content==_cache.remove(content.getKey()))
+                CachedHttpContent content = _cache.remove(pathInContext);
+                if (content!=null)
                     content.invalidate();
             }
         }
+        finally
+        {
+            _policyLock.unlock();
+        }
     }
     
     /* ------------------------------------------------------------ */
@@ -429,8 +711,9 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         final long _lastModifiedValue;
         final HttpField _etag;
         final Map<CompressedContentFormat, CachedPrecompressedHttpContent> _precompressed;
-        
-        volatile long _lastAccessed;
+        final Map<CompressedContentFormat, CachedCompressedHttpContent> _compressed = new ConcurrentHashMap<>();
+        final AtomicBoolean _compressing = new AtomicBoolean();
+
         AtomicReference<ByteBuffer> _indirectBuffer=new AtomicReference<ByteBuffer>();
         AtomicReference<ByteBuffer> _directBuffer=new AtomicReference<ByteBuffer>();
 
@@ -453,10 +736,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             _contentLengthValue=exists?(int)resource.length():0;
             _contentLength=new PreEncodedHttpField(HttpHeader.CONTENT_LENGTH,Long.toString(_contentLengthValue));
             
-            if (_cachedFiles.incrementAndGet()>_maxCachedFiles)
-                shrinkCache();
-            
-            _lastAccessed=System.currentTimeMillis();
+            _cachedFiles.incrementAndGet();
             
             _etag=CachedContentFactory.this._etags?new PreEncodedHttpField(HttpHeader.ETAG,resource.getWeakETag()):null;
 
@@ -518,13 +798,13 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         boolean isValid()
         {
             if (_lastModifiedValue==_resource.lastModified() && _contentLengthValue==_resource.length())
-            {
-                _lastAccessed=System.currentTimeMillis();
                 return true;
-            }
 
             if (this==_cache.remove(_key))
+            {
                 invalidate();
+                removed(this);
+            }
             return false;
         }
 
@@ -540,6 +820,12 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             if (direct!=null && !BufferUtil.isMappedBuffer(direct) && _directBuffer.compareAndSet(direct,null))
                 _cachedSize.addAndGet(-BufferUtil.length(direct));
             
+            for (Map.Entry<CompressedContentFormat, CachedCompressedHttpContent> entry : _compressed.entrySet())
+            {
+                if (_compressed.remove(entry.getKey(),entry.getValue()))
+                    entry.getValue().invalidate();
+            }
+
             _cachedFiles.decrementAndGet();
             _resource.close();
         }
@@ -700,19 +986,159 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         @Override
         public Map<CompressedContentFormat,? extends HttpContent> getPrecompressedContents()
         {
-            if (_precompressed.size()==0)
+            if (_compressionEncoders.length>0 && !_compressing.get())
+                compress();
+
+            if (_precompressed.size()==0 && _compressed.isEmpty())
                 return null;
-            Map<CompressedContentFormat, CachedPrecompressedHttpContent> ret=_precompressed;
+            Map<CompressedContentFormat, HttpContent> ret=null;
             for (Map.Entry<CompressedContentFormat, CachedPrecompressedHttpContent> entry:_precompressed.entrySet())
             {
                 if (!entry.getValue().isValid())
                 {
-                    if (ret == _precompressed)
+                    if (ret == null)
                         ret = new HashMap<>(_precompressed);
                     ret.remove(entry.getKey());
                 }
             }
-            return ret;
+            if (!_compressed.isEmpty())
+            {
+                if (ret == null)
+                    ret = new HashMap<>(_precompressed);
+                ret.putAll(_compressed);
+            }
+            return ret==null?_precompressed:ret;
+        }
+
+        /* ------------------------------------------------------------ */
+        private void compress()
+        {
+            if (!_compressing.compareAndSet(false,true))
+                return;
+
+            // Only compress the formats that are not available as precompressed resources.
+            CompressionEncoder[] encoders = Arrays.stream(_compressionEncoders)
+                    .filter(e->_precompressed.keySet().stream().noneMatch(f->f._encoding.equals(e.getFormat()._encoding)))
+                    .toArray(CompressionEncoder[]::new);
+            if (encoders.length==0 || _contentLengthValue>_maxCachedFileSize || !isCompressible(this))
+                return;
+
+            if (!tryAcquireCompression())
+            {
+                // Too many compressions in progress, try again on a later request.
+                _compressing.set(false);
+                return;
+            }
+
+            Runnable task = ()->
+            {
+                try
+                {
+                    for (CompressionEncoder encoder : encoders)
+                        compress(encoder);
+                }
+                finally
+                {
+                    _compressions.decrementAndGet();
+                }
+            };
+
+            Executor executor = _compressionExecutor;
+            if (executor==null)
+            {
+                task.run();
+                return;
+            }
+
+            try
+            {
+                executor.execute(task);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Try again on a later request.
+                LOG.ignore(e);
+                _compressions.decrementAndGet();
+                _compressing.set(false);
+            }
+        }
+
+        /* ------------------------------------------------------------ */
+        private void compress(CompressionEncoder encoder)
+        {
+            ByteBuffer content = _useFileMappedBuffer?getDirectBuffer():getIndirectBuffer();
+            if (content==null || _cache.get(_key)!=this)
+                return;
+
+            // Compress in chunks, so that the output buffer grows with the compressed content.
+            int contentLength = content.remaining();
+            ByteArrayOutputStream2 compressed = new ByteArrayOutputStream2(Math.min(contentLength,COMPRESS_CHUNK_SIZE));
+            byte[] output = new byte[Math.min(contentLength+1,COMPRESS_CHUNK_SIZE)];
+            CompressionEncoder.Compressor compressor = encoder.acquire();
+            try
+            {
+                byte[] chunk = content.hasArray()?null:new byte[Math.min(contentLength,COMPRESS_CHUNK_SIZE)];
+                while (!compressor.finished())
+                {
+                    if (content.hasRemaining() && compressor.needsInput())
+                    {
+                        if (chunk==null)
+                        {
+                            compressor.setInput(content.array(),content.arrayOffset()+content.position(),content.remaining());
+                            content.position(content.limit());
+                        }
+                        else
+                        {
+                            int l = Math.min(chunk.length,content.remaining());
+                            content.get(chunk,0,l);
+                            compressor.setInput(chunk,0,l);
+                        }
+                        if (!content.hasRemaining())
+                            compressor.finish();
+                    }
+
+                    compressed.write(output,0,compressor.compress(output,0,output.length,false));
+
+                    // Not worth caching unless smaller than the content.
+                    if (compressed.getCount()>=contentLength)
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Not compressible by {} {}",encoder,this);
+                        return;
+                    }
+                }
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Could not compress "+this,x);
+                return;
+            }
+            finally
+            {
+                compressor.release();
+            }
+
+            CompressedContentFormat format = encoder.getFormat();
+            int length = compressed.getCount();
+            CachedCompressedHttpContent variant = new CachedCompressedHttpContent(this,format,ByteBuffer.wrap(compressed.toByteArray()));
+            // Count the variant before publishing it, as invalidating it uncounts it.
+            int cachedSize = _cachedSize.addAndGet(length);
+            if (_compressed.putIfAbsent(format,variant)!=null)
+            {
+                _cachedSize.addAndGet(-length);
+                return;
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Compressed {}",variant);
+
+            // The content may have been invalidated while it was being compressed.
+            if (_cache.get(_key)!=this)
+            {
+                if (_compressed.remove(format,variant))
+                    variant.invalidate();
+            }
+            else if (cachedSize>_maxCacheSize)
+                shrinkCache();
         }
     }
 
@@ -762,4 +1188,112 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         }
     }
 
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    /** A compressed variant of a {@link CachedHttpContent}, compressed by a {@link CompressionEncoder}
+     * and held in memory.
+     */
+    public class CachedCompressedHttpContent extends PrecompressedHttpContent
+    {
+        private final CachedHttpContent _content;
+        private final CompressedContentFormat _format;
+        private final ByteBuffer _indirectBuffer;
+        private final AtomicReference<ByteBuffer> _directBuffer=new AtomicReference<>();
+        private final HttpField _contentLength;
+        private final HttpField _etag;
+
+        CachedCompressedHttpContent(CachedHttpContent content, CompressedContentFormat format, ByteBuffer compressed)
+        {
+            super(content,content,format);
+            _content=content;
+            _format=format;
+            _indirectBuffer=compressed;
+            _contentLength=new PreEncodedHttpField(HttpHeader.CONTENT_LENGTH,Long.toString(compressed.remaining()));
+            _etag=(CachedContentFactory.this._etags)?new PreEncodedHttpField(HttpHeader.ETAG,_content.getResource().getWeakETag(format._etag)):null;
+        }
+
+        /* ------------------------------------------------------------ */
+        protected void invalidate()
+        {
+            _cachedSize.addAndGet(-_indirectBuffer.remaining());
+            ByteBuffer direct=_directBuffer.get();
+            if (direct!=null && _directBuffer.compareAndSet(direct,null))
+                _cachedSize.addAndGet(-direct.remaining());
+        }
+
+        @Override
+        public HttpField getETag()
+        {
+            if (_etag!=null)
+                return _etag;
+            return super.getETag();
+        }
+
+        @Override
+        public String getETagValue()
+        {
+            if (_etag!=null)
+                return _etag.getValue();
+            return super.getETagValue();
+        }
+
+        @Override
+        public ByteBuffer getIndirectBuffer()
+        {
+            return _indirectBuffer.slice();
+        }
+
+        @Override
+        public ByteBuffer getDirectBuffer()
+        {
+            ByteBuffer buffer=_directBuffer.get();
+            if (buffer==null)
+            {
+                ByteBuffer direct=BufferUtil.allocateDirect(_indirectBuffer.remaining());
+                BufferUtil.append(direct,_indirectBuffer.slice());
+                if (_directBuffer.compareAndSet(null,direct))
+                {
+                    buffer=direct;
+                    if (_cachedSize.addAndGet(BufferUtil.length(buffer))>_maxCacheSize)
+                        shrinkCache();
+                }
+                else
+                    buffer=_directBuffer.get();
+                if (buffer==null)
+                    return getIndirectBuffer();
+            }
+            return buffer.asReadOnlyBuffer();
+        }
+
+        @Override
+        public HttpField getContentLength()
+        {
+            return _contentLength;
+        }
+
+        @Override
+        public long getContentLengthValue()
+        {
+            return _indirectBuffer.remaining();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            return new ByteArrayInputStream(_indirectBuffer.array(),_indirectBuffer.arrayOffset(),_indirectBuffer.remaining());
+        }
+
+        @Override
+        public ReadableByteChannel getReadableByteChannel() throws IOException
+        {
+            return null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("CachedCompressedHttpContent@%x{e=%s,r=%s,l=%d}",hashCode(),_format._encoding,_content.getResource(),_indirectBuffer.remaining());
+        }
+    }
 }
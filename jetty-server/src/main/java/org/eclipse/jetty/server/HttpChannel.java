@@ -786,6 +786,16 @@ public class HttpChannel implements Runnable, HttpOutput.Interceptor
         sendResponse(null,content,complete,callback);
     }
 
+    /**
+     * <p>Accounts for content that {@link HttpOutput} transferred directly to the end point,
+     * rather than with {@link #write(ByteBuffer, boolean, Callback)}.</p>
+     * @param bytes the number of bytes transferred
+     */
+    void onContentTransferred(long bytes)
+    {
+        _written+=bytes;
+    }
+
     @Override
     public void resetBuffer()
     {
@@ -53,6 +53,8 @@ public class HttpConfiguration
     private final Trie<Boolean> _formEncodedMethods = new TreeTrie<>();
     private int _outputBufferSize=32*1024;
     private int _outputAggregationSize=_outputBufferSize/4;
+    private int _writeAggregationSize;
+    private long _writeAggregationDelay=1;
     private int _requestHeaderSize=8*1024;
     private int _responseHeaderSize=8*1024;
     private int _headerCacheSize=512;
@@ -112,6 +114,8 @@ public class HttpConfiguration
             _formEncodedMethods.put(s,Boolean.TRUE);
         _outputBufferSize=config._outputBufferSize;
         _outputAggregationSize=config._outputAggregationSize;
+        _writeAggregationSize=config._writeAggregationSize;
+        _writeAggregationDelay=config._writeAggregationDelay;
         _requestHeaderSize=config._requestHeaderSize;
         _responseHeaderSize=config._responseHeaderSize;
         _headerCacheSize=config._headerCacheSize;
@@ -171,6 +175,20 @@ public class HttpConfiguration
         return _outputAggregationSize;
     }
 
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The size in bytes of the connection buffer used to aggregate small writes")
+    public int getWriteAggregationSize()
+    {
+        return _writeAggregationSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The max time in ms that aggregated writes may wait before being flushed")
+    public long getWriteAggregationDelay()
+    {
+        return _writeAggregationDelay;
+    }
+
     /* ------------------------------------------------------------ */
     @ManagedAttribute("The maximum allowed size in bytes for a HTTP request header")
     public int getRequestHeaderSize()
@@ -380,6 +398,36 @@ public class HttpConfiguration
         _outputAggregationSize = outputAggregationSize;
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * Set the size of the buffer used by HTTP/1.1 connections to aggregate small writes.
+     * The last write of a response, if it fits into the aggregate buffer (for example the
+     * header and content of small pipelined responses), is copied into it and written
+     * together with others with a single gathering write before the connection waits for
+     * more input, when another write is done, when the output is shutdown or closed or
+     * after the {@link #setWriteAggregationDelay(long) write aggregation delay}.
+     * The response is then complete before its last bytes reach the network, so a failure
+     * to write them closes the connection without being reported to the application.
+     * @param writeAggregationSize the size in bytes of the aggregate buffer, or 0 to not aggregate writes
+     */
+    public void setWriteAggregationSize(int writeAggregationSize)
+    {
+        _writeAggregationSize = writeAggregationSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param writeAggregationDelay the max time in ms that aggregated writes may wait before being flushed
+     * @throws IllegalArgumentException if the delay is not positive
+     * @see #setWriteAggregationSize(int)
+     */
+    public void setWriteAggregationDelay(long writeAggregationDelay)
+    {
+        if (writeAggregationDelay<=0)
+            throw new IllegalArgumentException("Invalid write aggregation delay: "+writeAggregationDelay);
+        _writeAggregationDelay = writeAggregationDelay;
+    }
+
     /* ------------------------------------------------------------ */
     /** Set the maximum size of a request header.
      * <p>Larger headers will allow for more and/or larger cookies plus larger form content encoded 
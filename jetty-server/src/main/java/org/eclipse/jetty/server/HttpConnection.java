@@ -35,6 +35,7 @@ import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.io.AbstractConnection;
+import org.eclipse.jetty.io.AbstractEndPoint;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
@@ -103,6 +104,12 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         _input = _channel.getRequest().getHttpInput();
         _parser = newHttpParser(compliance);
         _recordHttpComplianceViolations=recordComplianceViolations;
+        if (_config.getWriteAggregationSize()>0 && endPoint instanceof AbstractEndPoint)
+        {
+            AbstractEndPoint aggregating = (AbstractEndPoint)endPoint;
+            aggregating.setWriteAggregationSize(_config.getWriteAggregationSize());
+            aggregating.setWriteAggregationDelay(_config.getWriteAggregationDelay());
+        }
         if (LOG.isDebugEnabled())
             LOG.debug("New HTTP Connection {}", this);
     }
@@ -550,16 +557,39 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         LOG.debug("ignore push in {}",this);
     }
 
+    @Override
+    public void fillInterested()
+    {
+        flushAggregated();
+        super.fillInterested();
+    }
+
     public void asyncReadFillInterested()
     {
+        flushAggregated();
         getEndPoint().fillInterested(_asyncReadCallback);
     }
 
     public void blockingReadFillInterested()
     {
+        flushAggregated();
         getEndPoint().fillInterested(_blockingReadCallback);
     }
 
+    /**
+     * Writes any response content aggregated by the endpoint, as the client
+     * may be waiting for it before sending more data.
+     */
+    private void flushAggregated()
+    {
+        if (_config.getWriteAggregationSize()>0)
+        {
+            EndPoint endPoint = getEndPoint();
+            if (endPoint instanceof AbstractEndPoint)
+                ((AbstractEndPoint)endPoint).flushAggregated();
+        }
+    }
+
     public void blockingReadFailure(Throwable e)
     {
         _blockingReadCallback.failed(e);
@@ -737,23 +767,23 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
                             if (BufferUtil.hasContent(_content))
                             {
                                 if (BufferUtil.hasContent(chunk))
-                                    getEndPoint().write(this, _header, chunk, _content);
+                                    write(_header, chunk, _content);
                                 else
-                                    getEndPoint().write(this, _header, _content);
+                                    write(_header, _content);
                             }
                             else
-                                getEndPoint().write(this, _header);
+                                write(_header);
                         }
                         else if (BufferUtil.hasContent(chunk))
                         {
                             if (BufferUtil.hasContent(_content))
-                                getEndPoint().write(this, chunk, _content);
+                                write(chunk, _content);
                             else
-                                getEndPoint().write(this, chunk);
+                                write(chunk);
                         }
                         else if (BufferUtil.hasContent(_content))
                         {
-                            getEndPoint().write(this, _content);
+                            write(_content);
                         }
                         else
                         {
@@ -782,6 +812,17 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
             }
         }
 
+        private void write(ByteBuffer... buffers)
+        {
+            // Only the last write of a response is aggregated: once it has succeeded the
+            // response is complete, and a later failure to write it can only close the connection.
+            EndPoint endPoint = getEndPoint();
+            if (_lastContent && _config.getWriteAggregationSize()>0 && endPoint instanceof AbstractEndPoint)
+                ((AbstractEndPoint)endPoint).writeAggregated(this, buffers);
+            else
+                endPoint.write(this, buffers);
+        }
+
         private void releaseHeader()
         {
             ByteBuffer h=_header;
@@ -22,6 +22,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.atomic.AtomicReference;
@@ -33,6 +34,9 @@ import javax.servlet.ServletResponse;
 import javax.servlet.WriteListener;
 
 import org.eclipse.jetty.http.HttpContent;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.io.ChannelEndPoint;
+import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
@@ -118,6 +122,7 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     }
 
     private static Logger LOG = Log.getLogger(HttpOutput.class);
+    private static final int MAPPED_REGION_SIZE = 16 * 1024 * 1024;
 
     private final HttpChannel _channel;
     private final SharedBlockingCallback _writeBlocker;
@@ -722,7 +727,32 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     {
         try (Blocker blocker = _writeBlocker.acquire())
         {
-            new ReadableByteChannelWritingCB(in, blocker).iterate();
+            sendContent(in, blocker);
+            blocker.block();
+        }
+        catch (Throwable failure)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug(failure);
+            abort(failure);
+            throw failure;
+        }
+    }
+
+    /**
+     * Blocking send of a region of a file.
+     * The file will be closed after sending the region.
+     *
+     * @param file     The file to send
+     * @param position The position within the file of the region to send
+     * @param count    The length of the region to send
+     * @throws IOException if the send fails
+     */
+    public void sendContent(FileChannel file, long position, long count) throws IOException
+    {
+        try (Blocker blocker = _writeBlocker.acquire())
+        {
+            sendContent(file, position, count, blocker);
             blocker.block();
         }
         catch (Throwable failure)
@@ -813,9 +843,43 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         if (LOG.isDebugEnabled())
             LOG.debug("sendContent(channel={},{})", in, callback);
 
+        if (in instanceof FileChannel)
+        {
+            FileChannel file = (FileChannel)in;
+            try
+            {
+                long position = file.position();
+                sendContent(file, position, file.size() - position, callback);
+            }
+            catch (Throwable x)
+            {
+                abort(x);
+                close(file);
+                callback.failed(x);
+            }
+            return;
+        }
+
         new ReadableByteChannelWritingCB(in, callback).iterate();
     }
 
+    /**
+     * Asynchronous send of a region of a file, without copying it through a pooled buffer.
+     * The file will be closed after sending the region.
+     *
+     * @param file     The file to send
+     * @param position The position within the file of the region to send
+     * @param count    The length of the region to send
+     * @param callback The callback to use to notify success or failure
+     */
+    public void sendContent(FileChannel file, long position, long count, Callback callback)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("sendContent(file={},{},{},{})", file, position, count, callback);
+
+        new FileChannelWritingCB(file, position, count, callback).iterate();
+    }
+
     /**
      * Asynchronous send of HTTP content.
      *
@@ -1359,6 +1423,110 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * An iterating callback that will write a region of a {@link FileChannel} to the {@link HttpChannel},
+     * without copying it through a pooled buffer.
+     * If the response is the only content written to the {@link ChannelEndPoint} of an HTTP/1
+     * connection, the region is transferred to the end point with
+     * {@link ChannelEndPoint#transferFrom(FileChannel, long, long)} once the response is committed.
+     * Otherwise, for example with TLS, HTTP/2 or an {@link Interceptor}, the region is written as
+     * buffers mapped from the file.
+     */
+    private class FileChannelWritingCB extends IteratingNestedCallback
+    {
+        private final FileChannel _file;
+        private final ChannelEndPoint _endPoint;
+        private long _position;
+        private long _remaining;
+        private boolean _committed;
+        private boolean _eof;
+
+        public FileChannelWritingCB(FileChannel file, long position, long count, Callback callback)
+        {
+            super(callback);
+            _file = file;
+            _position = position;
+            _remaining = count;
+            _endPoint = getTransferEndPoint(count);
+            _written += count;
+        }
+
+        private ChannelEndPoint getTransferEndPoint(long count)
+        {
+            // The generator must have nothing to add to the content,
+            // which is sent as is after the response headers.
+            if (_interceptor != _channel || BufferUtil.hasContent(_aggregate) || _written != 0)
+                return null;
+            if (_channel.getResponse().getLongContentLength() != count || HttpMethod.HEAD.is(_channel.getRequest().getMethod()))
+                return null;
+            EndPoint endPoint = _channel.getEndPoint();
+            if (endPoint instanceof ChannelEndPoint && endPoint.getConnection() instanceof HttpConnection)
+                return (ChannelEndPoint)endPoint;
+            return null;
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            if (_eof)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("EOF of {}", this);
+                _file.close();
+                closed();
+                return Action.SUCCEEDED;
+            }
+
+            if (_endPoint != null)
+            {
+                // Commit the response, so that the content follows the headers.
+                if (!_committed)
+                {
+                    _committed = true;
+                    _eof = _remaining == 0;
+                    write(BufferUtil.EMPTY_BUFFER, _eof, this);
+                    return Action.SCHEDULED;
+                }
+
+                while (_remaining > 0)
+                {
+                    long transferred = _endPoint.transferFrom(_file, _position, _remaining);
+                    if (transferred == 0)
+                        break;
+                    _channel.onContentTransferred(transferred);
+                    _position += transferred;
+                    _remaining -= transferred;
+                }
+
+                if (_remaining == 0)
+                {
+                    _eof = true;
+                    write(BufferUtil.EMPTY_BUFFER, true, this);
+                    return Action.SCHEDULED;
+                }
+            }
+
+            // Write the next region as a mapped buffer. If transferring, the end point cannot accept
+            // more bytes, or has aggregated content to write first: write a small region, after any
+            // aggregated content, to be called back once it is writable.
+            long length = Math.min(_remaining, _endPoint == null ? MAPPED_REGION_SIZE : getBufferSize());
+            ByteBuffer region = _file.map(FileChannel.MapMode.READ_ONLY, _position, length);
+            _position += length;
+            _remaining -= length;
+            _eof = _remaining == 0;
+            write(region, _eof, this);
+            return Action.SCHEDULED;
+        }
+
+        @Override
+        public void onCompleteFailure(Throwable x)
+        {
+            abort(x);
+            HttpOutput.this.close(_file);
+            super.onCompleteFailure(x);
+        }
+    }
+
     private static class WriteBlocker extends SharedBlockingCallback
     {
         private final HttpChannel _channel;
@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.List;
@@ -757,7 +759,17 @@ public class ResourceService
                     response.addDateHeader(HttpHeader.DATE.asString(),System.currentTimeMillis());
                 response.setHeader(HttpHeader.CONTENT_RANGE.asString(),
                         singleSatisfiableRange.toHeaderRangeString(content_length));
-                content.getResource().writeTo(out,singleSatisfiableRange.getFirst(content_length),singleLength);
+
+                // send the range without copying it, if it can be written directly from the file
+                long first = singleSatisfiableRange.getFirst(content_length);
+                ReadableByteChannel channel = written ? null : content.getReadableByteChannel();
+                if (channel instanceof FileChannel)
+                    ((HttpOutput)out).sendContent((FileChannel)channel,first,singleLength);
+                else
+                {
+                    IO.close(channel);
+                    content.getResource().writeTo(out,first,singleLength);
+                }
                 return true;
             }
 
@@ -24,12 +24,16 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.channels.Channel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
@@ -42,6 +46,7 @@ import org.eclipse.jetty.io.ManagedSelector;
 import org.eclipse.jetty.io.SelectorManager;
 import org.eclipse.jetty.io.SocketChannelEndPoint;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.annotation.Name;
@@ -80,14 +85,18 @@ import org.eclipse.jetty.util.thread.Scheduler;
 @ManagedObject("HTTP connector using NIO ByteChannels and Selectors")
 public class ServerConnector extends AbstractNetworkConnector
 {
+    private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
     private final SelectorManager _manager;
     private final AtomicReference<Closeable> _acceptor = new AtomicReference<>();
     private volatile ServerSocketChannel _acceptChannel;
+    private volatile ServerSocketChannel[] _acceptChannels;
     private volatile boolean _inheritChannel = false;
     private volatile int _localPort = -1;
     private volatile int _acceptQueueSize = 0;
     private volatile boolean _reuseAddress = true;
     private volatile int _lingerTime = -1;
+    private volatile boolean _reusePort = false;
 
     /**
      * <p>Construct a ServerConnector with a private instance of {@link HttpConnectionFactory} as the only factory.</p>
@@ -227,6 +236,20 @@ public class ServerConnector extends AbstractNetworkConnector
         setAcceptorPriorityDelta(-2);
     }
 
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption()
+    {
+        try
+        {
+            // StandardSocketOptions.SO_REUSEPORT is only available from Java 9
+            return (SocketOption<Boolean>)StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        }
+        catch (Throwable x)
+        {
+            return null;
+        }
+    }
+
     protected SelectorManager newSelectorManager(Executor executor, Scheduler scheduler, int selectors)
     {
         return new ServerConnectorManager(executor, scheduler, selectors);
@@ -239,11 +262,29 @@ public class ServerConnector extends AbstractNetworkConnector
 
         if (getAcceptors()==0)
         {
-            _acceptChannel.configureBlocking(false);
-            _acceptor.set(_manager.acceptor(_acceptChannel));
+            for (ServerSocketChannel channel : getAcceptChannels())
+                channel.configureBlocking(false);
+            _acceptor.set(newSelectorAcceptor());
         }
     }
 
+    private Closeable newSelectorAcceptor()
+    {
+        ServerSocketChannel[] channels = getAcceptChannels();
+        if (channels.length==1)
+            return _manager.acceptor(channels[0]);
+
+        // Each channel bound with SO_REUSEPORT is owned by its own selector
+        List<Closeable> acceptors = new ArrayList<>(channels.length);
+        for (ServerSocketChannel channel : channels)
+            acceptors.add(_manager.acceptor(channel));
+        return () ->
+        {
+            for (Closeable acceptor : acceptors)
+                IO.close(acceptor);
+        };
+    }
+
     @Override
     public boolean isOpen()
     {
@@ -305,9 +346,57 @@ public class ServerConnector extends AbstractNetworkConnector
             if (_localPort <= 0)
                 throw new IOException("Server channel not bound");
             addBean(_acceptChannel);
+
+            // An inherited channel may be bound with SO_REUSEPORT regardless of the configuration
+            if (isReusePort() && isReusePortBound(_acceptChannel))
+                openReusePortChannels();
         }
     }
 
+    /**
+     * <p>Opens one more channel bound with SO_REUSEPORT for each acceptor, or for
+     * each selector if there are no acceptors, so that the kernel balances the
+     * new connections among them.</p>
+     *
+     * @throws IOException if a channel cannot be opened
+     */
+    private void openReusePortChannels() throws IOException
+    {
+        int count = getAcceptors()>0 ? getAcceptors() : _manager.getSelectorCount();
+        if (count<=1)
+            return;
+
+        ServerSocketChannel[] channels = new ServerSocketChannel[count];
+        channels[0] = _acceptChannel;
+        try
+        {
+            for (int i=1; i<count; i++)
+            {
+                channels[i] = openAcceptChannel(_localPort, true);
+                channels[i].configureBlocking(true);
+            }
+        }
+        catch (IOException e)
+        {
+            for (int i=1; i<count; i++)
+                IO.close(channels[i]);
+            throw e;
+        }
+
+        for (int i=1; i<count; i++)
+            addBean(channels[i]);
+        _acceptChannels = channels;
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} opened {} SO_REUSEPORT channels", this, count);
+    }
+
+    private static boolean isReusePortBound(ServerSocketChannel channel) throws IOException
+    {
+        return SO_REUSEPORT!=null &&
+            channel.supportedOptions().contains(SO_REUSEPORT) &&
+            Boolean.TRUE.equals(channel.getOption(SO_REUSEPORT));
+    }
+
     /**
      * Called by {@link #open()} to obtain the accepting channel.
      * @return ServerSocketChannel used to accept connections.
@@ -326,15 +415,33 @@ public class ServerConnector extends AbstractNetworkConnector
         }
 
         if (serverChannel == null)
-        {
-            serverChannel = ServerSocketChannel.open();
+            serverChannel = openAcceptChannel(getPort(), isReusePort());
 
-            InetSocketAddress bindAddress = getHost() == null ? new InetSocketAddress(getPort()) : new InetSocketAddress(getHost(), getPort());
+        return serverChannel;
+    }
+
+    private ServerSocketChannel openAcceptChannel(int port, boolean reusePort) throws IOException
+    {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try
+        {
+            InetSocketAddress bindAddress = getHost() == null ? new InetSocketAddress(port) : new InetSocketAddress(getHost(), port);
             serverChannel.socket().setReuseAddress(getReuseAddress());
+            if (reusePort)
+            {
+                if (SO_REUSEPORT!=null && serverChannel.supportedOptions().contains(SO_REUSEPORT))
+                    serverChannel.setOption(SO_REUSEPORT, true);
+                else
+                    LOG.warn("SO_REUSEPORT not supported, using a single channel for {}", this);
+            }
             serverChannel.socket().bind(bindAddress, getAcceptQueueSize());
+            return serverChannel;
+        }
+        catch (IOException e)
+        {
+            IO.close(serverChannel);
+            throw e;
         }
-
-        return serverChannel;
     }
     
     @Override
@@ -349,6 +456,17 @@ public class ServerConnector extends AbstractNetworkConnector
     {
         super.close();
         
+        ServerSocketChannel[] channels = _acceptChannels;
+        _acceptChannels = null;
+        if (channels != null)
+        {
+            for (int i=1; i<channels.length; i++)
+            {
+                removeBean(channels[i]);
+                IO.close(channels[i]);
+            }
+        }
+
         ServerSocketChannel serverChannel = _acceptChannel;
         _acceptChannel = null;
         if (serverChannel != null)
@@ -373,7 +491,8 @@ public class ServerConnector extends AbstractNetworkConnector
     @Override
     public void accept(int acceptorID) throws IOException
     {
-        ServerSocketChannel serverChannel = _acceptChannel;
+        ServerSocketChannel[] channels = _acceptChannels;
+        ServerSocketChannel serverChannel = channels == null ? _acceptChannel : channels[acceptorID % channels.length];
         if (serverChannel != null && serverChannel.isOpen())
         {
             SocketChannel channel = serverChannel.accept();
@@ -485,6 +604,52 @@ public class ServerConnector extends AbstractNetworkConnector
         _reuseAddress = reuseAddress;
     }
 
+    /**
+     * @return whether the server sockets are bound with SO_REUSEPORT
+     */
+    @ManagedAttribute("Whether the server sockets are bound with SO_REUSEPORT")
+    public boolean isReusePort()
+    {
+        return _reusePort;
+    }
+
+    /**
+     * <p>Sets whether to bind the server sockets with SO_REUSEPORT.</p>
+     * <p>When enabled and supported by the JVM and the OS, a listening channel is
+     * opened for each acceptor, or for each selector if there are no acceptors,
+     * all bound to the same port, so that the kernel balances new connections
+     * among them instead of having all acceptors contend on a single channel.</p>
+     *
+     * @param reusePort whether to bind the server sockets with SO_REUSEPORT
+     */
+    public void setReusePort(boolean reusePort)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _reusePort = reusePort;
+    }
+
+    /**
+     * @return the channels accepting connections
+     */
+    protected ServerSocketChannel[] getAcceptChannels()
+    {
+        ServerSocketChannel[] channels = _acceptChannels;
+        if (channels != null)
+            return channels;
+        ServerSocketChannel channel = _acceptChannel;
+        return channel == null ? new ServerSocketChannel[0] : new ServerSocketChannel[]{channel};
+    }
+
+    /**
+     * @return the number of channels accepting connections
+     */
+    @ManagedAttribute("The number of channels accepting connections")
+    public int getAcceptChannelCount()
+    {
+        return getAcceptChannels().length;
+    }
+
    
     @Override
     public void setAccepting(boolean accepting)
@@ -499,7 +664,7 @@ public class ServerConnector extends AbstractNetworkConnector
             {
                 if (_acceptor.get()==null)
                 {
-                    Closeable acceptor = _manager.acceptor(_acceptChannel);
+                    Closeable acceptor = newSelectorAcceptor();
                     if (!_acceptor.compareAndSet(null,acceptor))
                         acceptor.close();
                 }
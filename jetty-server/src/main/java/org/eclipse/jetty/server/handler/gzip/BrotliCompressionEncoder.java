@@ -0,0 +1,983 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+
+/**
+ * <p>A {@link CompressionEncoder} producing the brotli format (RFC 7932).</p>
+ * <p>The compressors favour speed, as needed to compress dynamic content: they find
+ * LZ77 matches with a hash table, whose chains are searched deeper as the quality
+ * increases, and encode each meta-block of up to 64 KiB with a single set of prefix
+ * codes built from the meta-block statistics, without block splitting, context
+ * modeling nor static dictionary references. Meta-blocks that would not be smaller
+ * than their content are stored uncompressed.</p>
+ * <p>Compressors are pooled in a bounded queue, so that their window, hash table and
+ * other buffers are reused across responses. A compressor holds more than
+ * 2<sup>windowBits</sup> bytes, and up to five times as much at quality 4 and above,
+ * so only compressors whose window is at most 2<sup>{@value #MAX_POOLED_WINDOW_BITS}</sup>
+ * bytes are pooled, and the pool is cleared when the encoder is stopped.</p>
+ */
+public class BrotliCompressionEncoder extends AbstractLifeCycle implements CompressionEncoder
+{
+    public static final int DEFAULT_QUALITY = 1;
+    public static final int DEFAULT_WINDOW_BITS = 16;
+    public static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    public static final int MAX_POOLED_WINDOW_BITS = 18;
+
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int HASH_BITS = 15;
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_CODE_LENGTH = 15;
+    private static final int MAX_CODE_LENGTH_CODE_LENGTH = 5;
+    private static final int LITERAL_ALPHABET = 256;
+    private static final int COMMAND_ALPHABET = 704;
+    private static final int DISTANCE_ALPHABET = 64;
+    private static final int INITIAL_LAST_DISTANCE = 4;
+    private static final int INITIAL_REPEATED_CODE_LENGTH = 8;
+
+    private static final int[] INSERT_BASE = {0, 1, 2, 3, 4, 5, 6, 8, 10, 14, 18, 26, 34, 50, 66, 98, 130, 194, 322, 578, 1090, 2114, 6210, 22594};
+    private static final int[] INSERT_EXTRA = {0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 7, 8, 9, 10, 12, 14, 24};
+    private static final int[] COPY_BASE = {2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 14, 18, 22, 30, 38, 54, 70, 102, 134, 198, 326, 582, 1094, 2118};
+    private static final int[] COPY_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 7, 8, 9, 10, 24};
+    // The first insert-and-copy symbol of the cells with an explicit distance, by insert and copy length code ranges.
+    private static final int[][] COMMAND_CELL = {{128, 192, 384}, {256, 320, 512}, {448, 576, 640}};
+    private static final int[] CODE_LENGTH_ORDER = {1, 2, 3, 4, 0, 5, 17, 6, 16, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+    // The static prefix code of the code length code lengths, bit reversed.
+    private static final int[] CODE_LENGTH_CODE = {0, 7, 3, 2, 1, 15};
+    private static final int[] CODE_LENGTH_CODE_BITS = {2, 4, 3, 2, 2, 4};
+
+    private final BlockingQueue<BrotliCompressor> _compressors;
+    private final int _quality;
+    private final int _windowBits;
+
+    public BrotliCompressionEncoder()
+    {
+        this(DEFAULT_QUALITY);
+    }
+
+    /**
+     * @param quality the compression quality, from 0 (fastest) to 11 (smallest)
+     */
+    public BrotliCompressionEncoder(int quality)
+    {
+        this(quality,DEFAULT_WINDOW_BITS);
+    }
+
+    /**
+     * @param quality the compression quality, from 0 (fastest) to 11 (smallest)
+     * @param windowBits the base 2 logarithm of the sliding window size, from 16 to 24
+     */
+    public BrotliCompressionEncoder(int quality, int windowBits)
+    {
+        this(quality,windowBits,DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param quality the compression quality, from 0 (fastest) to 11 (smallest)
+     * @param windowBits the base 2 logarithm of the sliding window size, from 16 to 24
+     * @param poolSize the maximum number of idle compressors kept for reuse, or 0 to not pool them;
+     * compressors are not pooled if windowBits is greater than {@value #MAX_POOLED_WINDOW_BITS}
+     */
+    public BrotliCompressionEncoder(int quality, int windowBits, int poolSize)
+    {
+        if (quality<0 || quality>11)
+            throw new IllegalArgumentException("Invalid quality " + quality);
+        if (windowBits<16 || windowBits>24)
+            throw new IllegalArgumentException("Invalid window bits " + windowBits);
+        if (poolSize<0)
+            throw new IllegalArgumentException("Invalid pool size " + poolSize);
+        _quality = quality;
+        _windowBits = windowBits;
+        _compressors = poolSize>0 && windowBits<=MAX_POOLED_WINDOW_BITS ? new ArrayBlockingQueue<>(poolSize) : null;
+    }
+
+    public int getQuality()
+    {
+        return _quality;
+    }
+
+    public int getWindowBits()
+    {
+        return _windowBits;
+    }
+
+    /**
+     * @return the number of idle compressors in the pool
+     */
+    public int getPooledCompressors()
+    {
+        return _compressors==null?0:_compressors.size();
+    }
+
+    @Override
+    public CompressedContentFormat getFormat()
+    {
+        return CompressedContentFormat.BR;
+    }
+
+    @Override
+    public Compressor acquire()
+    {
+        BrotliCompressor compressor = _compressors==null?null:_compressors.poll();
+        if (compressor==null)
+            return new BrotliCompressor();
+        return compressor;
+    }
+
+    private void recycle(BrotliCompressor compressor)
+    {
+        if (_compressors!=null)
+        {
+            compressor.reset();
+            _compressors.offer(compressor);
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        if (_compressors!=null)
+            _compressors.clear();
+        super.doStop();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{q=%d,w=%d}",getClass().getSimpleName(),hashCode(),_quality,_windowBits);
+    }
+
+    private static int log2(int value)
+    {
+        return 31-Integer.numberOfLeadingZeros(value);
+    }
+
+    private static int insertCode(int length)
+    {
+        if (length<6)
+            return length;
+        if (length<130)
+        {
+            int bits = log2(length-2)-1;
+            return (bits<<1) + ((length-2)>>>bits) + 2;
+        }
+        if (length<2114)
+            return log2(length-66) + 10;
+        if (length<6210)
+            return 21;
+        if (length<22594)
+            return 22;
+        return 23;
+    }
+
+    private static int copyCode(int length)
+    {
+        if (length<10)
+            return length-2;
+        if (length<134)
+        {
+            int bits = log2(length-6)-1;
+            return (bits<<1) + ((length-6)>>>bits) + 4;
+        }
+        if (length<2118)
+            return log2(length-70) + 12;
+        return 23;
+    }
+
+    private static int commandSymbol(int insertCode, int copyCode, boolean lastDistance)
+    {
+        int bits = (copyCode & 7) | ((insertCode & 7) << 3);
+        if (lastDistance)
+            return copyCode<8?bits:(bits|64);
+        return COMMAND_CELL[insertCode>>>3][copyCode>>>3] | bits;
+    }
+
+    /**
+     * <p>Builds the canonical prefix code of the given code lengths, with the bits
+     * of each code reversed as they are written least significant bit first.</p>
+     */
+    private static void buildCodes(byte[] depths, int size, int[] codes)
+    {
+        int[] next = new int[MAX_CODE_LENGTH+1];
+        for (int s=0;s<size;s++)
+            next[depths[s]]++;
+        int code = 0;
+        next[0] = 0;
+        for (int bits=1;bits<=MAX_CODE_LENGTH;bits++)
+        {
+            int count = next[bits];
+            next[bits] = code;
+            code = (code+count) << 1;
+        }
+        for (int s=0;s<size;s++)
+        {
+            int depth = depths[s];
+            codes[s] = depth>0?Integer.reverse(next[depth]++) >>> (32-depth):0;
+        }
+    }
+
+    private class BrotliCompressor implements Compressor
+    {
+        private final int _maxDistance = (1 << _windowBits) - 16;
+        private final int _chainDepth = _quality<4?1:1<<Math.min(_quality-2,9);
+        private final boolean _lazy = _quality>=5;
+        private final boolean _insertMatches = _quality>=2;
+        private final int _skip = _quality==0?4:_quality==1?5:-1;
+        private final byte[] _data = new byte[(1 << _windowBits) + BLOCK_SIZE];
+        private final int[] _head = new int[1 << HASH_BITS];
+        private final int[] _chain = _chainDepth>1?new int[_data.length]:null;
+        private final int[] _commands = new int[3*(BLOCK_SIZE/MIN_MATCH+1)];
+        private final int[] _literalHistogram = new int[LITERAL_ALPHABET];
+        private final int[] _commandHistogram = new int[COMMAND_ALPHABET];
+        private final int[] _distanceHistogram = new int[DISTANCE_ALPHABET];
+        private final byte[] _literalDepths = new byte[LITERAL_ALPHABET];
+        private final byte[] _commandDepths = new byte[COMMAND_ALPHABET];
+        private final byte[] _distanceDepths = new byte[DISTANCE_ALPHABET];
+        private final int[] _literalCodes = new int[LITERAL_ALPHABET];
+        private final int[] _commandCodes = new int[COMMAND_ALPHABET];
+        private final int[] _distanceCodes = new int[DISTANCE_ALPHABET];
+        private final long[] _leaves = new long[COMMAND_ALPHABET];
+        private final long[] _weights = new long[2*COMMAND_ALPHABET];
+        private final int[] _parents = new int[2*COMMAND_ALPHABET];
+        private final int[] _nodeDepths = new int[2*COMMAND_ALPHABET];
+        private final byte[] _codeLengthSymbols = new byte[COMMAND_ALPHABET];
+        private final byte[] _codeLengthExtras = new byte[COMMAND_ALPHABET];
+        private final int[] _codeLengthHistogram = new int[CODE_LENGTH_ORDER.length];
+        private final byte[] _codeLengthDepths = new byte[CODE_LENGTH_ORDER.length];
+        private final int[] _codeLengthCodes = new int[CODE_LENGTH_ORDER.length];
+        private byte[] _output = new byte[BLOCK_SIZE + 1024];
+        private int _outputStart;
+        private int _outputEnd;
+        private long _bits;
+        private int _bitCount;
+        private byte[] _input;
+        private int _inputOffset;
+        private int _inputLength;
+        private int _start;
+        private int _end;
+        private int _lastDistance;
+        private int _matchDistance;
+        private boolean _started;
+        private boolean _finishing;
+        private boolean _finished;
+
+        private BrotliCompressor()
+        {
+            reset();
+        }
+
+        private void reset()
+        {
+            Arrays.fill(_head,-1);
+            _outputStart = 0;
+            _outputEnd = 0;
+            _bits = 0;
+            _bitCount = 0;
+            _input = null;
+            _inputOffset = 0;
+            _inputLength = 0;
+            _start = 0;
+            _end = 0;
+            _lastDistance = INITIAL_LAST_DISTANCE;
+            _started = false;
+            _finishing = false;
+            _finished = false;
+        }
+
+        @Override
+        public CompressedContentFormat getFormat()
+        {
+            return CompressedContentFormat.BR;
+        }
+
+        @Override
+        public boolean needsInput()
+        {
+            return _inputLength==0 && _outputStart==_outputEnd;
+        }
+
+        @Override
+        public void setInput(byte[] buffer, int offset, int length)
+        {
+            _input = buffer;
+            _inputOffset = offset;
+            _inputLength = length;
+        }
+
+        @Override
+        public void finish()
+        {
+            _finishing = true;
+        }
+
+        @Override
+        public boolean finished()
+        {
+            return _finished && _outputStart==_outputEnd;
+        }
+
+        @Override
+        public int compress(byte[] buffer, int offset, int length, boolean flush)
+        {
+            if (_outputStart==_outputEnd)
+            {
+                _outputStart = 0;
+                _outputEnd = 0;
+                if (!_finished)
+                    encode(flush);
+            }
+
+            int produced = Math.min(length,_outputEnd-_outputStart);
+            System.arraycopy(_output,_outputStart,buffer,offset,produced);
+            _outputStart += produced;
+            return produced;
+        }
+
+        @Override
+        public void release()
+        {
+            recycle(this);
+        }
+
+        private void encode(boolean flush)
+        {
+            if (!_started)
+            {
+                _started = true;
+                writeWindowBits();
+            }
+
+            while (true)
+            {
+                bufferInput();
+                boolean drained = _inputLength==0;
+                if (_end-_start==BLOCK_SIZE || drained && _end>_start && (_finishing || flush))
+                    writeMetaBlock();
+
+                if (!drained)
+                {
+                    if (_outputEnd>0)
+                        return;
+                    continue;
+                }
+
+                if (_finishing)
+                {
+                    // ISLAST and ISLASTEMPTY.
+                    writeBits(2,3);
+                    alignToByte();
+                    _finished = true;
+                }
+                else if (flush && _bitCount>0)
+                {
+                    // An empty metadata meta-block, to byte align the output.
+                    writeBits(1,0);
+                    writeBits(2,3);
+                    writeBits(1,0);
+                    writeBits(2,0);
+                    alignToByte();
+                }
+                return;
+            }
+        }
+
+        private void bufferInput()
+        {
+            while (_inputLength>0 && _end-_start<BLOCK_SIZE)
+            {
+                if (_end==_data.length)
+                    slide();
+                int length = Math.min(_inputLength,Math.min(BLOCK_SIZE-(_end-_start),_data.length-_end));
+                System.arraycopy(_input,_inputOffset,_data,_end,length);
+                _inputOffset += length;
+                _inputLength -= length;
+                _end += length;
+            }
+            if (_inputLength==0)
+                _input = null;
+        }
+
+        private void slide()
+        {
+            int shift = _start - (1 << _windowBits);
+            System.arraycopy(_data,shift,_data,0,_end-shift);
+            for (int i=0;i<_head.length;i++)
+                _head[i] = _head[i]>=shift?_head[i]-shift:-1;
+            if (_chain!=null)
+            {
+                for (int i=shift;i<_end;i++)
+                    _chain[i-shift] = _chain[i]>=shift?_chain[i]-shift:-1;
+            }
+            _start -= shift;
+            _end -= shift;
+        }
+
+        private int hash(int position)
+        {
+            int value = (_data[position] & 0xFF) |
+                (_data[position+1] & 0xFF) << 8 |
+                (_data[position+2] & 0xFF) << 16 |
+                (_data[position+3] & 0xFF) << 24;
+            return (value * 0x1E35A7BD) >>> (32-HASH_BITS);
+        }
+
+        private void insert(int position, int hash)
+        {
+            if (_chain!=null)
+                _chain[position] = _head[hash];
+            _head[hash] = position;
+        }
+
+        private int findMatch(int position, int end, int hash)
+        {
+            int best = 0;
+            int max = end-position;
+            int candidate = _head[hash];
+            for (int depth=_chainDepth;candidate>=0 && depth>0;depth--)
+            {
+                int distance = position-candidate;
+                if (distance>_maxDistance)
+                    break;
+                if (_data[candidate+best]==_data[position+best])
+                {
+                    int length = 0;
+                    while (length<max && _data[candidate+length]==_data[position+length])
+                        length++;
+                    if (length>best)
+                    {
+                        best = length;
+                        _matchDistance = distance;
+                        if (length==max)
+                            break;
+                    }
+                }
+                if (_chain==null)
+                    break;
+                candidate = _chain[candidate];
+            }
+            return best;
+        }
+
+        /**
+         * @return the number of commands, each an insert length, a copy length and a distance
+         */
+        private int parse(int start, int end)
+        {
+            int commands = 0;
+            int literals = start;
+            int position = start;
+            int limit = end-MIN_MATCH;
+            int misses = 0;
+            while (position<=limit)
+            {
+                int hash = hash(position);
+                int length = findMatch(position,end,hash);
+                insert(position,hash);
+                if (length<MIN_MATCH)
+                {
+                    // Skip faster over content that does not compress at the lowest qualities.
+                    position += _skip<0?1:1+(misses++>>_skip);
+                    continue;
+                }
+
+                int distance = _matchDistance;
+                if (_lazy)
+                {
+                    while (position<limit)
+                    {
+                        int next = hash(position+1);
+                        int nextLength = findMatch(position+1,end,next);
+                        if (nextLength<=length)
+                            break;
+                        insert(++position,next);
+                        length = nextLength;
+                        distance = _matchDistance;
+                    }
+                }
+
+                _commands[commands++] = position-literals;
+                _commands[commands++] = length;
+                _commands[commands++] = distance;
+
+                int matchEnd = position+length;
+                if (_insertMatches)
+                {
+                    for (int p=position+1;p<matchEnd && p<=limit;p++)
+                        insert(p,hash(p));
+                }
+                position = matchEnd;
+                literals = position;
+                misses = 0;
+            }
+
+            if (literals<end)
+            {
+                _commands[commands++] = end-literals;
+                _commands[commands++] = 0;
+                _commands[commands++] = 0;
+            }
+            return commands/3;
+        }
+
+        private void writeMetaBlock()
+        {
+            int start = _start;
+            int length = _end-start;
+            _start = _end;
+
+            int outputEnd = _outputEnd;
+            long bits = _bits;
+            int bitCount = _bitCount;
+
+            int commands = parse(start,start+length);
+            Arrays.fill(_literalHistogram,0);
+            Arrays.fill(_commandHistogram,0);
+            Arrays.fill(_distanceHistogram,0);
+            writeCommands(start,commands,false);
+
+            // ISLAST, MNIBBLES, MLEN-1 and ISUNCOMPRESSED.
+            writeBits(1,0);
+            writeBits(2,0);
+            writeBits(16,length-1);
+            writeBits(1,0);
+            // NBLTYPESL, NBLTYPESI and NBLTYPESD.
+            writeBits(3,0);
+            // NPOSTFIX and NDIRECT.
+            writeBits(6,0);
+            // The literal context mode.
+            writeBits(2,0);
+            // NTREESL and NTREESD.
+            writeBits(2,0);
+            writePrefixCode(_literalHistogram,LITERAL_ALPHABET,8,_literalDepths,_literalCodes);
+            writePrefixCode(_commandHistogram,COMMAND_ALPHABET,10,_commandDepths,_commandCodes);
+            writePrefixCode(_distanceHistogram,DISTANCE_ALPHABET,6,_distanceDepths,_distanceCodes);
+            int lastDistance = writeCommands(start,commands,true);
+
+            if (8L*(_outputEnd-outputEnd)+_bitCount-bitCount<8L*(length+4))
+            {
+                _lastDistance = lastDistance;
+                return;
+            }
+
+            // Store the meta-block uncompressed.
+            _outputEnd = outputEnd;
+            _bits = bits;
+            _bitCount = bitCount;
+            writeBits(1,0);
+            writeBits(2,0);
+            writeBits(16,length-1);
+            writeBits(1,1);
+            alignToByte();
+            ensureOutput(length);
+            System.arraycopy(_data,start,_output,_outputEnd,length);
+            _outputEnd += length;
+        }
+
+        /**
+         * <p>Either counts the symbols of the commands or writes them.</p>
+         *
+         * @return the last distance after the commands
+         */
+        private int writeCommands(int start, int commands, boolean write)
+        {
+            int position = start;
+            int lastDistance = _lastDistance;
+            for (int c=0;c<3*commands;c+=3)
+            {
+                int insert = _commands[c];
+                int copy = _commands[c+1];
+                int distance = _commands[c+2];
+
+                // A final command without copy ends the meta-block after its literals,
+                // so its copy length and distance are not used.
+                int insertCode = insertCode(insert);
+                int copyCode = copy==0?2:copyCode(copy);
+                boolean implicit = insertCode<8 && copyCode<16 && (copy==0 || distance==lastDistance);
+                int symbol = commandSymbol(insertCode,copyCode,implicit);
+                int distanceSymbol = -1;
+                int distanceBits = 0;
+                int distanceExtra = 0;
+                if (!implicit && copy>0)
+                {
+                    if (distance==lastDistance)
+                    {
+                        distanceSymbol = 0;
+                    }
+                    else
+                    {
+                        int value = distance+3;
+                        distanceBits = log2(value)-1;
+                        distanceSymbol = 16 + 2*(distanceBits-1) + ((value>>>distanceBits) & 1);
+                        distanceExtra = value & ((1<<distanceBits)-1);
+                        lastDistance = distance;
+                    }
+                }
+
+                if (write)
+                {
+                    writeBits(_commandDepths[symbol],_commandCodes[symbol]);
+                    writeBits(INSERT_EXTRA[insertCode],insert-INSERT_BASE[insertCode]);
+                    writeBits(COPY_EXTRA[copyCode],copy==0?0:copy-COPY_BASE[copyCode]);
+                    for (int i=position;i<position+insert;i++)
+                    {
+                        int literal = _data[i] & 0xFF;
+                        writeBits(_literalDepths[literal],_literalCodes[literal]);
+                    }
+                    if (distanceSymbol>=0)
+                    {
+                        writeBits(_distanceDepths[distanceSymbol],_distanceCodes[distanceSymbol]);
+                        writeBits(distanceBits,distanceExtra);
+                    }
+                }
+                else
+                {
+                    _commandHistogram[symbol]++;
+                    for (int i=position;i<position+insert;i++)
+                        _literalHistogram[_data[i] & 0xFF]++;
+                    if (distanceSymbol>=0)
+                        _distanceHistogram[distanceSymbol]++;
+                }
+                position += insert+copy;
+            }
+            return lastDistance;
+        }
+
+        private void writePrefixCode(int[] histogram, int size, int alphabetBits, byte[] depths, int[] codes)
+        {
+            Arrays.fill(depths,(byte)0);
+            int count = 0;
+            int[] symbols = new int[4];
+            for (int s=0;s<size;s++)
+            {
+                if (histogram[s]>0)
+                {
+                    if (count<4)
+                        symbols[count] = s;
+                    count++;
+                }
+            }
+
+            if (count<=1)
+            {
+                // A simple prefix code with a single symbol, coded with no bits.
+                Arrays.fill(codes,0);
+                writeBits(2,1);
+                writeBits(2,0);
+                writeBits(alphabetBits,symbols[0]);
+                return;
+            }
+
+            buildDepths(histogram,size,MAX_CODE_LENGTH,depths);
+            buildCodes(depths,size,codes);
+
+            if (count<=4)
+            {
+                // A simple prefix code, with the symbols in increasing code length order.
+                for (int i=1;i<count;i++)
+                {
+                    for (int j=i;j>0 && depths[symbols[j]]<depths[symbols[j-1]];j--)
+                    {
+                        int s = symbols[j];
+                        symbols[j] = symbols[j-1];
+                        symbols[j-1] = s;
+                    }
+                }
+                writeBits(2,1);
+                writeBits(2,count-1);
+                for (int i=0;i<count;i++)
+                    writeBits(alphabetBits,symbols[i]);
+                if (count==4)
+                    writeBits(1,depths[symbols[0]]==1?1:0);
+                return;
+            }
+
+            writeComplexPrefixCode(depths,size);
+        }
+
+        private void writeComplexPrefixCode(byte[] depths, int size)
+        {
+            // Run length encode the code lengths, without the trailing zeros.
+            int length = size;
+            while (depths[length-1]==0)
+                length--;
+            int symbols = 0;
+            int previous = INITIAL_REPEATED_CODE_LENGTH;
+            for (int i=0;i<length;)
+            {
+                int value = depths[i];
+                int repeat = 1;
+                while (i+repeat<length && depths[i+repeat]==value)
+                    repeat++;
+                i += repeat;
+                if (value==0)
+                {
+                    symbols = writeZeroRepeats(symbols,repeat);
+                }
+                else
+                {
+                    symbols = writeRepeats(symbols,previous,value,repeat);
+                    previous = value;
+                }
+            }
+
+            Arrays.fill(_codeLengthHistogram,0);
+            for (int i=0;i<symbols;i++)
+                _codeLengthHistogram[_codeLengthSymbols[i]]++;
+            Arrays.fill(_codeLengthDepths,(byte)0);
+            int codes = 0;
+            int code = 0;
+            for (int s=0;s<_codeLengthHistogram.length;s++)
+            {
+                if (_codeLengthHistogram[s]>0)
+                {
+                    codes++;
+                    code = s;
+                }
+            }
+            if (codes==1)
+                _codeLengthDepths[code] = 1;
+            else
+                buildDepths(_codeLengthHistogram,_codeLengthHistogram.length,MAX_CODE_LENGTH_CODE_LENGTH,_codeLengthDepths);
+
+            int skip = 0;
+            if (_codeLengthDepths[CODE_LENGTH_ORDER[0]]==0 && _codeLengthDepths[CODE_LENGTH_ORDER[1]]==0)
+                skip = _codeLengthDepths[CODE_LENGTH_ORDER[2]]==0?3:2;
+            int stored = CODE_LENGTH_ORDER.length;
+            if (codes>1)
+            {
+                while (_codeLengthDepths[CODE_LENGTH_ORDER[stored-1]]==0)
+                    stored--;
+            }
+            writeBits(2,skip);
+            for (int i=skip;i<stored;i++)
+            {
+                int depth = _codeLengthDepths[CODE_LENGTH_ORDER[i]];
+                writeBits(CODE_LENGTH_CODE_BITS[depth],CODE_LENGTH_CODE[depth]);
+            }
+
+            // A code length code with a single symbol is coded with no bits.
+            if (codes==1)
+                _codeLengthDepths[code] = 0;
+            buildCodes(_codeLengthDepths,_codeLengthDepths.length,_codeLengthCodes);
+            for (int i=0;i<symbols;i++)
+            {
+                int symbol = _codeLengthSymbols[i];
+                writeBits(_codeLengthDepths[symbol],_codeLengthCodes[symbol]);
+                if (symbol==16)
+                    writeBits(2,_codeLengthExtras[i]);
+                else if (symbol==17)
+                    writeBits(3,_codeLengthExtras[i]);
+            }
+        }
+
+        private int writeRepeats(int symbols, int previous, int value, int repeat)
+        {
+            if (previous!=value)
+            {
+                symbols = addCodeLength(symbols,value,0);
+                repeat--;
+            }
+            if (repeat==7)
+            {
+                symbols = addCodeLength(symbols,value,0);
+                repeat--;
+            }
+            if (repeat<3)
+            {
+                for (int i=0;i<repeat;i++)
+                    symbols = addCodeLength(symbols,value,0);
+                return symbols;
+            }
+            int start = symbols;
+            repeat -= 3;
+            while (true)
+            {
+                symbols = addCodeLength(symbols,16,repeat & 3);
+                repeat >>>= 2;
+                if (repeat==0)
+                    break;
+                repeat--;
+            }
+            reverseCodeLengths(start,symbols);
+            return symbols;
+        }
+
+        private int writeZeroRepeats(int symbols, int repeat)
+        {
+            if (repeat==11)
+            {
+                symbols = addCodeLength(symbols,0,0);
+                repeat--;
+            }
+            if (repeat<3)
+            {
+                for (int i=0;i<repeat;i++)
+                    symbols = addCodeLength(symbols,0,0);
+                return symbols;
+            }
+            int start = symbols;
+            repeat -= 3;
+            while (true)
+            {
+                symbols = addCodeLength(symbols,17,repeat & 7);
+                repeat >>>= 3;
+                if (repeat==0)
+                    break;
+                repeat--;
+            }
+            reverseCodeLengths(start,symbols);
+            return symbols;
+        }
+
+        private int addCodeLength(int symbols, int symbol, int extra)
+        {
+            _codeLengthSymbols[symbols] = (byte)symbol;
+            _codeLengthExtras[symbols] = (byte)extra;
+            return symbols+1;
+        }
+
+        private void reverseCodeLengths(int start, int end)
+        {
+            for (int i=start, j=end-1;i<j;i++, j--)
+            {
+                byte symbol = _codeLengthSymbols[i];
+                _codeLengthSymbols[i] = _codeLengthSymbols[j];
+                _codeLengthSymbols[j] = symbol;
+                byte extra = _codeLengthExtras[i];
+                _codeLengthExtras[i] = _codeLengthExtras[j];
+                _codeLengthExtras[j] = extra;
+            }
+        }
+
+        /**
+         * <p>Computes Huffman code lengths, limited to the given length by flattening the
+         * symbol counts until the tree is shallow enough.</p>
+         */
+        private void buildDepths(int[] histogram, int size, int limit, byte[] depths)
+        {
+            for (long minimum=1;;minimum<<=1)
+            {
+                int leaves = 0;
+                for (int s=0;s<size;s++)
+                {
+                    if (histogram[s]>0)
+                        _leaves[leaves++] = (Math.max(histogram[s],minimum) << 16) | s;
+                }
+                Arrays.sort(_leaves,0,leaves);
+                for (int i=0;i<leaves;i++)
+                    _weights[i] = _leaves[i] >>> 16;
+
+                // Merge the two lightest of the sorted leaves and of the internal nodes, which are created sorted.
+                int leaf = 0;
+                int node = leaves;
+                int next = leaves;
+                while (next<2*leaves-1)
+                {
+                    int a = leaf<leaves && (node>=next || _weights[leaf]<=_weights[node])?leaf++:node++;
+                    int b = leaf<leaves && (node>=next || _weights[leaf]<=_weights[node])?leaf++:node++;
+                    _weights[next] = _weights[a]+_weights[b];
+                    _parents[a] = next;
+                    _parents[b] = next;
+                    next++;
+                }
+
+                int max = 0;
+                _nodeDepths[next-1] = 0;
+                for (int i=next-2;i>=0;i--)
+                {
+                    int depth = _nodeDepths[_parents[i]]+1;
+                    _nodeDepths[i] = depth;
+                    if (i<leaves && depth>max)
+                        max = depth;
+                }
+
+                if (max<=limit)
+                {
+                    for (int i=0;i<leaves;i++)
+                        depths[(int)(_leaves[i] & 0xFFFF)] = (byte)_nodeDepths[i];
+                    return;
+                }
+            }
+        }
+
+        private void writeWindowBits()
+        {
+            if (_windowBits==16)
+            {
+                writeBits(1,0);
+            }
+            else if (_windowBits==17)
+            {
+                writeBits(7,1);
+            }
+            else
+            {
+                writeBits(1,1);
+                writeBits(3,_windowBits-17);
+            }
+        }
+
+        private void writeBits(int count, long value)
+        {
+            _bits |= value << _bitCount;
+            _bitCount += count;
+            if (_bitCount>=32)
+            {
+                ensureOutput(4);
+                _output[_outputEnd++] = (byte)_bits;
+                _output[_outputEnd++] = (byte)(_bits >>> 8);
+                _output[_outputEnd++] = (byte)(_bits >>> 16);
+                _output[_outputEnd++] = (byte)(_bits >>> 24);
+                _bits >>>= 32;
+                _bitCount -= 32;
+            }
+        }
+
+        private void alignToByte()
+        {
+            ensureOutput(4);
+            while (_bitCount>0)
+            {
+                _output[_outputEnd++] = (byte)_bits;
+                _bits >>>= 8;
+                _bitCount -= 8;
+            }
+            _bits = 0;
+            _bitCount = 0;
+        }
+
+        private void ensureOutput(int length)
+        {
+            if (_outputEnd+length>_output.length)
+                _output = Arrays.copyOf(_output,Math.max(2*_output.length,_outputEnd+length));
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{q=%d,w=%d}",getClass().getSimpleName(),hashCode(),_quality,_windowBits);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+
+/**
+ * <p>A content encoding that {@link GzipHandler} may negotiate with the
+ * {@code Accept-Encoding} request header, in addition to gzip.</p>
+ * <p>Implementations are expected to pool their {@link Compressor}s, so that
+ * the compression state is reused across responses.</p>
+ *
+ * @see GzipHandler#addCompressionEncoder(CompressionEncoder)
+ */
+public interface CompressionEncoder
+{
+    /**
+     * @return the format of the compressed content, giving the content encoding and the etag suffix
+     */
+    CompressedContentFormat getFormat();
+
+    /**
+     * @return a compressor, possibly reused, that must be {@link Compressor#release() released}
+     * once the content has been compressed
+     */
+    Compressor acquire();
+
+    /**
+     * <p>A stateful compressor, with semantics similar to {@link java.util.zip.Deflater}.</p>
+     */
+    interface Compressor
+    {
+        /**
+         * @return the format of the content produced by this compressor
+         */
+        CompressedContentFormat getFormat();
+
+        /**
+         * @return true if the input has been consumed and no compressed output is pending
+         */
+        boolean needsInput();
+
+        /**
+         * <p>Sets the content to compress; the array is referenced, not copied, until
+         * {@link #needsInput()} returns true.</p>
+         *
+         * @param buffer the content to compress
+         * @param offset the offset of the content within the array
+         * @param length the length of the content
+         */
+        void setInput(byte[] buffer, int offset, int length);
+
+        /**
+         * <p>Indicates that the current input is the last.</p>
+         */
+        void finish();
+
+        /**
+         * @return true if the end of the compressed content has been produced
+         */
+        boolean finished();
+
+        /**
+         * @param buffer the array to fill with compressed content
+         * @param offset the offset within the array
+         * @param length the space available in the array
+         * @param flush whether all the input should be compressed and made available,
+         * possibly at the expense of the compression ratio
+         * @return the number of compressed bytes produced
+         */
+        int compress(byte[] buffer, int offset, int length, boolean flush);
+
+        /**
+         * <p>Returns this compressor to its pool.</p>
+         */
+        void release();
+    }
+}
@@ -0,0 +1,88 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+
+/**
+ * <p>A {@link CompressionEncoder} producing the gzip format with a {@link Deflater}.</p>
+ * <p>Deflaters are pooled in a {@link ThreadLocal}, in the same way as {@link GzipHandler} does.</p>
+ */
+public class GzipCompressionEncoder implements CompressionEncoder
+{
+    private final ThreadLocal<Deflater> _deflaters = new ThreadLocal<>();
+    private final int _level;
+
+    public GzipCompressionEncoder()
+    {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level the compression level, from 0 to 9, or -1 for the default level
+     */
+    public GzipCompressionEncoder(int level)
+    {
+        if (level<Deflater.DEFAULT_COMPRESSION || level>Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid level " + level);
+        _level = level;
+    }
+
+    public int getLevel()
+    {
+        return _level;
+    }
+
+    @Override
+    public CompressedContentFormat getFormat()
+    {
+        return CompressedContentFormat.GZIP;
+    }
+
+    @Override
+    public Compressor acquire()
+    {
+        Deflater deflater = _deflaters.get();
+        if (deflater==null)
+            deflater = new Deflater(_level,true);
+        else
+            _deflaters.set(null);
+        return new GzipCompressor(deflater,this::recycle);
+    }
+
+    private void recycle(Deflater deflater)
+    {
+        if (_deflaters.get()==null)
+        {
+            deflater.reset();
+            _deflaters.set(deflater);
+        }
+        else
+            deflater.end();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{l=%d}",getClass().getSimpleName(),hashCode(),_level);
+    }
+}
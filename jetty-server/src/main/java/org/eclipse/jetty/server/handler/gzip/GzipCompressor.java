@@ -0,0 +1,143 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+
+/**
+ * <p>A {@link CompressionEncoder.Compressor} producing the gzip format with a {@link Deflater}
+ * obtained from, and recycled to, a {@link GzipFactory} or a {@link GzipCompressionEncoder}.</p>
+ */
+public class GzipCompressor implements CompressionEncoder.Compressor
+{
+    private final static byte[] GZIP_HEADER = new byte[] { (byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final CRC32 _crc = new CRC32();
+    private final byte[] _trailer = new byte[8];
+    private final Consumer<Deflater> _recycler;
+    private final Deflater _deflater;
+    private int _header;
+    private int _trailerLength = -1;
+
+    public GzipCompressor(Deflater deflater, GzipFactory factory)
+    {
+        this(deflater,factory::recycle);
+    }
+
+    /**
+     * @param deflater the deflater to compress with
+     * @param recycler the function called with the deflater when this compressor is released
+     */
+    public GzipCompressor(Deflater deflater, Consumer<Deflater> recycler)
+    {
+        _deflater = deflater;
+        _recycler = recycler;
+    }
+
+    public Deflater getDeflater()
+    {
+        return _deflater;
+    }
+
+    @Override
+    public CompressedContentFormat getFormat()
+    {
+        return CompressedContentFormat.GZIP;
+    }
+
+    @Override
+    public boolean needsInput()
+    {
+        return _deflater.needsInput();
+    }
+
+    @Override
+    public void setInput(byte[] buffer, int offset, int length)
+    {
+        _crc.update(buffer,offset,length);
+        _deflater.setInput(buffer,offset,length);
+    }
+
+    @Override
+    public void finish()
+    {
+        _deflater.finish();
+    }
+
+    @Override
+    public boolean finished()
+    {
+        return _trailerLength==_trailer.length;
+    }
+
+    @Override
+    public int compress(byte[] buffer, int offset, int length, boolean flush)
+    {
+        int produced=0;
+        if (_header<GZIP_HEADER.length)
+        {
+            int header=Math.min(length,GZIP_HEADER.length-_header);
+            System.arraycopy(GZIP_HEADER,_header,buffer,offset,header);
+            _header+=header;
+            produced+=header;
+        }
+
+        if (produced<length && !_deflater.finished())
+            produced+=_deflater.deflate(buffer,offset+produced,length-produced,flush?Deflater.SYNC_FLUSH:Deflater.NO_FLUSH);
+
+        if (_deflater.finished())
+        {
+            if (_trailerLength<0)
+            {
+                putInt(_trailer,0,(int)_crc.getValue());
+                putInt(_trailer,4,_deflater.getTotalIn());
+                _trailerLength=0;
+            }
+            int trailer=Math.min(length-produced,_trailer.length-_trailerLength);
+            System.arraycopy(_trailer,_trailerLength,buffer,offset+produced,trailer);
+            _trailerLength+=trailer;
+            produced+=trailer;
+        }
+        return produced;
+    }
+
+    @Override
+    public void release()
+    {
+        _recycler.accept(_deflater);
+    }
+
+    private static void putInt(byte[] buffer, int index, int value)
+    {
+        buffer[index++]=(byte)(value & 0xFF);
+        buffer[index++]=(byte)((value>>>8) & 0xFF);
+        buffer[index++]=(byte)((value>>>16) & 0xFF);
+        buffer[index]=(byte)((value>>>24) & 0xFF);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s}",getClass().getSimpleName(),hashCode(),_deflater);
+    }
+}
@@ -29,4 +29,15 @@ public interface GzipFactory
     boolean isMimeTypeGzipable(String mimetype);
 
     void recycle(Deflater deflater);
+
+    /**
+     * @param request the request to compress the response of
+     * @param content_length the length of the response content, or -1 if unknown
+     * @return the compressor to use for the response, or null if the response is not to be compressed
+     */
+    default CompressionEncoder.Compressor getCompressor(Request request, long content_length)
+    {
+        Deflater deflater = getDeflater(request,content_length);
+        return deflater==null?null:new GzipCompressor(deflater,this);
+    }
 }
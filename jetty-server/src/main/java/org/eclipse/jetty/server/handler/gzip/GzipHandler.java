@@ -20,10 +20,15 @@ package org.eclipse.jetty.server.handler.gzip;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.zip.Deflater;
 
 import javax.servlet.DispatcherType;
@@ -37,6 +42,7 @@ import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.http.QuotedCSV;
 import org.eclipse.jetty.http.pathmap.PathSpecSet;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
@@ -57,6 +63,14 @@ import org.eclipse.jetty.util.log.Logger;
  * The handler can be applied to the entire server (a gzip.mod is included in
  * the distribution) or it may be applied to individual contexts.
  * </p>
+ * <p>
+ * Other content encodings, such as brotli with {@link BrotliCompressionEncoder}, may be
+ * added with {@link #addCompressionEncoder(CompressionEncoder)}. The encoding is then
+ * negotiated from the quality values of the <code>Accept-Encoding</code> header, as per
+ * RFC 7231 section 5.3.4, so that <code>*</code> stands for the encodings not listed.
+ * When qualities are equal, the encodings set with {@link #setPreferredEncodings(String...)}
+ * are preferred, then the added encodings, in the order they were added, over gzip.
+ * </p>
  */
 public class GzipHandler extends HandlerWrapper implements GzipFactory
 {
@@ -77,6 +91,9 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     private final IncludeExclude<String> _methods = new IncludeExclude<>();
     private final IncludeExclude<String> _paths = new IncludeExclude<>(PathSpecSet.class);
     private final IncludeExclude<String> _mimeTypes = new IncludeExclude<>();
+    private final List<CompressionEncoder> _encoders = new CopyOnWriteArrayList<>();
+    private String[] _preferences = {};
+    private volatile String[] _preferredEncodings = {GZIP};
     private HttpField _vary;
 
     /**
@@ -112,6 +129,84 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         _agentPatterns.exclude(".*MSIE 6.0.*");
     }
 
+    /**
+     * Adds a content encoding to negotiate in addition to gzip.
+     *
+     * @param encoder the encoder of the content encoding
+     */
+    public void addCompressionEncoder(CompressionEncoder encoder)
+    {
+        _encoders.add(encoder);
+        addBean(encoder);
+        updatePreferredEncodings();
+    }
+
+    /**
+     * @return the content encodings negotiated in addition to gzip
+     */
+    public CompressionEncoder[] getCompressionEncoders()
+    {
+        return _encoders.toArray(new CompressionEncoder[0]);
+    }
+
+    /**
+     * @param encoders the content encodings to negotiate in addition to gzip, in order of preference
+     */
+    public void setCompressionEncoders(CompressionEncoder... encoders)
+    {
+        for (CompressionEncoder encoder : _encoders)
+            removeBean(encoder);
+        _encoders.clear();
+        _encoders.addAll(Arrays.asList(encoders));
+        for (CompressionEncoder encoder : encoders)
+            addBean(encoder);
+        updatePreferredEncodings();
+    }
+
+    /**
+     * @return the content encodings preferred when accepted with equal quality
+     */
+    public String[] getPreferredEncodings()
+    {
+        return _preferences;
+    }
+
+    /**
+     * Sets the content encodings preferred, in order, when the client accepts several with
+     * equal quality. Other encodings follow, the added encodings before gzip.
+     *
+     * @param encodings the preferred content encodings, such as <code>gzip</code> or <code>br</code>
+     */
+    public void setPreferredEncodings(String... encodings)
+    {
+        _preferences=encodings;
+        updatePreferredEncodings();
+    }
+
+    private void updatePreferredEncodings()
+    {
+        List<String> available = new ArrayList<>();
+        for (CompressionEncoder encoder : _encoders)
+            available.add(encoder.getFormat()._encoding);
+        available.add(GZIP);
+
+        List<String> encodings = new ArrayList<>();
+        for (String encoding : _preferences)
+        {
+            for (String a : available)
+            {
+                if (a.equalsIgnoreCase(encoding) && !encodings.contains(a))
+                    encodings.add(a);
+            }
+        }
+        for (String a : available)
+        {
+            if (!encodings.contains(a))
+                encodings.add(a);
+        }
+        _preferredEncodings=encodings.toArray(new String[0]);
+    }
+
     /**
      * @param patterns Regular expressions matching user agents to exclude
      */
@@ -286,30 +381,19 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     @Override
     public Deflater getDeflater(Request request, long content_length)
     {
-        String ua = request.getHttpFields().get(HttpHeader.USER_AGENT);
-        if (ua!=null && !isAgentGzipable(ua))
-        {
-            LOG.debug("{} excluded user agent {}",this,request);
+        if (!isCompressible(request,content_length))
             return null;
-        }
-        
-        if (content_length>=0 && content_length<_minGzipSize)
-        {
-            LOG.debug("{} excluded minGzipSize {}",this,request);
-            return null;
-        }
 
         // check the accept encoding header
-        HttpField accept = request.getHttpFields().getField(HttpHeader.ACCEPT_ENCODING);
+        List<String> accept = request.getHttpFields().getValuesList(HttpHeader.ACCEPT_ENCODING);
 
-        if (accept==null)
+        if (accept.isEmpty())
         {
             LOG.debug("{} excluded !accept {}",this,request);
             return null;
         }
-        boolean gzip = accept.contains("gzip");
 
-        if (!gzip)
+        if (!GZIP.equals(negotiateEncoding(accept)))
         {
             LOG.debug("{} excluded not gzip accept {}",this,request);
             return null;
@@ -323,6 +407,102 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         
         return df;
     }
+
+    @Override
+    public CompressionEncoder.Compressor getCompressor(Request request, long content_length)
+    {
+        if (_encoders.isEmpty())
+            return GzipFactory.super.getCompressor(request,content_length);
+
+        if (!isCompressible(request,content_length))
+            return null;
+
+        List<String> accept = request.getHttpFields().getValuesList(HttpHeader.ACCEPT_ENCODING);
+        if (accept.isEmpty())
+        {
+            LOG.debug("{} excluded !accept {}",this,request);
+            return null;
+        }
+
+        String encoding = negotiateEncoding(accept);
+        if (GZIP.equals(encoding))
+            return GzipFactory.super.getCompressor(request,content_length);
+        for (CompressionEncoder encoder : _encoders)
+        {
+            if (encoder.getFormat()._encoding.equals(encoding))
+                return encoder.acquire();
+        }
+
+        LOG.debug("{} excluded no accepted encoding {}",this,request);
+        return null;
+    }
+
+    /**
+     * Selects the content encoding with the highest quality, as per RFC 7231 section 5.3.4:
+     * an encoding not listed has the quality of <code>*</code>, if listed, and is not
+     * acceptable otherwise. Encodings of equal quality are selected in order of preference.
+     *
+     * @param accept the values of the <code>Accept-Encoding</code> header
+     * @return the selected encoding, or null if none is acceptable
+     */
+    private String negotiateEncoding(List<String> accept)
+    {
+        Map<String,Double> qualities = new HashMap<>();
+        for (String value : new QuotedCSV(accept.toArray(new String[0])))
+        {
+            String[] params = value.split(";");
+            double quality = 1.0;
+            for (int i=1;i<params.length;i++)
+            {
+                String param = params[i].trim();
+                if (param.length()>2 && (param.charAt(0)=='q' || param.charAt(0)=='Q') && param.charAt(1)=='=')
+                {
+                    try
+                    {
+                        quality = Double.parseDouble(param.substring(2));
+                    }
+                    catch (NumberFormatException x)
+                    {
+                        quality = 0.0;
+                    }
+                }
+            }
+            qualities.put(StringUtil.asciiToLowerCase(params[0].trim()),quality);
+        }
+
+        Double any = qualities.get("*");
+        String selected = null;
+        double best = 0.0;
+        for (String encoding : _preferredEncodings)
+        {
+            Double quality = qualities.get(encoding);
+            if (quality==null)
+                quality = any;
+            if (quality!=null && quality>best)
+            {
+                selected = encoding;
+                best = quality;
+            }
+        }
+        return selected;
+    }
+
+    private boolean isCompressible(Request request, long content_length)
+    {
+        String ua = request.getHttpFields().get(HttpHeader.USER_AGENT);
+        if (ua!=null && !isAgentGzipable(ua))
+        {
+            LOG.debug("{} excluded user agent {}",this,request);
+            return false;
+        }
+
+        if (content_length>=0 && content_length<_minGzipSize)
+        {
+            LOG.debug("{} excluded minGzipSize {}",this,request);
+            return false;
+        }
+        return true;
+    }
     
     public String[] getExcludedAgentPatterns()
     {
@@ -502,17 +682,13 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
             if (field.getHeader()==HttpHeader.IF_NONE_MATCH || field.getHeader()==HttpHeader.IF_MATCH)
             {
                 String etag = field.getValue();
-                int i=etag.indexOf(CompressedContentFormat.GZIP._etagQuote);
-                if (i>0)
+                String stripped = stripEtag(etag,CompressedContentFormat.GZIP);
+                for (CompressionEncoder encoder : _encoders)
+                    stripped = stripEtag(stripped,encoder.getFormat());
+                if (!stripped.equals(etag))
                 {
                     baseRequest.setAttribute("o.e.j.s.h.gzip.GzipHandler.etag",etag);
-                    while (i>=0)
-                    {
-                        etag=etag.substring(0,i)+etag.substring(i+CompressedContentFormat.GZIP._etag.length());
-                        i=etag.indexOf(CompressedContentFormat.GZIP._etagQuote,i);
-                    }
-                    
-                    fields.set(new HttpField(field.getHeader(),etag));
+                    fields.set(new HttpField(field.getHeader(),stripped));
                 }   
             }
         }
@@ -534,6 +710,17 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         }
     }
 
+    private static String stripEtag(String etag, CompressedContentFormat format)
+    {
+        int i=etag.indexOf(format._etagQuote);
+        while (i>0)
+        {
+            etag=etag.substring(0,i)+etag.substring(i+format._etag.length());
+            i=etag.indexOf(format._etagQuote,i);
+        }
+        return etag;
+    }
+
     /**
      * @param ua the user agent
      * @return whether compressing is allowed for the given user agent
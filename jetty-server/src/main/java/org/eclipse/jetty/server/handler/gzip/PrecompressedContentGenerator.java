@@ -0,0 +1,477 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.resource.Resource;
+
+/**
+ * <p>Generates the precompressed siblings of static content, for example {@code style.css.gz}
+ * and {@code style.css.br} next to {@code style.css}, so that they may be served by
+ * {@link org.eclipse.jetty.server.ResourceService} without compressing at runtime.</p>
+ * <p>The files of a base directory are compressed in parallel by a {@link ForkJoinPool},
+ * if their mime type is compressible according to the {@link GzipHandler} includes and
+ * excludes and if they are at least {@link GzipHandler#getMinGzipSize()} long.
+ * The {@code WEB-INF} and {@code META-INF} directories are not visited.</p>
+ * <p>Generation is incremental: a sibling is only written if it does not exist or is older
+ * than its file. Siblings are written to a temporary file of the work directory first, then
+ * moved in place, so that they may be generated while the content is served. No sibling is
+ * written if the compressed content is not smaller than the file; instead a marker recording
+ * the size and last modified time of the file is written in the work directory, so that the
+ * file is not compressed again until it changes.</p>
+ * <p>Unless {@link #setWorkDirectory(Path) set}, the work directory is {@code WEB-INF/precompressed}
+ * if the content has a {@code WEB-INF} directory, which is not served and is on the same file
+ * system, so that siblings are moved atomically. Otherwise it is a temporary directory deleted
+ * after the generation, and the markers are not kept.</p>
+ * <p>Files directly within an {@link #addExcludedDirectory(Path) excluded directory} are not
+ * given siblings, for example because writing them would change the last modified time of a
+ * directory watched for redeployment. Its subdirectories are still visited.</p>
+ */
+public class PrecompressedContentGenerator
+{
+    private static final Logger LOG = Log.getLogger(PrecompressedContentGenerator.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private GzipHandler _gzipHandler = new GzipHandler();
+    private MimeTypes _mimeTypes = new MimeTypes();
+    // The largest pooled brotli window, so that each thread reuses one compressor across files.
+    private CompressionEncoder[] _encoders = new CompressionEncoder[]
+    {
+        new BrotliCompressionEncoder(11,BrotliCompressionEncoder.MAX_POOLED_WINDOW_BITS),
+        new GzipCompressionEncoder(Deflater.BEST_COMPRESSION)
+    };
+    private int _parallelism = Runtime.getRuntime().availableProcessors();
+    private Path _workDirectory;
+    private final Set<Path> _excludedDirectories = new CopyOnWriteArraySet<>();
+
+    public GzipHandler getGzipHandler()
+    {
+        return _gzipHandler;
+    }
+
+    /**
+     * @param gzipHandler the handler whose mime types and minimum size select the files to compress
+     */
+    public void setGzipHandler(GzipHandler gzipHandler)
+    {
+        _gzipHandler = gzipHandler;
+    }
+
+    public MimeTypes getMimeTypes()
+    {
+        return _mimeTypes;
+    }
+
+    /**
+     * @param mimeTypes the mime types used to find the type of the files, usually those of the context
+     */
+    public void setMimeTypes(MimeTypes mimeTypes)
+    {
+        _mimeTypes = mimeTypes;
+    }
+
+    public CompressionEncoder[] getCompressionEncoders()
+    {
+        return _encoders;
+    }
+
+    /**
+     * @param encoders the encoders producing the siblings, by default brotli and gzip at their best compression,
+     * with the largest brotli window that is pooled
+     */
+    public void setCompressionEncoders(CompressionEncoder... encoders)
+    {
+        _encoders = encoders;
+    }
+
+    public int getParallelism()
+    {
+        return _parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads compressing files
+     */
+    public void setParallelism(int parallelism)
+    {
+        if (parallelism<=0)
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        _parallelism = parallelism;
+    }
+
+    public Path getWorkDirectory()
+    {
+        return _workDirectory;
+    }
+
+    /**
+     * @param workDirectory the directory, outside of the served content and preferably on the same file
+     * system, where siblings are written before being moved in place and where the markers of the files
+     * not worth compressing are kept, or null for the default
+     */
+    public void setWorkDirectory(Path workDirectory)
+    {
+        _workDirectory = workDirectory;
+    }
+
+    public Set<Path> getExcludedDirectories()
+    {
+        return Collections.unmodifiableSet(_excludedDirectories);
+    }
+
+    /**
+     * @param dir a directory whose files must not be given siblings, although its subdirectories may be
+     * @throws IOException if the real path of the directory cannot be resolved
+     */
+    public void addExcludedDirectory(Path dir) throws IOException
+    {
+        _excludedDirectories.add(dir.toRealPath());
+    }
+
+    /**
+     * <p>Generates the missing or stale precompressed siblings of the files within the given base.</p>
+     *
+     * @param base the base resource of the static content
+     * @return the number of siblings written
+     * @throws IOException if the base cannot be walked or a sibling cannot be written
+     */
+    public int generate(Resource base) throws IOException
+    {
+        File dir = base==null?null:base.getFile();
+        if (dir==null || !dir.isDirectory())
+        {
+            LOG.warn("Cannot precompress content of {}: not a directory",base);
+            return 0;
+        }
+        return generate(dir.toPath());
+    }
+
+    /**
+     * <p>Generates the missing or stale precompressed siblings of the files within the given directory.</p>
+     *
+     * @param dir the directory of the static content
+     * @return the number of siblings written
+     * @throws IOException if the directory cannot be walked or a sibling cannot be written
+     */
+    public int generate(Path dir) throws IOException
+    {
+        long start = System.nanoTime();
+        if (!Files.isDirectory(dir))
+            throw new IOException("Not a directory " + dir);
+
+        Path workDir = _workDirectory;
+        boolean temporary = false;
+        if (workDir==null)
+        {
+            Path webInf = dir.resolve("WEB-INF");
+            if (Files.isDirectory(webInf))
+            {
+                workDir = webInf.resolve("precompressed");
+            }
+            else
+            {
+                workDir = Files.createTempDirectory("precompressed");
+                temporary = true;
+            }
+        }
+        Files.createDirectories(workDir);
+
+        Generation generation = new Generation(dir,workDir);
+        // A dedicated pool, so that the compression does not use the threads of the common pool.
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        try
+        {
+            pool.invoke(new DirectoryTask(dir,true,generation));
+        }
+        catch (CompressionException x)
+        {
+            throw x.getCause();
+        }
+        finally
+        {
+            pool.shutdown();
+            if (temporary)
+                IO.delete(workDir.toFile());
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Precompressed {} siblings in {} in {} ms",generation._written,dir,TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start));
+        return generation._written.get();
+    }
+
+    /**
+     * @param file the file to compress
+     * @return whether the file should be compressed
+     * @throws IOException if the file cannot be accessed
+     */
+    protected boolean isCompressible(Path file) throws IOException
+    {
+        String name = file.getFileName().toString();
+        for (CompressionEncoder encoder : _encoders)
+        {
+            if (name.endsWith(encoder.getFormat()._extension))
+                return false;
+        }
+
+        String mimeType = _mimeTypes.getMimeByExtension(name);
+        if (mimeType==null || !_gzipHandler.isMimeTypeGzipable(MimeTypes.getContentTypeWithoutCharset(mimeType)))
+            return false;
+
+        return Files.size(file)>=_gzipHandler.getMinGzipSize();
+    }
+
+    private void compress(Path file, Generation generation) throws IOException
+    {
+        if (!isCompressible(file))
+            return;
+
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        long length = Files.size(file);
+        String relative = generation._dir.relativize(file).toString();
+        for (CompressionEncoder encoder : _encoders)
+        {
+            CompressedContentFormat format = encoder.getFormat();
+            Path sibling = file.resolveSibling(file.getFileName() + format._extension);
+            if (Files.exists(sibling) && Files.getLastModifiedTime(sibling).toMillis()>=lastModified)
+                continue;
+            Path marker = generation._workDir.resolve("skip").resolve(relative + format._extension);
+            if (isSkipped(marker,lastModified,length))
+                continue;
+            if (compress(file,sibling,encoder,generation._workDir))
+            {
+                generation._written.incrementAndGet();
+                Files.deleteIfExists(marker);
+            }
+            else
+            {
+                skip(marker,lastModified,length);
+            }
+        }
+    }
+
+    private boolean isSkipped(Path marker, long lastModified, long length) throws IOException
+    {
+        if (!Files.exists(marker) || Files.getLastModifiedTime(marker).toMillis()!=lastModified)
+            return false;
+        return Long.toString(length).equals(new String(Files.readAllBytes(marker),StandardCharsets.ISO_8859_1));
+    }
+
+    private void skip(Path marker, long lastModified, long length) throws IOException
+    {
+        Files.createDirectories(marker.getParent());
+        Files.write(marker,Long.toString(length).getBytes(StandardCharsets.ISO_8859_1));
+        Files.setLastModifiedTime(marker,FileTime.fromMillis(lastModified));
+    }
+
+    private boolean compress(Path file, Path sibling, CompressionEncoder encoder, Path workDir) throws IOException
+    {
+        long length = Files.size(file);
+        Path temp = Files.createTempFile(workDir,file.getFileName().toString(),".tmp");
+        boolean compressible = false;
+        try
+        {
+            CompressionEncoder.Compressor compressor = encoder.acquire();
+            try (InputStream in = Files.newInputStream(file);
+                 OutputStream out = Files.newOutputStream(temp))
+            {
+                byte[] input = new byte[BUFFER_SIZE];
+                byte[] output = new byte[BUFFER_SIZE];
+                long compressed = 0;
+                boolean eof = false;
+                while (!compressor.finished())
+                {
+                    if (!eof && compressor.needsInput())
+                    {
+                        int l = in.read(input);
+                        if (l<0)
+                        {
+                            eof = true;
+                            compressor.finish();
+                        }
+                        else
+                        {
+                            compressor.setInput(input,0,l);
+                        }
+                    }
+
+                    int l = compressor.compress(output,0,output.length,false);
+                    compressed += l;
+                    // Not worth serving unless smaller than the file.
+                    if (compressed>=length)
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Not compressible by {} {}",encoder,file);
+                        return false;
+                    }
+                    out.write(output,0,l);
+                }
+                compressible = true;
+            }
+            finally
+            {
+                compressor.release();
+            }
+
+            try
+            {
+                Files.move(temp,sibling,StandardCopyOption.ATOMIC_MOVE,StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException x)
+            {
+                Files.move(temp,sibling,StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Precompressed {}",sibling);
+            return true;
+        }
+        finally
+        {
+            if (!compressible)
+                Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,parallelism=%d}",getClass().getSimpleName(),hashCode(),Arrays.toString(_encoders),_parallelism);
+    }
+
+    private class DirectoryTask extends RecursiveAction
+    {
+        private final Path _dir;
+        private final boolean _root;
+        private final Generation _generation;
+
+        private DirectoryTask(Path dir, boolean root, Generation generation)
+        {
+            _dir = dir;
+            _root = root;
+            _generation = generation;
+        }
+
+        @Override
+        protected void compute()
+        {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(_dir))
+            {
+                boolean excluded = !_excludedDirectories.isEmpty() && _excludedDirectories.contains(_dir.toRealPath());
+                for (Path entry : entries)
+                {
+                    if (Files.isDirectory(entry))
+                    {
+                        String name = entry.getFileName().toString().toUpperCase(Locale.ENGLISH);
+                        if (!_root || !("WEB-INF".equals(name) || "META-INF".equals(name)))
+                            tasks.add(new DirectoryTask(entry,false,_generation));
+                    }
+                    else if (!excluded && Files.isRegularFile(entry))
+                    {
+                        tasks.add(new FileTask(entry,_generation));
+                    }
+                }
+            }
+            catch (IOException x)
+            {
+                throw new CompressionException(x);
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private class FileTask extends RecursiveAction
+    {
+        private final Path _file;
+        private final Generation _generation;
+
+        private FileTask(Path file, Generation generation)
+        {
+            _file = file;
+            _generation = generation;
+        }
+
+        @Override
+        protected void compute()
+        {
+            try
+            {
+                compress(_file,_generation);
+            }
+            catch (IOException x)
+            {
+                throw new CompressionException(x);
+            }
+        }
+    }
+
+    private static class Generation
+    {
+        private final Path _dir;
+        private final Path _workDir;
+        private final AtomicInteger _written = new AtomicInteger();
+
+        private Generation(Path dir, Path workDir)
+        {
+            _dir = dir;
+            _workDir = workDir;
+        }
+    }
+
+    private static class CompressionException extends RuntimeException
+    {
+        private CompressionException(IOException cause)
+        {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause()
+        {
+            return (IOException)super.getCause();
+        }
+    }
+}
@@ -20,6 +20,9 @@
 package org.eclipse.jetty.server.session;
 
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -44,9 +47,12 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
     protected int _gracePeriodSec = 60 * 60; //default of 1hr 
     protected long _lastExpiryCheckTime = 0; //last time in ms that getExpired was called
     protected int _savePeriodSec = 0; //time in sec between saves
+    protected SessionDataSerializer _serializer = new CompactSessionDataSerializer(); //converts attributes to bytes
 
     /**
      * Store the session data persistently.
+     * Stores able to write attributes separately may write only the
+     * {@link SessionData#getDirtyAttributes()} of sessions already saved.
      * 
      * @param id identity of session to store
      * @param data info of the session
@@ -54,6 +60,21 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
      * @throws Exception if unable to store data
      */
     public abstract void doStore(String id, SessionData data, long lastSaveTime) throws Exception;
+    
+    
+    /**
+     * Store several sessions persistently, by default one at a time.
+     * Stores able to write several sessions in one round trip override this.
+     * 
+     * @param sessions the sessions to store, by id
+     * @param lastSaveTimes the times of previous save of the sessions, or 0 if never saved, by id
+     * @throws Exception if unable to store the sessions
+     */
+    public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
+    {
+        for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+            doStore(entry.getKey(), entry.getValue(), lastSaveTimes.get(entry.getKey()));
+    }
 
    
     /**
@@ -97,11 +118,13 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
         {
             //set the last saved time to now
             data.setLastSaved(System.currentTimeMillis());
+            //the session and attributes changed while saving remain dirty
+            long modifications = data.getModifications();
             try
             {
                 //call the specific store method, passing in previous save time
                 doStore(id, data, lastSave);
-                data.setDirty(false); //only undo the dirty setting if we saved it
+                data.clearDirty(modifications); //only undo the dirty setting if we saved it
             }
             catch (Exception e)
             {
@@ -114,6 +137,59 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
     
 
 
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#storeAll(java.util.Map)
+     */
+    @Override
+    public void storeAll(Map<String,SessionData> sessions) throws Exception
+    {
+        long now = System.currentTimeMillis();
+        long savePeriodMs = (_savePeriodSec <=0? 0: TimeUnit.SECONDS.toMillis(_savePeriodSec));
+        
+        Map<String,SessionData> saving = new LinkedHashMap<>();
+        Map<String,Long> lastSaveTimes = new HashMap<>();
+        Map<String,Long> modifications = new HashMap<>();
+        for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+        {
+            SessionData data = entry.getValue();
+            if (data == null)
+                continue;
+
+            //save session if attribute changed or never been saved or time between saves exceeds threshold
+            long lastSave = data.getLastSaved();
+            if (data.isDirty() || (lastSave <= 0) || ((now-lastSave) > savePeriodMs))
+            {
+                lastSaveTimes.put(entry.getKey(), lastSave);
+                modifications.put(entry.getKey(), data.getModifications());
+                data.setLastSaved(now);
+                saving.put(entry.getKey(), data);
+            }
+        }
+        
+        if (saving.isEmpty())
+            return;
+        
+        if (LOG.isDebugEnabled())
+            LOG.debug("Store all: {}", saving.keySet());
+        
+        try
+        {
+            doStoreAll(saving, lastSaveTimes);
+            //the sessions and attributes changed while saving remain dirty
+            for (Map.Entry<String,SessionData> entry : saving.entrySet())
+                entry.getValue().clearDirty(modifications.get(entry.getKey()));
+        }
+        catch (Exception e)
+        {
+            //reset last save time of all the sessions if save failed
+            for (Map.Entry<String,SessionData> entry : saving.entrySet())
+                entry.getValue().setLastSaved(lastSaveTimes.get(entry.getKey()));
+            throw e;
+        }
+    }
+    
+
+
     /** 
      * @see org.eclipse.jetty.server.session.SessionDataStore#getExpired(java.util.Set)
      */
@@ -202,6 +278,36 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
     }
 
 
+    /**
+     * @return the serializer used to convert the attributes of sessions to bytes
+     */
+    @ManagedAttribute(value="serializer of session attributes", readonly=true)
+    public SessionDataSerializer getSerializer()
+    {
+        return _serializer;
+    }
+
+
+    /**
+     * The serializer used by the stores that persist the attributes
+     * of sessions as bytes. By default a {@link CompactSessionDataSerializer}
+     * is used, which can also read the attributes written by previous
+     * versions of the stores. With a {@link JavaSessionDataSerializer}
+     * the {@link FileSessionDataStore}, the JDBC store without an attribute
+     * table, and the Mongo and GCloud stores write attributes in the
+     * format that previous versions can read.
+     *
+     * @param serializer the serializer to set
+     */
+    public void setSerializer(SessionDataSerializer serializer)
+    {
+        checkStarted();
+        if (serializer == null)
+            throw new IllegalArgumentException("Null serializer");
+        _serializer = serializer;
+    }
+
+
     /** 
      * @see java.lang.Object#toString()
      */
@@ -29,6 +29,7 @@ public abstract class AbstractSessionDataStoreFactory implements SessionDataStor
 
     int _gracePeriodSec;
     int _savePeriodSec;
+    SessionDataSerializer _serializer;
     
     
     
@@ -66,6 +67,24 @@ public abstract class AbstractSessionDataStoreFactory implements SessionDataStor
     {
         _savePeriodSec = savePeriodSec;
     }
+
+
+    /**
+     * @return the serializer of session attributes, or null to use the default of the stores
+     */
+    public SessionDataSerializer getSerializer()
+    {
+        return _serializer;
+    }
+
+
+    /**
+     * @param serializer the serializer of session attributes to set on the stores
+     */
+    public void setSerializer(SessionDataSerializer serializer)
+    {
+        _serializer = serializer;
+    }
    
 
 }
@@ -0,0 +1,611 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.server.session;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jetty.util.TinyLfuPolicy;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Locker.Lock;
+
+/**
+ * BoundedSessionCache
+ *
+ * A DefaultSessionCache that holds at most a configurable number of sessions,
+ * and optionally a configurable estimated size of session data, so that a
+ * flood of new sessions cannot exhaust the heap before they expire.
+ *
+ * When the cache exceeds its limits, the session to evict is selected by a
+ * {@link TinyLfuPolicy}, so that frequently used sessions are not evicted by
+ * many sessions used only once. Evicted sessions are passivated and written to
+ * the SessionDataStore, from which they are loaded again when next requested;
+ * with a NullSessionDataStore, evicted sessions are lost. Sessions in use by a
+ * request are never evicted.
+ *
+ * The sessions are split by id into shards, each with its own policy and lock, so
+ * that requests for different sessions rarely contend. Accesses to sessions are
+ * not recorded in the policy when its shard is contended.
+ */
+@ManagedObject
+public class BoundedSessionCache extends DefaultSessionCache
+{
+    private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+
+    private final static int MAX_SHARDS = 16;
+    private final static int MIN_SESSIONS_PER_SHARD = 256;
+
+    private int _maxCachedSessions = 10000;
+    private long _maxCachedBytes = -1;
+    private Shard[] _shards;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+
+
+    /**
+     * The sessions of a shard, with the estimated size of their data
+     */
+    private static class Shard
+    {
+        private final ReentrantLock _lock = new ReentrantLock();
+        private final TinyLfuPolicy<String> _policy;
+        private final Map<String,Long> _sizes = new HashMap<>();
+        private final int _maxSessions;
+        private final long _maxBytes;
+        private long _bytes;
+
+        private Shard(int maxSessions, long maxBytes)
+        {
+            _policy = new TinyLfuPolicy<>(maxSessions);
+            _maxSessions = maxSessions;
+            _maxBytes = maxBytes;
+        }
+
+        private boolean isOverLimit()
+        {
+            return _policy.size() > _maxSessions || (_maxBytes >= 0 && _bytes > _maxBytes);
+        }
+
+        private void remove(String id)
+        {
+            _policy.remove(id);
+            Long size = _sizes.remove(id);
+            if (size != null)
+                _bytes -= size;
+        }
+    }
+
+
+    /**
+     * @param handler the SessionHandler
+     */
+    public BoundedSessionCache (SessionHandler handler)
+    {
+        super(handler);
+    }
+
+
+    /**
+     * @return the max number of sessions in the cache
+     */
+    @ManagedAttribute(value="max sessions held in cache", readonly=true)
+    public int getMaxCachedSessions()
+    {
+        return _maxCachedSessions;
+    }
+
+
+    /**
+     * @param maxCachedSessions the max number of sessions in the cache
+     */
+    public void setMaxCachedSessions(int maxCachedSessions)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+        _maxCachedSessions = maxCachedSessions;
+    }
+
+
+    /**
+     * @return the max estimated size in bytes of the sessions in the cache, or -1 if unlimited
+     */
+    @ManagedAttribute(value="max estimated bytes of sessions held in cache", readonly=true)
+    public long getMaxCachedBytes()
+    {
+        return _maxCachedBytes;
+    }
+
+
+    /**
+     * @param maxCachedBytes the max estimated size in bytes of the sessions in the cache, or -1 if unlimited
+     * @see #estimateSize(Session)
+     */
+    public void setMaxCachedBytes(long maxCachedBytes)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+        _maxCachedBytes = maxCachedBytes;
+    }
+
+
+    /**
+     * @return the estimated size in bytes of the sessions in the cache
+     */
+    @ManagedAttribute(value="estimated bytes of sessions in cache", readonly=true)
+    public long getCachedBytes()
+    {
+        long bytes = 0;
+        Shard[] shards = _shards;
+        if (shards != null)
+        {
+            for (Shard shard : shards)
+            {
+                shard._lock.lock();
+                try
+                {
+                    bytes += shard._bytes;
+                }
+                finally
+                {
+                    shard._lock.unlock();
+                }
+            }
+        }
+        return bytes;
+    }
+
+
+    /**
+     * @return the number of sessions found in the cache
+     */
+    @ManagedAttribute(value="sessions found in cache", readonly=true)
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+
+    /**
+     * @return the number of sessions not found in the cache
+     */
+    @ManagedAttribute(value="sessions not found in cache", readonly=true)
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+
+    /**
+     * @return the ratio of sessions found in the cache to sessions requested
+     */
+    @ManagedAttribute(value="ratio of sessions found in cache", readonly=true)
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double)hits / total;
+    }
+
+
+    /**
+     * @return the number of sessions evicted to the SessionDataStore because the cache was full
+     */
+    @ManagedAttribute(value="sessions evicted from a full cache", readonly=true)
+    public long getSessionsEvicted()
+    {
+        return _evictions.sum();
+    }
+
+
+    /**
+     * @return the number of evictions of sessions not used often enough to stay in a full cache
+     */
+    @ManagedAttribute(value="sessions not admitted in a full cache", readonly=true)
+    public long getSessionsRejected()
+    {
+        long rejections = 0;
+        Shard[] shards = _shards;
+        if (shards != null)
+        {
+            for (Shard shard : shards)
+            {
+                shard._lock.lock();
+                try
+                {
+                    rejections += shard._policy.getRejections();
+                }
+                finally
+                {
+                    shard._lock.unlock();
+                }
+            }
+        }
+        return rejections;
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#resetStats()
+     */
+    @ManagedOperation(value="reset statistics", impact="ACTION")
+    @Override
+    public void resetStats()
+    {
+        super.resetStats();
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+        Shard[] shards = _shards;
+        if (shards != null)
+        {
+            for (Shard shard : shards)
+            {
+                shard._lock.lock();
+                try
+                {
+                    shard._policy.resetStatistics();
+                }
+                finally
+                {
+                    shard._lock.unlock();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.AbstractSessionCache#doStart()
+     */
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_maxCachedSessions <= 0)
+            throw new IllegalStateException("Max cached sessions must be positive");
+
+        //only shard caches large enough for each shard to evict accurately
+        int shards = 1;
+        while (shards < MAX_SHARDS && _maxCachedSessions / (shards * 2) >= MIN_SESSIONS_PER_SHARD)
+            shards *= 2;
+
+        Shard[] array = new Shard[shards];
+        int maxSessions = (_maxCachedSessions + shards - 1) / shards;
+        long maxBytes = _maxCachedBytes < 0 ? -1 : (_maxCachedBytes + shards - 1) / shards;
+        for (int i = 0; i < shards; i++)
+            array[i] = new Shard(maxSessions, maxBytes);
+        _shards = array;
+
+        super.doStart();
+    }
+
+
+    private Shard getShard(String id)
+    {
+        Shard[] shards = _shards;
+        int hash = id.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[hash & (shards.length - 1)];
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.AbstractSessionCache#get(java.lang.String)
+     */
+    @Override
+    public Session get(String id) throws Exception
+    {
+        Session session = id == null ? null : _sessions.get(id);
+        if (session != null && !(session instanceof PlaceHolderSession))
+            _hits.increment();
+        else
+            _misses.increment();
+        return super.get(id);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#doGet(java.lang.String)
+     */
+    @Override
+    public Session doGet(String id)
+    {
+        Session session = super.doGet(id);
+        if (session != null && !(session instanceof PlaceHolderSession))
+        {
+            //record the access, unless it would contend on the shard
+            Shard shard = getShard(id);
+            if (shard._lock.tryLock())
+            {
+                try
+                {
+                    shard._policy.access(id);
+                }
+                finally
+                {
+                    shard._lock.unlock();
+                }
+            }
+        }
+        return session;
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#doPutIfAbsent(java.lang.String, org.eclipse.jetty.server.session.Session)
+     */
+    @Override
+    public Session doPutIfAbsent(String id, Session session)
+    {
+        Session s = super.doPutIfAbsent(id, session);
+        if (s == null && !(session instanceof PlaceHolderSession))
+            added(id, session);
+        return s;
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#doReplace(java.lang.String, org.eclipse.jetty.server.session.Session, org.eclipse.jetty.server.session.Session)
+     */
+    @Override
+    public boolean doReplace(String id, Session oldValue, Session newValue)
+    {
+        boolean result = super.doReplace(id, oldValue, newValue);
+        if (result && !(newValue instanceof PlaceHolderSession))
+            added(id, newValue);
+        return result;
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#doDelete(java.lang.String)
+     */
+    @Override
+    public Session doDelete(String id)
+    {
+        Session s = super.doDelete(id);
+        if (s != null && !(s instanceof PlaceHolderSession))
+        {
+            Shard shard = getShard(id);
+            shard._lock.lock();
+            try
+            {
+                //the session may have been added again in the meantime
+                if (!_sessions.containsKey(id))
+                    shard.remove(id);
+            }
+            finally
+            {
+                shard._lock.unlock();
+            }
+        }
+        return s;
+    }
+
+
+    private void added(String id, Session session)
+    {
+        Shard shard = getShard(id);
+        shard._lock.lock();
+        try
+        {
+            if (_sessions.get(id) == session)
+                shard._policy.add(id);
+        }
+        finally
+        {
+            shard._lock.unlock();
+        }
+    }
+
+
+    /**
+     * Put the session into the cache, then evict sessions
+     * if the cache exceeds its limits.
+     *
+     * @see org.eclipse.jetty.server.session.AbstractSessionCache#put(java.lang.String, org.eclipse.jetty.server.session.Session)
+     */
+    @Override
+    public void put(String id, Session session) throws Exception
+    {
+        super.put(id, session);
+
+        //the session data may have changed while in use, so estimate it again
+        long size = _maxCachedBytes < 0 ? 0 : estimateSize(session);
+
+        Shard shard = getShard(id);
+        shard._lock.lock();
+        try
+        {
+            if (_sessions.get(id) != session || !shard._policy.contains(id))
+                return;
+            Long previous = shard._sizes.put(id, size);
+            shard._bytes += size - (previous == null ? 0 : previous);
+            if (!shard.isOverLimit())
+                return;
+        }
+        finally
+        {
+            shard._lock.unlock();
+        }
+
+        shrink(shard);
+    }
+
+
+    /**
+     * Evict sessions from a shard until it is within its limits.
+     *
+     * Sessions are passivated while holding their lock, but never while
+     * holding the lock of a shard, so that no thread waits for the lock of
+     * a shard while holding the lock of a session another thread waits for.
+     *
+     * @param shard the shard to shrink
+     */
+    private void shrink(Shard shard)
+    {
+        //sessions in use are skipped, but only as many times as there are sessions
+        int attempts;
+        shard._lock.lock();
+        try
+        {
+            attempts = shard._policy.size();
+        }
+        finally
+        {
+            shard._lock.unlock();
+        }
+
+        while (attempts-- > 0)
+        {
+            String id;
+            Long size;
+            shard._lock.lock();
+            try
+            {
+                if (!shard.isOverLimit())
+                    return;
+                id = shard._policy.evict();
+                if (id == null)
+                    return;
+                size = shard._sizes.remove(id);
+                if (size != null)
+                    shard._bytes -= size;
+            }
+            finally
+            {
+                shard._lock.unlock();
+            }
+
+            Session session = _sessions.get(id);
+            if (session == null || session instanceof PlaceHolderSession || evict(session))
+                continue;
+
+            //the session could not be evicted, keep it
+            shard._lock.lock();
+            try
+            {
+                if (_sessions.get(id) == session && !shard._policy.contains(id))
+                {
+                    shard._policy.add(id);
+                    if (size != null)
+                    {
+                        shard._sizes.put(id, size);
+                        shard._bytes += size;
+                    }
+                }
+            }
+            finally
+            {
+                shard._lock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Passivate a session to the SessionDataStore and remove it from the cache.
+     *
+     * @param session the session to evict
+     * @return true if the session is no longer in the cache, false if it is in use or cannot be saved
+     */
+    protected boolean evict(Session session)
+    {
+        try (Lock lock = session.lock())
+        {
+            if (!session.isResident() || !session.isValid())
+                return true;
+            if (session.getRequests() > 0)
+                return false;
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Evicting session {} from full cache", session.getId());
+
+            if (_sessionDataStore.isPassivating())
+                session.willPassivate();
+            _sessionDataStore.store(session.getId(), session.getSessionData());
+
+            doDelete(session.getId());
+            session.setResident(false);
+            _evictions.increment();
+            return true;
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Passivation of session {} from full cache failed", session.getId(), e);
+            if (_sessionDataStore.isPassivating())
+                session.didActivate();
+            return false;
+        }
+    }
+
+
+    /**
+     * Estimate the size in memory of the data of a session.
+     *
+     * The default implementation is a cheap approximation based on the
+     * names and types of the attributes, without serializing them.
+     *
+     * @param session the session
+     * @return the estimated size in bytes
+     */
+    protected long estimateSize(Session session)
+    {
+        SessionData data = session.getSessionData();
+        long size = 256 + 2L * data.getId().length();
+        for (String name : data.getKeys())
+            size += 32 + 2L * name.length() + estimateSize(data.getAttribute(name));
+        return size;
+    }
+
+
+    private long estimateSize(Object value)
+    {
+        if (value == null)
+            return 0;
+        if (value instanceof CharSequence)
+            return 40 + 2L * ((CharSequence)value).length();
+        if (value instanceof byte[])
+            return 16 + ((byte[])value).length;
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character)
+            return 16;
+        if (value instanceof Collection)
+            return 64 + 32L * ((Collection<?>)value).size();
+        if (value instanceof Map)
+            return 64 + 64L * ((Map<?,?>)value).size();
+        return 64;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[evict=%d,removeUnloadable=%b,saveOnCreate=%b,saveOnInactiveEvict=%b,maxSessions=%d,maxBytes=%d]",
+                             this.getClass().getName(),this.hashCode(),_evictionPolicy,_removeUnloadableSessions,_saveOnCreate,_saveOnInactiveEviction,
+                             _maxCachedSessions,_maxCachedBytes);
+    }
+}
@@ -0,0 +1,513 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+
+/**
+ * CompactSessionDataSerializer
+ *
+ * A {@link SessionDataSerializer} writing a compact binary format, where the
+ * common types of attributes are tagged and written directly: strings,
+ * boxed primitives, dates, byte arrays and small {@link ArrayList}s,
+ * {@link HashSet}s and {@link HashMap}s of such values.
+ *
+ * The values of any other type are written with java serialization, in a
+ * single object stream that precedes the tagged values, so that references
+ * between them are preserved as they would be by serializing the whole map.
+ *
+ * Tagged values are read back as copies, so if a tagged date, byte array or
+ * collection is referenced more than once, by several tagged values or by a
+ * serialized value, the whole map is written with java serialization instead,
+ * as by {@link JavaSessionDataSerializer}, so that the references are preserved.
+ *
+ * Attributes written with java serialization by {@link JavaSessionDataSerializer}
+ * or by previous versions of the stores are recognized and read as such.
+ */
+public class CompactSessionDataSerializer implements SessionDataSerializer
+{
+    private static final int JAVA_MAGIC = 0xAC; //first byte of java serialization streams
+    private static final int MAGIC = 0xC5;
+    private static final int VERSION = 1;
+    private static final int MAX_COLLECTION_SIZE = 256;
+    private static final int MAX_DEPTH = 8;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int TRUE = 4;
+    private static final int FALSE = 5;
+    private static final int DOUBLE = 6;
+    private static final int FLOAT = 7;
+    private static final int SHORT = 8;
+    private static final int BYTE = 9;
+    private static final int CHARACTER = 10;
+    private static final int DATE = 11;
+    private static final int BYTES = 12;
+    private static final int LIST = 13;
+    private static final int SET = 14;
+    private static final int MAP = 15;
+    private static final int SERIALIZED = 16;
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataSerializer#serializeAttributes(java.util.Map, java.io.OutputStream)
+     */
+    @Override
+    public void serializeAttributes(Map<String, Object> attributes, OutputStream out) throws IOException
+    {
+        Encoder encoder = new Encoder();
+        encoder.writeVarInt(attributes.size());
+        for (Map.Entry<String,Object> entry : attributes.entrySet())
+        {
+            encoder.writeString(entry.getKey());
+            encoder.writeValue(entry.getValue(), 0);
+        }
+        if (encoder.isShared())
+            new JavaSessionDataSerializer().serializeAttributes(attributes, out);
+        else
+            encoder.writeTo(out);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataSerializer#deserializeAttributes(java.io.InputStream)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> deserializeAttributes(InputStream in) throws IOException, ClassNotFoundException
+    {
+        PushbackInputStream stream = new PushbackInputStream(in);
+        if (isJavaSerialized(stream))
+            return (Map<String,Object>)new ClassLoadingObjectInputStream(stream).readObject();
+
+        Decoder decoder = new Decoder(stream);
+        int size = decoder.readVarInt();
+        Map<String,Object> attributes = new HashMap<>();
+        for (int i = 0; i < size; i++)
+        {
+            String name = decoder.readString();
+            attributes.put(name, decoder.readValue());
+        }
+        return attributes;
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataSerializer#serializeAttribute(java.lang.Object, java.io.OutputStream)
+     */
+    @Override
+    public void serializeAttribute(Object value, OutputStream out) throws IOException
+    {
+        Encoder encoder = new Encoder();
+        encoder.writeValue(value, 0);
+        if (encoder.isShared())
+            new JavaSessionDataSerializer().serializeAttribute(value, out);
+        else
+            encoder.writeTo(out);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataSerializer#deserializeAttribute(java.io.InputStream)
+     */
+    @Override
+    public Object deserializeAttribute(InputStream in) throws IOException, ClassNotFoundException
+    {
+        PushbackInputStream stream = new PushbackInputStream(in);
+        if (isJavaSerialized(stream))
+            return new ClassLoadingObjectInputStream(stream).readUnshared();
+
+        return new Decoder(stream).readValue();
+    }
+
+
+    private boolean isJavaSerialized(PushbackInputStream in) throws IOException
+    {
+        int b = in.read();
+        if (b < 0)
+            throw new EOFException();
+        in.unread(b);
+        return b == JAVA_MAGIC;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x", getClass().getSimpleName(), hashCode());
+    }
+
+
+    /**
+     * Encoder
+     *
+     * Writes the tagged values to a buffer, collecting the values to serialize,
+     * which are written before the buffer.
+     */
+    private static class Encoder
+    {
+        private final ByteArrayOutputStream _buffer = new ByteArrayOutputStream();
+        private final List<Object> _serialized = new ArrayList<>();
+        private final Map<Object,Boolean> _tagged = new IdentityHashMap<>();
+        private ByteArrayOutputStream _serializedBytes;
+        private boolean _shared;
+
+        private void tag(Object value)
+        {
+            if (_tagged.put(value, Boolean.TRUE) != null)
+                _shared = true;
+        }
+
+        /**
+         * Serializes the collected values, checking whether they refer to a mutable tagged value.
+         *
+         * @return true if a mutable tagged value is referenced more than once, so that it would be read back as several copies
+         * @throws IOException if the values cannot be serialized
+         */
+        private boolean isShared() throws IOException
+        {
+            if (_shared || _serialized.isEmpty())
+                return _shared;
+
+            _serializedBytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(_serializedBytes)
+            {
+                {
+                    enableReplaceObject(true);
+                }
+
+                @Override
+                protected Object replaceObject(Object obj)
+                {
+                    if (_tagged.containsKey(obj))
+                        _shared = true;
+                    return obj;
+                }
+            };
+            oos.writeObject(_serialized.toArray());
+            oos.flush();
+            return _shared;
+        }
+
+        private void writeValue(Object value, int depth) throws IOException
+        {
+            if (value == null)
+                _buffer.write(NULL);
+            else if (value instanceof String)
+            {
+                _buffer.write(STRING);
+                writeString((String)value);
+            }
+            else if (value instanceof Integer)
+            {
+                _buffer.write(INTEGER);
+                writeVarLong(zigZag((Integer)value));
+            }
+            else if (value instanceof Long)
+            {
+                _buffer.write(LONG);
+                writeVarLong(zigZag((Long)value));
+            }
+            else if (value instanceof Boolean)
+                _buffer.write((Boolean)value ? TRUE : FALSE);
+            else if (value instanceof Double)
+            {
+                _buffer.write(DOUBLE);
+                writeFixed(Double.doubleToRawLongBits((Double)value), 8);
+            }
+            else if (value instanceof Float)
+            {
+                _buffer.write(FLOAT);
+                writeFixed(Float.floatToRawIntBits((Float)value), 4);
+            }
+            else if (value instanceof Short)
+            {
+                _buffer.write(SHORT);
+                writeVarLong(zigZag((Short)value));
+            }
+            else if (value instanceof Byte)
+            {
+                _buffer.write(BYTE);
+                _buffer.write((Byte)value);
+            }
+            else if (value instanceof Character)
+            {
+                _buffer.write(CHARACTER);
+                writeVarInt((Character)value);
+            }
+            else if (value.getClass() == Date.class)
+            {
+                tag(value);
+                _buffer.write(DATE);
+                writeVarLong(zigZag(((Date)value).getTime()));
+            }
+            else if (value instanceof byte[])
+            {
+                byte[] bytes = (byte[])value;
+                tag(value);
+                _buffer.write(BYTES);
+                writeVarInt(bytes.length);
+                _buffer.write(bytes, 0, bytes.length);
+            }
+            else if (depth < MAX_DEPTH && (value.getClass() == ArrayList.class || value.getClass() == HashSet.class) && ((Collection<?>)value).size() <= MAX_COLLECTION_SIZE)
+            {
+                Collection<?> collection = (Collection<?>)value;
+                tag(value);
+                _buffer.write(value.getClass() == ArrayList.class ? LIST : SET);
+                writeVarInt(collection.size());
+                for (Object element : collection)
+                    writeValue(element, depth + 1);
+            }
+            else if (depth < MAX_DEPTH && value.getClass() == HashMap.class && ((Map<?,?>)value).size() <= MAX_COLLECTION_SIZE)
+            {
+                Map<?,?> map = (Map<?,?>)value;
+                tag(value);
+                _buffer.write(MAP);
+                writeVarInt(map.size());
+                for (Map.Entry<?,?> entry : map.entrySet())
+                {
+                    writeValue(entry.getKey(), depth + 1);
+                    writeValue(entry.getValue(), depth + 1);
+                }
+            }
+            else
+            {
+                _buffer.write(SERIALIZED);
+                writeVarInt(_serialized.size());
+                _serialized.add(value);
+            }
+        }
+
+        private void writeString(String value)
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            _buffer.write(bytes, 0, bytes.length);
+        }
+
+        private void writeVarInt(int value)
+        {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        private void writeVarLong(long value)
+        {
+            try
+            {
+                writeVarLong(_buffer, value);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e); //cannot happen with a ByteArrayOutputStream
+            }
+        }
+
+        private static void writeVarLong(OutputStream out, long value) throws IOException
+        {
+            while ((value & ~0x7FL) != 0)
+            {
+                out.write((int)((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int)value);
+        }
+
+        private void writeFixed(long value, int bytes)
+        {
+            for (int i = (bytes - 1) * 8; i >= 0; i -= 8)
+                _buffer.write((int)(value >>> i));
+        }
+
+        private static long zigZag(long value)
+        {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private void writeTo(OutputStream out) throws IOException
+        {
+            out.write(MAGIC);
+            out.write(VERSION);
+
+            if (_serializedBytes == null)
+                out.write(0);
+            else
+            {
+                writeVarLong(out, _serializedBytes.size());
+                _serializedBytes.writeTo(out);
+            }
+
+            _buffer.writeTo(out);
+            out.flush();
+        }
+    }
+
+
+    /**
+     * Decoder
+     *
+     * Reads the serialized values, then the tagged values referring to them.
+     */
+    private static class Decoder
+    {
+        private final DataInputStream _in;
+        private final Object[] _serialized;
+
+        private Decoder(InputStream in) throws IOException, ClassNotFoundException
+        {
+            _in = new DataInputStream(in);
+            int magic = _in.read();
+            int version = _in.read();
+            if (magic != MAGIC || version != VERSION)
+                throw new StreamCorruptedException(String.format("Unknown session data format %x/%x", magic, version));
+
+            int length = readVarInt();
+            if (length == 0)
+                _serialized = new Object[0];
+            else
+            {
+                byte[] bytes = new byte[length];
+                _in.readFully(bytes);
+                _serialized = (Object[])new ClassLoadingObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+            }
+        }
+
+        private Object readValue() throws IOException
+        {
+            int tag = _in.read();
+            switch (tag)
+            {
+                case NULL:
+                    return null;
+                case STRING:
+                    return readString();
+                case INTEGER:
+                    return (int)unZigZag(readVarLong());
+                case LONG:
+                    return unZigZag(readVarLong());
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case DOUBLE:
+                    return Double.longBitsToDouble(_in.readLong());
+                case FLOAT:
+                    return Float.intBitsToFloat(_in.readInt());
+                case SHORT:
+                    return (short)unZigZag(readVarLong());
+                case BYTE:
+                    return _in.readByte();
+                case CHARACTER:
+                    return (char)readVarInt();
+                case DATE:
+                    return new Date(unZigZag(readVarLong()));
+                case BYTES:
+                {
+                    byte[] bytes = new byte[readVarInt()];
+                    _in.readFully(bytes);
+                    return bytes;
+                }
+                case LIST:
+                case SET:
+                {
+                    int size = readVarInt();
+                    Collection<Object> collection = tag == LIST ? new ArrayList<>(size) : new HashSet<>();
+                    for (int i = 0; i < size; i++)
+                        collection.add(readValue());
+                    return collection;
+                }
+                case MAP:
+                {
+                    int size = readVarInt();
+                    Map<Object,Object> map = new HashMap<>();
+                    for (int i = 0; i < size; i++)
+                        map.put(readValue(), readValue());
+                    return map;
+                }
+                case SERIALIZED:
+                {
+                    int index = readVarInt();
+                    if (index >= _serialized.length)
+                        throw new StreamCorruptedException("Invalid serialized value " + index);
+                    return _serialized[index];
+                }
+                case -1:
+                    throw new EOFException();
+                default:
+                    throw new StreamCorruptedException("Invalid tag " + tag);
+            }
+        }
+
+        private String readString() throws IOException
+        {
+            byte[] bytes = new byte[readVarInt()];
+            _in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int readVarInt() throws IOException
+        {
+            long value = readVarLong();
+            if (value > Integer.MAX_VALUE)
+                throw new StreamCorruptedException("Invalid length " + value);
+            return (int)value;
+        }
+
+        private long readVarLong() throws IOException
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                int b = _in.read();
+                if (b < 0)
+                    throw new EOFException();
+                value |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new StreamCorruptedException("Invalid varint");
+        }
+
+        private static long unZigZag(long value)
+        {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -24,7 +24,6 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
@@ -35,8 +34,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
-import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
@@ -50,13 +52,24 @@ import org.eclipse.jetty.util.log.Logger;
  * FileSessionDataStore
  *
  * A file-based store of session data.
+ * 
+ * The files of the sessions of the context are indexed by session id
+ * and by expiry when the store is initialized, and the index is kept 
+ * up to date as sessions are stored and deleted, so that neither loading 
+ * a session nor scavenging needs to list the store directory. 
+ * Files written to the directory by other stores are only seen after a
+ * restart of this store.
  */
 @ManagedObject
 public class FileSessionDataStore extends AbstractSessionDataStore
 {
     private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+    private final static int SERIALIZED_ATTRIBUTES = -1; //attribute count of files written by the serializer
     private File _storeDir;
     private boolean _deleteUnrestorableFiles = false;
+    private final Map<String,SessionFile> _sessionFiles = new ConcurrentHashMap<>(); //session id to its file
+    private final NavigableSet<SessionFile> _expiries = new ConcurrentSkipListSet<>(); //files of sessions that can expire, by expiry
+    private long _lastSweepTime = 0L; //last time in ms the whole directory was swept
     
 
 
@@ -71,6 +84,8 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     protected void doStop() throws Exception
     {
         super.doStop();
+        _sessionFiles.clear();
+        _expiries.clear();
     }
 
     @ManagedAttribute(value="dir where sessions are stored", readonly=true)
@@ -96,6 +111,12 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         _deleteUnrestorableFiles = deleteUnrestorableFiles;
     }
 
+    @ManagedAttribute(value="number of session files of the context", readonly=true)
+    public int getSessionFileCount()
+    {
+        return _sessionFiles.size();
+    }
+
  
 
     /** 
@@ -104,13 +125,13 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     @Override
     public boolean delete(String id) throws Exception
     {   
-        File file = null;
         if (_storeDir != null)
         {
-            file = getFile(_storeDir, id);
-            if (file != null && file.exists() && file.getParentFile().equals(_storeDir))
+            SessionFile sessionFile = _sessionFiles.remove(id);
+            if (sessionFile != null)
             {
-                return file.delete();
+                _expiries.remove(sessionFile);
+                return new File(_storeDir, sessionFile.getName()).delete();
             }
         }
          
@@ -127,70 +148,16 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         final long now = System.currentTimeMillis();
         HashSet<String> expired = new HashSet<String>();
         
-        HashSet<String> idsWithContext = new HashSet<>();
-        
-        
-        //one pass to get all idWithContext
-        File [] files = _storeDir.listFiles(new FilenameFilter()
-        {  
-            @Override
-            public boolean accept(File dir, String name)
-            {
-                if (dir != _storeDir)
-                    return false;
-
-                //dir may contain files that don't match our naming pattern      
-                if (!match(name))
-                {
-                    return false;
-                }
-
-                String idWithContext = getIdWithContextFromString(name);
-                if (!StringUtil.isBlank(idWithContext))
-                    idsWithContext.add(idWithContext);
-                return true;
-            }
-        });
-        
-       
-        //got the list of all sessionids with their contexts, remove all old files for each one
-        for (String idWithContext:idsWithContext)
+        //the files are ordered by expiry, so stop at the first one that has not expired
+        for (SessionFile sessionFile:_expiries)
         {
-            deleteOldFiles(_storeDir, idWithContext);
-        }
-
-        
-        //now find sessions that have expired in any context
-        files = _storeDir.listFiles(new FilenameFilter() 
-        {      
-            @Override
-            public boolean accept(File dir, String name)
-            {
-                if (dir != _storeDir)
-                    return false;
+            if (sessionFile.getExpiry() >= now)
+                break;
 
-                //dir may contain files that don't match our naming pattern
-                if (!match(name))
-                    return false;
-                
-                try
-                {
-                    long expiry = getExpiryFromString(name);
-                    return expiry > 0 && expiry < now;
-                }
-                catch (Exception e)
-                {
-                    return false;
-                }
-            }
-        });
-        
-        if (files != null)
-        {
-            for (File f:files)
-            {
-                expired.add(getIdFromFile(f));
-            }
+            if (_sessionFiles.get(sessionFile.getId()) == sessionFile)
+                expired.add(sessionFile.getId());
+            else
+                _expiries.remove(sessionFile); //the session has since been stored again or deleted
         }
         
         //check candidates that were not found to be expired, perhaps they no
@@ -200,12 +167,20 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             if (!expired.contains(c))
             {
                 //check if the file exists
-                File f = getFile(_storeDir, c);
-                if (f == null || !f.exists())
+                SessionFile sessionFile = _sessionFiles.get(c);
+                if (sessionFile == null || !new File(_storeDir, sessionFile.getName()).exists())
                     expired.add(c);
             }
         }
         
+        //infrequently sweep the whole directory for files that expired long ago,
+        //for example those of contexts that are no longer deployed
+        if (_gracePeriodSec > 0 && (now - _lastSweepTime) >= TimeUnit.SECONDS.toMillis(5L * _gracePeriodSec))
+        {
+            _lastSweepTime = now;
+            sweepDisk(now - TimeUnit.SECONDS.toMillis(5L * _gracePeriodSec));
+        }
+        
         return expired;
     }
 
@@ -223,13 +198,20 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         {
             public void run ()
             {
-                //get rid of all but the newest file for a session
-                File file = deleteOldFiles(_storeDir, getIdWithContext(id));
-   
-                if (file == null || !file.exists())
+                SessionFile sessionFile = _sessionFiles.get(id);
+                if (sessionFile == null)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("No file for session {}",id);
+                    return;
+                }
+
+                File file = new File(_storeDir, sessionFile.getName());
+                if (!file.exists())
                 {
                     if (LOG.isDebugEnabled())
                         LOG.debug("No file: {}",file);
+                    unindex(sessionFile);
                     return;
                 }
 
@@ -243,6 +225,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
                 {
                     if (isDeleteUnrestorableFiles() && file.exists() && file.getParentFile().equals(_storeDir))
                     {
+                        unindex(sessionFile);
                         file.delete();
                         LOG.warn("Deleted unrestorable file for session {}", id);
                     }
@@ -275,11 +258,12 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         File file = null;
         if (_storeDir != null)
         {
-            //remove any existing files for the session
-            deleteAllFiles(_storeDir, getIdWithContext(id));
+            //remove any existing file for the session
+            delete(id);
             
             //make a fresh file using the latest session expiry
-            file = new File(_storeDir, getIdWithContextAndExpiry(data));
+            String filename = getIdWithContextAndExpiry(data);
+            file = new File(_storeDir, filename);
 
             try(FileOutputStream fos = new FileOutputStream(file,false))
             {
@@ -292,19 +276,72 @@ public class FileSessionDataStore extends AbstractSessionDataStore
                     file.delete(); // No point keeping the file if we didn't save the whole session
                 throw new UnwriteableSessionDataException(id, _context,e);             
             }
+            
+            index(new SessionFile(id, filename, data.getExpiry()));
         }
     }
     
     /**
-     * 
+     * Create the store directory if necessary, and index the files of the
+     * sessions of the context that it contains, deleting all but the most 
+     * recent file of each session.
      */
     public void initializeStore ()
     {
         if (_storeDir == null)
             throw new IllegalStateException("No file store specified");
 
+        _sessionFiles.clear();
+        _expiries.clear();
+        _lastSweepTime = System.currentTimeMillis();
+        
         if (!_storeDir.exists())
+        {
             _storeDir.mkdirs();
+            return;
+        }
+        
+        String[] filenames = _storeDir.list();
+        if (filenames == null)
+            return;
+        
+        String prefix = getIdWithContext("");
+        for (String filename:filenames)
+        {
+            //dir may contain files that don't match our naming pattern, or belong to other contexts
+            if (!match(filename))
+                continue;
+            String idWithContext = getIdWithContextFromString(filename);
+            if (idWithContext == null || !idWithContext.startsWith(prefix))
+                continue;
+            
+            long expiry;
+            try
+            {
+                expiry = getExpiryFromString(filename);
+            }
+            catch (Exception e)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Ignoring file {}", filename);
+                continue;
+            }
+            
+            SessionFile sessionFile = new SessionFile(idWithContext.substring(prefix.length()), filename, expiry);
+            SessionFile existing = _sessionFiles.get(sessionFile.getId());
+            if (existing == null)
+                index(sessionFile);
+            else if (isNewer(sessionFile, existing))
+            {
+                deleteFile(existing);
+                index(sessionFile);
+            }
+            else
+                deleteFile(sessionFile);
+        }
+        
+        if (LOG.isDebugEnabled())
+            LOG.debug("Indexed {} session files in {}", _sessionFiles.size(), _storeDir);
     }
 
     /** 
@@ -326,12 +363,17 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     @Override
     public boolean exists(String id) throws Exception
     {
-       File sessionFile = deleteOldFiles(_storeDir, getIdWithContext(id));
-       if (sessionFile == null || !sessionFile.exists())
+       SessionFile sessionFile = _sessionFiles.get(id);
+       if (sessionFile == null)
+           return false;
+       if (!new File(_storeDir, sessionFile.getName()).exists())
+       {
+           unindex(sessionFile);
            return false;
+       }
        
        //check the expiry
-       long expiry = getExpiryFromFile(sessionFile);
+       long expiry = sessionFile.getExpiry();
        if (expiry <= 0)
            return true; //never expires
        else
@@ -359,14 +401,26 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         out.writeLong(data.getExpiry());
         out.writeLong(data.getMaxInactiveMs());
         
-        List<String> keys = new ArrayList<String>(data.getKeys());
-        out.writeInt(keys.size());
-        ObjectOutputStream oos = new ObjectOutputStream(out);
-        for (String name:keys)
+        if (_serializer instanceof JavaSessionDataSerializer)
         {
-            oos.writeUTF(name);
-            oos.writeObject(data.getAttribute(name));
+            //write the attributes one by one, as previous versions did
+            List<String> keys = new ArrayList<String>(data.getKeys());
+            out.writeInt(keys.size());
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            for (String name:keys)
+            {
+                oos.writeUTF(name);
+                oos.writeObject(data.getAttribute(name));
+            }
+            oos.flush();
         }
+        else
+        {
+            //a negative count marks attributes written by the serializer
+            out.writeInt(SERIALIZED_ATTRIBUTES);
+            _serializer.serializeAttributes(data.getAllAttributes(), out);
+        }
+        out.flush();
     }
 
     /**
@@ -391,34 +445,6 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     }
     
     
-    /**
-     * Work out which session id the file relates to.
-     * @param file the file to check
-     * @return the session id the file relates to.
-     */
-    private String getIdFromFile (File file)
-    {
-        if (file == null)
-            return null;
-        String name = file.getName();
-        
-        return name.substring(name.lastIndexOf('_')+1);
-    }
-    
-    /**
-     * Get the expiry time of the session stored in the file.
-     * @param file the file from which to extract the expiry time
-     * @return the expiry time
-     */
-    private long getExpiryFromFile (File file)
-    {
-        if (file == null)
-            return 0;
-        
-        return getExpiryFromString(file.getName());
-    }
-    
-    
     private long getExpiryFromString (String filename)
     {
         if (StringUtil.isBlank(filename) || filename.indexOf("_") < 0)
@@ -428,20 +454,6 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         return (s==null?0:Long.parseLong(s));
     }
     
-    /**
-     * Extract the session id and context from the filename.
-     * @param file the file whose name to use
-     * @return the session id plus context
-     */
-    private String getIdWithContextFromFile (File file)
-    {
-        if (file == null)
-            return null;
-        
-        String s =  getIdWithContextFromString(file.getName());
-        return s;
-    }
-    
     /**
      * Extract the session id and context from the filename
      * @param filename the name of the file to use
@@ -475,161 +487,107 @@ public class FileSessionDataStore extends AbstractSessionDataStore
 
     
     /**
-     * Find a File for the session id for the current context.
+     * Add the file of a session to the index, replacing any previous file.
      * 
-     * @param storeDir the session storage directory
-     * @param id the session id
-     * @return the file
+     * @param sessionFile the file of the session
      */
-    private File getFile (final File storeDir, final String id)
+    private void index (SessionFile sessionFile)
     {
-        File[] files = storeDir.listFiles (new FilenameFilter() {
-
-            /** 
-             * @see java.io.FilenameFilter#accept(java.io.File, java.lang.String)
-             */
-            @Override
-            public boolean accept(File dir, String name)
-            {
-                if (dir != storeDir)
-                    return false;
-                return (name.contains(getIdWithContext(id)));
-            }
-            
-        });
-        
-        if (files == null || files.length < 1)
-            return null;
-        return files[0];
+        SessionFile previous = _sessionFiles.put(sessionFile.getId(), sessionFile);
+        if (previous != null)
+            _expiries.remove(previous);
+        if (sessionFile.getExpiry() > 0)
+            _expiries.add(sessionFile);
     }
     
     
     /**
-     * Remove all existing session files for the session in the context
-     * @param storeDir where the session files are stored
-     * @param idInContext the session id within a particular context
+     * Remove the file of a session from the index, unless the session has been stored again.
+     * 
+     * @param sessionFile the file of the session
      */
-    private void deleteAllFiles(final File storeDir, final String idInContext)
+    private void unindex (SessionFile sessionFile)
     {
-        File[] files = storeDir.listFiles (new FilenameFilter() {
-
-            /** 
-             * @see java.io.FilenameFilter#accept(java.io.File, java.lang.String)
-             */
-            @Override
-            public boolean accept(File dir, String name)
-            {
-                if (dir != storeDir)
-                    return false;
-                return (name.contains(idInContext));
-            }
-            
-        });
-        
-        //no files for that id
-        if (files == null || files.length < 1)
-            return;
+        _sessionFiles.remove(sessionFile.getId(), sessionFile);
+        _expiries.remove(sessionFile);
+    }
+    
+    
+    /**
+     * Decide which of two files of the same session is the most recent.
+     * 
+     * @param file1 a file of the session
+     * @param file2 another file of the session
+     * @return true if file1 is more recent than file2
+     */
+    private boolean isNewer (SessionFile file1, SessionFile file2)
+    {
+        long modified1 = new File(_storeDir, file1.getName()).lastModified();
+        long modified2 = new File(_storeDir, file2.getName()).lastModified();
+        if (modified1 != modified2)
+            return modified1 > modified2;
         
-        //delete all files
-        for (File f:files)
+        //files have same last modified times, decide based on latest expiry time
+        return file1.getExpiry() >= file2.getExpiry();
+    }
+    
+    
+    private void deleteFile (SessionFile sessionFile)
+    {
+        try
+        {
+            Files.deleteIfExists(new File(_storeDir, sessionFile.getName()).toPath());
+        }
+        catch (Exception e)
         {
-           try
-           {
-               Files.deleteIfExists(f.toPath());
-           }
-           catch (Exception e)
-           {
-               LOG.warn("Unable to delete session file", e);
-           }
+            LOG.warn("Unable to delete old session file", e);
         }
     }
     
     
-    
     /**
-     * Delete all but the most recent file for a given session id in a context.
+     * Delete the files of any context that expired before the given time, 
+     * unless they are the indexed files of sessions of this context, which 
+     * are expired by scavenging.
      * 
-     * @param storeDir the directory in which sessions are stored
-     * @param idWithContext the id of the session
-     * @return the most recent remaining file for the session, can be null
+     * @param expiredBefore the time before which files are deleted
      */
-    private File deleteOldFiles (final File storeDir, final String idWithContext)
+    private void sweepDisk (long expiredBefore)
     {
-        File[] files = storeDir.listFiles (new FilenameFilter() {
-
-            /** 
-             * @see java.io.FilenameFilter#accept(java.io.File, java.lang.String)
-             */
-            @Override
-            public boolean accept(File dir, String name)
-            {
-                if (dir != storeDir)
-                    return false;
-                 
-                if (!match(name))
-                    return false;
-
-                return (name.contains(idWithContext));
-            }
-
-        });
-
-        //no file for that session
-        if (files == null || files.length == 0)
-            return null;
-
-
-        //delete all but the most recent file
-        File newest = null;
-
-        for (File f:files)
+        String[] filenames = _storeDir.list();
+        if (filenames == null)
+            return;
+        
+        String prefix = getIdWithContext("");
+        for (String filename:filenames)
         {
+            if (!match(filename))
+                continue;
+            
             try
             {
-                if (newest == null)
-                {
-                    //haven't looked at any files yet
-                    newest = f;
-                }
-                else
+                long expiry = getExpiryFromString(filename);
+                if (expiry <= 0 || expiry >= expiredBefore)
+                    continue;
+                
+                String idWithContext = getIdWithContextFromString(filename);
+                if (idWithContext.startsWith(prefix))
                 {
-                    if (f.lastModified() > newest.lastModified())
-                    {
-                        //this file is more recent
-                        Files.deleteIfExists(newest.toPath());
-                        newest = f;
-                    }
-                    else if (f.lastModified() < newest.lastModified())
-                    {
-                        //this file is older
-                        Files.deleteIfExists(f.toPath());
-                    }
-                    else
-                    {
-                        //files have same last modified times, decide based on latest expiry time
-                        long exp1 = getExpiryFromFile(newest);
-                        long exp2 = getExpiryFromFile(f);
-                        if (exp2 >= exp1)
-                        {
-                            //this file has a later expiry date
-                            Files.deleteIfExists(newest.toPath());
-                            newest = f;
-                        }
-                        else
-                        {
-                            //this file has an earlier expiry date
-                            Files.deleteIfExists(f.toPath());
-                        }
-                    }
+                    SessionFile sessionFile = _sessionFiles.get(idWithContext.substring(prefix.length()));
+                    if (sessionFile != null && sessionFile.getName().equals(filename))
+                        continue;
                 }
+                
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Sweeping file {}", filename);
+                Files.deleteIfExists(new File(_storeDir, filename).toPath());
             }
             catch (Exception e)
             {
-                LOG.warn("Unable to delete old session file", e);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Unable to sweep file "+filename, e);
             }
         }
-
-        return newest;
     }
 
 
@@ -671,7 +629,11 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             data.setMaxInactiveMs(maxIdle);
 
             // Attributes
-            restoreAttributes(di, di.readInt(), data);
+            int size = di.readInt();
+            if (size == SERIALIZED_ATTRIBUTES)
+                data.putAllAttributes(_serializer.deserializeAttributes(di));
+            else
+                restoreAttributes(di, size, data);
 
             return data;        
         }
@@ -682,6 +644,9 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     }
 
     /**
+     * Restore the attributes of files saved by previous versions, which
+     * were written one at a time with java serialization.
+     *
      * @param is inputstream containing session data
      * @param size number of attributes
      * @param data the data to restore to
@@ -713,6 +678,54 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     {
         return String.format("%s[dir=%s,deleteUnrestorableFiles=%b]",super.toString(),_storeDir,_deleteUnrestorableFiles);
     }
+    
+    
+    /**
+     * SessionFile
+     *
+     * The name and expiry of the file of a session, ordered by expiry.
+     */
+    private static class SessionFile implements Comparable<SessionFile>
+    {
+        private final String _id;
+        private final String _name;
+        private final long _expiry;
+        
+        private SessionFile (String id, String name, long expiry)
+        {
+            _id = id;
+            _name = name;
+            _expiry = expiry;
+        }
+        
+        public String getId()
+        {
+            return _id;
+        }
+        
+        public String getName()
+        {
+            return _name;
+        }
+        
+        public long getExpiry()
+        {
+            return _expiry;
+        }
+
+        @Override
+        public int compareTo(SessionFile other)
+        {
+            int c = Long.compare(_expiry, other._expiry);
+            return c != 0 ? c : _name.compareTo(other._name);
+        }
+        
+        @Override
+        public String toString()
+        {
+            return _name;
+        }
+    }
 
 
 
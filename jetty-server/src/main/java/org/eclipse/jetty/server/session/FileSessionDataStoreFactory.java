@@ -79,6 +79,8 @@ public class FileSessionDataStoreFactory extends AbstractSessionDataStoreFactory
         fsds.setStoreDir(getStoreDir());
         fsds.setGracePeriodSec(getGracePeriodSec());
         fsds.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            fsds.setSerializer(getSerializer());
         return fsds;
     }
 
@@ -21,20 +21,21 @@ package org.eclipse.jetty.server.session;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectOutputStream;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
@@ -60,6 +61,7 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     private DatabaseAdaptor _dbAdaptor;
     private SessionTableSchema _sessionTableSchema;
     private boolean _schemaProvided;
+    private AttributeTableSchema _attributeTableSchema;
 
 
     
@@ -560,6 +562,247 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     }
     
     
+    /**
+     * AttributeTableSchema
+     *
+     * Optional table holding each attribute of a session in its own row,
+     * so that only the attributes changed since the last save are written.
+     * When it is not set, all the attributes are written to the map column
+     * of the session table.
+     */
+    public static class AttributeTableSchema
+    {
+        protected DatabaseAdaptor _dbAdaptor;
+        protected String _schemaName = null;
+        protected String _tableName = "JettySessionAttributes";
+        protected String _idColumn = "sessionId";
+        protected String _contextPathColumn = "contextPath";
+        protected String _virtualHostColumn = "virtualHost";
+        protected String _nameColumn = "attributeName";
+        protected String _valueColumn = "attributeValue";
+        
+        protected void setDatabaseAdaptor(DatabaseAdaptor dbadaptor)
+        {
+            _dbAdaptor = dbadaptor;
+        }
+        public String getSchemaName()
+        {
+            return _schemaName;
+        }
+        public void setSchemaName(String schemaName)
+        {
+            checkNotNull(schemaName);
+            _schemaName = schemaName;
+        }
+        
+        public String getTableName()
+        {
+            return _tableName;
+        }
+        public void setTableName(String tableName)
+        {
+            checkNotNull(tableName);
+            _tableName = tableName;
+        }
+        
+        private String getSchemaTableName()
+        {
+            return (getSchemaName()!=null?getSchemaName()+".":"")+getTableName();
+        }
+        
+        public String getIdColumn()
+        {
+            return _idColumn;
+        }
+        public void setIdColumn(String idColumn)
+        {
+            checkNotNull(idColumn);
+            _idColumn = idColumn;
+        }
+        public String getContextPathColumn()
+        {
+            return _contextPathColumn;
+        }
+        public void setContextPathColumn(String contextPathColumn)
+        {
+            checkNotNull(contextPathColumn);
+            _contextPathColumn = contextPathColumn;
+        }
+        public String getVirtualHostColumn()
+        {
+            return _virtualHostColumn;
+        }
+        public void setVirtualHostColumn(String virtualHostColumn)
+        {
+            checkNotNull(virtualHostColumn);
+            _virtualHostColumn = virtualHostColumn;
+        }
+        public String getNameColumn()
+        {
+            return _nameColumn;
+        }
+        public void setNameColumn(String nameColumn)
+        {
+            checkNotNull(nameColumn);
+            _nameColumn = nameColumn;
+        }
+        public String getValueColumn()
+        {
+            return _valueColumn;
+        }
+        public void setValueColumn(String valueColumn)
+        {
+            checkNotNull(valueColumn);
+            _valueColumn = valueColumn;
+        }
+        
+        private void checkNotNull(String s)
+        {
+            if (s == null)
+                throw new IllegalArgumentException(s);
+        }
+        
+        private String getContextPath (SessionContext context)
+        {
+            String cp = context.getCanonicalContextPath();
+            if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+                cp = NULL_CONTEXT_PATH;
+            return cp;
+        }
+        
+        public String getCreateStatementAsString ()
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException ("No DBAdaptor");
+            
+            return "create table "+getSchemaTableName()+" ("+_idColumn+" varchar(120), "+
+                    _contextPathColumn+" varchar(60), "+_virtualHostColumn+" varchar(60), "+_nameColumn+" varchar(250), "+
+                    _valueColumn+" "+_dbAdaptor.getBlobType()+", primary key("+_idColumn+", "+_contextPathColumn+","+
+                    _virtualHostColumn+", "+_nameColumn+"))";
+        }
+        
+        public PreparedStatement getLoadStatement (Connection connection, String id, SessionContext context)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+            
+            PreparedStatement statement = connection.prepareStatement("select "+getNameColumn()+", "+getValueColumn()+
+                                                                      " from "+getSchemaTableName()+
+                                                                      " where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                                                                      " = ? and "+getVirtualHostColumn()+" = ?");
+            statement.setString(1, id);
+            statement.setString(2, getContextPath(context));
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        /**
+         * @return a statement setting the value (1) of the attribute named (5)
+         */
+        public PreparedStatement getUpdateStatement (Connection connection, String id, SessionContext context)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+            
+            PreparedStatement statement = connection.prepareStatement("update "+getSchemaTableName()+
+                                                                      " set "+getValueColumn()+" = ? where "+getIdColumn()+" = ? and "+
+                                                                      getContextPathColumn()+" = ? and "+getVirtualHostColumn()+" = ? and "+
+                                                                      getNameColumn()+" = ?");
+            statement.setString(2, id);
+            statement.setString(3, getContextPath(context));
+            statement.setString(4, context.getVhost());
+            return statement;
+        }
+        
+        /**
+         * @return a statement inserting the attribute named (4) with its value (5)
+         */
+        public PreparedStatement getInsertStatement (Connection connection, String id, SessionContext context)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+            
+            PreparedStatement statement = connection.prepareStatement("insert into "+getSchemaTableName()+
+                                                                      " ("+getIdColumn()+", "+getContextPathColumn()+", "+getVirtualHostColumn()+
+                                                                      ", "+getNameColumn()+", "+getValueColumn()+") values (?, ?, ?, ?, ?)");
+            statement.setString(1, id);
+            statement.setString(2, getContextPath(context));
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        /**
+         * @return a statement deleting the attribute named (4)
+         */
+        public PreparedStatement getDeleteStatement (Connection connection, String id, SessionContext context)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+            
+            PreparedStatement statement = connection.prepareStatement("delete from "+getSchemaTableName()+
+                                                                      " where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                                                                      " = ? and "+getVirtualHostColumn()+" = ? and "+getNameColumn()+" = ?");
+            statement.setString(1, id);
+            statement.setString(2, getContextPath(context));
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        public PreparedStatement getDeleteAllStatement (Connection connection, String id, SessionContext context)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+            
+            PreparedStatement statement = connection.prepareStatement("delete from "+getSchemaTableName()+
+                                                                      " where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                                                                      " = ? and "+getVirtualHostColumn()+" = ?");
+            statement.setString(1, id);
+            statement.setString(2, getContextPath(context));
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        /**
+         * Set up the table in the database
+         * @throws SQLException if unable to prepare the table
+         */
+        public void prepareTables()
+        throws SQLException
+        {
+            try (Connection connection = _dbAdaptor.getConnection();
+                 Statement statement = connection.createStatement())
+            {
+                connection.setAutoCommit(true);
+                DatabaseMetaData metaData = connection.getMetaData();
+                _dbAdaptor.adaptTo(metaData);
+                
+                String tableName = _dbAdaptor.convertIdentifier(getTableName());
+                String schemaName = _dbAdaptor.convertIdentifier(getSchemaName());
+                try (ResultSet result = metaData.getTables(null, schemaName, tableName, null))
+                {
+                    if (!result.next())
+                        statement.executeUpdate(getCreateStatementAsString());
+                }
+            }
+        }
+        
+        /** 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return String.format("%s[%s,%s,%s,%s,%s,%s,%s]",super.toString(),
+                                 _schemaName,_tableName,_idColumn,_contextPathColumn,_virtualHostColumn,_nameColumn,_valueColumn);
+        }
+    }
+    
+    
    
   
     public JDBCSessionDataStore ()
@@ -612,6 +855,12 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             _dbAdaptor.initialize();
             _sessionTableSchema.setDatabaseAdaptor(_dbAdaptor);
             _sessionTableSchema.prepareTables();
+            
+            if (_attributeTableSchema != null)
+            {
+                _attributeTableSchema.setDatabaseAdaptor(_dbAdaptor);
+                _attributeTableSchema.prepareTables();
+            }
         }
     }
 
@@ -649,11 +898,17 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                         data.setContextPath(_context.getCanonicalContextPath());          
                         data.setVhost(_context.getVhost());
 
-                        try (InputStream is = _dbAdaptor.getBlobInputStream(result, _sessionTableSchema.getMapColumn());
-                             ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(is))
+                        try (InputStream is = _dbAdaptor.getBlobInputStream(result, _sessionTableSchema.getMapColumn()))
                         {
-                            Object o = ois.readObject();
-                            data.putAllAttributes((Map<String,Object>)o);
+                            Map<String,Object> attributes = _serializer.deserializeAttributes(is);
+                            data.putAllAttributes(attributes);
+                            if (_attributeTableSchema != null)
+                            {
+                                //attributes saved in the map before the attribute table was used are moved to it by the next save
+                                for (String name : attributes.keySet())
+                                    data.setDirty(name);
+                                loadAttributes(connection, id, data);
+                            }
                         }
                         catch (Exception e)
                         {
@@ -686,6 +941,35 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
 
 
 
+    /**
+     * Load the attributes of a session from the attribute table.
+     * 
+     * @param connection the connection that loaded the session
+     * @param id the id of the session
+     * @param data the session
+     * @throws Exception if the attributes cannot be read
+     */
+    private void loadAttributes (Connection connection, String id, SessionData data)
+    throws Exception
+    {
+        Map<String,Object> attributes = new HashMap<>();
+        try (PreparedStatement statement = _attributeTableSchema.getLoadStatement(connection, id, _context);
+             ResultSet result = statement.executeQuery())
+        {
+            while (result.next())
+            {
+                String name = result.getString(_attributeTableSchema.getNameColumn());
+                try (InputStream is = _dbAdaptor.getBlobInputStream(result, _attributeTableSchema.getValueColumn()))
+                {
+                    attributes.put(name, _serializer.deserializeAttribute(is));
+                }
+            }
+        }
+        data.putAllAttributes(attributes);
+    }
+
+
+
     /** 
      * @see org.eclipse.jetty.server.session.SessionDataStore#delete(java.lang.String)
      */
@@ -695,12 +979,33 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         try (Connection connection = _dbAdaptor.getConnection();
              PreparedStatement statement = _sessionTableSchema.getDeleteStatement(connection, id, _context))
         {
-            connection.setAutoCommit(true);
-            int rows = statement.executeUpdate();
-            if (LOG.isDebugEnabled())
-                LOG.debug("Deleted Session {}:{}",id,(rows>0));
-            
-            return rows > 0;
+            if (_attributeTableSchema == null)
+            {
+                connection.setAutoCommit(true);
+                int rows = statement.executeUpdate();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Deleted Session {}:{}",id,(rows>0));
+
+                return rows > 0;
+            }
+
+            //delete the session and its attributes in one transaction
+            connection.setAutoCommit(false);
+            try (PreparedStatement attributes = _attributeTableSchema.getDeleteAllStatement(connection, id, _context))
+            {
+                attributes.executeUpdate();
+                int rows = statement.executeUpdate();
+                connection.commit();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Deleted Session {}:{}",id,(rows>0));
+
+                return rows > 0;
+            }
+            catch (Exception e)
+            {
+                connection.rollback();
+                throw e;
+            }
         }
     }
 
@@ -716,89 +1021,245 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         if (data==null || id==null)
             return;
 
-        if (lastSaveTime <= 0)
-        {     
-            doInsert(id, data);
-        }
-        else
+        try (Connection connection = _dbAdaptor.getConnection())
         {
-            doUpdate(id, data);            
+            if (_attributeTableSchema == null)
+            {
+                connection.setAutoCommit(true);
+                if (lastSaveTime <= 0)
+                    doInsert(connection, id, data);
+                else
+                    doUpdate(connection, id, data);
+                return;
+            }
+
+            //write the session and the attributes changed since the last save in one transaction
+            connection.setAutoCommit(false);
+            try
+            {
+                Set<String> names = data.getDirtyAttributes();
+                if (lastSaveTime <= 0)
+                {
+                    doInsert(connection, id, data);
+                    names.addAll(data.getKeys());
+                }
+                else
+                {
+                    doUpdate(connection, id, data);
+                }
+                doStoreAttributes(connection, id, data, names);
+                connection.commit();
+            }
+            catch (Exception e)
+            {
+                connection.rollback();
+                throw e;
+            }
         }
     }
 
 
-    private void doInsert (String id, SessionData data) 
-    throws Exception
+    /** 
+     * Insert and update the sessions with batches of statements, in one transaction.
+     * 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#doStoreAll(java.util.Map, java.util.Map)
+     */
+    @Override
+    public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
     {
-        String s = _sessionTableSchema.getInsertSessionStatementAsString();
-
+        if (sessions.isEmpty())
+            return;
 
-        try (Connection connection = _dbAdaptor.getConnection())        
+        try (Connection connection = _dbAdaptor.getConnection())
         {
-            connection.setAutoCommit(true);
-            try  (PreparedStatement statement = connection.prepareStatement(s))
+            connection.setAutoCommit(false);
+            String firstId = sessions.keySet().iterator().next();
+            try (PreparedStatement insert = connection.prepareStatement(_sessionTableSchema.getInsertSessionStatementAsString());
+                 PreparedStatement update = _sessionTableSchema.getUpdateSessionStatement(connection, firstId, _context))
             {
-                statement.setString(1, id); //session id
-                
-                String cp = _context.getCanonicalContextPath();
-                if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
-                        cp = NULL_CONTEXT_PATH;
-                
-                statement.setString(2, cp); //context path
-                      
-                statement.setString(3, _context.getVhost()); //first vhost
-                statement.setString(4, data.getLastNode());//my node id
-                statement.setLong(5, data.getAccessed());//accessTime
-                statement.setLong(6, data.getLastAccessed()); //lastAccessTime
-                statement.setLong(7, data.getCreated()); //time created
-                statement.setLong(8, data.getCookieSet());//time cookie was set
-                statement.setLong(9, data.getLastSaved()); //last saved time
-                statement.setLong(10, data.getExpiry());
-                statement.setLong(11, data.getMaxInactiveMs());
+                int inserts = 0;
+                int updates = 0;
+                Map<String,Set<String>> names = new HashMap<>();
+                for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+                {
+                    String id = entry.getKey();
+                    SessionData data = entry.getValue();
+                    Set<String> dirty = data.getDirtyAttributes();
+                    if (lastSaveTimes.get(id) <= 0)
+                    {
+                        bindInsert(insert, id, data);
+                        insert.addBatch();
+                        inserts++;
+                        dirty.addAll(data.getKeys());
+                    }
+                    else
+                    {
+                        bindUpdate(update, data);
+                        update.setString(8, id);
+                        update.addBatch();
+                        updates++;
+                    }
+                    names.put(id, dirty);
+                }
 
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(baos);
-                oos.writeObject(data.getAllAttributes());
-                oos.flush();
-                byte[] bytes = baos.toByteArray();
+                if (inserts > 0)
+                    insert.executeBatch();
+                if (updates > 0)
+                    update.executeBatch();
 
-                ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-                statement.setBinaryStream(12, bais, bytes.length);//attribute map as blob
-                statement.executeUpdate();
+                if (_attributeTableSchema != null)
+                {
+                    for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+                        doStoreAttributes(connection, entry.getKey(), entry.getValue(), names.get(entry.getKey()));
+                }
+
+                connection.commit();
                 if (LOG.isDebugEnabled())
-                    LOG.debug("Inserted session "+data);
+                    LOG.debug("Inserted {} and updated {} sessions", inserts, updates);
+            }
+            catch (Exception e)
+            {
+                connection.rollback();
+                throw e;
             }
         }
     }
 
+
+    private void doInsert (Connection connection, String id, SessionData data) 
+    throws Exception
+    {
+        String s = _sessionTableSchema.getInsertSessionStatementAsString();
+
+        try  (PreparedStatement statement = connection.prepareStatement(s))
+        {
+            bindInsert(statement, id, data);
+            statement.executeUpdate();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Inserted session "+data);
+        }
+    }
+
     
-    private void doUpdate (String id, SessionData data)
+    private void doUpdate (Connection connection, String id, SessionData data)
             throws Exception
     {
-        try (Connection connection = _dbAdaptor.getConnection())        
+        try (PreparedStatement statement = _sessionTableSchema.getUpdateSessionStatement(connection, data.getId(), _context))
         {
-            connection.setAutoCommit(true);
-            try (PreparedStatement statement = _sessionTableSchema.getUpdateSessionStatement(connection, data.getId(), _context))
-            {
-                statement.setString(1, data.getLastNode());//should be my node id
-                statement.setLong(2, data.getAccessed());//accessTime
-                statement.setLong(3, data.getLastAccessed()); //lastAccessTime
-                statement.setLong(4, data.getLastSaved()); //last saved time
-                statement.setLong(5, data.getExpiry());
-                statement.setLong(6, data.getMaxInactiveMs());
+            bindUpdate(statement, data);
+            statement.executeUpdate();
 
+            if (LOG.isDebugEnabled())
+                LOG.debug("Updated session "+data);
+        }
+    }
+    
+    
+    private void bindInsert (PreparedStatement statement, String id, SessionData data)
+    throws Exception
+    {
+        statement.setString(1, id); //session id
+
+        String cp = _context.getCanonicalContextPath();
+        if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+                cp = NULL_CONTEXT_PATH;
+
+        statement.setString(2, cp); //context path
+
+        statement.setString(3, _context.getVhost()); //first vhost
+        statement.setString(4, data.getLastNode());//my node id
+        statement.setLong(5, data.getAccessed());//accessTime
+        statement.setLong(6, data.getLastAccessed()); //lastAccessTime
+        statement.setLong(7, data.getCreated()); //time created
+        statement.setLong(8, data.getCookieSet());//time cookie was set
+        statement.setLong(9, data.getLastSaved()); //last saved time
+        statement.setLong(10, data.getExpiry());
+        statement.setLong(11, data.getMaxInactiveMs());
+
+        byte[] bytes = serializeMap(data);
+        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+        statement.setBinaryStream(12, bais, bytes.length);//attribute map as blob
+    }
+    
+    
+    private void bindUpdate (PreparedStatement statement, SessionData data)
+    throws Exception
+    {
+        statement.setString(1, data.getLastNode());//should be my node id
+        statement.setLong(2, data.getAccessed());//accessTime
+        statement.setLong(3, data.getLastAccessed()); //lastAccessTime
+        statement.setLong(4, data.getLastSaved()); //last saved time
+        statement.setLong(5, data.getExpiry());
+        statement.setLong(6, data.getMaxInactiveMs());
+
+        byte[] bytes = serializeMap(data);
+        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+        statement.setBinaryStream(7, bais, bytes.length);//attribute map as blob
+    }
+    
+    
+    /**
+     * @param data the session
+     * @return the bytes of the map column: all the attributes, or none if they are in the attribute table
+     * @throws IOException if the attributes cannot be serialized
+     */
+    private byte[] serializeMap (SessionData data)
+    throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (_attributeTableSchema == null)
+            _serializer.serializeAttributes(data.getAllAttributes(), baos);
+        else
+            _serializer.serializeAttributes(Collections.emptyMap(), baos);
+        return baos.toByteArray();
+    }
+    
+    
+    /**
+     * Write the named attributes to the attribute table, deleting those that
+     * have been removed from the session.
+     * 
+     * @param connection the connection of the transaction
+     * @param id the id of the session
+     * @param data the session
+     * @param names the names of the attributes to write
+     * @throws Exception if the attributes cannot be written
+     */
+    private void doStoreAttributes (Connection connection, String id, SessionData data, Set<String> names)
+    throws Exception
+    {
+        if (names.isEmpty())
+            return;
+        
+        try (PreparedStatement update = _attributeTableSchema.getUpdateStatement(connection, id, _context);
+             PreparedStatement insert = _attributeTableSchema.getInsertStatement(connection, id, _context);
+             PreparedStatement delete = _attributeTableSchema.getDeleteStatement(connection, id, _context))
+        {
+            for (String name : names)
+            {
+                Object value = data.getAttribute(name);
+                if (value == null)
+                {
+                    delete.setString(4, name);
+                    delete.executeUpdate();
+                    continue;
+                }
+                
                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(baos);
-                oos.writeObject(data.getAllAttributes());
-                oos.flush();
+                _serializer.serializeAttribute(value, baos);
                 byte[] bytes = baos.toByteArray();
-                ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-                statement.setBinaryStream(7, bais, bytes.length);//attribute map as blob
-                statement.executeUpdate();
-
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Updated session "+data);
+                update.setBinaryStream(1, new ByteArrayInputStream(bytes), bytes.length);
+                update.setString(5, name);
+                if (update.executeUpdate() == 0)
+                {
+                    insert.setString(4, name);
+                    insert.setBinaryStream(5, new ByteArrayInputStream(bytes), bytes.length);
+                    insert.executeUpdate();
+                }
             }
+            
+            if (LOG.isDebugEnabled())
+                LOG.debug("Stored attributes {} of session {}", names, id);
         }
     }
 
@@ -931,6 +1392,30 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         _sessionTableSchema = schema;
         _schemaProvided = true;
     }
+    
+    /**
+     * Set a table to hold the attributes of sessions one per row, so that
+     * only the attributes changed since the last save are written, instead
+     * of all of them to the map column of the session table.
+     * <p>
+     * Sessions saved before the table was set are still loaded, and their
+     * attributes are moved to the table when they are next saved.
+     * Attributes whose values are modified without being set again
+     * are not saved.
+     * 
+     * @param schema the attribute table, or null to save all attributes to the map column
+     */
+    public void setAttributeTableSchema (AttributeTableSchema schema)
+    {
+        checkStarted();
+        updateBean(_attributeTableSchema, schema);
+        _attributeTableSchema = schema;
+    }
+    
+    public AttributeTableSchema getAttributeTableSchema ()
+    {
+        return _attributeTableSchema;
+    }
 
   
 
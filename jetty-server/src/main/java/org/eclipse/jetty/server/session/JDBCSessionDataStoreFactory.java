@@ -36,6 +36,11 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
      * 
      */
     JDBCSessionDataStore.SessionTableSchema _schema;
+    
+    /**
+     * 
+     */
+    JDBCSessionDataStore.AttributeTableSchema _attributeSchema;
 
 
     /** 
@@ -47,8 +52,11 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
         JDBCSessionDataStore ds = new JDBCSessionDataStore();
         ds.setDatabaseAdaptor(_adaptor);
         ds.setSessionTableSchema(_schema);
+        ds.setAttributeTableSchema(_attributeSchema);
         ds.setGracePeriodSec(getGracePeriodSec());
         ds.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            ds.setSerializer(getSerializer());
         return ds;
     }
 
@@ -69,4 +77,13 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
     {
         _schema = schema;
     }
+    
+    
+    /**
+     * @param schema the table of session attributes, or null to save them with the session
+     */
+    public void setAttributeTableSchema (JDBCSessionDataStore.AttributeTableSchema schema)
+    {
+        _attributeSchema = schema;
+    }
 }
@@ -0,0 +1,87 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+
+/**
+ * JavaSessionDataSerializer
+ *
+ * Serializes the attributes of sessions with java serialization, in the
+ * format used by previous versions of the {@link SessionDataStore}s, so
+ * that they can still be read by nodes that have not been upgraded.
+ */
+public class JavaSessionDataSerializer implements SessionDataSerializer
+{
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataSerializer#serializeAttributes(java.util.Map, java.io.OutputStream)
+     */
+    @Override
+    public void serializeAttributes(Map<String, Object> attributes, OutputStream out) throws IOException
+    {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(new HashMap<>(attributes));
+        oos.flush();
+    }
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataSerializer#deserializeAttributes(java.io.InputStream)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> deserializeAttributes(InputStream in) throws IOException, ClassNotFoundException
+    {
+        ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(in);
+        return (Map<String,Object>)ois.readObject();
+    }
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataSerializer#serializeAttribute(java.lang.Object, java.io.OutputStream)
+     */
+    @Override
+    public void serializeAttribute(Object value, OutputStream out) throws IOException
+    {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeUnshared(value);
+        oos.flush();
+    }
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataSerializer#deserializeAttribute(java.io.InputStream)
+     */
+    @Override
+    public Object deserializeAttribute(InputStream in) throws IOException, ClassNotFoundException
+    {
+        ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(in);
+        return ois.readUnshared();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x", getClass().getSimpleName(), hashCode());
+    }
+}
@@ -22,9 +22,12 @@ package org.eclipse.jetty.server.session;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -54,7 +57,9 @@ public class SessionData implements Serializable
     protected long _lastAccessed;     // the time of the last access excluding this one
     protected long _maxInactiveMs;
     protected Map<String,Object> _attributes;
-    protected boolean _dirty;
+    protected volatile boolean _dirty;
+    protected transient AtomicLong _modifications = new AtomicLong(); //count of changes to the session
+    protected transient ConcurrentMap<String,Long> _dirtyAttributes = new ConcurrentHashMap<>(); //names of attributes changed since last save, with the count of their last change
     protected long _lastSaved; //time in msec since last save
     
     public SessionData (String id, String cpath, String vhost, long created, long accessed, long lastAccessed, long maxInactiveMs)
@@ -130,6 +135,8 @@ public class SessionData implements Serializable
 
     public void setDirty(boolean dirty)
     {
+        if (dirty)
+            _modifications.incrementAndGet();
         _dirty = dirty;
     }
     
@@ -162,7 +169,46 @@ public class SessionData implements Serializable
     
     public void setDirty (String name)
     {
-        setDirty (true);
+        _dirtyAttributes.put(name, _modifications.incrementAndGet());
+        _dirty = true;
+    }
+    
+    /**
+     * @return a copy of the names of the attributes that have been set or
+     * removed since they were last saved
+     */
+    public Set<String> getDirtyAttributes ()
+    {
+        return new HashSet<>(_dirtyAttributes.keySet());
+    }
+    
+    /**
+     * @return the count of changes to the session, to obtain before saving
+     * it and to pass to {@link #clearDirty(long)} once it has been saved
+     */
+    public long getModifications ()
+    {
+        return _modifications.get();
+    }
+    
+    /**
+     * Mark the session and its attributes as saved, except the ones that
+     * have been changed again since the count of changes was obtained.
+     * 
+     * @param modifications the count of changes obtained before saving
+     */
+    public void clearDirty (long modifications)
+    {
+        for (Map.Entry<String,Long> entry : _dirtyAttributes.entrySet())
+        {
+            if (entry.getValue() <= modifications)
+                _dirtyAttributes.remove(entry.getKey(), entry.getValue());
+        }
+        
+        //changes made since are counted before being marked dirty, so check after clearing
+        _dirty = false;
+        if (_modifications.get() != modifications)
+            _dirty = true;
     }
     
     public void putAllAttributes (Map<String,Object> attributes)
@@ -361,6 +407,8 @@ public class SessionData implements Serializable
         _expiry = in.readLong(); 
         _maxInactiveMs = in.readLong();
         _attributes = (Map<String,Object>)in.readObject();
+        _modifications = new AtomicLong();
+        _dirtyAttributes = new ConcurrentHashMap<>();
     }
     
     public boolean isExpiredAt (long time)
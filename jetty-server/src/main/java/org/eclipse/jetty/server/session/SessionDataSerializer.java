@@ -0,0 +1,81 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * SessionDataSerializer
+ *
+ * Converts the attributes of sessions to and from bytes, for the
+ * {@link SessionDataStore}s that persist them.
+ *
+ * Implementations must also be able to read attributes written with java
+ * serialization, as they were persisted by previous versions of the stores.
+ * Classes are loaded with the thread context classloader, which the stores
+ * set to the classloader of the context.
+ */
+public interface SessionDataSerializer
+{
+    /**
+     * Write all the attributes of a session.
+     *
+     * @param attributes the attributes of the session
+     * @param out the stream to write to
+     * @throws IOException if the attributes cannot be written
+     */
+    public void serializeAttributes (Map<String,Object> attributes, OutputStream out) throws IOException;
+
+
+    /**
+     * Read all the attributes of a session, as written by {@link #serializeAttributes(Map, OutputStream)}
+     * or as a java serialized map.
+     *
+     * @param in the stream to read from
+     * @return the attributes of the session
+     * @throws IOException if the attributes cannot be read
+     * @throws ClassNotFoundException if the class of an attribute cannot be loaded
+     */
+    public Map<String,Object> deserializeAttributes (InputStream in) throws IOException, ClassNotFoundException;
+
+
+    /**
+     * Write the value of a single attribute, for the stores that persist each attribute separately.
+     *
+     * @param value the value of the attribute
+     * @param out the stream to write to
+     * @throws IOException if the value cannot be written
+     */
+    public void serializeAttribute (Object value, OutputStream out) throws IOException;
+
+
+    /**
+     * Read the value of a single attribute, as written by {@link #serializeAttribute(Object, OutputStream)}
+     * or as a java serialized object.
+     *
+     * @param in the stream to read from
+     * @return the value of the attribute
+     * @throws IOException if the value cannot be read
+     * @throws ClassNotFoundException if the class of the value cannot be loaded
+     */
+    public Object deserializeAttribute (InputStream in) throws IOException, ClassNotFoundException;
+}
@@ -19,6 +19,7 @@
 
 package org.eclipse.jetty.server.session;
 
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jetty.util.component.LifeCycle;
@@ -75,4 +76,34 @@ public interface SessionDataStore extends SessionDataMap
      */
     public boolean exists (String id) throws Exception;
     
+    
+    /**
+     * Store several sessions, as {@link #store(String, SessionData)} would.
+     * Stores able to write them in fewer operations on the persistence
+     * layer override this.
+     * 
+     * @param sessions the sessions to store, by id
+     * @throws Exception if unable to store some of the sessions
+     */
+    public default void storeAll (Map<String,SessionData> sessions) throws Exception
+    {
+        Exception failure = null;
+        for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+        {
+            try
+            {
+                store(entry.getKey(), entry.getValue());
+            }
+            catch (Exception e)
+            {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+    
 }
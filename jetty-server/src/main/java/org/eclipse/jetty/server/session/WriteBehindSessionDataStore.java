@@ -0,0 +1,628 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.server.session;
+
+import java.io.ObjectStreamException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Locker;
+import org.eclipse.jetty.util.thread.Locker.Lock;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+
+/**
+ * WriteBehindSessionDataStore
+ *
+ * A SessionDataStore that delegates to a pluggable SessionDataStore, writing
+ * sessions to it from a thread of the server's thread pool rather than from the thread of the
+ * request that exits the session, so that requests do not wait for the round
+ * trip to the persistence layer.
+ *
+ * Sessions stored within the flush interval are written together by
+ * {@link SessionDataStore#storeAll(Map)}, which stores may implement with batches
+ * of operations, and a session stored several times is written once.
+ * When the maximum number of pending sessions is reached, storing another session
+ * waits for the pending ones to be written. Pending sessions are written before the
+ * store is stopped.
+ *
+ * Until they are written, pending sessions are loaded from this store, but are not
+ * visible to other nodes sharing the delegate store. If a batch fails, its sessions
+ * are written one at a time, so that a session that cannot be written does not fail
+ * the others. A session that cannot be serialized is dropped; a session whose write
+ * fails otherwise is pending again, unless it has been stored since, and is written
+ * with a later batch, after a delay that doubles with each failure, until it has
+ * failed {@link #getMaxRetries()} times and is dropped. Sessions changed while being
+ * written remain dirty and are written again when they are next stored.
+ */
+@ManagedObject
+public class WriteBehindSessionDataStore extends ContainerLifeCycle implements SessionDataStore
+{
+    private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+    private final static long MAX_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The actual store for the session data
+     */
+    protected SessionDataStore _store;
+
+    private final Locker _locker = new Locker();
+    private final Condition _flushNeeded = _locker.newCondition();
+    private final Condition _flushed = _locker.newCondition();
+    private Map<String,SessionData> _pending = new LinkedHashMap<>(); //sessions waiting to be written, by id
+    private Map<String,SessionData> _flushing = Collections.emptyMap(); //sessions being written, by id
+    private final Map<String,Integer> _failedWrites = new HashMap<>(); //failed writes, by id
+    private long _flushIntervalMs = 100;
+    private int _maxBatchSize = 128;
+    private int _maxPendingSessions = 8192;
+    private int _maxRetries = 5;
+    private SessionContext _context;
+    private QueuedThreadPool _ownExecutor;
+    private boolean _flusherRunning;
+    private boolean _stopping;
+
+
+    /**
+     * @param store the delegate store
+     */
+    public WriteBehindSessionDataStore (SessionDataStore store)
+    {
+        _store = store;
+        addBean(_store,true);
+    }
+
+
+    /**
+     * @return the delegate session store
+     */
+    public SessionDataStore getSessionStore()
+    {
+        return _store;
+    }
+
+
+    /**
+     * @return the max time in ms a session waits before being written
+     */
+    @ManagedAttribute(value="max ms before a session is written", readonly=true)
+    public long getFlushIntervalMs()
+    {
+        return _flushIntervalMs;
+    }
+
+
+    /**
+     * @param flushIntervalMs the max time in ms a session waits before being written
+     */
+    public void setFlushIntervalMs(long flushIntervalMs)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+        _flushIntervalMs = flushIntervalMs;
+    }
+
+
+    /**
+     * @return the max number of sessions written together
+     */
+    @ManagedAttribute(value="max sessions written together", readonly=true)
+    public int getMaxBatchSize()
+    {
+        return _maxBatchSize;
+    }
+
+
+    /**
+     * @param maxBatchSize the max number of sessions written together
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+        _maxBatchSize = maxBatchSize;
+    }
+
+
+    /**
+     * @return the max number of sessions waiting to be written
+     */
+    @ManagedAttribute(value="max sessions waiting to be written", readonly=true)
+    public int getMaxPendingSessions()
+    {
+        return _maxPendingSessions;
+    }
+
+
+    /**
+     * @param maxPendingSessions the max number of sessions waiting to be written
+     */
+    public void setMaxPendingSessions(int maxPendingSessions)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+        _maxPendingSessions = maxPendingSessions;
+    }
+
+
+    /**
+     * @return the max number of times the write of a session is retried before it is dropped
+     */
+    @ManagedAttribute(value="max retries before a session is dropped", readonly=true)
+    public int getMaxRetries()
+    {
+        return _maxRetries;
+    }
+
+
+    /**
+     * @param maxRetries the max number of times the write of a session is retried before it is dropped
+     */
+    public void setMaxRetries(int maxRetries)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+        _maxRetries = maxRetries;
+    }
+
+
+    /**
+     * @return the number of sessions waiting to be written
+     */
+    @ManagedAttribute(value="sessions waiting to be written", readonly=true)
+    public int getPendingSessions()
+    {
+        try (Lock lock = _locker.lock())
+        {
+            return _pending.size();
+        }
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#load(java.lang.String)
+     */
+    @Override
+    public SessionData load(String id) throws Exception
+    {
+        try (Lock lock = _locker.lock())
+        {
+            //a session not yet written is more recent than the delegate store's
+            SessionData data = _pending.get(id);
+            if (data == null)
+                data = _flushing.get(id);
+            if (data != null)
+                return data;
+        }
+
+        return _store.load(id);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#delete(java.lang.String)
+     */
+    @Override
+    public boolean delete(String id) throws Exception
+    {
+        try (Lock lock = _locker.lock())
+        {
+            //don't let a write in progress recreate the session once deleted
+            while (_flushing.containsKey(id))
+                _flushed.await();
+
+            //a failed write may have left the session pending again
+            _pending.remove(id);
+            _failedWrites.remove(id);
+        }
+
+        return _store.delete(id);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#getExpired(Set)
+     */
+    @Override
+    public Set<String> getExpired(Set<String> candidates)
+    {
+        //pass thru to the delegate store
+        return _store.getExpired(candidates);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#store(java.lang.String, org.eclipse.jetty.server.session.SessionData)
+     */
+    @Override
+    public void store(String id, SessionData data) throws Exception
+    {
+        if (data == null)
+            return;
+
+        try (Lock lock = _locker.lock())
+        {
+            if (_flusherRunning && !_stopping)
+            {
+                //wait for room, unless the session is already pending
+                while (_pending.size() >= _maxPendingSessions && !_pending.containsKey(id) && !_stopping)
+                {
+                    _flushNeeded.signal();
+                    _flushed.await();
+                }
+
+                if (!_stopping)
+                {
+                    _pending.put(id, data);
+                    if (_pending.size() == 1 || _pending.size() >= _maxBatchSize)
+                        _flushNeeded.signal();
+                    return;
+                }
+            }
+        }
+
+        //not started or stopping, so write through
+        _store.store(id, data);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#storeAll(java.util.Map)
+     */
+    @Override
+    public void storeAll(Map<String,SessionData> sessions) throws Exception
+    {
+        for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+            store(entry.getKey(), entry.getValue());
+    }
+
+
+    /**
+     * Write the pending sessions, waiting for them to be written.
+     *
+     * @throws Exception if the sessions cannot be written
+     */
+    public void flush() throws Exception
+    {
+        Map<String,SessionData> sessions;
+        try (Lock lock = _locker.lock())
+        {
+            //wait for a write in progress so that sessions are written in order
+            while (!_flushing.isEmpty())
+                _flushed.await();
+            sessions = _pending;
+            _pending = new LinkedHashMap<>();
+            _flushing = sessions;
+        }
+
+        try
+        {
+            _store.storeAll(sessions);
+        }
+        finally
+        {
+            try (Lock lock = _locker.lock())
+            {
+                _flushing = Collections.emptyMap();
+                _flushed.signalAll();
+            }
+        }
+    }
+
+
+    /**
+     * Wait for sessions to write, then write them in batches.
+     */
+    private void flushPending()
+    {
+        try
+        {
+            int failures = 0; //consecutive batches with sessions to retry
+            while (true)
+            {
+                Map<String,SessionData> batch = new LinkedHashMap<>();
+                try (Lock lock = _locker.lock())
+                {
+                    while (!_stopping && _pending.isEmpty())
+                        _flushNeeded.await();
+
+                    //give other sessions the interval to join the batch, or the delegate store a growing delay to recover
+                    long delayMs = _flushIntervalMs;
+                    if (failures > 0)
+                        delayMs = Math.min(_flushIntervalMs << Math.min(failures, 16), Math.max(_flushIntervalMs, MAX_RETRY_DELAY_MS));
+                    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+                    while (!_stopping && (failures > 0 || _pending.size() < _maxBatchSize))
+                    {
+                        long wait = end - System.nanoTime();
+                        if (wait <= 0)
+                            break;
+                        _flushNeeded.awaitNanos(wait);
+                    }
+
+                    //wait for a write in progress by flush() so that sessions are written in order
+                    while (!_stopping && !_flushing.isEmpty())
+                        _flushed.await();
+
+                    if (_stopping)
+                        return;
+
+                    for (Map.Entry<String,SessionData> entry : _pending.entrySet())
+                    {
+                        if (batch.size() >= _maxBatchSize)
+                            break;
+                        batch.put(entry.getKey(), entry.getValue());
+                    }
+                    _pending.keySet().removeAll(batch.keySet());
+                    _flushing = batch;
+                }
+
+                Map<String,Exception> failed = Collections.emptyMap();
+                Set<String> dropped = new HashSet<>();
+                try
+                {
+                    failed = write(batch);
+                }
+                finally
+                {
+                    try (Lock lock = _locker.lock())
+                    {
+                        for (Map.Entry<String,SessionData> entry : batch.entrySet())
+                        {
+                            String id = entry.getKey();
+                            Exception failure = failed.get(id);
+                            if (failure == null)
+                                _failedWrites.remove(id);
+                            else if (isUnwriteable(failure) || _failedWrites.merge(id, 1, Integer::sum) > _maxRetries)
+                            {
+                                _failedWrites.remove(id);
+                                dropped.add(id);
+                            }
+                            else
+                            {
+                                //write the session again with a later batch, unless stored since
+                                _pending.putIfAbsent(id, entry.getValue());
+                            }
+                        }
+                        _flushing = Collections.emptyMap();
+                        _flushed.signalAll();
+                    }
+                }
+
+                failures = failed.size() > dropped.size() ? failures + 1 : 0;
+                for (String id : dropped)
+                    LOG.warn("Dropped unwritten session {}", id);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            LOG.ignore(e);
+        }
+        finally
+        {
+            try (Lock lock = _locker.lock())
+            {
+                _flusherRunning = false;
+                _flushed.signalAll();
+            }
+        }
+    }
+
+
+    /**
+     * Write a batch of sessions, one at a time if the batch fails.
+     *
+     * @param batch the sessions to write
+     * @return the failures of the sessions that could not be written, by id
+     */
+    private Map<String,Exception> write(Map<String,SessionData> batch)
+    {
+        Map<String,Exception> failed = new LinkedHashMap<>();
+        try
+        {
+            if (!batch.isEmpty())
+                _store.storeAll(batch);
+        }
+        catch (Exception e)
+        {
+            if (batch.size() == 1)
+                failed.put(batch.keySet().iterator().next(), e);
+            else
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Unable to write sessions "+batch.keySet()+", writing them one at a time", e);
+
+                //don't let a session that cannot be written fail the others
+                for (Map.Entry<String,SessionData> entry : batch.entrySet())
+                {
+                    try
+                    {
+                        _store.store(entry.getKey(), entry.getValue());
+                    }
+                    catch (Exception x)
+                    {
+                        failed.put(entry.getKey(), x);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String,Exception> entry : failed.entrySet())
+            LOG.warn("Unable to write session "+entry.getKey(), entry.getValue());
+        return failed;
+    }
+
+
+    /**
+     * @param failure the failure to write a session
+     * @return true if writing the session again would fail the same way
+     */
+    private static boolean isUnwriteable(Throwable failure)
+    {
+        for (Throwable t = failure; t != null; t = t.getCause())
+        {
+            if (t instanceof UnwriteableSessionDataException || t instanceof ObjectStreamException)
+                return true;
+        }
+        return false;
+    }
+
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        super.doStart();
+
+        //write on the thread pool of the server, or on our own if there is none
+        SessionHandler handler = _context == null ? null : _context.getSessionHandler();
+        Server server = handler == null ? null : handler.getServer();
+        Executor executor = server == null ? null : server.getThreadPool();
+        if (executor == null)
+        {
+            _ownExecutor = new QueuedThreadPool(1, 1);
+            _ownExecutor.setName("WriteBehindSessionDataStore-" + hashCode());
+            _ownExecutor.setDaemon(true);
+            _ownExecutor.start();
+            executor = _ownExecutor;
+        }
+
+        try (Lock lock = _locker.lock())
+        {
+            _stopping = false;
+            _flusherRunning = true;
+        }
+
+        try
+        {
+            executor.execute(this::flushPending);
+        }
+        catch (RuntimeException e)
+        {
+            try (Lock lock = _locker.lock())
+            {
+                _flusherRunning = false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        try (Lock lock = _locker.lock())
+        {
+            _stopping = true;
+            _flushNeeded.signalAll();
+            _flushed.signalAll();
+
+            //wait for the flusher to finish the batch it is writing
+            while (_flusherRunning)
+                _flushed.await();
+        }
+
+        if (_ownExecutor != null)
+            _ownExecutor.stop();
+        _ownExecutor = null;
+
+        //write whatever is still pending before stopping the delegate store
+        try
+        {
+            flush();
+        }
+        catch (Exception e)
+        {
+            LOG.warn(e);
+        }
+
+        super.doStop();
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#isPassivating()
+     */
+    @Override
+    public boolean isPassivating()
+    {
+       return _store.isPassivating();
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#exists(java.lang.String)
+     */
+    @Override
+    public boolean exists(String id) throws Exception
+    {
+        try (Lock lock = _locker.lock())
+        {
+            SessionData data = _pending.get(id);
+            if (data == null)
+                data = _flushing.get(id);
+            if (data != null)
+                return !data.isExpiredAt(System.currentTimeMillis());
+        }
+
+        return _store.exists(id);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#initialize(org.eclipse.jetty.server.session.SessionContext)
+     */
+    @Override
+    public void initialize(SessionContext context) throws Exception
+    {
+        _context = context;
+        //pass through
+        _store.initialize(context);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#newSessionData(java.lang.String, long, long, long, long)
+     */
+    @Override
+    public SessionData newSessionData(String id, long created, long accessed, long lastAccessed, long maxInactiveMs)
+    {
+        return _store.newSessionData(id, created, accessed, lastAccessed, maxInactiveMs);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.util.component.ContainerLifeCycle#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[interval=%d,batch=%d,pending=%d]",this.getClass().getName(),this.hashCode(),_flushIntervalMs,_maxBatchSize,getPendingSessions());
+    }
+}
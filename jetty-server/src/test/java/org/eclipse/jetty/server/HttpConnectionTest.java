@@ -269,6 +269,38 @@ public class HttpConnectionTest
         checkContains(response,offset,"/R1");
     }
 
+    @Test
+    public void testWriteAggregation() throws Exception
+    {
+        connector.getConnectionFactory(HttpConnectionFactory.class).getHttpConfiguration().setWriteAggregationSize(4096);
+
+        String response=connector.getResponse("GET /R1 HTTP/1.1\r\n"+
+                "Host: localhost\r\n"+
+                "\r\n");
+
+        int offset=0;
+        offset = checkContains(response,offset,"HTTP/1.1 200");
+        checkContains(response,offset,"/R1");
+
+        LocalEndPoint endp=connector.executeRequest("GET /R1 HTTP/1.1\r\n"+
+                "Host: localhost\r\n"+
+                "\r\n"+
+                "GET /R2 HTTP/1.1\r\n"+
+                "Host: localhost\r\n"+
+                "\r\n"+
+                "GET /R3 HTTP/1.1\r\n"+
+                "Host: localhost\r\n"+
+                "Connection: close\r\n"+
+                "\r\n");
+
+        for (String path : new String[]{"/R1","/R2","/R3"})
+        {
+            response=endp.getResponse();
+            offset = checkContains(response,0,"HTTP/1.1 200");
+            checkContains(response,offset,path);
+        }
+    }
+
     @Test
     public void testEmptyNotPersistent() throws Exception
     {
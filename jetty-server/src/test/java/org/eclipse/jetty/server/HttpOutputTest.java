@@ -20,14 +20,19 @@ package org.eclipse.jetty.server;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -44,6 +49,7 @@ import org.eclipse.jetty.server.handler.HotSwapHandler;
 import org.eclipse.jetty.toolchain.test.AdvancedRunner;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.resource.Resource;
 import org.hamcrest.Matchers;
 import org.junit.After;
@@ -196,10 +202,99 @@ public class HttpOutputTest
         _handler._contentChannel=big.getReadableByteChannel();
         String response=_connector.getResponse("GET / HTTP/1.0\nHost: localhost:80\n\n");
         assertThat(response,containsString("HTTP/1.1 200 OK"));
-        assertThat(response,Matchers.not(containsString("Content-Length")));
+        // The file is written as a single mapped region, so the length is known when committing.
+        assertThat(response,containsString("Content-Length: 10400"));
         assertThat(response, endsWith(toUTF8String(big)));
     }
     
+    @Test
+    public void testSendFileChannelRegion() throws Exception
+    {
+        Resource big = Resource.newClassPathResource("simple/big.txt");
+        String content = toUTF8String(big);
+        FileRegionHandler handler = new FileRegionHandler(big,1000,2000);
+        _swap.setHandler(handler);
+        handler.start();
+
+        String response=_connector.getResponse("GET / HTTP/1.0\nHost: localhost:80\n\n");
+        assertThat(response,containsString("HTTP/1.1 200 OK"));
+        assertThat(response,containsString("Content-Length: 2000"));
+        assertThat(response,endsWith("\r\n\r\n"+content.substring(1000,3000)));
+    }
+
+    @Test
+    public void testSendFileChannelTransfer() throws Exception
+    {
+        Resource big = Resource.newClassPathResource("simple/big.txt");
+        String content = toUTF8String(big);
+        long length = big.length();
+        FileRegionHandler handler = new FileRegionHandler(big,0,length);
+        _swap.setHandler(handler);
+        handler.start();
+
+        ServerConnector connector = new ServerConnector(_server);
+        _server.addConnector(connector);
+        connector.start();
+
+        try (Socket client = new Socket("localhost",connector.getLocalPort()))
+        {
+            client.getOutputStream().write("GET / HTTP/1.0\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            String response=IO.toString(client.getInputStream(),StandardCharsets.ISO_8859_1);
+            assertThat(response,containsString("HTTP/1.1 200 OK"));
+            assertThat(response,containsString("Content-Length: "+length));
+            assertThat(response,endsWith("\r\n\r\n"+content));
+        }
+    }
+
+    @Test
+    public void testSendFileChannelTransferWithWriteAggregation() throws Exception
+    {
+        Resource big = Resource.newClassPathResource("simple/big.txt");
+        String content = toUTF8String(big);
+        long length = big.length();
+        FileRegionHandler fileHandler = new FileRegionHandler(big,0,length);
+        AbstractHandler handler = new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                if ("/small".equals(target))
+                {
+                    baseRequest.setHandled(true);
+                    response.setContentLength(5);
+                    response.getOutputStream().write("small".getBytes(StandardCharsets.ISO_8859_1));
+                }
+                else
+                {
+                    fileHandler.handle(target,baseRequest,request,response);
+                }
+            }
+        };
+        _swap.setHandler(handler);
+        handler.start();
+
+        // The last write of the small response is aggregated, and must be written before the transferred file.
+        HttpConfiguration config = new HttpConfiguration();
+        config.setWriteAggregationSize(1024);
+        ServerConnector connector = new ServerConnector(_server,new HttpConnectionFactory(config));
+        _server.addConnector(connector);
+        connector.start();
+
+        try (Socket client = new Socket("localhost",connector.getLocalPort()))
+        {
+            client.getOutputStream().write((
+                "GET /small HTTP/1.1\r\nHost: localhost\r\n\r\n"+
+                "GET /file HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            String response=IO.toString(client.getInputStream(),StandardCharsets.ISO_8859_1);
+            assertThat(response,startsWith("HTTP/1.1 200 OK"));
+            int second = response.indexOf("HTTP/1.1 200 OK",1);
+            assertThat(second,Matchers.greaterThan(0));
+            assertThat(response.substring(0,second),endsWith("\r\n\r\nsmall"));
+            assertThat(response.substring(second),containsString("Content-Length: "+length));
+            assertThat(response.substring(second),endsWith("\r\n\r\n"+content));
+        }
+    }
+
     @Test
     public void testSendBigDirect() throws Exception
     {
@@ -695,6 +790,31 @@ public class HttpOutputTest
         void setNext(Interceptor interceptor);
     }
     
+    static class FileRegionHandler extends AbstractHandler
+    {
+        private final Resource _resource;
+        private final long _position;
+        private final long _length;
+
+        FileRegionHandler(Resource resource, long position, long length)
+        {
+            _resource = resource;
+            _position = position;
+            _length = length;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+        {
+            baseRequest.setHandled(true);
+            response.setContentLengthLong(_length);
+            FileChannel file = FileChannel.open(_resource.getFile().toPath(),StandardOpenOption.READ);
+            ((HttpOutput)response.getOutputStream()).sendContent(file,_position,_length);
+            Assert.assertFalse(file.isOpen());
+            Assert.assertEquals(_length,baseRequest.getHttpChannel().getBytesWritten());
+        }
+    }
+
     static class ContentHandler extends AbstractHandler
     {
         AtomicInteger _owp = new AtomicInteger();
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.server;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
@@ -26,14 +27,22 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpContent;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.ResourceHttpContent;
+import org.eclipse.jetty.server.handler.gzip.BrotliCompressionEncoder;
+import org.eclipse.jetty.server.handler.gzip.CompressionEncoder;
+import org.eclipse.jetty.server.handler.gzip.GzipCompressionEncoder;
 import org.eclipse.jetty.toolchain.test.AdvancedRunner;
 import org.eclipse.jetty.toolchain.test.OS;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceCollection;
 import org.junit.Test;
@@ -262,9 +271,10 @@ public class ResourceCacheTest
 
         Thread.sleep(200);
 
+        // names[2] is not admitted, as it is not used more frequently than names[6]
         content=cache.getContent(names[3],4096);
         content.getIndirectBuffer();
-        assertEquals(61,cache.getCachedSize());
+        assertEquals(42,cache.getCachedSize());
         assertEquals(4,cache.getCachedFiles());
 
         Thread.sleep(200);
@@ -277,6 +287,210 @@ public class ResourceCacheTest
         cache.flushCache();
     }
 
+    @Test
+    public void testFrequencyAwareEviction() throws Exception
+    {
+        File[] files=new File[20];
+        for (int i=0;i<files.length;i++)
+        {
+            files[i]=File.createTempFile("F-"+i+"-",".txt");
+            files[i].deleteOnExit();
+            try (OutputStream out = new FileOutputStream(files[i]))
+            {
+                out.write(("content "+i).getBytes("ISO-8859-1"));
+            }
+        }
+
+        Resource directory=Resource.newResource(files[0].getParentFile().getAbsolutePath());
+        CachedContentFactory cache=new CachedContentFactory(null,directory,new MimeTypes(),false,false,CompressedContentFormat.NONE);
+        cache.setMaxCachedFiles(4);
+
+        // Two files are frequently used.
+        for (int i=0;i<3;i++)
+        {
+            assertEquals("content 0",getContent(cache,files[0].getName()));
+            assertEquals("content 1",getContent(cache,files[1].getName()));
+        }
+        assertEquals(4,cache.getHits());
+        assertEquals(2,cache.getMisses());
+
+        // A scan of files used once does not evict them.
+        for (int i=2;i<files.length;i++)
+            assertEquals("content "+i,getContent(cache,files[i].getName()));
+        assertEquals(4,cache.getCachedFiles());
+        assertEquals(files.length-4,cache.getEvictions());
+        assertTrue(cache.getAdmissionRejects()>0);
+
+        assertEquals("content 0",getContent(cache,files[0].getName()));
+        assertEquals("content 1",getContent(cache,files[1].getName()));
+        assertEquals(6,cache.getHits());
+        assertEquals(files.length,cache.getMisses());
+        assertEquals(6.0/(6+files.length),cache.getHitRatio(),0.0001);
+
+        cache.resetStatistics();
+        assertEquals(0,cache.getHits());
+        assertEquals(0,cache.getEvictions());
+        cache.flushCache();
+        assertEquals(0,cache.getCachedFiles());
+    }
+
+    @Test
+    public void testCompressedVariants() throws Exception
+    {
+        File text=File.createTempFile("C-0-",".txt");
+        text.deleteOnExit();
+        File image=File.createTempFile("C-0-",".png");
+        image.deleteOnExit();
+        StringBuilder builder=new StringBuilder();
+        for (int i=0;i<1000;i++)
+            builder.append("line ").append(i%10).append(" of compressible text\n");
+        String expected=builder.toString();
+        try (OutputStream out = new FileOutputStream(text))
+        {
+            out.write(expected.getBytes("ISO-8859-1"));
+        }
+        try (OutputStream out = new FileOutputStream(image))
+        {
+            out.write(expected.getBytes("ISO-8859-1"));
+        }
+
+        Resource directory=Resource.newResource(text.getParentFile().getAbsolutePath());
+        CachedContentFactory cache=new CachedContentFactory(null,directory,new MimeTypes(),false,true,
+                new CompressedContentFormat[]{CompressedContentFormat.BR,CompressedContentFormat.GZIP});
+        cache.setCompressionEncoders(new BrotliCompressionEncoder(),new GzipCompressionEncoder());
+        List<Runnable> tasks=new ArrayList<>();
+        cache.setCompressionExecutor(tasks::add);
+
+        // The first request schedules the compression, once.
+        HttpContent content=cache.getContent(text.getName(),Integer.MAX_VALUE);
+        assertNull(content.getPrecompressedContents());
+        assertNull(content.getPrecompressedContents());
+        assertEquals(1,tasks.size());
+        assertEquals(0,cache.getCachedSize());
+
+        tasks.get(0).run();
+        Map<CompressedContentFormat,? extends HttpContent> variants=content.getPrecompressedContents();
+        assertEquals(2,variants.size());
+
+        HttpContent gzip=variants.get(CompressedContentFormat.GZIP);
+        HttpContent br=variants.get(CompressedContentFormat.BR);
+        assertEquals("gzip",gzip.getContentEncodingValue());
+        assertEquals("br",br.getContentEncodingValue());
+        assertTrue(gzip.getETagValue().endsWith("--gzip\""));
+        assertTrue(br.getETagValue().endsWith("--br\""));
+        assertTrue(gzip.getContentLengthValue()<expected.length());
+        assertTrue(br.getContentLengthValue()<expected.length());
+        assertEquals(gzip.getContentLengthValue(),gzip.getIndirectBuffer().remaining());
+        assertEquals(gzip.getContentLengthValue(),gzip.getDirectBuffer().remaining());
+        assertEquals(expected,IO.toString(new GZIPInputStream(gzip.getInputStream()),"ISO-8859-1"));
+
+        // The identity content and both variants, of which gzip is also held in a direct buffer.
+        assertEquals(expected.length()+2*gzip.getContentLengthValue()+br.getContentLengthValue(),cache.getCachedSize());
+
+        // Content that would not benefit from compression is not compressed.
+        HttpContent png=cache.getContent(image.getName(),Integer.MAX_VALUE);
+        assertNull(png.getPrecompressedContents());
+        assertEquals(1,tasks.size());
+
+        cache.flushCache();
+        assertEquals(0,cache.getCachedSize());
+    }
+
+    @Test
+    public void testConcurrentCompressionsBounded() throws Exception
+    {
+        // Content larger than a compression chunk, so that the compressed output spans several chunks.
+        StringBuilder builder=new StringBuilder();
+        for (int i=0;i<20000;i++)
+            builder.append("line ").append(i).append(" of compressible text\n");
+        String expected=builder.toString();
+        File[] files=new File[2];
+        for (int i=0;i<files.length;i++)
+        {
+            files[i]=File.createTempFile("D-"+i+"-",".txt");
+            files[i].deleteOnExit();
+            try (OutputStream out = new FileOutputStream(files[i]))
+            {
+                out.write(expected.getBytes("ISO-8859-1"));
+            }
+        }
+
+        Resource directory=Resource.newResource(files[0].getParentFile().getAbsolutePath());
+        CachedContentFactory cache=new CachedContentFactory(null,directory,new MimeTypes(),false,true,
+                new CompressedContentFormat[]{CompressedContentFormat.GZIP});
+        cache.setCompressionEncoders(new GzipCompressionEncoder());
+        cache.setMaxConcurrentCompressions(1);
+        List<Runnable> tasks=new ArrayList<>();
+        cache.setCompressionExecutor(tasks::add);
+
+        // The second content is not compressed while the first is being compressed.
+        HttpContent first=cache.getContent(files[0].getName(),Integer.MAX_VALUE);
+        HttpContent second=cache.getContent(files[1].getName(),Integer.MAX_VALUE);
+        assertNull(first.getPrecompressedContents());
+        assertNull(second.getPrecompressedContents());
+        assertEquals(1,tasks.size());
+
+        tasks.get(0).run();
+        HttpContent gzip=first.getPrecompressedContents().get(CompressedContentFormat.GZIP);
+        assertTrue(gzip.getContentLengthValue()<expected.length());
+        assertEquals(expected,IO.toString(new GZIPInputStream(gzip.getInputStream()),"ISO-8859-1"));
+
+        // It is compressed on a later request.
+        assertNull(second.getPrecompressedContents());
+        assertEquals(2,tasks.size());
+        tasks.get(1).run();
+        assertEquals(1,second.getPrecompressedContents().size());
+
+        cache.flushCache();
+    }
+
+    @Test
+    public void testInvalidatedWhileCompressing() throws Exception
+    {
+        File text=File.createTempFile("E-0-",".txt");
+        text.deleteOnExit();
+        StringBuilder builder=new StringBuilder();
+        for (int i=0;i<1000;i++)
+            builder.append("line ").append(i%10).append(" of compressible text\n");
+        try (OutputStream out = new FileOutputStream(text))
+        {
+            out.write(builder.toString().getBytes("ISO-8859-1"));
+        }
+
+        Resource directory=Resource.newResource(text.getParentFile().getAbsolutePath());
+        CachedContentFactory cache=new CachedContentFactory(null,directory,new MimeTypes(),false,true,
+                new CompressedContentFormat[]{CompressedContentFormat.GZIP});
+        GzipCompressionEncoder gzip=new GzipCompressionEncoder();
+        cache.setCompressionEncoders(new CompressionEncoder()
+        {
+            @Override
+            public CompressedContentFormat getFormat()
+            {
+                return gzip.getFormat();
+            }
+
+            @Override
+            public Compressor acquire()
+            {
+                // The content is invalidated while it is being compressed.
+                cache.flushCache();
+                return gzip.acquire();
+            }
+        });
+        List<Runnable> tasks=new ArrayList<>();
+        cache.setCompressionExecutor(tasks::add);
+
+        HttpContent content=cache.getContent(text.getName(),Integer.MAX_VALUE);
+        assertNull(content.getPrecompressedContents());
+        assertEquals(1,tasks.size());
+        assertEquals(1,cache.getCachedFiles());
+
+        // The variant of the invalidated content is discarded, without uncounting what was never counted.
+        tasks.get(0).run();
+        assertEquals(0,cache.getCachedFiles());
+        assertEquals(0,cache.getCachedSize());
+    }
+
     @Test
     public void testNoextension() throws Exception
     {
@@ -34,6 +34,8 @@ import java.lang.reflect.Field;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.channels.ServerSocketChannel;
@@ -56,6 +58,7 @@ import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.log.StacklessLogging;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -308,5 +311,108 @@ public class ServerConnectorTest
         
         
         
+    }
+
+    @Test
+    public void testReusePort() throws Exception
+    {
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server, 2, 1);
+        connector.setPort(0);
+        connector.setReusePort(true);
+        server.addConnector(connector);
+        server.setHandler(new ReuseInfoHandler());
+
+        try
+        {
+            server.start();
+
+            // SO_REUSEPORT requires Java 9 and is not supported on all platforms
+            int channels = connector.getAcceptChannelCount();
+            assertThat(channels, anyOf(is(1), is(2)));
+            if (OS.IS_LINUX && !System.getProperty("java.version").startsWith("1."))
+                assertEquals(2, channels);
+
+            URI uri = toServerURI(connector);
+            for (int i = 0; i < 10; i++)
+                getResponse(uri);
+        }
+        finally
+        {
+            server.stop();
+        }
+        assertEquals(0, connector.getAcceptChannelCount());
+    }
+
+    @Test
+    public void testReusePortSelectorAcceptors() throws Exception
+    {
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server, 0, 2);
+        connector.setPort(0);
+        connector.setReusePort(true);
+        server.addConnector(connector);
+        server.setHandler(new ReuseInfoHandler());
+
+        try
+        {
+            server.start();
+
+            assertThat(connector.getAcceptChannelCount(), anyOf(is(1), is(2)));
+
+            URI uri = toServerURI(connector);
+            for (int i = 0; i < 10; i++)
+                getResponse(uri);
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInheritedReusePortChannel() throws Exception
+    {
+        SocketOption<Boolean> reusePort;
+        try
+        {
+            reusePort = (SocketOption<Boolean>)StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        }
+        catch (NoSuchFieldException x)
+        {
+            reusePort = null;
+        }
+        Assume.assumeTrue(reusePort != null);
+
+        ServerSocketChannel inherited = ServerSocketChannel.open();
+        Assume.assumeTrue(inherited.supportedOptions().contains(reusePort));
+        inherited.setOption(reusePort, true);
+        inherited.bind(new InetSocketAddress(0));
+
+        // A channel inherited with SO_REUSEPORT does not open more channels unless configured to.
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server, 2, 1)
+        {
+            @Override
+            protected ServerSocketChannel openAcceptChannel() throws IOException
+            {
+                return inherited;
+            }
+        };
+        server.addConnector(connector);
+        server.setHandler(new ReuseInfoHandler());
+
+        try
+        {
+            server.start();
+            assertEquals(1, connector.getAcceptChannelCount());
+            getResponse(toServerURI(connector));
+        }
+        finally
+        {
+            server.stop();
+            IO.close(inherited);
+        }
     }
 }
@@ -0,0 +1,326 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.brotli.dec.BrotliInputStream;
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.TypeUtil;
+import org.junit.Test;
+
+public class BrotliCompressionEncoderTest
+{
+    private static byte[] compress(BrotliCompressionEncoder encoder, byte[] content, int chunk, boolean flush)
+    {
+        return compress(encoder,content,chunk,flush,64);
+    }
+
+    private static byte[] compress(BrotliCompressionEncoder encoder, byte[] content, int chunk, boolean flush, int bufferSize)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        CompressionEncoder.Compressor compressor = encoder.acquire();
+        int offset = 0;
+        while (true)
+        {
+            if (compressor.needsInput())
+            {
+                if (offset==content.length)
+                {
+                    if (compressor.finished())
+                        break;
+                    compressor.finish();
+                }
+                else
+                {
+                    int length = Math.min(chunk,content.length-offset);
+                    compressor.setInput(content,offset,length);
+                    offset += length;
+                }
+            }
+            out.write(buffer,0,compressor.compress(buffer,0,buffer.length,flush));
+        }
+        compressor.release();
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException
+    {
+        try (BrotliInputStream in = new BrotliInputStream(new ByteArrayInputStream(compressed)))
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            IO.copy(in,out);
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] text(int length)
+    {
+        // Text with repetitions at short and long distances.
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(length);
+        String[] words = {"jetty", "brotli", "compression", "the", "of", "and", "window", "stream", "meta-block", "\n"};
+        while (builder.length()<length)
+        {
+            builder.append(words[random.nextInt(words.length)]).append(' ');
+            if (random.nextInt(100)==0)
+                builder.append(builder, builder.length()/2, Math.min(builder.length(), builder.length()/2+random.nextInt(2000)));
+            if (random.nextInt(50)==0)
+                builder.append(random.nextLong());
+        }
+        builder.setLength(length);
+        return builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] mixed(int length)
+    {
+        // Random bytes, runs and copies at long distances.
+        byte[] content = new byte[length];
+        Random random = new Random(length);
+        int i = 0;
+        while (i<length)
+        {
+            int n = Math.min(length-i, 1+random.nextInt(5000));
+            switch (random.nextInt(3))
+            {
+                case 0:
+                    for (int j=0;j<n;j++)
+                        content[i+j] = (byte)random.nextInt(256);
+                    break;
+                case 1:
+                    Arrays.fill(content,i,i+n,(byte)random.nextInt(4));
+                    break;
+                default:
+                    int from = i==0 ? 0 : random.nextInt(i);
+                    for (int j=0;j<n;j++)
+                        content[i+j] = content[from+j];
+                    break;
+            }
+            i += n;
+        }
+        return content;
+    }
+
+    private static void assertRoundTrip(BrotliCompressionEncoder encoder, byte[] content, int chunk, boolean flush) throws IOException
+    {
+        byte[] compressed = compress(encoder,content,chunk,flush);
+        assertArrayEquals(encoder + " chunk=" + chunk + " flush=" + flush,content,decompress(compressed));
+    }
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        assertArrayEquals(TypeUtil.fromHexString("06"),compress(new BrotliCompressionEncoder(),new byte[0],1,false));
+        assertArrayEquals(TypeUtil.fromHexString("3b"),compress(new BrotliCompressionEncoder(1,22),new byte[0],1,false));
+    }
+
+    @Test
+    public void testCompress() throws Exception
+    {
+        // Expected streams checked with a reference brotli decoder.
+        byte[] hello = "hello hello hello hello".getBytes(StandardCharsets.ISO_8859_1);
+        assertArrayEquals(TypeUtil.fromHexString("60010000c0c6d8bafd133804439e90ccb535"),compress(new BrotliCompressionEncoder(),hello,1,false));
+
+        byte[] lorem = "Lorem ipsum dolor sit amet, lorem ipsum dolor sit amet, LOREM IPSUM".getBytes(StandardCharsets.ISO_8859_1);
+        assertArrayEquals(TypeUtil.fromHexString("0b210000c0da39add76e590d8a88b42b06f5dfebff95405c4575cda287719f7dc61612855dc7e2e30174e5da63416a639601"),
+            compress(new BrotliCompressionEncoder(1,22),lorem,7,false));
+    }
+
+    @Test
+    public void testChunkedInput() throws Exception
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i=0;i<20000;i++)
+            builder.append("{\"id\":").append(i).append(",\"name\":\"user").append(i % 97).append("\"},");
+        byte[] content = builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+        BrotliCompressionEncoder encoder = new BrotliCompressionEncoder(5);
+        byte[] whole = compress(encoder,content,content.length,false);
+        assertThat(whole.length,lessThan(content.length/4));
+        // Without flushes, the stream does not depend on how the input is chunked.
+        assertArrayEquals(whole,compress(encoder,content,1000,false));
+        // Flushes byte align the stream, at the expense of the compression ratio.
+        byte[] flushed = compress(encoder,content,1000,true);
+        assertThat(whole.length,lessThan(flushed.length));
+    }
+
+    @Test
+    public void testIncompressibleStoredUncompressed() throws Exception
+    {
+        byte[] content = new byte[100000];
+        new Random(42).nextBytes(content);
+        byte[] compressed = compress(new BrotliCompressionEncoder(),content,content.length,false);
+        // Two stored meta-blocks, each with a 3 byte header, plus the stream header and end.
+        assertEquals(content.length+2*3+1,compressed.length);
+    }
+
+    @Test
+    public void testPooling() throws Exception
+    {
+        BrotliCompressionEncoder encoder = new BrotliCompressionEncoder();
+        assertSame(CompressedContentFormat.BR,encoder.getFormat());
+        CompressionEncoder.Compressor compressor = encoder.acquire();
+        assertNotSame(compressor,encoder.acquire());
+        compressor.release();
+        assertSame(compressor,encoder.acquire());
+    }
+
+    @Test
+    public void testPoolBounded() throws Exception
+    {
+        BrotliCompressionEncoder encoder = new BrotliCompressionEncoder(1,16,2);
+        encoder.start();
+        CompressionEncoder.Compressor[] compressors = new CompressionEncoder.Compressor[4];
+        for (int i=0;i<compressors.length;i++)
+            compressors[i] = encoder.acquire();
+        for (CompressionEncoder.Compressor compressor : compressors)
+            compressor.release();
+        assertEquals(2,encoder.getPooledCompressors());
+
+        // The pool is released when the encoder is stopped.
+        encoder.stop();
+        assertEquals(0,encoder.getPooledCompressors());
+    }
+
+    @Test
+    public void testLargeWindowNotPooled() throws Exception
+    {
+        BrotliCompressionEncoder encoder = new BrotliCompressionEncoder(1,BrotliCompressionEncoder.MAX_POOLED_WINDOW_BITS+1);
+        CompressionEncoder.Compressor compressor = encoder.acquire();
+        compressor.release();
+        assertEquals(0,encoder.getPooledCompressors());
+        assertNotSame(compressor,encoder.acquire());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidQuality() throws Exception
+    {
+        new BrotliCompressionEncoder(12);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidWindowBits() throws Exception
+    {
+        new BrotliCompressionEncoder(1,25);
+    }
+
+    @Test
+    public void testRoundTripQualities() throws Exception
+    {
+        byte[] text = text(300000);
+        byte[] mixed = mixed(300000);
+        for (int quality=0;quality<=11;quality++)
+        {
+            BrotliCompressionEncoder encoder = new BrotliCompressionEncoder(quality);
+            assertRoundTrip(encoder,new byte[0],1,false);
+            assertRoundTrip(encoder,new byte[]{'x'},1,false);
+            assertRoundTrip(encoder,text,text.length,false);
+            assertRoundTrip(encoder,mixed,mixed.length,false);
+        }
+    }
+
+    @Test
+    public void testRoundTripWindowSizes() throws Exception
+    {
+        // The smallest window, the largest pooled window and a large window.
+        for (int windowBits : new int[]{16, BrotliCompressionEncoder.MAX_POOLED_WINDOW_BITS, 22})
+        {
+            // Content larger than the smaller windows, with copies at distances up to its length.
+            byte[] content = mixed((1 << Math.min(windowBits,18)) + 100000);
+            for (int quality : new int[]{1, 5, 11})
+            {
+                BrotliCompressionEncoder encoder = new BrotliCompressionEncoder(quality,windowBits);
+                byte[] compressed = compress(encoder,content,content.length,false,8192);
+                assertArrayEquals(encoder.toString(),content,decompress(compressed));
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTripChunksAndFlushes() throws Exception
+    {
+        byte[] text = text(200000);
+        byte[] mixed = mixed(200000);
+        for (int quality=0;quality<=11;quality++)
+        {
+            BrotliCompressionEncoder encoder = new BrotliCompressionEncoder(quality);
+            for (int chunk : new int[]{1, 17, 1000, 65536, 70000})
+            {
+                byte[] content = chunk==1 ? Arrays.copyOf(text,5000) : text;
+                assertRoundTrip(encoder,content,chunk,false);
+                assertRoundTrip(encoder,content,chunk,true);
+                if (chunk>1)
+                {
+                    assertRoundTrip(encoder,mixed,chunk,false);
+                    assertRoundTrip(encoder,mixed,chunk,true);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFlushMakesInputAvailable() throws Exception
+    {
+        // After each flush, the compressed content decodes to all the input so far.
+        byte[] content = text(100000);
+        for (int quality : new int[]{0, 1, 5, 9, 11})
+        {
+            BrotliCompressionEncoder encoder = new BrotliCompressionEncoder(quality);
+            CompressionEncoder.Compressor compressor = encoder.acquire();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int offset=0;offset<content.length;offset+=7919)
+            {
+                int length = Math.min(7919,content.length-offset);
+                compressor.setInput(content,offset,length);
+                while (true)
+                {
+                    int n = compressor.compress(buffer,0,buffer.length,true);
+                    out.write(buffer,0,n);
+                    if (n==0 && compressor.needsInput())
+                        break;
+                }
+                // A flushed stream ends at a byte boundary, so it can be terminated with an empty last meta-block.
+                ByteArrayOutputStream terminated = new ByteArrayOutputStream();
+                out.writeTo(terminated);
+                terminated.write(0x03);
+                assertArrayEquals(Arrays.copyOf(content,offset+length),decompress(terminated.toByteArray()));
+            }
+            compressor.finish();
+            while (!compressor.finished())
+                out.write(buffer,0,compressor.compress(buffer,0,buffer.length,false));
+            compressor.release();
+            assertArrayEquals(content,decompress(out.toByteArray()));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.jetty.toolchain.test.FS;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.resource.Resource;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrecompressedContentGeneratorTest
+{
+    private Path dir;
+    private byte[] text;
+
+    @Before
+    public void init() throws Exception
+    {
+        File testDir = MavenTestingUtils.getTargetTestingDir(PrecompressedContentGeneratorTest.class.getSimpleName());
+        FS.ensureEmpty(testDir);
+        dir = testDir.toPath();
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            builder.append("<p>Line ").append(i).append(" of some compressible text</p>\n");
+        text = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+
+        Files.createDirectories(dir.resolve("css/theme"));
+        Files.createDirectories(dir.resolve("WEB-INF"));
+        Files.write(dir.resolve("index.html"),text);
+        Files.write(dir.resolve("css/theme/style.css"),text);
+        Files.write(dir.resolve("WEB-INF/web.xml"),text);
+        Files.write(dir.resolve("image.png"),text);
+        Files.write(dir.resolve("small.txt"),"small".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("random.txt"),random);
+    }
+
+    @Test
+    public void testGenerate() throws Exception
+    {
+        PrecompressedContentGenerator generator = new PrecompressedContentGenerator();
+        assertEquals(4,generator.generate(Resource.newResource(dir.toFile())));
+
+        for (String name : new String[]{"index.html","css/theme/style.css"})
+        {
+            Path br = dir.resolve(name + ".br");
+            Path gz = dir.resolve(name + ".gz");
+            assertTrue(Files.exists(br));
+            assertThat(Files.size(br),lessThan((long)text.length));
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(gz)))
+            {
+                assertArrayEquals(text,IO.readBytes(in));
+            }
+        }
+
+        // Protected directories, excluded mime types, small and incompressible files are not compressed.
+        assertFalse(Files.exists(dir.resolve("WEB-INF/web.xml.gz")));
+        assertFalse(Files.exists(dir.resolve("image.png.gz")));
+        assertFalse(Files.exists(dir.resolve("small.txt.gz")));
+        assertFalse(Files.exists(dir.resolve("random.txt.gz")));
+        assertFalse(Files.exists(dir.resolve("random.txt.br")));
+        try (Stream<Path> files = Files.walk(dir))
+        {
+            assertFalse(files.anyMatch(p->p.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void testIncompressibleRecorded() throws Exception
+    {
+        AtomicInteger compressions = new AtomicInteger();
+        GzipCompressionEncoder encoder = new GzipCompressionEncoder()
+        {
+            @Override
+            public Compressor acquire()
+            {
+                compressions.incrementAndGet();
+                return super.acquire();
+            }
+        };
+        PrecompressedContentGenerator generator = new PrecompressedContentGenerator();
+        generator.setCompressionEncoders(encoder);
+        assertEquals(2,generator.generate(dir));
+        assertEquals(3,compressions.get());
+
+        // The incompressible file is recorded in WEB-INF, not next to the file, and not compressed again.
+        assertTrue(Files.exists(dir.resolve("WEB-INF/precompressed/skip/random.txt.gz")));
+        assertEquals(0,generator.generate(dir));
+        assertEquals(3,compressions.get());
+
+        // Until it is modified.
+        Path random = dir.resolve("random.txt");
+        Files.write(random,text);
+        Files.setLastModifiedTime(random,FileTime.fromMillis(Files.getLastModifiedTime(random).toMillis() + 2000));
+        assertEquals(1,generator.generate(dir));
+        assertEquals(4,compressions.get());
+        assertTrue(Files.exists(dir.resolve("random.txt.gz")));
+        assertFalse(Files.exists(dir.resolve("WEB-INF/precompressed/skip/random.txt.gz")));
+    }
+
+    @Test
+    public void testWorkDirectory() throws Exception
+    {
+        IO.delete(dir.resolve("WEB-INF").toFile());
+        Path work = MavenTestingUtils.getTargetTestingDir(PrecompressedContentGeneratorTest.class.getSimpleName() + "-work").toPath();
+        FS.ensureEmpty(work.toFile());
+
+        PrecompressedContentGenerator generator = new PrecompressedContentGenerator();
+        generator.setCompressionEncoders(new GzipCompressionEncoder());
+        generator.setWorkDirectory(work);
+        assertEquals(2,generator.generate(dir));
+        assertTrue(Files.exists(work.resolve("skip/random.txt.gz")));
+
+        // Only the siblings are added to the content.
+        try (Stream<Path> files = Files.walk(dir))
+        {
+            assertEquals(10,files.count());
+        }
+    }
+
+    @Test
+    public void testIncremental() throws Exception
+    {
+        PrecompressedContentGenerator generator = new PrecompressedContentGenerator();
+        generator.setCompressionEncoders(new GzipCompressionEncoder());
+        generator.setParallelism(1);
+        assertEquals(2,generator.generate(dir));
+        assertEquals(0,generator.generate(dir));
+
+        // A modified file has its siblings generated again.
+        Path index = dir.resolve("index.html");
+        Files.write(index,"<p>modified</p><p>modified</p><p>modified</p><p>modified</p>".getBytes(StandardCharsets.UTF_8));
+        Path gz = dir.resolve("index.html.gz");
+        Files.setLastModifiedTime(index,FileTime.fromMillis(Files.getLastModifiedTime(gz).toMillis() + 2000));
+        assertEquals(1,generator.generate(dir));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gz)))
+        {
+            assertArrayEquals(Files.readAllBytes(index),IO.readBytes(in));
+        }
+    }
+
+    @Test
+    public void testMimeTypes() throws Exception
+    {
+        GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setIncludedMimeTypes("text/css");
+        PrecompressedContentGenerator generator = new PrecompressedContentGenerator();
+        generator.setGzipHandler(gzipHandler);
+        generator.setCompressionEncoders(new GzipCompressionEncoder());
+        assertEquals(1,generator.generate(dir));
+        assertTrue(Files.exists(dir.resolve("css/theme/style.css.gz")));
+        assertFalse(Files.exists(dir.resolve("index.html.gz")));
+    }
+
+    @Test
+    public void testExcludedDirectory() throws Exception
+    {
+        PrecompressedContentGenerator generator = new PrecompressedContentGenerator();
+        generator.setCompressionEncoders(new GzipCompressionEncoder());
+        generator.addExcludedDirectory(dir);
+        long lastModified = Files.getLastModifiedTime(dir).toMillis();
+
+        // Only the files of the subdirectories are compressed.
+        assertEquals(1,generator.generate(dir));
+        assertTrue(Files.exists(dir.resolve("css/theme/style.css.gz")));
+        assertFalse(Files.exists(dir.resolve("index.html.gz")));
+        assertEquals(lastModified,Files.getLastModifiedTime(dir).toMillis());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotFound() throws Exception
+    {
+        new PrecompressedContentGenerator().generate(dir.resolve("missing"));
+    }
+}
@@ -0,0 +1,150 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.session.WriteBehindSessionDataStoreTest.RecordingSessionDataStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedSessionCacheTest
+{
+    private SessionHandler handler;
+    private BoundedSessionCache cache;
+    private RecordingSessionDataStore store;
+
+    @Before
+    public void init() throws Exception
+    {
+        Server server = new Server();
+        handler = new SessionHandler();
+        handler.setServer(server);
+        DefaultSessionIdManager idmgr = new DefaultSessionIdManager(server);
+        idmgr.setServer(server);
+        server.setSessionIdManager(idmgr);
+        handler.setSessionIdManager(idmgr);
+
+        cache = new BoundedSessionCache(handler);
+        store = new RecordingSessionDataStore();
+        cache.setSessionDataStore(store);
+        handler.setSessionCache(cache);
+    }
+
+    @After
+    public void destroy() throws Exception
+    {
+        handler.stop();
+    }
+
+    private Session newSession(String id, String value) throws Exception
+    {
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData(id, now, now, now, TimeUnit.MINUTES.toMillis(10));
+        data.setAttribute("value", value);
+        Session session = cache.newSession(data);
+        cache.put(id, session);
+        return session;
+    }
+
+    @Test
+    public void testMaxCachedSessions() throws Exception
+    {
+        cache.setMaxCachedSessions(4);
+        handler.start();
+
+        for (int i = 0; i < 10; i++)
+            newSession("s" + i, "value");
+
+        assertEquals(4, cache.getSessionsCurrent());
+        assertEquals(6, cache.getSessionsEvicted());
+
+        // Evicted sessions are loaded again from the store.
+        String evicted = null;
+        for (int i = 0; evicted == null; i++)
+        {
+            if (!cache.contains("s" + i))
+                evicted = "s" + i;
+        }
+        assertTrue(store._stored.containsKey(evicted));
+        Session session = cache.get(evicted);
+        assertNotNull(session);
+        assertEquals("value", session.getAttribute("value"));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testFrequentSessionsKept() throws Exception
+    {
+        cache.setMaxCachedSessions(4);
+        handler.start();
+
+        newSession("frequent", "value");
+        for (int i = 0; i < 10; i++)
+            assertNotNull(cache.get("frequent"));
+
+        // Sessions used once do not evict a frequently used one.
+        for (int i = 0; i < 20; i++)
+            newSession("once" + i, "value");
+
+        assertTrue(cache.contains("frequent"));
+        assertEquals(10, cache.getHits());
+        assertTrue(cache.getSessionsRejected() > 0);
+    }
+
+    @Test
+    public void testInUseNotEvicted() throws Exception
+    {
+        cache.setMaxCachedSessions(2);
+        handler.start();
+
+        Session inUse = newSession("inUse", "value");
+        inUse.access(System.currentTimeMillis());
+
+        for (int i = 0; i < 10; i++)
+            newSession("s" + i, "value");
+
+        assertTrue(cache.contains("inUse"));
+        assertEquals(2, cache.getSessionsCurrent());
+    }
+
+    @Test
+    public void testMaxCachedBytes() throws Exception
+    {
+        cache.setMaxCachedBytes(16 * 1024);
+        handler.start();
+
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1024; i++)
+            value.append('x');
+        for (int i = 0; i < 20; i++)
+            newSession("s" + i, value.toString());
+
+        assertTrue(cache.getCachedBytes() <= 16 * 1024);
+        assertTrue(cache.getSessionsEvicted() > 0);
+        assertEquals(20, cache.getSessionsCurrent() + cache.getSessionsEvicted());
+    }
+}
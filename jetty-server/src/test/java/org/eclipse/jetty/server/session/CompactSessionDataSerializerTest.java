@@ -0,0 +1,201 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CompactSessionDataSerializerTest
+{
+    private final SessionDataSerializer serializer = new CompactSessionDataSerializer();
+
+    public static class Cart implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        public final String owner;
+
+        public Cart(String owner)
+        {
+            this.owner = owner;
+        }
+    }
+
+    private Map<String,Object> newAttributes()
+    {
+        Map<String,Object> attributes = new HashMap<>();
+        attributes.put("string", "value €");
+        attributes.put("empty", "");
+        attributes.put("int", -123456);
+        attributes.put("long", Long.MAX_VALUE);
+        attributes.put("short", (short)-7);
+        attributes.put("byte", (byte)0x7F);
+        attributes.put("char", 'é');
+        attributes.put("true", Boolean.TRUE);
+        attributes.put("false", Boolean.FALSE);
+        attributes.put("double", Math.PI);
+        attributes.put("float", -1.5F);
+        attributes.put("date", new Date(1234567890L));
+        attributes.put("null", null);
+
+        HashMap<String,Object> map = new HashMap<>();
+        map.put("roles", new ArrayList<>(Arrays.asList("admin", "user", 42L)));
+        map.put("ids", new HashSet<>(Arrays.asList(1, 2, 3)));
+        attributes.put("map", map);
+        return attributes;
+    }
+
+    private byte[] serialize(SessionDataSerializer serializer, Map<String,Object> attributes) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeAttributes(attributes, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testTaggedTypes() throws Exception
+    {
+        Map<String,Object> attributes = newAttributes();
+        attributes.put("bytes", new byte[]{1, 2, 3});
+
+        Map<String,Object> result = serializer.deserializeAttributes(new ByteArrayInputStream(serialize(serializer, attributes)));
+
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[])result.remove("bytes"));
+        attributes.remove("bytes");
+        assertEquals(attributes, result);
+        assertThat(((Map<?,?>)result.get("map")).get("roles"), instanceOf(ArrayList.class));
+        assertThat(((Map<?,?>)result.get("map")).get("ids"), instanceOf(HashSet.class));
+    }
+
+    @Test
+    public void testSerializedTypes() throws Exception
+    {
+        Cart cart = new Cart("me");
+        Map<String,Object> attributes = new HashMap<>();
+        attributes.put("cart", cart);
+        attributes.put("same", cart);
+        attributes.put("list", new LinkedList<>(Arrays.asList("a", cart)));
+        attributes.put("decimal", new BigDecimal("1.10"));
+
+        Map<String,Object> result = serializer.deserializeAttributes(new ByteArrayInputStream(serialize(serializer, attributes)));
+
+        assertEquals("me", ((Cart)result.get("cart")).owner);
+        assertSame(result.get("cart"), result.get("same"));
+        assertSame(result.get("cart"), ((LinkedList<?>)result.get("list")).get(1));
+        assertEquals(new BigDecimal("1.10"), result.get("decimal"));
+    }
+
+    @Test
+    public void testSharedTaggedValues() throws Exception
+    {
+        ArrayList<Object> roles = new ArrayList<>(Arrays.asList("admin", "user"));
+        Map<String,Object> attributes = new HashMap<>();
+        attributes.put("roles", roles);
+        attributes.put("same", roles);
+        byte[] bytes = serialize(serializer, attributes);
+
+        // Written with java serialization, so that the references are preserved.
+        assertEquals(0xAC, bytes[0] & 0xFF);
+        Map<String,Object> result = serializer.deserializeAttributes(new ByteArrayInputStream(bytes));
+        assertEquals(roles, result.get("roles"));
+        assertSame(result.get("roles"), result.get("same"));
+
+        // Also when referenced by a serialized value.
+        attributes.remove("same");
+        attributes.put("list", new LinkedList<>(Arrays.asList("a", roles)));
+        result = serializer.deserializeAttributes(new ByteArrayInputStream(serialize(serializer, attributes)));
+        assertSame(result.get("roles"), ((LinkedList<?>)result.get("list")).get(1));
+
+        // Values that are not shared are tagged.
+        attributes.remove("list");
+        assertEquals(0xC5, serialize(serializer, attributes)[0] & 0xFF);
+    }
+
+    @Test
+    public void testAttribute() throws Exception
+    {
+        for (Object value : new Object[]{"value", 42, null, new Cart("me"), new ArrayList<>(Arrays.asList(1L, "two"))})
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serializeAttribute(value, out);
+            Object result = serializer.deserializeAttribute(new ByteArrayInputStream(out.toByteArray()));
+            if (value instanceof Cart)
+                assertEquals("me", ((Cart)result).owner);
+            else
+                assertEquals(value, result);
+        }
+    }
+
+    @Test
+    public void testJavaSerialized() throws Exception
+    {
+        // Attributes persisted with java serialization can still be read.
+        JavaSessionDataSerializer java = new JavaSessionDataSerializer();
+        Map<String,Object> attributes = newAttributes();
+        assertEquals(attributes, serializer.deserializeAttributes(new ByteArrayInputStream(serialize(java, attributes))));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        java.serializeAttribute(new Date(42L), out);
+        assertEquals(new Date(42L), serializer.deserializeAttribute(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        byte[] bytes = serialize(serializer, new HashMap<>());
+        assertEquals(4, bytes.length);
+        assertEquals(0, serializer.deserializeAttributes(new ByteArrayInputStream(bytes)).size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeAttribute(null, out);
+        assertNull(serializer.deserializeAttribute(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() throws Exception
+    {
+        Map<String,Object> attributes = newAttributes();
+        assertThat(serialize(serializer, attributes).length * 3, lessThan(serialize(new JavaSessionDataSerializer(), attributes).length));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownFormat() throws Exception
+    {
+        serializer.deserializeAttributes(new ByteArrayInputStream(new byte[]{0x01, 0x02, 0x03}));
+    }
+}
@@ -20,7 +20,9 @@ package org.eclipse.jetty.server.session;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
@@ -130,9 +132,8 @@ public class FileSessionManagerTest
         FS.ensureEmpty(testDir);
         ds.setStoreDir(testDir);
         handler.setSessionIdManager(idmgr);
-        handler.start();
 
-        //create a bunch of older files for same session abc
+        //create a bunch of older files for same session abc, which are indexed on start
         String name1 =  "100__0.0.0.0_abc";    
         File f1 = new File(testDir, name1);
         if (f1.exists())
@@ -155,8 +156,7 @@ public class FileSessionManagerTest
             Assert.assertTrue(f3.delete());       
         f3.createNewFile();
 
-        Thread.sleep(1100);
-        
+        handler.start();
         
         Session session = handler.getSession("abc");
         Assert.assertTrue(!f1.exists()); 
@@ -187,7 +187,6 @@ public class FileSessionManagerTest
         FS.ensureEmpty(testDir);
 
         ds.setStoreDir(testDir);
-        handler.start();
 
         String expectedFilename = (System.currentTimeMillis()+ 10000)+"__0.0.0.0_validFile123";
         
@@ -195,6 +194,8 @@ public class FileSessionManagerTest
 
         Assert.assertTrue("File should exist!", new File(testDir, expectedFilename).exists());
 
+        handler.start();
+
         Session session = handler.getSession("validFile123");
 
         Assert.assertTrue("File shouldn't exist!", !new File(testDir,expectedFilename).exists());
@@ -271,6 +272,67 @@ public class FileSessionManagerTest
         server.stop();
     }
 
+    @Test
+    public void testIndexedFiles() throws Exception
+    {
+        Server server = new Server();
+        SessionHandler handler = new SessionHandler();
+        handler.setServer(server);
+        final DefaultSessionIdManager idmgr = new DefaultSessionIdManager(server);
+        idmgr.setServer(server);
+        server.setSessionIdManager(idmgr);
+
+        FileSessionDataStore ds = new FileSessionDataStore();
+        DefaultSessionCache ss = new DefaultSessionCache(handler);
+        handler.setSessionCache(ss);
+        ss.setSessionDataStore(ds);
+        File testDir = MavenTestingUtils.getTargetTestingDir("hashes");
+        FS.ensureEmpty(testDir);
+        ds.setStoreDir(testDir);
+        handler.setSessionIdManager(idmgr);
+
+        //files of this context, with an expired, a live and a never expiring session,
+        //and a long expired file of another context
+        long now = System.currentTimeMillis();
+        Assert.assertTrue(new File(testDir, (now-1000)+"__0.0.0.0_expired").createNewFile());
+        Assert.assertTrue(new File(testDir, (now+100000)+"__0.0.0.0_live").createNewFile());
+        Assert.assertTrue(new File(testDir, "0__0.0.0.0_forever").createNewFile());
+        File other = new File(testDir, "1000_other_0.0.0.0_abc");
+        Assert.assertTrue(other.createNewFile());
+        handler.start();
+        Assert.assertEquals(3, ds.getSessionFileCount());
+
+        //files written after the start are not seen by this store
+        Assert.assertTrue(new File(testDir, (now-1000)+"__0.0.0.0_unknown").createNewFile());
+
+        Assert.assertEquals(Collections.singleton("expired"), ds.getExpired(Collections.emptySet()));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("expired", "missing")), ds.getExpired(new HashSet<>(Arrays.asList("live", "missing"))));
+        Assert.assertTrue(ds.exists("live"));
+        Assert.assertTrue(ds.exists("forever"));
+        Assert.assertFalse(ds.exists("expired"));
+        Assert.assertFalse(ds.exists("unknown"));
+        Assert.assertTrue(other.exists());
+
+        //a stored session replaces its file and is no longer expired
+        SessionData data = ds.newSessionData("expired", now, now, now, 60000);
+        data.setLastNode("node0");
+        data.setExpiry(now + 60000);
+        ds.store("expired", data);
+        Assert.assertFalse(new File(testDir, (now-1000)+"__0.0.0.0_expired").exists());
+        Assert.assertTrue(new File(testDir, (now+60000)+"__0.0.0.0_expired").exists());
+        Assert.assertTrue(ds.getExpired(Collections.emptySet()).isEmpty());
+        Assert.assertNotNull(ds.load("expired"));
+
+        //a file deleted behind the back of the store is forgotten
+        Assert.assertTrue(new File(testDir, (now+100000)+"__0.0.0.0_live").delete());
+        Assert.assertNull(ds.load("live"));
+        Assert.assertEquals(2, ds.getSessionFileCount());
+
+        Assert.assertTrue(ds.delete("expired"));
+        Assert.assertFalse(ds.delete("expired"));
+        Assert.assertEquals(1, ds.getSessionFileCount());
+    }
+
     @Test
     public void testIrregularFilenames() throws Exception
     {
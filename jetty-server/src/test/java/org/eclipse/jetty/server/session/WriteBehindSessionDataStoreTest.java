@@ -0,0 +1,357 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBehindSessionDataStoreTest
+{
+    public static class RecordingSessionDataStore extends AbstractSessionDataStore
+    {
+        final Map<String,SessionData> _stored = new ConcurrentHashMap<>();
+        final List<Set<String>> _batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
+        {
+            _stored.put(id, data);
+        }
+
+        @Override
+        public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
+        {
+            _batches.add(new HashSet<>(sessions.keySet()));
+            super.doStoreAll(sessions, lastSaveTimes);
+        }
+
+        @Override
+        public Set<String> doGetExpired(Set<String> candidates)
+        {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public SessionData load(String id) throws Exception
+        {
+            return _stored.get(id);
+        }
+
+        @Override
+        public boolean delete(String id) throws Exception
+        {
+            return _stored.remove(id) != null;
+        }
+
+        @Override
+        public boolean exists(String id) throws Exception
+        {
+            return _stored.containsKey(id);
+        }
+
+        @Override
+        public boolean isPassivating()
+        {
+            return false;
+        }
+    }
+
+    private RecordingSessionDataStore delegate;
+    private WriteBehindSessionDataStore store;
+
+    @Before
+    public void init() throws Exception
+    {
+        init(new RecordingSessionDataStore());
+    }
+
+    private void init(RecordingSessionDataStore recording) throws Exception
+    {
+        delegate = recording;
+        store = new WriteBehindSessionDataStore(delegate);
+        store.setFlushIntervalMs(TimeUnit.MINUTES.toMillis(1));
+        ContextHandler handler = new ContextHandler();
+        handler.setContextPath("/test");
+        store.initialize(new SessionContext("node0", handler.getServletContext()));
+    }
+
+    @After
+    public void destroy() throws Exception
+    {
+        store.stop();
+    }
+
+    private SessionData newSessionData(String id)
+    {
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData(id, now, now, now, TimeUnit.MINUTES.toMillis(10));
+        data.setAttribute("name", id);
+        return data;
+    }
+
+    @Test
+    public void testCoalesce() throws Exception
+    {
+        store.start();
+        SessionData a = newSessionData("a");
+        SessionData b = newSessionData("b");
+        store.store("a", a);
+        store.store("b", b);
+        store.store("a", a);
+
+        // Pending sessions are not yet written, but can be loaded.
+        assertEquals(2, store.getPendingSessions());
+        assertTrue(delegate._stored.isEmpty());
+        assertSame(a, store.load("a"));
+        assertTrue(store.exists("b"));
+
+        store.flush();
+        assertEquals(0, store.getPendingSessions());
+        assertEquals(1, delegate._batches.size());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), delegate._batches.get(0));
+        assertFalse(a.isDirty());
+        assertTrue(a.getLastSaved() > 0);
+    }
+
+    @Test
+    public void testMaxBatchSize() throws Exception
+    {
+        store.setMaxBatchSize(2);
+        store.start();
+        store.store("a", newSessionData("a"));
+        store.store("b", newSessionData("b"));
+        store.store("c", newSessionData("c"));
+
+        // A full batch is written without waiting for the interval.
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delegate._stored.size() < 2 && System.nanoTime() < end)
+            Thread.sleep(10);
+        assertEquals(2, delegate._batches.get(0).size());
+        assertEquals(1, store.getPendingSessions());
+    }
+
+    @Test
+    public void testMaxPendingSessions() throws Exception
+    {
+        store.setMaxBatchSize(1);
+        store.setMaxPendingSessions(1);
+        store.start();
+
+        // Storing waits for room, so no more than one session is pending.
+        for (int i = 0; i < 10; i++)
+        {
+            store.store("s" + i, newSessionData("s" + i));
+            assertTrue(store.getPendingSessions() <= 1);
+        }
+        store.flush();
+        assertEquals(10, delegate._stored.size());
+    }
+
+    @Test
+    public void testDelete() throws Exception
+    {
+        store.start();
+        store.store("a", newSessionData("a"));
+        assertFalse(store.delete("a"));
+        store.flush();
+        assertTrue(delegate._stored.isEmpty());
+        assertFalse(store.exists("a"));
+    }
+
+    @Test
+    public void testStop() throws Exception
+    {
+        store.start();
+        store.store("a", newSessionData("a"));
+        store.stop();
+        assertTrue(delegate._stored.containsKey("a"));
+
+        // Once stopped, sessions are written through.
+        store.store("b", newSessionData("b"));
+        assertTrue(delegate._stored.containsKey("b"));
+    }
+
+    @Test
+    public void testChangedWhileWriting() throws Exception
+    {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch changed = new CountDownLatch(1);
+        List<Object> written = new CopyOnWriteArrayList<>();
+        init(new RecordingSessionDataStore()
+        {
+            @Override
+            public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
+            {
+                written.add(data.getAttribute("cart"));
+                writing.countDown();
+                changed.await(5, TimeUnit.SECONDS);
+                super.doStore(id, data, lastSaveTime);
+            }
+        });
+        store.setMaxBatchSize(1);
+        store.start();
+
+        SessionData a = newSessionData("a");
+        a.setAttribute("cart", "v1");
+        store.store("a", a);
+
+        // The session changes and is stored again while being written.
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        a.setAttribute("cart", "v2");
+        store.store("a", a);
+        changed.countDown();
+
+        store.flush();
+        assertEquals(Arrays.asList("v1", "v2"), written);
+        assertFalse(a.isDirty());
+        assertTrue(a.getDirtyAttributes().isEmpty());
+    }
+
+    @Test
+    public void testWriteFailed() throws Exception
+    {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch stored = new CountDownLatch(1);
+        init(new RecordingSessionDataStore()
+        {
+            @Override
+            public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
+            {
+                if (writing.getCount() > 0)
+                {
+                    writing.countDown();
+                    stored.await(5, TimeUnit.SECONDS);
+                    throw new Exception("Test write failure");
+                }
+                super.doStoreAll(sessions, lastSaveTimes);
+            }
+        });
+        store.setFlushIntervalMs(10);
+        store.setMaxBatchSize(1);
+        store.start();
+
+        store.store("a", newSessionData("a"));
+        store.store("b", newSessionData("b"));
+
+        // A session stored again while its write fails is written with its newer data.
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        SessionData a = newSessionData("a");
+        store.store("a", a);
+        stored.countDown();
+
+        // The failed sessions are not lost, but written with a later batch.
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delegate._stored.size() < 2 && System.nanoTime() < end)
+            Thread.sleep(10);
+        assertSame(a, delegate._stored.get("a"));
+        assertTrue(delegate._stored.containsKey("b"));
+        assertEquals(0, store.getPendingSessions());
+    }
+
+    @Test
+    public void testUnwriteableSessionDropped() throws Exception
+    {
+        init(new RecordingSessionDataStore()
+        {
+            @Override
+            public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
+            {
+                if ("bad".equals(id))
+                    throw new UnwriteableSessionDataException(id, _context, null);
+                super.doStore(id, data, lastSaveTime);
+            }
+
+            @Override
+            public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
+            {
+                // Like a single transaction, the batch fails as a whole.
+                if (sessions.containsKey("bad"))
+                    throw new Exception("Test batch failure");
+                super.doStoreAll(sessions, lastSaveTimes);
+            }
+        });
+        store.setFlushIntervalMs(10);
+        store.setMaxBatchSize(3);
+        store.start();
+
+        store.store("a", newSessionData("a"));
+        store.store("bad", newSessionData("bad"));
+        store.store("c", newSessionData("c"));
+
+        // The other sessions of the batch are written, and the unwriteable one is not retried.
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delegate._stored.size() < 2 && System.nanoTime() < end)
+            Thread.sleep(10);
+        store.flush();
+        assertTrue(delegate._stored.containsKey("a"));
+        assertTrue(delegate._stored.containsKey("c"));
+        assertFalse(delegate._stored.containsKey("bad"));
+        assertEquals(0, store.getPendingSessions());
+        assertFalse(store.exists("bad"));
+    }
+
+    @Test
+    public void testMaxRetries() throws Exception
+    {
+        AtomicInteger writes = new AtomicInteger();
+        init(new RecordingSessionDataStore()
+        {
+            @Override
+            public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
+            {
+                writes.incrementAndGet();
+                throw new Exception("Test write failure");
+            }
+        });
+        store.setFlushIntervalMs(1);
+        store.setMaxRetries(2);
+        store.start();
+
+        store.store("a", newSessionData("a"));
+
+        // The session is written once and retried twice, then dropped.
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((writes.get() < 3 || store.getPendingSessions() > 0) && System.nanoTime() < end)
+            Thread.sleep(10);
+        Thread.sleep(100);
+        assertEquals(3, writes.get());
+        assertEquals(0, store.getPendingSessions());
+        assertTrue(delegate._stored.isEmpty());
+    }
+}
@@ -23,6 +23,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.zip.Deflater;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -42,6 +43,8 @@ import org.eclipse.jetty.server.ResourceContentFactory;
 import org.eclipse.jetty.server.ResourceService;
 import org.eclipse.jetty.server.ResourceService.WelcomeFactory;
 import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.gzip.BrotliCompressionEncoder;
+import org.eclipse.jetty.server.handler.gzip.GzipCompressionEncoder;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -89,6 +92,18 @@ import org.eclipse.jetty.util.resource.ResourceFactory;
  *                    If set to a boolean True, then a default set of compressed formats
  *                    will be used, otherwise no precompressed formats.
  *
+ *  compressCachedContent
+ *                    If true, cached content without a precompressed resource is
+ *                    compressed in the background with gzip and br, for the
+ *                    precompressed formats (or the default set if none is given), and
+ *                    the compressed variants are cached in memory. Requires a cache,
+ *                    configured by the cache sizes below (default false).
+ *
+ *  maxConcurrentCompressions
+ *                    The max number of cached contents compressed at once when
+ *                    compressCachedContent is true; content requested meanwhile is
+ *                    compressed on a later request (default 2).
+ *
  *  resourceBase      Set to replace the context resource base
  *
  *  resourceCache     If set, this is a context attribute name, which the servlet
@@ -144,6 +159,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
 
     private Resource _resourceBase;
     private CachedContentFactory _cache;
+    private BrotliCompressionEncoder _brotliEncoder;
 
     private MimeTypes _mimeTypes;
     private String[] _welcomes;
@@ -182,7 +198,11 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
         _resourceService.setAcceptRanges(getInitBoolean("acceptRanges",_resourceService.isAcceptRanges()));
         _resourceService.setDirAllowed(getInitBoolean("dirAllowed",_resourceService.isDirAllowed()));
         _resourceService.setRedirectWelcome(getInitBoolean("redirectWelcome",_resourceService.isRedirectWelcome()));
-        _resourceService.setPrecompressedFormats(parsePrecompressedFormats(getInitParameter("precompressed"), getInitBoolean("gzip", false)));
+        boolean compressCachedContent=getInitBoolean("compressCachedContent",false);
+        CompressedContentFormat[] precompressedFormats=parsePrecompressedFormats(getInitParameter("precompressed"), getInitBoolean("gzip", false));
+        if (compressCachedContent && precompressedFormats.length==0)
+            precompressedFormats=new CompressedContentFormat[]{CompressedContentFormat.BR,CompressedContentFormat.GZIP};
+        _resourceService.setPrecompressedFormats(precompressedFormats);
         _resourceService.setPathInfoOnly(getInitBoolean("pathInfoOnly",_resourceService.isPathInfoOnly()));
         _resourceService.setEtags(getInitBoolean("etags",_resourceService.isEtags()));
         
@@ -247,6 +267,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
         int max_cache_size=getInitInt("maxCacheSize", -2);
         int max_cached_file_size=getInitInt("maxCachedFileSize", -2);
         int max_cached_files=getInitInt("maxCachedFiles", -2);
+        int max_concurrent_compressions=getInitInt("maxConcurrentCompressions", CachedContentFactory.DEFAULT_MAX_CONCURRENT_COMPRESSIONS);
         if (resourceCache!=null)
         {
             if (max_cache_size!=-1 || max_cached_file_size!= -2 || max_cached_files!=-2)
@@ -267,7 +288,18 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
                     _cache.setMaxCachedFileSize(max_cached_file_size);
                 if (max_cached_files>=-1)
                     _cache.setMaxCachedFiles(max_cached_files);
+                if (compressCachedContent)
+                {
+                    // Each brotli compressor holds about 1.6MB, so no more are pooled than may be used at once.
+                    _cache.setMaxConcurrentCompressions(max_concurrent_compressions);
+                    _brotliEncoder = new BrotliCompressionEncoder(9,18,max_concurrent_compressions);
+                    _brotliEncoder.start();
+                    _cache.setCompressionEncoders(_brotliEncoder,new GzipCompressionEncoder(Deflater.BEST_COMPRESSION));
+                    _cache.setCompressionExecutor(_contextHandler.getServer()==null?null:_contextHandler.getServer().getThreadPool());
+                }
                 _servletContext.setAttribute(resourceCache==null?"resourceCache":resourceCache,_cache);
+                // Expose the cache statistics via JMX.
+                _contextHandler.addBean(_cache);
             }
         }
         catch (Exception e)
@@ -492,7 +524,22 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
     public void destroy()
     {
         if (_cache!=null)
+        {
             _cache.flushCache();
+            _contextHandler.removeBean(_cache);
+        }
+        if (_brotliEncoder!=null)
+        {
+            try
+            {
+                _brotliEncoder.stop();
+            }
+            catch (Exception e)
+            {
+                LOG.ignore(e);
+            }
+            _brotliEncoder=null;
+        }
         super.destroy();
     }
 
@@ -18,6 +18,8 @@
 
 package org.eclipse.jetty.servlet;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
@@ -28,6 +30,7 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,6 +44,7 @@ import javax.servlet.ServletResponse;
 
 import org.eclipse.jetty.http.DateGenerator;
 import org.eclipse.jetty.http.HttpContent;
+import org.eclipse.jetty.server.CachedContentFactory;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.ResourceContentFactory;
@@ -1047,6 +1051,62 @@ public class DefaultServletTest
         assertResponseContains("ETag: "+etag,response);
     }
 
+    @Test
+    public void testCompressCachedContent() throws Exception
+    {
+        FS.ensureDirExists(docRoot);
+        File file0 = new File(docRoot, "data0.txt");
+        StringBuilder content = new StringBuilder();
+        for (int i=0;i<100;i++)
+            content.append("Hello Text ").append(i%10).append('\n');
+        createFile(file0, content.toString());
+
+        ServletHolder defholder = context.addServlet(DefaultServlet.class, "/");
+        defholder.setInitParameter("dirAllowed", "false");
+        defholder.setInitParameter("redirectWelcome", "false");
+        defholder.setInitParameter("welcomeServlets", "false");
+        defholder.setInitParameter("compressCachedContent", "true");
+        defholder.setInitParameter("etags", "true");
+        defholder.setInitParameter("maxCachedFiles", "1024");
+
+        String response = connector.getResponse("GET /context/data0.txt HTTP/1.0\r\nHost:localhost:8080\r\n\r\n");
+        assertResponseContains("Content-Length: "+content.length(), response);
+        assertResponseNotContains("Content-Encoding: ",response);
+        int e=response.indexOf("ETag: ");
+        String etag = response.substring(e+6,response.indexOf('"',e+11)+1);
+        String etag_gzip = etag.substring(0,etag.length()-1)+"--gzip\"";
+
+        // The compressed variants are produced in the background.
+        long end = System.nanoTime()+TimeUnit.SECONDS.toNanos(5);
+        do
+        {
+            response = connector.getResponse("GET /context/data0.txt HTTP/1.0\r\nHost:localhost:8080\r\nAccept-Encoding:gzip\r\n\r\n");
+            if (response.contains("Content-Encoding: gzip"))
+                break;
+            Thread.sleep(10);
+        }
+        while (System.nanoTime()<end);
+        assertResponseContains("Content-Encoding: gzip",response);
+        assertResponseContains("ETag: "+etag_gzip,response);
+        assertResponseContains("Vary: Accept-Encoding",response);
+        assertResponseNotContains("Content-Length: "+content.length(), response);
+
+        response = connector.getResponse("GET /context/data0.txt HTTP/1.0\r\nHost:localhost:8080\r\nAccept-Encoding:gzip, br\r\n\r\n");
+        assertResponseContains("Content-Encoding: br",response);
+        assertResponseContains("ETag: "+etag.substring(0,etag.length()-1)+"--br\"",response);
+
+        response = connector.getResponse("GET /context/data0.txt HTTP/1.0\r\nHost:localhost:8080\r\nAccept-Encoding:gzip\r\nIf-None-Match: "+etag_gzip+"\r\n\r\n");
+        assertResponseContains("304 Not Modified", response);
+        assertResponseContains("ETag: "+etag_gzip,response);
+
+        // The cache is a bean of the context, for its statistics to be exposed via JMX.
+        CachedContentFactory cache = context.getBean(CachedContentFactory.class);
+        assertNotNull(cache);
+        assertEquals(1,cache.getCachedFiles());
+        assertEquals(1,cache.getMisses());
+        assertTrue(cache.getHits()>=3);
+    }
+
     @Test
     public void testBrotli() throws Exception
     {
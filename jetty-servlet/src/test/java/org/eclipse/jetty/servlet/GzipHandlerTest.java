@@ -46,6 +46,8 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.http.HttpTester;
 import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.BrotliCompressionEncoder;
+import org.eclipse.jetty.server.handler.gzip.CompressionEncoder;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
@@ -74,6 +76,7 @@ public class GzipHandlerTest
 
     private static final String __contentETag = String.format("W/\"%x\"",__content.hashCode());
     private static final String __contentETagGzip = String.format("W/\"%x--gzip\"",__content.hashCode());
+    private static final String __contentETagBrotli = String.format("W/\"%x--br\"",__content.hashCode());
     private static final String __icontent = "BEFORE"+__content+"AFTER";
             
     private Server _server;
@@ -249,6 +252,107 @@ public class GzipHandlerTest
         assertEquals(__content, testOut.toString("UTF8"));
     }
     
+    @Test
+    public void testBrotliHandler() throws Exception
+    {
+        BrotliCompressionEncoder brotli = new BrotliCompressionEncoder();
+        ((GzipHandler)_server.getHandler()).addCompressionEncoder(brotli);
+
+        HttpTester.Request request = HttpTester.newRequest();
+        HttpTester.Response response;
+
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host","tester");
+        request.setHeader("accept-encoding","gzip, deflate, br");
+
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+        assertThat(response.getStatus(),is(200));
+        assertThat(response.get("Content-Encoding"),is("br"));
+        assertThat(response.get("ETag"),is(__contentETagBrotli));
+        assertThat(response.get("Vary"),is("Accept-Encoding"));
+
+        // The brotli stream does not depend on how the content was written.
+        byte[] content = __content.getBytes(StandardCharsets.UTF_8);
+        CompressionEncoder.Compressor compressor = brotli.acquire();
+        compressor.setInput(content,0,content.length);
+        compressor.finish();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!compressor.finished())
+            expected.write(buffer,0,compressor.compress(buffer,0,buffer.length,false));
+        compressor.release();
+        assertThat(response.getContentBytes(),is(expected.toByteArray()));
+
+        // gzip is chosen when preferred by the client.
+        request.setHeader("accept-encoding","br;q=0.5, gzip");
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.get("Content-Encoding"),is("gzip"));
+        assertThat(response.get("ETag"),is(__contentETagGzip));
+
+        request.setHeader("accept-encoding","br;q=0");
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.get("Content-Encoding"),nullValue());
+        assertEquals(__content,response.getContent());
+    }
+
+    @Test
+    public void testEncodingNegotiation() throws Exception
+    {
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        gzipHandler.addCompressionEncoder(new BrotliCompressionEncoder());
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host","tester");
+
+        // The wildcard stands for the encodings that are not listed.
+        assertEncoding(request,"*","br");
+        assertEncoding(request,"br;q=0, *","gzip");
+        assertEncoding(request,"*;q=0.5, gzip","gzip");
+        assertEncoding(request,"gzip;q=0, *;q=0",null);
+        assertEncoding(request,"identity",null);
+
+        // The preferred encoding is chosen among those of equal quality.
+        gzipHandler.setPreferredEncodings("gzip");
+        assertEncoding(request,"br, gzip","gzip");
+        assertEncoding(request,"*","gzip");
+        assertEncoding(request,"br, gzip;q=0.9","br");
+    }
+
+    private void assertEncoding(HttpTester.Request request, String accept, String encoding) throws Exception
+    {
+        request.setHeader("accept-encoding",accept);
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(accept,response.getStatus(),is(200));
+        assertThat(accept,response.get("Content-Encoding"),is(encoding));
+    }
+
+    @Test
+    public void testETagBrotliHandler() throws Exception
+    {
+        ((GzipHandler)_server.getHandler()).addCompressionEncoder(new BrotliCompressionEncoder());
+
+        HttpTester.Request request = HttpTester.newRequest();
+        HttpTester.Response response;
+
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host","tester");
+        request.setHeader("If-None-Match",__contentETagBrotli);
+        request.setHeader("accept-encoding","br");
+
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+        assertThat(response.getStatus(),is(304));
+        assertThat(response.get("ETag"),is(__contentETagBrotli));
+    }
+
     @Test
     public void testGzipNotMicro() throws Exception
     {
@@ -0,0 +1,162 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.util.Arrays;
+
+/**
+ * <p>A count-min sketch estimating the popularity of elements within a time window,
+ * as used by the TinyLFU admission policy.</p>
+ * <p>Each element is counted by 4 counters of 4 bits, selected by 4 different hashes
+ * in a table sized to the number of elements to track. The estimated frequency of an
+ * element is the minimum of its counters, so it is never less than the number of times
+ * the element was incremented, up to 15. Once the number of increments reaches 10 times
+ * the number of elements to track, all counters are halved, so that the frequencies
+ * age and the sketch follows changes in popularity.</p>
+ * <p>This class is not thread safe.</p>
+ *
+ * @see TinyLfuPolicy
+ */
+public class FrequencySketch
+{
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAX_TABLE_LENGTH = 1 << 30;
+
+    private long[] _table;
+    private int _sampleSize;
+    private int _size;
+
+    /**
+     * @param maxSize the number of elements to track
+     */
+    public FrequencySketch(int maxSize)
+    {
+        ensureCapacity(maxSize);
+    }
+
+    /**
+     * <p>Grows the sketch if needed, discarding its counters, so that it can track the given number of elements.</p>
+     *
+     * @param maxSize the number of elements to track
+     */
+    public void ensureCapacity(int maxSize)
+    {
+        int length = Math.min(Math.max(maxSize,1),MAX_TABLE_LENGTH);
+        length = Integer.highestOneBit(length-1)<<1;
+        if (length==0)
+            length = 1;
+        if (_table==null || _table.length<length)
+        {
+            _table = new long[length];
+            _size = 0;
+        }
+        _sampleSize = (int)Math.min(10L*Math.max(maxSize,1),Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param element the element to estimate
+     * @return the estimated number of times the element was incremented, from 0 to 15
+     */
+    public int frequency(Object element)
+    {
+        int hash = spread(element.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i=0;i<4;i++)
+        {
+            int index = indexOf(hash,i);
+            int count = (int)((_table[index] >>> ((start + i) << 2)) & 0xF);
+            frequency = Math.min(frequency,count);
+        }
+        return frequency;
+    }
+
+    /**
+     * <p>Increments the popularity of the element, ageing all the elements if the sample size is reached.</p>
+     *
+     * @param element the element to increment
+     */
+    public void increment(Object element)
+    {
+        int hash = spread(element.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i=0;i<4;i++)
+            added |= incrementAt(indexOf(hash,i),start+i);
+
+        if (added && ++_size>=_sampleSize)
+            reset();
+    }
+
+    /**
+     * <p>Sets all the counters to zero.</p>
+     */
+    public void clear()
+    {
+        Arrays.fill(_table,0L);
+        _size = 0;
+    }
+
+    private boolean incrementAt(int index, int counter)
+    {
+        int offset = counter << 2;
+        long mask = 0xFL << offset;
+        if ((_table[index] & mask)!=mask)
+        {
+            _table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset()
+    {
+        // Halve all the counters, accounting for the truncation of the odd ones.
+        int odd = 0;
+        for (int i=0;i<_table.length;i++)
+        {
+            odd += Long.bitCount(_table[i] & ONE_MASK);
+            _table[i] = (_table[i] >>> 1) & RESET_MASK;
+        }
+        _size = (_size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i)
+    {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int)h) & (_table.length-1);
+    }
+
+    private static int spread(int hash)
+    {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{t=%d,s=%d/%d}",getClass().getSimpleName(),hashCode(),_table.length,_size,_sampleSize);
+    }
+}
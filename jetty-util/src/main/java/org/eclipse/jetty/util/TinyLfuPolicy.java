@@ -0,0 +1,307 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>A Window TinyLFU eviction policy, tracking the keys of a bounded cache in amortized O(1).</p>
+ * <p>New keys enter a small LRU window, sized to 1% of the max size, that absorbs bursts of
+ * recently used keys. Keys leaving the window are admitted into the main segmented LRU, first
+ * in its probation segment, and are promoted to its protected segment, sized to 80% of the main
+ * segment, when used again. When the cache is full, a key leaving the window must be estimated
+ * by a {@link FrequencySketch} as used more frequently than the least recently used key of the
+ * probation segment to be admitted, otherwise it is evicted. This protects the frequently used
+ * keys from one-off scans of rarely used ones.</p>
+ * <p>The policy does not hold the cached values: the cache {@link #add(Object) adds},
+ * {@link #access(Object) accesses} and {@link #remove(Object) removes} keys, and asks the policy
+ * which key to {@link #evict()} when it is over its limits, which may be either the max size
+ * or other limits, such as a memory size.</p>
+ * <p>This class is not thread safe.</p>
+ *
+ * @param <K> the type of the keys
+ */
+public class TinyLfuPolicy<K>
+{
+    private final Map<K, Node<K>> _nodes = new HashMap<>();
+    private final Segment<K> _window = new Segment<>();
+    private final Segment<K> _probation = new Segment<>();
+    private final Segment<K> _protected = new Segment<>();
+    private final FrequencySketch _sketch;
+    private int _maxSize;
+    private int _maxWindowSize;
+    private int _maxProtectedSize;
+    private long _evictions;
+    private long _rejections;
+
+    /**
+     * @param maxSize the max number of keys
+     */
+    public TinyLfuPolicy(int maxSize)
+    {
+        _sketch = new FrequencySketch(maxSize);
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * @return the max number of keys
+     */
+    public int getMaxSize()
+    {
+        return _maxSize;
+    }
+
+    /**
+     * <p>Sets the max number of keys, which sizes the segments; the cache is expected
+     * to {@link #evict() evict} keys if the policy holds more than the new max size.</p>
+     *
+     * @param maxSize the max number of keys
+     */
+    public void setMaxSize(int maxSize)
+    {
+        _maxSize = Math.max(maxSize,1);
+        _maxWindowSize = Math.max(1,_maxSize/100);
+        _maxProtectedSize = (_maxSize-_maxWindowSize)*4/5;
+        _sketch.ensureCapacity(_maxSize);
+    }
+
+    /**
+     * @return the number of keys
+     */
+    public int size()
+    {
+        return _nodes.size();
+    }
+
+    /**
+     * @param key the key to test
+     * @return whether the key is tracked by this policy
+     */
+    public boolean contains(K key)
+    {
+        return _nodes.containsKey(key);
+    }
+
+    /**
+     * <p>Adds a key to the window, or accesses it if already present.</p>
+     *
+     * @param key the key added to the cache
+     */
+    public void add(K key)
+    {
+        Node<K> node = _nodes.get(key);
+        if (node!=null)
+        {
+            access(key);
+            return;
+        }
+
+        _sketch.increment(key);
+        node = new Node<>(key);
+        _nodes.put(key,node);
+        _window.addFirst(node);
+
+        // While the main segment has room, the keys leaving the window are admitted.
+        while (_window._size>_maxWindowSize && _probation._size+_protected._size<_maxSize-_maxWindowSize)
+            _probation.addFirst(_window.removeLast());
+    }
+
+    /**
+     * <p>Records an access to a key, whether or not it is cached, so that its frequency
+     * is taken into account for its admission.</p>
+     *
+     * @param key the key accessed
+     */
+    public void access(K key)
+    {
+        _sketch.increment(key);
+        Node<K> node = _nodes.get(key);
+        if (node==null)
+            return;
+
+        if (node._segment==_probation)
+        {
+            _probation.remove(node);
+            _protected.addFirst(node);
+            if (_protected._size>_maxProtectedSize)
+                _probation.addFirst(_protected.removeLast());
+        }
+        else
+        {
+            Segment<K> segment = node._segment;
+            segment.remove(node);
+            segment.addFirst(node);
+        }
+    }
+
+    /**
+     * @param key the key removed from the cache
+     * @return whether the key was tracked by this policy
+     */
+    public boolean remove(K key)
+    {
+        Node<K> node = _nodes.remove(key);
+        if (node==null)
+            return false;
+        node._segment.remove(node);
+        return true;
+    }
+
+    /**
+     * <p>Selects and removes the key to evict from the cache.</p>
+     *
+     * @return the key to evict, or null if no key is tracked
+     */
+    public K evict()
+    {
+        Node<K> victim = _probation._tail!=null?_probation._tail:_protected._tail;
+        Node<K> candidate = _window._size>_maxWindowSize?_window._tail:null;
+
+        Node<K> evicted;
+        if (candidate==null)
+            evicted = victim!=null?victim:_window._tail;
+        else if (victim==null)
+            evicted = candidate;
+        else if (_sketch.frequency(candidate._key)>_sketch.frequency(victim._key))
+        {
+            // The candidate is admitted in place of the victim.
+            _probation.addFirst(_window.removeLast());
+            evicted = victim;
+        }
+        else
+        {
+            _rejections++;
+            evicted = candidate;
+        }
+
+        if (evicted==null)
+            return null;
+        _evictions++;
+        remove(evicted._key);
+        return evicted._key;
+    }
+
+    /**
+     * <p>Removes all the keys, retaining the frequencies.</p>
+     */
+    public void clear()
+    {
+        _nodes.clear();
+        _window.clear();
+        _probation.clear();
+        _protected.clear();
+    }
+
+    /**
+     * @return the number of keys evicted
+     */
+    public long getEvictions()
+    {
+        return _evictions;
+    }
+
+    /**
+     * @return the number of keys evicted because they were not admitted into the main segment
+     */
+    public long getRejections()
+    {
+        return _rejections;
+    }
+
+    /**
+     * <p>Resets the evictions and rejections counts.</p>
+     */
+    public void resetStatistics()
+    {
+        _evictions = 0;
+        _rejections = 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{w=%d/%d,p=%d,P=%d/%d,e=%d,r=%d}",getClass().getSimpleName(),hashCode(),
+                _window._size,_maxWindowSize,_probation._size,_protected._size,_maxProtectedSize,_evictions,_rejections);
+    }
+
+    private static class Node<K>
+    {
+        private final K _key;
+        private Segment<K> _segment;
+        private Node<K> _prev;
+        private Node<K> _next;
+
+        private Node(K key)
+        {
+            _key = key;
+        }
+    }
+
+    private static class Segment<K>
+    {
+        private Node<K> _head;
+        private Node<K> _tail;
+        private int _size;
+
+        private void addFirst(Node<K> node)
+        {
+            node._segment = this;
+            node._prev = null;
+            node._next = _head;
+            if (_head==null)
+                _tail = node;
+            else
+                _head._prev = node;
+            _head = node;
+            _size++;
+        }
+
+        private Node<K> removeLast()
+        {
+            Node<K> node = _tail;
+            remove(node);
+            return node;
+        }
+
+        private void remove(Node<K> node)
+        {
+            if (node._prev==null)
+                _head = node._next;
+            else
+                node._prev._next = node._next;
+            if (node._next==null)
+                _tail = node._prev;
+            else
+                node._next._prev = node._prev;
+            node._prev = null;
+            node._next = null;
+            node._segment = null;
+            _size--;
+        }
+
+        private void clear()
+        {
+            _head = null;
+            _tail = null;
+            _size = 0;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.statistic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/* ------------------------------------------------------------ */
+/** Statistics on the distribution of samples.
+ * <p>
+ * Non negative samples are counted in buckets whose bounds are powers of 2,
+ * so that percentiles can be estimated in constant memory and without locking.
+ * Percentiles are interpolated within a bucket, so their relative error is
+ * less than 50% and usually much less for smooth distributions.
+ */
+public class HistogramStatistic
+{
+    private static final int BUCKETS = 64;
+
+    protected final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+    protected final LongAccumulator _max = new LongAccumulator(Math::max,0L);
+
+    /* ------------------------------------------------------------ */
+    public void reset()
+    {
+        for (int i=0;i<BUCKETS;i++)
+            _buckets.set(i,0);
+        _max.reset();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param sample the non negative sample to add
+     */
+    public void set(final long sample)
+    {
+        long value=Math.max(0,sample);
+        _buckets.incrementAndGet(BUCKETS-Long.numberOfLeadingZeros(value));
+        _max.accumulate(value);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the number of samples
+     */
+    public long getCount()
+    {
+        long count=0;
+        for (int i=0;i<BUCKETS;i++)
+            count+=_buckets.get(i);
+        return count;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the max sample
+     */
+    public long getMax()
+    {
+        return _max.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return an estimate of the sample at the given percentile, or 0 if there are no samples
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] counts=new long[BUCKETS];
+        long count=0;
+        for (int i=0;i<BUCKETS;i++)
+        {
+            counts[i]=_buckets.get(i);
+            count+=counts[i];
+        }
+        if (count==0)
+            return 0;
+
+        double rank=Math.min(100,Math.max(0,percentile))*count/100.0;
+        long seen=0;
+        for (int i=0;i<BUCKETS;i++)
+        {
+            if (counts[i]==0)
+                continue;
+            if (seen+counts[i]>=rank)
+            {
+                if (i==0)
+                    return 0;
+                long low=1L<<(i-1);
+                long high=Math.min(getMax(),i==BUCKETS-1?Long.MAX_VALUE:(1L<<i)-1);
+                double fraction=(rank-seen)/counts[i];
+                return Math.max(low,Math.min(high,low+Math.round((high-low)*fraction)));
+            }
+            seen+=counts[i];
+        }
+        return getMax();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{c=%d,p50=%d,p99=%d,m=%d}",this.getClass().getSimpleName(),hashCode(),getCount(),getPercentile(50),getPercentile(99),getMax());
+    }
+}
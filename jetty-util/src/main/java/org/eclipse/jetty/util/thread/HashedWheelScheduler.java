@@ -0,0 +1,373 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link Scheduler} based on a hashed timing wheel.</p>
+ * <p>Time is divided in ticks, and the wheel is an array of buckets, one per tick, that
+ * wraps around. A task is scheduled by queuing it without locks; the timer thread then
+ * moves it to the bucket of its deadline, counting the revolutions it has to wait.
+ * Both scheduling and cancelling are O(1), which suits the many idle timeouts that are
+ * scheduled and cancelled by a server with a large number of connections, while a
+ * {@link ScheduledExecutorScheduler} pays O(log n) under a global lock for each.</p>
+ * <p>Tasks are never run before their delay, but may be run up to one tick later.
+ * Tasks are run by the timer thread, so they must be quick and not block.
+ * Tasks cannot be scheduled once the scheduler is stopped.</p>
+ * <p>To use it for the idle timeouts of connections (and of HTTP/2 streams), set it as
+ * the scheduler of the connectors, or add it as a bean of the server before the connectors
+ * are started.</p>
+ */
+@ManagedObject("A hashed timing wheel scheduler")
+public class HashedWheelScheduler extends AbstractLifeCycle implements Scheduler, Runnable, Dumpable
+{
+    private static final Logger LOG = Log.getLogger(HashedWheelScheduler.class);
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final String _name;
+    private final boolean _daemon;
+    private final long _tickNanos;
+    private final Bucket[] _wheel;
+    private final int _mask;
+    private final Queue<WheelTask> _scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTask> _cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong _tasks = new AtomicLong();
+    private volatile Thread _thread;
+    private long _startNanos;
+    private long _tick;
+
+    public HashedWheelScheduler()
+    {
+        this(null, false);
+    }
+
+    public HashedWheelScheduler(String name, boolean daemon)
+    {
+        this(name, daemon, 10, 512);
+    }
+
+    /**
+     * @param name the name of the timer thread, or null for a default name
+     * @param daemon whether the timer thread is a daemon thread
+     * @param tickMillis the duration of a tick in milliseconds
+     * @param wheelSize the number of buckets of the wheel, rounded up to a power of 2
+     */
+    public HashedWheelScheduler(String name, boolean daemon, long tickMillis, int wheelSize)
+    {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("tick must be positive");
+        if (wheelSize <= 0 || wheelSize > 1 << 30)
+            throw new IllegalArgumentException("invalid wheel size " + wheelSize);
+        _name = name == null ? "Scheduler-" + hashCode() : name;
+        _daemon = daemon;
+        _tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize)
+            size <<= 1;
+        _wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            _wheel[i] = new Bucket();
+        _mask = size - 1;
+    }
+
+    @ManagedAttribute("The duration of a tick in milliseconds")
+    public long getTickMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_tickNanos);
+    }
+
+    @ManagedAttribute("The number of buckets of the wheel")
+    public int getWheelSize()
+    {
+        return _wheel.length;
+    }
+
+    @ManagedAttribute("The number of scheduled tasks")
+    public long getTasks()
+    {
+        return _tasks.get();
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        _startNanos = System.nanoTime();
+        _tick = 0;
+        Thread thread = new Thread(this, _name);
+        thread.setDaemon(_daemon);
+        _thread = thread;
+        super.doStart();
+        thread.start();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        Thread thread = _thread;
+        _thread = null;
+        super.doStop();
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+            thread.join(TimeUnit.NANOSECONDS.toMillis(_tickNanos) * 10);
+        }
+        _scheduled.clear();
+        _cancelled.clear();
+        for (Bucket bucket : _wheel)
+            bucket.clear();
+        _tasks.set(0);
+    }
+
+    @Override
+    public Task schedule(Runnable task, long delay, TimeUnit units)
+    {
+        if (_thread == null)
+            throw new RejectedExecutionException(this + " is stopped");
+
+        long deadline = System.nanoTime() - _startNanos + Math.max(0, units.toNanos(delay));
+        WheelTask wheelTask = new WheelTask(_cancelled, task, deadline);
+        _tasks.incrementAndGet();
+        _scheduled.offer(wheelTask);
+        return wheelTask;
+    }
+
+    @Override
+    public void run()
+    {
+        Thread thread = Thread.currentThread();
+        while (_thread == thread)
+        {
+            long now = awaitTick();
+            if (_thread != thread)
+                break;
+            removeCancelled();
+            transferScheduled();
+            _wheel[(int)(_tick & _mask)].expire(now);
+            _tick++;
+        }
+    }
+
+    private long awaitTick()
+    {
+        long deadline = _tickNanos * (_tick + 1);
+        while (true)
+        {
+            long now = System.nanoTime() - _startNanos;
+            long wait = deadline - now;
+            if (wait <= 0 || _thread == null)
+                return now;
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    private void removeCancelled()
+    {
+        while (true)
+        {
+            WheelTask task = _cancelled.poll();
+            if (task == null)
+                break;
+            if (task._bucket != null)
+                task._bucket.remove(task);
+        }
+    }
+
+    private void transferScheduled()
+    {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++)
+        {
+            WheelTask task = _scheduled.poll();
+            if (task == null)
+                break;
+            if (task.isCancelled())
+            {
+                _tasks.decrementAndGet();
+                continue;
+            }
+
+            // The bucket of a tick is expired once the tick has
+            // elapsed, so a task never runs before its deadline.
+            long ticks = Math.max(task._deadline / _tickNanos, _tick);
+            task._rounds = (ticks - _tick) / _wheel.length;
+            _wheel[(int)(ticks & _mask)].add(task);
+        }
+    }
+
+    @Override
+    public String dump()
+    {
+        return ContainerLifeCycle.dump(this);
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        ContainerLifeCycle.dumpObject(out, this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s{%s,tick=%dms,wheel=%d,tasks=%d}", super.toString(), _name, getTickMillis(), _wheel.length, _tasks.get());
+    }
+
+    /**
+     * A doubly linked list of tasks, only accessed by the timer thread.
+     */
+    private class Bucket
+    {
+        private WheelTask _head;
+        private WheelTask _tail;
+
+        private void add(WheelTask task)
+        {
+            task._bucket = this;
+            if (_tail == null)
+            {
+                _head = _tail = task;
+            }
+            else
+            {
+                _tail._next = task;
+                task._prev = _tail;
+                _tail = task;
+            }
+        }
+
+        private void remove(WheelTask task)
+        {
+            WheelTask next = task._next;
+            if (task._prev != null)
+                task._prev._next = next;
+            else
+                _head = next;
+            if (next != null)
+                next._prev = task._prev;
+            else
+                _tail = task._prev;
+            task._prev = null;
+            task._next = null;
+            task._bucket = null;
+            _tasks.decrementAndGet();
+        }
+
+        private void expire(long now)
+        {
+            WheelTask task = _head;
+            while (task != null)
+            {
+                WheelTask next = task._next;
+                if (task.isCancelled())
+                {
+                    remove(task);
+                }
+                else if (task._rounds <= 0)
+                {
+                    remove(task);
+                    task.expire();
+                }
+                else
+                {
+                    task._rounds--;
+                }
+                task = next;
+            }
+        }
+
+        private void clear()
+        {
+            _head = null;
+            _tail = null;
+        }
+    }
+
+    private static class WheelTask implements Task
+    {
+        private static final AtomicIntegerFieldUpdater<WheelTask> STATE = AtomicIntegerFieldUpdater.newUpdater(WheelTask.class, "_state");
+        private static final int SCHEDULED = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Queue<WheelTask> _cancelled;
+        private final Runnable _task;
+        private final long _deadline;
+        private volatile int _state;
+        private long _rounds;
+        private Bucket _bucket;
+        private WheelTask _prev;
+        private WheelTask _next;
+
+        private WheelTask(Queue<WheelTask> cancelled, Runnable task, long deadline)
+        {
+            _cancelled = cancelled;
+            _task = task;
+            _deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel()
+        {
+            if (!STATE.compareAndSet(this, SCHEDULED, CANCELLED))
+                return false;
+            _cancelled.offer(this);
+            return true;
+        }
+
+        private boolean isCancelled()
+        {
+            return _state == CANCELLED;
+        }
+
+        private void expire()
+        {
+            if (!STATE.compareAndSet(this, SCHEDULED, EXPIRED))
+                return;
+            try
+            {
+                _task.run();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Exception while executing task " + _task, x);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s.%s@%x", HashedWheelScheduler.class.getSimpleName(), WheelTask.class.getSimpleName(), hashCode());
+        }
+    }
+}
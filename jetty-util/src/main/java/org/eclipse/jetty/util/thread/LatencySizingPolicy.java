@@ -0,0 +1,91 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.Name;
+
+/**
+ * <p>A {@link QueuedThreadPool.SizingPolicy} that sizes the pool toward a target queue wait.</p>
+ * <p>When the 99th percentile of the time jobs waited in the queue exceeds the target,
+ * the pool grows by a quarter of its threads. When it is below half of the target, the pool
+ * shrinks by an eighth of its threads, but not below the number of threads needed to run
+ * the measured rate of jobs, as estimated by Little's law with a safety factor of 2.</p>
+ */
+@ManagedObject("Sizes a thread pool toward a target queue wait")
+public class LatencySizingPolicy implements QueuedThreadPool.SizingPolicy
+{
+    private volatile long _targetQueueWait;
+
+    public LatencySizingPolicy()
+    {
+        this(1000);
+    }
+
+    /**
+     * @param targetQueueWait the target 99th percentile of the queue wait in microseconds
+     */
+    public LatencySizingPolicy(@Name("targetQueueWait") long targetQueueWait)
+    {
+        setTargetQueueWait(targetQueueWait);
+    }
+
+    @ManagedAttribute("target 99th percentile of the queue wait in microseconds")
+    public long getTargetQueueWait()
+    {
+        return _targetQueueWait;
+    }
+
+    /**
+     * @param targetQueueWait the target 99th percentile of the queue wait in microseconds
+     */
+    public void setTargetQueueWait(long targetQueueWait)
+    {
+        if (targetQueueWait<=0)
+            throw new IllegalArgumentException("targetQueueWait="+targetQueueWait);
+        _targetQueueWait = targetQueueWait;
+    }
+
+    @Override
+    public int getTargetThreads(QueuedThreadPool pool)
+    {
+        int threads = pool.getThreads();
+        long queueWait = pool.getQueueWaitP99();
+
+        if (queueWait>_targetQueueWait)
+            return threads+Math.max(1,threads/4);
+
+        if (queueWait<_targetQueueWait/2)
+        {
+            double busy = pool.getJobsPerSecond()*pool.getRunTimeP50()/1_000_000D;
+            int needed = (int)Math.ceil(2*busy)+pool.getLowThreadsThreshold();
+            return Math.max(needed,threads-Math.max(1,threads/8));
+        }
+
+        return threads;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{target=%dus}",getClass().getSimpleName(),hashCode(),_targetQueueWait);
+    }
+}
@@ -44,6 +44,7 @@ import org.eclipse.jetty.util.component.DumpableCollection;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.HistogramStatistic;
 import org.eclipse.jetty.util.thread.ThreadPool.SizedThreadPool;
 
 @ManagedObject("A thread pool")
@@ -66,6 +67,40 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
     private boolean _daemon = false;
     private boolean _detailedDump = false;
     private int _lowThreadsThreshold = 1;
+    private final HistogramStatistic _queueWait = new HistogramStatistic();
+    private final HistogramStatistic _runTime = new HistogramStatistic();
+    private final AtomicLong _lastSample = new AtomicLong();
+    private volatile boolean _statisticsEnabled;
+    private volatile long _statisticsPeriod = 1000;
+    private volatile long _queueWaitP50;
+    private volatile long _queueWaitP99;
+    private volatile long _runTimeP50;
+    private volatile long _runTimeP99;
+    private volatile double _jobsPerSecond;
+    private volatile SizingPolicy _sizingPolicy;
+    private volatile int _targetThreads = Integer.MAX_VALUE;
+
+    /**
+     * <p>A policy that adjusts the number of threads of a {@link QueuedThreadPool}
+     * from the job statistics of the last statistics period.</p>
+     *
+     * @see #setSizingPolicy(SizingPolicy)
+     * @see LatencySizingPolicy
+     */
+    public interface SizingPolicy
+    {
+        /**
+         * <p>Called once per {@link #getStatisticsPeriod() statistics period}, after the
+         * statistics of the period have been sampled.</p>
+         * <p>The pool starts threads to reach the target, while idle threads above the
+         * target exit when they next poll for a job. The target is bound by the
+         * {@link #getMinThreads() min} and {@link #getMaxThreads() max} threads.</p>
+         *
+         * @param pool the thread pool
+         * @return the number of threads that the pool should have
+         */
+        int getTargetThreads(QueuedThreadPool pool);
+    }
 
     public QueuedThreadPool()
     {
@@ -113,6 +148,7 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
     {
         super.doStart();
         _threadsStarted.set(0);
+        _lastSample.set(System.nanoTime());
 
         startThreads(_minThreads);
     }
@@ -374,11 +410,177 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
         _lowThreadsThreshold = lowThreadsThreshold;
     }
 
+    /**
+     * @return whether the queue wait and run time of jobs are measured
+     */
+    @ManagedAttribute("whether job statistics are collected")
+    public boolean isStatisticsEnabled()
+    {
+        return _statisticsEnabled;
+    }
+
+    /**
+     * <p>Enables the measurement of the time jobs wait in the queue and of the time
+     * they take to run. Enabling the statistics costs an allocation and two calls
+     * to {@link System#nanoTime()} per job.</p>
+     *
+     * @param enabled whether to collect job statistics
+     */
+    public void setStatisticsEnabled(boolean enabled)
+    {
+        if (enabled && !_statisticsEnabled)
+        {
+            _queueWait.reset();
+            _runTime.reset();
+            _lastSample.set(System.nanoTime());
+        }
+        _statisticsEnabled = enabled;
+    }
+
+    /**
+     * @return the period in ms over which the job statistics are sampled
+     */
+    @ManagedAttribute("period in ms over which the job statistics are sampled")
+    public long getStatisticsPeriod()
+    {
+        return _statisticsPeriod;
+    }
+
+    /**
+     * @param period the period in ms over which the job statistics are sampled
+     */
+    public void setStatisticsPeriod(long period)
+    {
+        _statisticsPeriod = period;
+    }
+
+    /**
+     * @return the median time in microseconds that jobs waited in the queue during the last statistics period
+     */
+    @ManagedAttribute("median time in microseconds jobs waited in the queue during the last statistics period")
+    public long getQueueWaitP50()
+    {
+        sampleStatistics();
+        return _queueWaitP50;
+    }
+
+    /**
+     * @return the 99th percentile of the time in microseconds that jobs waited in the queue during the last statistics period
+     */
+    @ManagedAttribute("99th percentile of the time in microseconds jobs waited in the queue during the last statistics period")
+    public long getQueueWaitP99()
+    {
+        sampleStatistics();
+        return _queueWaitP99;
+    }
+
+    /**
+     * @return the median time in microseconds that jobs took to run during the last statistics period
+     */
+    @ManagedAttribute("median time in microseconds jobs took to run during the last statistics period")
+    public long getRunTimeP50()
+    {
+        sampleStatistics();
+        return _runTimeP50;
+    }
+
+    /**
+     * @return the 99th percentile of the time in microseconds that jobs took to run during the last statistics period
+     */
+    @ManagedAttribute("99th percentile of the time in microseconds jobs took to run during the last statistics period")
+    public long getRunTimeP99()
+    {
+        sampleStatistics();
+        return _runTimeP99;
+    }
+
+    /**
+     * @return the rate of jobs run during the last statistics period
+     */
+    @ManagedAttribute("jobs run per second during the last statistics period")
+    public double getJobsPerSecond()
+    {
+        sampleStatistics();
+        return _jobsPerSecond;
+    }
+
+    /**
+     * @return the policy that adjusts the number of threads, or null
+     */
+    public SizingPolicy getSizingPolicy()
+    {
+        return _sizingPolicy;
+    }
+
+    /**
+     * <p>Sets a policy that adjusts the number of threads from the job statistics.
+     * Threads are still started on demand when no thread is idle, but idle threads
+     * only exit when above the target of the policy, rather than after the idle timeout.</p>
+     * <p>Setting a policy enables the {@link #setStatisticsEnabled(boolean) statistics}.</p>
+     *
+     * @param policy the policy that adjusts the number of threads, or null
+     */
+    public void setSizingPolicy(SizingPolicy policy)
+    {
+        if (policy != null)
+            setStatisticsEnabled(true);
+        else
+            _targetThreads = Integer.MAX_VALUE;
+        _sizingPolicy = policy;
+    }
+
+    /**
+     * @return the number of threads set by the sizing policy, or {@link #getMaxThreads()} if there is no policy
+     */
+    @ManagedAttribute("number of threads targeted by the sizing policy")
+    public int getTargetThreads()
+    {
+        return Math.min(_targetThreads, getMaxThreads());
+    }
+
+    private void sampleStatistics()
+    {
+        if (!_statisticsEnabled)
+            return;
+
+        long last = _lastSample.get();
+        long now = System.nanoTime();
+        long elapsed = now - last;
+        if (elapsed < TimeUnit.MILLISECONDS.toNanos(_statisticsPeriod) || !_lastSample.compareAndSet(last, now))
+            return;
+
+        // Jobs may be counted in the next period if they complete concurrently with the sampling.
+        _queueWaitP50 = _queueWait.getPercentile(50);
+        _queueWaitP99 = _queueWait.getPercentile(99);
+        _runTimeP50 = _runTime.getPercentile(50);
+        _runTimeP99 = _runTime.getPercentile(99);
+        _jobsPerSecond = _runTime.getCount() * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+        _queueWait.reset();
+        _runTime.reset();
+
+        SizingPolicy policy = _sizingPolicy;
+        if (policy != null && isRunning())
+        {
+            int target = Math.max(getMinThreads(), Math.min(getMaxThreads(), policy.getTargetThreads(this)));
+            _targetThreads = target;
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} target threads {} for {}", this, target, policy);
+            int threads = _threadsStarted.get();
+            if (target > threads)
+                startThreads(target - threads);
+        }
+    }
+
     @Override
     public void execute(Runnable job)
     {
         if (LOG.isDebugEnabled())
             LOG.debug("queue {}",job);
+        if (_statisticsEnabled)
+        {
+            sampleStatistics();
+            job = new QueuedJob(job);
+        }
         if (!isRunning() || !_jobs.offer(job))
         {
             LOG.warn("{} rejected {}", this, job);
@@ -568,7 +770,11 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
 
     private Runnable idleJobPoll() throws InterruptedException
     {
-        return _jobs.poll(_idleTimeout, TimeUnit.MILLISECONDS);
+        long timeout = _idleTimeout;
+        // Wake up at least every period to exit if above the target threads
+        if (_sizingPolicy != null)
+            timeout = Math.min(timeout, Math.max(1, _statisticsPeriod));
+        return _jobs.poll(timeout, TimeUnit.MILLISECONDS);
     }
 
     private Runnable _runnable = new Runnable()
@@ -594,7 +800,7 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
                     {
                         if (LOG.isDebugEnabled())
                             LOG.debug("run {}",job);
-                        runJob(job);
+                        runQueuedJob(job);
                         if (LOG.isDebugEnabled())
                             LOG.debug("ran {}",job);
                         if (Thread.interrupted())
@@ -618,7 +824,17 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
                             {
                                 // maybe we should shrink?
                                 final int size = _threadsStarted.get();
-                                if (size > _minThreads)
+                                if (_sizingPolicy != null)
+                                {
+                                    // the sizing policy replaces the idle timeout shrinking
+                                    sampleStatistics();
+                                    if (size > _minThreads && size > _targetThreads && _threadsStarted.compareAndSet(size, size - 1))
+                                    {
+                                        shrink=true;
+                                        break loop;
+                                    }
+                                }
+                                else if (size > _minThreads)
                                 {
                                     long last = _lastShrink.get();
                                     long now = System.nanoTime();
@@ -668,6 +884,28 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
         }
     };
 
+    private void runQueuedJob(Runnable job)
+    {
+        if (job instanceof QueuedJob)
+        {
+            QueuedJob queued = (QueuedJob)job;
+            long start = System.nanoTime();
+            _queueWait.set(TimeUnit.NANOSECONDS.toMicros(start - queued._queued));
+            try
+            {
+                runJob(queued._job);
+            }
+            finally
+            {
+                _runTime.set(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+        }
+        else
+        {
+            runJob(job);
+        }
+    }
+
     /**
      * <p>Runs the given job in the {@link Thread#currentThread() current thread}.</p>
      * <p>Subclasses may override to perform pre/post actions before/after the job is run.</p>
@@ -736,4 +974,27 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
         }
         return null;
     }
+
+    private static class QueuedJob implements Runnable
+    {
+        private final Runnable _job;
+        private final long _queued = System.nanoTime();
+
+        private QueuedJob(Runnable job)
+        {
+            _job = job;
+        }
+
+        @Override
+        public void run()
+        {
+            _job.run();
+        }
+
+        @Override
+        public String toString()
+        {
+            return _job.toString();
+        }
+    }
 }
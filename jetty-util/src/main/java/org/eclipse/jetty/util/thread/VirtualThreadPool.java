@@ -0,0 +1,215 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.strategy.EatWhatYouKill;
+
+/**
+ * <p>A {@link QueuedThreadPool} that runs blocking tasks on virtual threads, when the JVM supports them.</p>
+ * <p>Tasks submitted with {@link #execute(Runnable)} run on the platform threads of the pool, so that
+ * selectors, acceptors and other long running jobs are not affected. Execution strategies such as
+ * {@link EatWhatYouKill} call {@link #executeBlocking(Runnable)} for the tasks whose
+ * {@link Invocable.InvocationType} is {@link Invocable.InvocationType#BLOCKING BLOCKING}, typically
+ * the handling of a request, so that they run on a new virtual thread, while non blocking tasks are
+ * still consumed by the producing platform thread.</p>
+ * <p>If the JVM does not support virtual threads, or if they are {@link #setUseVirtualThreads(boolean)
+ * disabled}, blocking tasks are executed by the platform threads as with a {@link QueuedThreadPool}.</p>
+ */
+@ManagedObject("A thread pool running blocking tasks on virtual threads")
+public class VirtualThreadPool extends QueuedThreadPool
+{
+    private static final Logger LOG = Log.getLogger(VirtualThreadPool.class);
+    private static final Method OF_VIRTUAL = ofVirtual();
+
+    private final AtomicInteger _virtualThreads = new AtomicInteger();
+    private final LongAdder _virtualTasks = new LongAdder();
+    private volatile ThreadFactory _virtualThreadFactory;
+    private boolean _useVirtualThreads = true;
+
+    private static Method ofVirtual()
+    {
+        try
+        {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            // Virtual threads may be a preview feature that is not enabled
+            ofVirtual.invoke(null);
+            return ofVirtual;
+        }
+        catch (Throwable x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Virtual threads not supported", x);
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the JVM supports virtual threads
+     */
+    public static boolean isSupported()
+    {
+        return OF_VIRTUAL != null;
+    }
+
+    public VirtualThreadPool()
+    {
+        this(200);
+    }
+
+    public VirtualThreadPool(@Name("maxThreads") int maxThreads)
+    {
+        this(maxThreads, 8);
+    }
+
+    public VirtualThreadPool(@Name("maxThreads") int maxThreads, @Name("minThreads") int minThreads)
+    {
+        this(maxThreads, minThreads, 60000);
+    }
+
+    public VirtualThreadPool(@Name("maxThreads") int maxThreads, @Name("minThreads") int minThreads, @Name("idleTimeout") int idleTimeout)
+    {
+        this(maxThreads, minThreads, idleTimeout, null);
+    }
+
+    public VirtualThreadPool(@Name("maxThreads") int maxThreads, @Name("minThreads") int minThreads, @Name("idleTimeout") int idleTimeout, @Name("queue") BlockingQueue<Runnable> queue)
+    {
+        super(maxThreads, minThreads, idleTimeout, queue);
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_useVirtualThreads && isSupported())
+            _virtualThreadFactory = newVirtualThreadFactory();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        _virtualThreadFactory = null;
+        super.doStop();
+    }
+
+    /**
+     * @return a factory of virtual threads named after this pool
+     * @throws Exception if the factory cannot be created
+     */
+    protected ThreadFactory newVirtualThreadFactory() throws Exception
+    {
+        Object builder = OF_VIRTUAL.invoke(null);
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, getName() + "-virtual-", 0L);
+        return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+    }
+
+    /**
+     * @return whether blocking tasks are run on virtual threads
+     */
+    @ManagedAttribute("whether blocking tasks are run on virtual threads")
+    public boolean isUseVirtualThreads()
+    {
+        return _virtualThreadFactory != null;
+    }
+
+    /**
+     * <p>Sets whether to run blocking tasks on virtual threads, if the JVM supports them.</p>
+     *
+     * @param useVirtualThreads whether to run blocking tasks on virtual threads
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads)
+    {
+        if (isRunning())
+            throw new IllegalStateException("started");
+        _useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * @return the number of virtual threads currently running tasks
+     */
+    @ManagedAttribute("number of virtual threads running tasks")
+    public int getVirtualThreads()
+    {
+        return _virtualThreads.get();
+    }
+
+    /**
+     * @return the number of tasks run on virtual threads
+     */
+    @ManagedAttribute("number of tasks run on virtual threads")
+    public long getVirtualThreadTasks()
+    {
+        return _virtualTasks.longValue();
+    }
+
+    /**
+     * <p>Executes a task that may block, on a new virtual thread if {@link #isUseVirtualThreads() enabled},
+     * otherwise on a thread of the pool.</p>
+     *
+     * @param task the task to execute
+     * @throws RejectedExecutionException if the task cannot be executed
+     */
+    public void executeBlocking(Runnable task)
+    {
+        ThreadFactory factory = _virtualThreadFactory;
+        if (factory == null)
+        {
+            execute(task);
+            return;
+        }
+
+        if (!isRunning())
+        {
+            LOG.warn("{} rejected {}", this, task);
+            throw new RejectedExecutionException(task.toString());
+        }
+
+        Thread thread = factory.newThread(() ->
+        {
+            _virtualThreads.incrementAndGet();
+            try
+            {
+                runJob(task);
+            }
+            catch (Throwable x)
+            {
+                LOG.warn(x);
+            }
+            finally
+            {
+                _virtualThreads.decrementAndGet();
+            }
+        });
+        _virtualTasks.increment();
+        thread.start();
+    }
+}
@@ -35,6 +35,7 @@ import org.eclipse.jetty.util.thread.Invocable.InvocationType;
 import org.eclipse.jetty.util.thread.Locker;
 import org.eclipse.jetty.util.thread.Locker.Lock;
 import org.eclipse.jetty.util.thread.ReservedThreadExecutor;
+import org.eclipse.jetty.util.thread.VirtualThreadPool;
 
 /**
  * <p>A strategy where the thread that produces will run the resulting task if it 
@@ -60,6 +61,9 @@ import org.eclipse.jetty.util.thread.ReservedThreadExecutor;
  * the task and immediately continue producing.  When operating in this pattern, the
  * sub-strategy is called ProduceExecuteConsume (PEC).
  * </p>
+ * <p>If the executor is a {@link VirtualThreadPool} that uses virtual threads, tasks
+ * that may block are always executed on a new virtual thread (PEC), as that is cheaper
+ * than handing over production to another platform thread.</p>
  */
 @ManagedObject("eat what you kill execution strategy")
 public class EatWhatYouKill extends ContainerLifeCycle implements ExecutionStrategy, Runnable
@@ -75,6 +79,7 @@ public class EatWhatYouKill extends ContainerLifeCycle implements ExecutionStrat
     private final Producer _producer;
     private final Executor _executor;
     private final ReservedThreadExecutor _producers;
+    private final VirtualThreadPool _virtualThreads;
     private State _state = State.IDLE;
 
     public EatWhatYouKill(Producer producer, Executor executor)
@@ -92,6 +97,7 @@ public class EatWhatYouKill extends ContainerLifeCycle implements ExecutionStrat
         _producer = producer;
         _executor = executor;
         _producers = producers;
+        _virtualThreads = executor instanceof VirtualThreadPool ? (VirtualThreadPool)executor : null;
         addBean(_producer);
         if (LOG.isDebugEnabled())
             LOG.debug("{} created", this);
@@ -215,6 +221,14 @@ public class EatWhatYouKill extends ContainerLifeCycle implements ExecutionStrat
                     consume = true;
                     _nonBlocking.increment();
                 }
+                else if (_virtualThreads!=null && _virtualThreads.isUseVirtualThreads())
+                {
+                    // PRODUCE EXECUTE CONSUME on a virtual thread, which is cheaper than handing over production
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("{} PEC virtual t={}", this, task);
+                    consume = false;
+                    _executed.increment();
+                }
                 else
                 {
                     try (Lock locked = _locker.lock())
@@ -245,6 +259,8 @@ public class EatWhatYouKill extends ContainerLifeCycle implements ExecutionStrat
                 {
                     if (consume)
                         task.run();
+                    else if (_virtualThreads!=null)
+                        _virtualThreads.executeBlocking(task);
                     else
                         _executor.execute(task);
                 }
@@ -0,0 +1,171 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TinyLfuPolicyTest
+{
+    @Test
+    public void testFrequencySketch()
+    {
+        FrequencySketch sketch = new FrequencySketch(16);
+        assertEquals(0,sketch.frequency("a"));
+
+        for (int i=0;i<5;i++)
+            sketch.increment("a");
+        sketch.increment("b");
+        assertEquals(5,sketch.frequency("a"));
+        assertEquals(1,sketch.frequency("b"));
+
+        // Counters saturate at 15.
+        for (int i=0;i<20;i++)
+            sketch.increment("c");
+        assertEquals(15,sketch.frequency("c"));
+
+        // Reaching the sample size halves the frequencies.
+        for (int i=0;sketch.frequency("a")==5 && i<1000;i++)
+            sketch.increment("k"+i);
+        assertEquals(2,sketch.frequency("a"));
+        assertEquals(7,sketch.frequency("c"));
+
+        sketch.clear();
+        assertEquals(0,sketch.frequency("c"));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed()
+    {
+        TinyLfuPolicy<String> policy = new TinyLfuPolicy<>(4);
+        assertNull(policy.evict());
+
+        policy.add("a");
+        policy.add("b");
+        policy.add("c");
+        policy.add("d");
+        assertEquals(4,policy.size());
+
+        // "a" is promoted, so "b" is the least recently used.
+        policy.access("a");
+        assertEquals("b",policy.evict());
+        assertFalse(policy.contains("b"));
+        assertEquals("c",policy.evict());
+        assertEquals(2,policy.getEvictions());
+        assertEquals(0,policy.getRejections());
+
+        assertTrue(policy.remove("a"));
+        assertFalse(policy.remove("a"));
+        assertEquals(1,policy.size());
+        assertEquals("d",policy.evict());
+        assertNull(policy.evict());
+    }
+
+    @Test
+    public void testAdmission()
+    {
+        TinyLfuPolicy<String> policy = new TinyLfuPolicy<>(4);
+        policy.add("a");
+        policy.add("b");
+        policy.add("c");
+        policy.add("d");
+        for (int i=0;i<3;i++)
+            policy.access("b");
+
+        // The new key is not more frequent than the victim, so it is rejected.
+        policy.add("e");
+        assertEquals("d",policy.evict());
+        assertEquals(1,policy.getRejections());
+
+        policy.access("f");
+        policy.access("f");
+        policy.add("f");
+        assertEquals("e",policy.evict());
+        assertEquals(2,policy.getRejections());
+
+        // The new key is more frequent than the victim, so it is admitted.
+        policy.add("g");
+        assertEquals("a",policy.evict());
+        assertTrue(policy.contains("f"));
+        assertEquals(2,policy.getRejections());
+        assertEquals(3,policy.getEvictions());
+    }
+
+    @Test
+    public void testScanResistance()
+    {
+        int maxSize = 100;
+        TinyLfuPolicy<String> policy = new TinyLfuPolicy<>(maxSize);
+        Set<String> cached = new HashSet<>();
+
+        // A working set of frequently used keys.
+        for (int round=0;round<4;round++)
+        {
+            for (int i=0;i<maxSize/2;i++)
+            {
+                String key = "hot"+i;
+                if (cached.add(key))
+                    policy.add(key);
+                else
+                    policy.access(key);
+            }
+        }
+
+        // A scan of keys used once.
+        for (int i=0;i<10*maxSize;i++)
+        {
+            String key = "scan"+i;
+            cached.add(key);
+            policy.add(key);
+            while (policy.size()>maxSize)
+                cached.remove(policy.evict());
+        }
+
+        for (int i=0;i<maxSize/2;i++)
+            assertTrue(policy.contains("hot"+i));
+        assertEquals(maxSize,cached.size());
+        assertTrue(policy.getRejections()>0);
+    }
+
+    @Test
+    public void testResize()
+    {
+        TinyLfuPolicy<Integer> policy = new TinyLfuPolicy<>(10);
+        for (int i=0;i<10;i++)
+            policy.add(i);
+
+        policy.setMaxSize(5);
+        assertEquals(5,policy.getMaxSize());
+        while (policy.size()>policy.getMaxSize())
+            policy.evict();
+        assertEquals(5,policy.size());
+
+        policy.clear();
+        assertEquals(0,policy.size());
+        assertNull(policy.evict());
+    }
+}
@@ -0,0 +1,70 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.statistic;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class HistogramStatisticTest
+{
+    @Test
+    public void testEmpty()
+    {
+        HistogramStatistic stats = new HistogramStatistic();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getPercentile(50));
+        assertEquals(0, stats.getPercentile(99));
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        HistogramStatistic stats = new HistogramStatistic();
+        for (int i=1;i<=1000;i++)
+            stats.set(i);
+
+        assertEquals(1000, stats.getCount());
+        assertEquals(1000, stats.getMax());
+        assertThat(stats.getPercentile(50), allOf(greaterThanOrEqualTo(256L), lessThanOrEqualTo(1000L)));
+        assertThat(stats.getPercentile(99), allOf(greaterThanOrEqualTo(512L), lessThanOrEqualTo(1000L)));
+        assertThat(stats.getPercentile(1), lessThanOrEqualTo(16L));
+        assertEquals(1000, stats.getPercentile(100));
+    }
+
+    @Test
+    public void testConstant()
+    {
+        HistogramStatistic stats = new HistogramStatistic();
+        for (int i=0;i<100;i++)
+            stats.set(100);
+
+        assertThat(stats.getPercentile(50), allOf(greaterThanOrEqualTo(64L), lessThanOrEqualTo(100L)));
+        assertEquals(100, stats.getPercentile(99));
+        
+        stats.reset();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getMax());
+    }
+}
@@ -0,0 +1,139 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HashedWheelSchedulerTest
+{
+    private HashedWheelScheduler _scheduler;
+
+    @After
+    public void after() throws Exception
+    {
+        if (_scheduler != null)
+            _scheduler.stop();
+    }
+
+    @Test
+    public void testWheelSizeRoundedToPowerOf2() throws Exception
+    {
+        _scheduler = new HashedWheelScheduler(null, true, 10, 100);
+        assertEquals(128, _scheduler.getWheelSize());
+        assertEquals(10, _scheduler.getTickMillis());
+    }
+
+    @Test
+    public void testDelayLongerThanRevolution() throws Exception
+    {
+        // 4 buckets of 10ms, so a 200ms delay takes 5 revolutions.
+        _scheduler = new HashedWheelScheduler(null, true, 10, 4);
+        _scheduler.start();
+
+        AtomicLong executed = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        _scheduler.schedule(() ->
+        {
+            executed.set(System.nanoTime());
+            latch.countDown();
+        }, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(executed.get() - start);
+        assertThat(elapsed, greaterThanOrEqualTo(200L));
+        assertThat(elapsed, lessThan(1000L));
+    }
+
+    @Test
+    public void testCancelledTasksAreRemoved() throws Exception
+    {
+        _scheduler = new HashedWheelScheduler(null, true, 10, 16);
+        _scheduler.start();
+
+        AtomicInteger executed = new AtomicInteger();
+        List<Scheduler.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            tasks.add(_scheduler.schedule(executed::incrementAndGet, 10 + i, TimeUnit.SECONDS));
+        assertEquals(1000, _scheduler.getTasks());
+
+        for (Scheduler.Task task : tasks)
+            assertTrue(task.cancel());
+        for (Scheduler.Task task : tasks)
+            assertFalse(task.cancel());
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (_scheduler.getTasks() > 0 && System.nanoTime() < end)
+            Thread.sleep(10);
+        assertEquals(0, _scheduler.getTasks());
+        assertEquals(0, executed.get());
+    }
+
+    @Test
+    public void testManyTasks() throws Exception
+    {
+        _scheduler = new HashedWheelScheduler(null, true, 5, 8);
+        _scheduler.start();
+
+        int count = 10000;
+        CountDownLatch latch = new CountDownLatch(count);
+        AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < count; i++)
+        {
+            long delay = i % 250;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            _scheduler.schedule(() ->
+            {
+                if (System.nanoTime() < deadline)
+                    early.incrementAndGet();
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        assertEquals(0, _scheduler.getTasks());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testScheduleAfterStop() throws Exception
+    {
+        _scheduler = new HashedWheelScheduler();
+        _scheduler.start();
+        _scheduler.stop();
+
+        _scheduler.schedule(() -> {}, 1, TimeUnit.MILLISECONDS);
+    }
+}
@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.jetty.toolchain.test.AdvancedRunner;
 import org.eclipse.jetty.toolchain.test.annotation.Slow;
 import org.eclipse.jetty.util.log.StacklessLogging;
+import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -302,4 +303,103 @@ public class QueuedThreadPoolTest
 
         assertTrue(latch.await(5, TimeUnit.SECONDS));
     }
+
+    @Test
+    public void testStatistics() throws Exception
+    {
+        QueuedThreadPool tp = new QueuedThreadPool(10, 2);
+        tp.setStatisticsEnabled(true);
+        tp.setStatisticsPeriod(200);
+        tp.start();
+        try
+        {
+            CountDownLatch latch = new CountDownLatch(20);
+            for (int i=0;i<20;i++)
+            {
+                tp.execute(()->
+                {
+                    try
+                    {
+                        Thread.sleep(2);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                    finally
+                    {
+                        latch.countDown();
+                    }
+                });
+            }
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            // Wait for the end of the statistics period
+            Thread.sleep(300);
+            assertThat(tp.getJobsPerSecond(), Matchers.greaterThan(0D));
+            assertThat(tp.getRunTimeP50(), greaterThanOrEqualTo(1000L));
+            assertThat(tp.getRunTimeP99(), greaterThanOrEqualTo(tp.getRunTimeP50()));
+            assertThat(tp.getQueueWaitP99(), greaterThanOrEqualTo(tp.getQueueWaitP50()));
+        }
+        finally
+        {
+            tp.stop();
+        }
+    }
+
+    @Test
+    public void testSizingPolicy() throws Exception
+    {
+        AtomicInteger target = new AtomicInteger(6);
+        QueuedThreadPool tp = new QueuedThreadPool(10, 2);
+        tp.setStatisticsPeriod(50);
+        tp.setSizingPolicy(pool -> target.get());
+        tp.start();
+        try
+        {
+            waitForThreads(tp,2);
+            Thread.sleep(100);
+            tp.execute(()->{});
+            waitForThreads(tp,6);
+            assertEquals(6, tp.getTargetThreads());
+
+            target.set(3);
+            Thread.sleep(100);
+            tp.execute(()->{});
+            waitForThreads(tp,3);
+            assertEquals(3, tp.getTargetThreads());
+
+            // The target is bound by the min threads
+            target.set(0);
+            Thread.sleep(100);
+            tp.execute(()->{});
+            waitForThreads(tp,2);
+            assertEquals(2, tp.getTargetThreads());
+        }
+        finally
+        {
+            tp.stop();
+        }
+    }
+
+    @Test
+    public void testLatencySizingPolicy() throws Exception
+    {
+        QueuedThreadPool tp = new QueuedThreadPool(10, 2);
+        tp.setStatisticsPeriod(50);
+        LatencySizingPolicy policy = new LatencySizingPolicy(1000);
+        tp.setSizingPolicy(policy);
+        tp.start();
+        try
+        {
+            waitForThreads(tp,2);
+            // Without jobs, the pool does not need more threads.
+            Thread.sleep(100);
+            assertThat(policy.getTargetThreads(tp), Matchers.lessThanOrEqualTo(2));
+        }
+        finally
+        {
+            tp.stop();
+        }
+    }
 }
@@ -0,0 +1,123 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class VirtualThreadPoolTest
+{
+    @Test
+    public void testBlockingTaskOnVirtualThread() throws Exception
+    {
+        Assume.assumeTrue(VirtualThreadPool.isSupported());
+
+        VirtualThreadPool pool = new VirtualThreadPool();
+        pool.setName("vtp");
+        pool.start();
+        try
+        {
+            assertTrue(pool.isUseVirtualThreads());
+
+            AtomicReference<Thread> thread = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            pool.executeBlocking(() ->
+            {
+                thread.set(Thread.currentThread());
+                latch.countDown();
+            });
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            assertTrue((Boolean)Thread.class.getMethod("isVirtual").invoke(thread.get()));
+            assertThat(thread.get().getName(), startsWith("vtp-virtual-"));
+            assertEquals(1, pool.getVirtualThreadTasks());
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testFallbackToPlatformThreads() throws Exception
+    {
+        VirtualThreadPool pool = new VirtualThreadPool();
+        pool.setName("vtp");
+        pool.setUseVirtualThreads(false);
+        pool.start();
+        try
+        {
+            assertFalse(pool.isUseVirtualThreads());
+
+            AtomicReference<Thread> thread = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            pool.executeBlocking(() ->
+            {
+                thread.set(Thread.currentThread());
+                latch.countDown();
+            });
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            assertThat(thread.get().getName(), startsWith("vtp-"));
+            assertFalse(thread.get().getName().startsWith("vtp-virtual-"));
+            assertEquals(0, pool.getVirtualThreadTasks());
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testExecuteOnPlatformThreads() throws Exception
+    {
+        VirtualThreadPool pool = new VirtualThreadPool();
+        pool.setName("vtp");
+        pool.start();
+        try
+        {
+            AtomicReference<Thread> thread = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            pool.execute(() ->
+            {
+                thread.set(Thread.currentThread());
+                latch.countDown();
+            });
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            assertFalse(thread.get().getName().startsWith("vtp-virtual-"));
+            assertEquals(0, pool.getVirtualThreadTasks());
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+}
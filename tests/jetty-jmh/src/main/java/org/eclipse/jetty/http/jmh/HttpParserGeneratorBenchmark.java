@@ -0,0 +1,251 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpGenerator;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpParser;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Parses a request with {@link HttpParser} and generates the matching
+ * response with {@link HttpGenerator}, as a HTTP/1.1 connection would.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class HttpParserGeneratorBenchmark
+{
+    private static final String SIMPLE =
+        "GET /index.html HTTP/1.1\r\n" +
+        "Host: localhost:8080\r\n" +
+        "\r\n";
+
+    private static final String BROWSER =
+        "GET /static/js/application.min.js?v=20171014 HTTP/1.1\r\n" +
+        "Host: www.example.com\r\n" +
+        "Connection: keep-alive\r\n" +
+        "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/61.0.3163.100 Safari/537.36\r\n" +
+        "Accept: */*\r\n" +
+        "Referer: https://www.example.com/products/index.html\r\n" +
+        "Accept-Encoding: gzip, deflate, br\r\n" +
+        "Accept-Language: en-US,en;q=0.8,fr;q=0.6\r\n" +
+        "Cookie: JSESSIONID=node01k3k2jb6owxrm1pn2lxgusbbvf0.node0; _ga=GA1.2.1523412345.1507894561; theme=dark\r\n" +
+        "\r\n";
+
+    @Param({"SIMPLE", "BROWSER"})
+    public String request;
+
+    @Param({"0", "1024"})
+    public int contentLength;
+
+    private ByteBuffer _request;
+    private ByteBuffer _content;
+    private MetaData.Response _response;
+    private HttpParser _parser;
+    private HttpGenerator _generator;
+    private final ByteBuffer _header = BufferUtil.allocate(8192);
+    private final ByteBuffer _chunk = BufferUtil.allocate(HttpGenerator.CHUNK_SIZE);
+    private Handler _handler;
+
+    @Setup(Level.Trial)
+    public void setupTrial()
+    {
+        String raw = "SIMPLE".equals(request) ? SIMPLE : BROWSER;
+        _request = BufferUtil.toBuffer(raw, StandardCharsets.ISO_8859_1);
+
+        byte[] bytes = new byte[contentLength];
+        Arrays.fill(bytes, (byte)'x');
+        _content = BufferUtil.toBuffer(bytes);
+
+        HttpFields fields = new HttpFields();
+        fields.put(HttpHeader.CONTENT_TYPE, "text/plain;charset=utf-8");
+        fields.put(HttpHeader.CACHE_CONTROL, "no-cache");
+        fields.put(HttpHeader.DATE, "Sat, 14 Oct 2017 12:00:00 GMT");
+        _response = new MetaData.Response(HttpVersion.HTTP_1_1, 200, fields, contentLength);
+
+        _handler = new Handler();
+        _parser = new HttpParser(_handler);
+        _generator = new HttpGenerator();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testParse(Blackhole blackhole)
+    {
+        parse();
+        blackhole.consume(_handler._fields);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testGenerate(Blackhole blackhole) throws IOException
+    {
+        blackhole.consume(generate());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testRoundTrip(Blackhole blackhole) throws IOException
+    {
+        parse();
+        blackhole.consume(_handler._fields);
+        blackhole.consume(generate());
+    }
+
+    private void parse()
+    {
+        ByteBuffer buffer = _request.slice();
+        _handler._fields = 0;
+        _parser.reset();
+        while (buffer.hasRemaining() && !_handler._complete)
+            _parser.parseNext(buffer);
+        _handler._complete = false;
+    }
+
+    private int generate() throws IOException
+    {
+        ByteBuffer content = _content.slice();
+        int bytes = 0;
+        _generator.reset();
+        while (true)
+        {
+            BufferUtil.clear(_header);
+            HttpGenerator.Result result = _generator.generateResponse(_response, false, _header, _chunk, content, true);
+            switch (result)
+            {
+                case FLUSH:
+                    bytes += _header.remaining() + _chunk.remaining() + content.remaining();
+                    content.position(content.limit());
+                    BufferUtil.clear(_chunk);
+                    break;
+                case DONE:
+                    return bytes;
+                case CONTINUE:
+                case NEED_HEADER:
+                case NEED_CHUNK:
+                case SHUTDOWN_OUT:
+                    break;
+                default:
+                    throw new IllegalStateException(result.toString());
+            }
+        }
+    }
+
+    private static class Handler implements HttpParser.RequestHandler
+    {
+        private int _fields;
+        private boolean _complete;
+
+        @Override
+        public boolean startRequest(String method, String uri, HttpVersion version)
+        {
+            return false;
+        }
+
+        @Override
+        public void parsedHeader(HttpField field)
+        {
+            _fields++;
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean content(ByteBuffer item)
+        {
+            return false;
+        }
+
+        @Override
+        public boolean contentComplete()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean messageComplete()
+        {
+            _complete = true;
+            return true;
+        }
+
+        @Override
+        public void earlyEOF()
+        {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public void badMessage(int status, String reason)
+        {
+            throw new IllegalStateException(status + " " + reason);
+        }
+
+        @Override
+        public int getHeaderCacheSize()
+        {
+            return 1024;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(HttpParserGeneratorBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .threads(1)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,155 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HostPortHttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.hpack.HpackDecoder;
+import org.eclipse.jetty.http2.hpack.HpackEncoder;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Encodes and decodes browser-like request headers and typical response headers
+ * with a connected {@link HpackEncoder}/{@link HpackDecoder} pair, so that the
+ * dynamic tables evolve as they would on a real HTTP/2 connection.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class HpackBenchmark
+{
+    @Param({"REQUEST", "RESPONSE"})
+    public String type;
+
+    @Param({"4096"})
+    public int maxDynamicTableSize;
+
+    /**
+     * The number of distinct request paths; as paths are indexed, many
+     * distinct paths churn the dynamic tables with additions and evictions.
+     */
+    @Param({"1", "256"})
+    public int paths;
+
+    private MetaData[] _metaDatas;
+    private int _index;
+    private HpackEncoder _encoder;
+    private HpackDecoder _decoder;
+    private final ByteBuffer _buffer = BufferUtil.allocate(16 * 1024);
+
+    @Setup(Level.Trial)
+    public void setupTrial()
+    {
+        if ("REQUEST".equals(type))
+        {
+            HttpFields fields = new HttpFields();
+            fields.put(HttpHeader.USER_AGENT, "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/61.0.3163.100 Safari/537.36");
+            fields.put(HttpHeader.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,image/apng,*/*;q=0.8");
+            fields.put(HttpHeader.ACCEPT_ENCODING, "gzip, deflate, br");
+            fields.put(HttpHeader.ACCEPT_LANGUAGE, "en-US,en;q=0.8,fr;q=0.6");
+            fields.put(HttpHeader.REFERER, "https://www.example.com/products/index.html");
+            fields.put(HttpHeader.COOKIE, "JSESSIONID=node01k3k2jb6owxrm1pn2lxgusbbvf0.node0; _ga=GA1.2.1523412345.1507894561; theme=dark");
+            fields.put(HttpHeader.CACHE_CONTROL, "no-cache");
+            _metaDatas = new MetaData[paths];
+            for (int i = 0; i < paths; ++i)
+            {
+                _metaDatas[i] = new MetaData.Request("GET", HttpScheme.HTTPS, new HostPortHttpField("www.example.com"),
+                    "/static/js/application.min.js?v=" + (20171014 + i), HttpVersion.HTTP_2, fields);
+            }
+        }
+        else
+        {
+            HttpFields fields = new HttpFields();
+            fields.put(HttpHeader.SERVER, "Jetty(9.4.x)");
+            fields.put(HttpHeader.DATE, "Sat, 14 Oct 2017 12:00:00 GMT");
+            fields.put(HttpHeader.CONTENT_TYPE, "application/javascript");
+            fields.put(HttpHeader.CACHE_CONTROL, "max-age=31536000, public");
+            fields.put(HttpHeader.ETAG, "W/\"1c4f3-15f1a2b3c4d\"");
+            fields.put(HttpHeader.LAST_MODIFIED, "Fri, 13 Oct 2017 09:30:00 GMT");
+            fields.put("Strict-Transport-Security", "max-age=31536000; includeSubDomains");
+            fields.put("X-Content-Type-Options", "nosniff");
+            _metaDatas = new MetaData[]{new MetaData.Response(HttpVersion.HTTP_2, 200, fields, 115955)};
+        }
+        _encoder = new HpackEncoder(maxDynamicTableSize, maxDynamicTableSize);
+        _decoder = new HpackDecoder(maxDynamicTableSize, 64 * 1024);
+    }
+
+    private MetaData nextMetaData()
+    {
+        MetaData metaData = _metaDatas[_index];
+        _index = (_index + 1) % _metaDatas.length;
+        return metaData;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testEncode(Blackhole blackhole)
+    {
+        BufferUtil.clearToFill(_buffer);
+        _encoder.encode(_buffer, nextMetaData());
+        blackhole.consume(_buffer.position());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testEncodeDecode(Blackhole blackhole)
+    {
+        BufferUtil.clearToFill(_buffer);
+        _encoder.encode(_buffer, nextMetaData());
+        BufferUtil.flipToFlush(_buffer, 0);
+        blackhole.consume(_decoder.decode(_buffer));
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(HpackBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .threads(1)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,219 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.jmh;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HostPortHttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PriorityFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.server.RawHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the time to first byte of a small, high priority stream requested while
+ * large, low priority downloads are in progress on the same HTTP/2 connection.
+ * With {@code weighted=false} no priority information is sent, so all the streams
+ * share the connection equally.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class PriorityBenchmark
+{
+    private static final String LOW = "/low";
+
+    @Param({"true", "false"})
+    public boolean weighted;
+
+    @Param({"4"})
+    public int contention;
+
+    @Param({"4194304"})
+    public int lowLength;
+
+    private Server _server;
+    private ServerConnector _connector;
+    private HTTP2Client _client;
+    private Session _session;
+    private ByteBuffer _lowContent;
+    private final List<Stream> _lows = new ArrayList<>();
+    private final ByteBuffer _highContent = ByteBuffer.allocate(4 * 1024);
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        _lowContent = ByteBuffer.allocate(lowLength);
+        _server = new Server();
+        RawHTTP2ServerConnectionFactory h2 = new RawHTTP2ServerConnectionFactory(new HttpConfiguration(), new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                boolean low = LOW.equals(((MetaData.Request)frame.getMetaData()).getURI().getPath());
+                ByteBuffer content = (low ? _lowContent : _highContent).slice();
+                MetaData.Response response = new MetaData.Response(HttpVersion.HTTP_2, 200, new HttpFields());
+                stream.headers(new HeadersFrame(stream.getId(), response, null, false), new Callback()
+                {
+                    @Override
+                    public void succeeded()
+                    {
+                        stream.data(new DataFrame(stream.getId(), content, true), Callback.NOOP);
+                    }
+                });
+                return null;
+            }
+        });
+        h2.setInitialSessionRecvWindow(16 * 1024 * 1024);
+        h2.setInitialStreamRecvWindow(16 * 1024 * 1024);
+        _connector = new ServerConnector(_server, h2);
+        _server.addConnector(_connector);
+        _server.start();
+
+        _client = new HTTP2Client();
+        _client.setInitialSessionRecvWindow(64 * 1024 * 1024);
+        _client.setInitialStreamRecvWindow(16 * 1024 * 1024);
+        _client.start();
+        FuturePromise<Session> promise = new FuturePromise<>();
+        _client.connect(new InetSocketAddress("localhost", _connector.getLocalPort()), new Session.Listener.Adapter(), promise);
+        _session = promise.get(5, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception
+    {
+        _client.stop();
+        _server.stop();
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() throws Exception
+    {
+        // Start the low priority downloads, and wait for them to be in progress.
+        CountDownLatch lowStarted = new CountDownLatch(contention);
+        for (int i = 0; i < contention; i++)
+        {
+            FuturePromise<Stream> promise = new FuturePromise<>();
+            _session.newStream(newRequest(LOW, 1), promise, new Stream.Listener.Adapter()
+            {
+                private boolean started;
+
+                @Override
+                public void onData(Stream stream, DataFrame frame, Callback callback)
+                {
+                    if (!started)
+                    {
+                        started = true;
+                        lowStarted.countDown();
+                    }
+                    callback.succeeded();
+                }
+            });
+            _lows.add(promise.get(5, TimeUnit.SECONDS));
+        }
+        if (!lowStarted.await(5, TimeUnit.SECONDS))
+            throw new IllegalStateException();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() throws Exception
+    {
+        // Cancel the low priority downloads, so that they do not interfere with the next invocation.
+        for (Stream low : _lows)
+            low.reset(new ResetFrame(low.getId(), ErrorCode.CANCEL_STREAM_ERROR.code), Callback.NOOP);
+        _lows.clear();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void testTimeToFirstByte() throws Exception
+    {
+        CountDownLatch firstByte = new CountDownLatch(1);
+        _session.newStream(newRequest("/high", 256), new Promise.Adapter<>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                firstByte.countDown();
+                callback.succeeded();
+            }
+        });
+        if (!firstByte.await(5, TimeUnit.SECONDS))
+            throw new IllegalStateException();
+    }
+
+    private HeadersFrame newRequest(String path, int weight)
+    {
+        MetaData.Request request = new MetaData.Request("GET", HttpScheme.HTTP, new HostPortHttpField("localhost:" + _connector.getLocalPort()),
+                path, HttpVersion.HTTP_2, new HttpFields());
+        PriorityFrame priority = weighted ? new PriorityFrame(0, weight, false) : null;
+        return new HeadersFrame(request, priority, true);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(PriorityBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .threads(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,128 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.io.StripedByteBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Acquires and releases buffers from a single shared {@link ByteBufferPool}
+ * from many threads, as selector and worker threads do.
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class ByteBufferPoolBenchmark
+{
+    @Param({"ARRAY", "MAPPED", "STRIPED"})
+    public String poolType;
+
+    @Param({"true", "false"})
+    public boolean direct;
+
+    @Param({"1024", "16384"})
+    public int size;
+
+    private ByteBufferPool _pool;
+
+    @Setup(Level.Trial)
+    public void setupTrial()
+    {
+        switch (poolType)
+        {
+            case "ARRAY":
+                _pool = new ArrayByteBufferPool(0, 1024, 64 * 1024);
+                break;
+            case "MAPPED":
+                _pool = new MappedByteBufferPool();
+                break;
+            case "STRIPED":
+                _pool = new StripedByteBufferPool(0, 1024, 64 * 1024);
+                break;
+            default:
+                throw new IllegalStateException("Unknown pool type: " + poolType);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial()
+    {
+        _pool = null;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testAcquireRelease(Blackhole blackhole)
+    {
+        ByteBuffer buffer = _pool.acquire(size, direct);
+        blackhole.consume(buffer);
+        _pool.release(buffer);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testAcquireReleaseTwo(Blackhole blackhole)
+    {
+        // Header plus content buffer, as HTTP/1.1 and HTTP/2 writes use.
+        ByteBuffer header = _pool.acquire(1024, direct);
+        ByteBuffer content = _pool.acquire(size, direct);
+        blackhole.consume(header);
+        blackhole.consume(content);
+        _pool.release(content);
+        _pool.release(header);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(ByteBufferPoolBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .threads(Runtime.getRuntime().availableProcessors())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
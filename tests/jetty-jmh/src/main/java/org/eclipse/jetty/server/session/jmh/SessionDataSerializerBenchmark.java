@@ -0,0 +1,164 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.session.CompactSessionDataSerializer;
+import org.eclipse.jetty.server.session.JavaSessionDataSerializer;
+import org.eclipse.jetty.server.session.SessionDataSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Serializes and deserializes the attributes of a session, as the
+ * session data stores do for each store and load.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class SessionDataSerializerBenchmark
+{
+    public static class User implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        private final String name;
+        private final long id;
+
+        public User(String name, long id)
+        {
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    @Param({"COMPACT", "JAVA"})
+    public String serializerType;
+
+    @Param({"SIMPLE", "COLLECTIONS", "OBJECTS"})
+    public String attributesType;
+
+    private SessionDataSerializer _serializer;
+    private Map<String,Object> _attributes;
+    private byte[] _bytes;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        switch (serializerType)
+        {
+            case "COMPACT":
+                _serializer = new CompactSessionDataSerializer();
+                break;
+            case "JAVA":
+                _serializer = new JavaSessionDataSerializer();
+                break;
+            default:
+                throw new IllegalStateException("Unknown serializer type: " + serializerType);
+        }
+
+        _attributes = new HashMap<>();
+        _attributes.put("org.example.login.user", "user@example.com");
+        _attributes.put("org.example.login.time", System.currentTimeMillis());
+        _attributes.put("org.example.locale", "en_US");
+        _attributes.put("org.example.visits", 42);
+        _attributes.put("org.example.authenticated", Boolean.TRUE);
+        _attributes.put("org.example.csrf", new byte[32]);
+        switch (attributesType)
+        {
+            case "SIMPLE":
+                break;
+            case "COLLECTIONS":
+                HashMap<String,Object> preferences = new HashMap<>();
+                preferences.put("theme", "dark");
+                preferences.put("pageSize", 50);
+                preferences.put("updated", new Date());
+                _attributes.put("org.example.preferences", preferences);
+                _attributes.put("org.example.roles", new ArrayList<>(Arrays.asList("user", "admin", "auditor")));
+                break;
+            case "OBJECTS":
+                _attributes.put("org.example.user", new User("user@example.com", 1234L));
+                _attributes.put("org.example.owner", new User("owner@example.com", 1L));
+                break;
+            default:
+                throw new IllegalStateException("Unknown attributes type: " + attributesType);
+        }
+
+        _bytes = serialize();
+    }
+
+    private byte[] serialize() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        _serializer.serializeAttributes(_attributes, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] testSerialize() throws Exception
+    {
+        return serialize();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Map<String,Object> testDeserialize() throws Exception
+    {
+        return _serializer.deserializeAttributes(new ByteArrayInputStream(_bytes));
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(SessionDataSerializerBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .threads(1)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,126 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread.jmh;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ReservedThreadExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Dispatches batches of short tasks either directly to a {@link QueuedThreadPool}
+ * or, when a reserved thread is available, through a {@link ReservedThreadExecutor}.
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class ThreadPoolBenchmark
+{
+    public enum Type
+    {
+        QTP, RTE
+    }
+
+    @Param({"QTP", "RTE"})
+    public Type type;
+
+    @Param({"200"})
+    public int maxThreads;
+
+    @Param({"16"})
+    public int tasks;
+
+    private QueuedThreadPool _pool;
+    private ReservedThreadExecutor _reserved;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        _pool = new QueuedThreadPool(maxThreads);
+        _pool.start();
+        if (type == Type.RTE)
+        {
+            _reserved = new ReservedThreadExecutor(_pool, -1);
+            _reserved.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception
+    {
+        if (_reserved != null)
+            _reserved.stop();
+        _pool.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testDispatch(Blackhole blackhole) throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(tasks);
+        Runnable task = () ->
+        {
+            Blackhole.consumeCPU(64);
+            latch.countDown();
+        };
+        for (int i = 0; i < tasks; ++i)
+            execute(task);
+        blackhole.consume(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    private void execute(Runnable task)
+    {
+        if (_reserved == null || !_reserved.tryExecute(task))
+            _pool.execute(task);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(ThreadPoolBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .threads(4)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,179 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread.strategy.jmh;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.ExecutionStrategy;
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.strategy.EatWhatYouKill;
+import org.eclipse.jetty.util.thread.strategy.ExecuteProduceConsume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link EatWhatYouKill} and {@link ExecuteProduceConsume}.
+ * Each benchmark thread plays the role of a selector: it owns one strategy whose
+ * producer yields a batch of tasks of the configured {@link Invocable.InvocationType},
+ * and waits until the batch has been consumed.
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class StrategyBenchmark
+{
+    @Param({"EWYK", "EPC"})
+    public String strategyName;
+
+    @Param({"BLOCKING", "NON_BLOCKING"})
+    public Invocable.InvocationType invocationType;
+
+    @Param({"200"})
+    public int maxThreads;
+
+    private QueuedThreadPool _threadPool;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        _threadPool = new QueuedThreadPool(maxThreads);
+        _threadPool.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception
+    {
+        _threadPool.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Selector implements ExecutionStrategy.Producer
+    {
+        @Param({"16"})
+        public int tasks;
+
+        private final AtomicInteger _remaining = new AtomicInteger();
+        private ExecutionStrategy _strategy;
+        private CountDownLatch _latch;
+        private Runnable _task;
+
+        @Setup(Level.Trial)
+        public void setupTrial(StrategyBenchmark benchmark) throws Exception
+        {
+            switch (benchmark.strategyName)
+            {
+                case "EWYK":
+                    _strategy = new EatWhatYouKill(this, benchmark._threadPool);
+                    break;
+                case "EPC":
+                    _strategy = new ExecuteProduceConsume(this, benchmark._threadPool);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown strategy: " + benchmark.strategyName);
+            }
+            if (_strategy instanceof LifeCycle)
+                ((LifeCycle)_strategy).start();
+            _task = new Task(benchmark.invocationType);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownTrial() throws Exception
+        {
+            if (_strategy instanceof LifeCycle)
+                ((LifeCycle)_strategy).stop();
+        }
+
+        @Override
+        public Runnable produce()
+        {
+            if (_remaining.getAndDecrement() > 0)
+                return _task;
+            _remaining.set(0);
+            return null;
+        }
+
+        private class Task implements Runnable, Invocable
+        {
+            private final InvocationType _invocationType;
+
+            private Task(InvocationType invocationType)
+            {
+                _invocationType = invocationType;
+            }
+
+            @Override
+            public void run()
+            {
+                Blackhole.consumeCPU(64);
+                _latch.countDown();
+            }
+
+            @Override
+            public InvocationType getInvocationType()
+            {
+                return _invocationType;
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testStrategy(Selector selector, Blackhole blackhole) throws Exception
+    {
+        selector._latch = new CountDownLatch(selector.tasks);
+        selector._remaining.set(selector.tasks);
+        selector._strategy.produce();
+        blackhole.consume(selector._latch.await(10, TimeUnit.SECONDS));
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(StrategyBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .threads(4)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,212 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * AttributeTableTest
+ *
+ * Test that the attributes of sessions are saved one per row in the
+ * attribute table, and that only the changed attributes are written.
+ */
+public class AttributeTableTest
+{
+    @After
+    public void tearDown() throws Exception
+    {
+        JdbcTestHelper.shutdown(null);
+    }
+
+
+    public JDBCSessionDataStore newSessionDataStore (boolean attributeTable) throws Exception
+    {
+        return newSessionDataStore(new JDBCSessionDataStore(), attributeTable);
+    }
+
+
+    public JDBCSessionDataStore newSessionDataStore (JDBCSessionDataStore store, boolean attributeTable) throws Exception
+    {
+        DatabaseAdaptor da = new DatabaseAdaptor();
+        da.setDriverInfo(JdbcTestHelper.DRIVER_CLASS, JdbcTestHelper.DEFAULT_CONNECTION_URL);
+        store.setDatabaseAdaptor(da);
+        store.setSessionTableSchema(JdbcTestHelper.newSessionTableSchema());
+        if (attributeTable)
+            store.setAttributeTableSchema(new JDBCSessionDataStore.AttributeTableSchema());
+
+        ContextHandler handler = new ContextHandler();
+        handler.setContextPath("/test");
+        store.initialize(new SessionContext("node0", handler.getServletContext()));
+        store.start();
+        return store;
+    }
+
+
+    public int countAttributes (String id) throws Exception
+    {
+        try (Connection con = DriverManager.getConnection(JdbcTestHelper.DEFAULT_CONNECTION_URL);
+             PreparedStatement statement = con.prepareStatement("select count(*) from JettySessionAttributes where sessionId = ?"))
+        {
+            statement.setString(1, id);
+            try (ResultSet result = statement.executeQuery())
+            {
+                result.next();
+                return result.getInt(1);
+            }
+        }
+    }
+
+
+    public void copyAttribute (String id, String from, String to) throws Exception
+    {
+        try (Connection con = DriverManager.getConnection(JdbcTestHelper.DEFAULT_CONNECTION_URL);
+             PreparedStatement select = con.prepareStatement("select attributeValue from JettySessionAttributes where sessionId = ? and attributeName = ?");
+             PreparedStatement update = con.prepareStatement("update JettySessionAttributes set attributeValue = ? where sessionId = ? and attributeName = ?"))
+        {
+            select.setString(1, id);
+            select.setString(2, from);
+            byte[] value;
+            try (ResultSet result = select.executeQuery())
+            {
+                result.next();
+                value = result.getBytes(1);
+            }
+            update.setBytes(1, value);
+            update.setString(2, id);
+            update.setString(3, to);
+            assertEquals(1, update.executeUpdate());
+        }
+    }
+
+
+    @Test
+    public void testDirtyAttributes() throws Exception
+    {
+        JDBCSessionDataStore store = newSessionDataStore(true);
+
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", now, now, now, TimeUnit.MINUTES.toMillis(10));
+        data.setLastNode("node0");
+        data.setAttribute("a", "one");
+        data.setAttribute("b", 2);
+        data.setAttribute("d", "four");
+        store.store("1234", data);
+        assertEquals(3, countAttributes("1234"));
+        assertTrue(data.getDirtyAttributes().isEmpty());
+
+        //overwrite the row of the unchanged attribute, to check that it is not written again
+        copyAttribute("1234", "a", "d");
+
+        //change, remove and add an attribute
+        data.setAttribute("a", "uno");
+        data.setAttribute("b", null);
+        data.setAttribute("c", 3L);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), data.getDirtyAttributes());
+        store.store("1234", data);
+        assertEquals(3, countAttributes("1234"));
+
+        SessionData loaded = store.load("1234");
+        assertEquals("uno", loaded.getAttribute("a"));
+        assertNull(loaded.getAttribute("b"));
+        assertEquals(3L, loaded.getAttribute("c"));
+        assertEquals("one", loaded.getAttribute("d"));
+        assertTrue(loaded.getDirtyAttributes().isEmpty());
+
+        assertTrue(store.delete("1234"));
+        assertEquals(0, countAttributes("1234"));
+        store.stop();
+    }
+
+
+    @Test
+    public void testChangedWhileSaving() throws Exception
+    {
+        AtomicBoolean change = new AtomicBoolean();
+        JDBCSessionDataStore store = newSessionDataStore(new JDBCSessionDataStore()
+        {
+            @Override
+            public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
+            {
+                super.doStore(id, data, lastSaveTime);
+                //set again an attribute that is already dirty, once it has been written
+                if (change.compareAndSet(true, false))
+                    data.setAttribute("a", "dos");
+            }
+        }, true);
+
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("9012", now, now, now, TimeUnit.MINUTES.toMillis(10));
+        data.setLastNode("node0");
+        data.setAttribute("a", "one");
+        store.store("9012", data);
+
+        data.setAttribute("a", "uno");
+        change.set(true);
+        store.store("9012", data);
+        assertEquals("uno", store.load("9012").getAttribute("a"));
+        assertTrue(data.isDirty());
+        assertEquals(Collections.singleton("a"), data.getDirtyAttributes());
+
+        store.store("9012", data);
+        assertEquals("dos", store.load("9012").getAttribute("a"));
+        assertTrue(data.getDirtyAttributes().isEmpty());
+        store.stop();
+    }
+
+
+    @Test
+    public void testMoveAttributes() throws Exception
+    {
+        //save a session with all its attributes in the map column
+        JDBCSessionDataStore store = newSessionDataStore(false);
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("5678", now, now, now, TimeUnit.MINUTES.toMillis(10));
+        data.setLastNode("node0");
+        data.setAttribute("a", "one");
+        store.store("5678", data);
+        store.stop();
+
+        //the attributes are moved to the attribute table by the next save
+        store = newSessionDataStore(true);
+        SessionData loaded = store.load("5678");
+        assertEquals("one", loaded.getAttribute("a"));
+        assertTrue(loaded.isDirty());
+        store.store("5678", loaded);
+        assertEquals(1, countAttributes("5678"));
+        assertEquals("one", store.load("5678").getAttribute("a"));
+        store.stop();
+    }
+}